@@ -2,6 +2,16 @@ package gg.moonflower.molangcompiler.api;
 
 import gg.moonflower.molangcompiler.api.exception.MolangSyntaxException;
 import gg.moonflower.molangcompiler.core.MolangCompilerImpl;
+import gg.moonflower.molangcompiler.core.MolangExpressionCache;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
 
 /**
  * <p>Compiles a {@link MolangExpression} from a string input.</p>
@@ -21,6 +31,44 @@ public interface MolangCompiler {
      * Whether to write the java bytecode to a class file. This is only for debugging.
      */
     int WRITE_CLASSES_FLAG = 0b10;
+    /**
+     * Whether to load literals from a per-expression constant array instead of embedding them in the generated code.
+     * Expressions that only differ in their literals, such as <code>q.anim_time * 2</code> and <code>q.anim_time * 3</code>, then share a single generated class.
+     *
+     * @since 3.2.0
+     */
+    int SHARED_CONSTANTS_FLAG = 0b100;
+    /**
+     * Whether to define each expression as a hidden class instead of in the compiler class loader.
+     * Hidden classes are unloaded as soon as no expression using them is reachable, instead of when the whole compiler is.
+     *
+     * @since 3.2.0
+     */
+    int HIDDEN_CLASSES_FLAG = 0b1000;
+    /**
+     * Whether optimizations may change the last bits of results. With this flag constants are reassociated, so <code>2 * q.a * 3</code> becomes <code>q.a * 6</code>
+     * and <code>(q.a + 4) - 4</code> becomes <code>q.a</code>. This only has an effect together with {@link #OPTIMIZE_FLAG}.
+     *
+     * @since 3.2.0
+     */
+    int FAST_MATH_FLAG = 0b10000;
+    /**
+     * Whether to only run the cheap optimizations of the expression tree, such as folding constants and removing unused code.
+     * Without this flag {@link #OPTIMIZE_FLAG} also unrolls loops, reuses repeated values, and generates code from a control flow graph,
+     * which takes longer to compile. This only has an effect together with {@link #OPTIMIZE_FLAG}.
+     *
+     * @since 3.2.0
+     */
+    int BASIC_OPTIMIZE_FLAG = 0b100000;
+    /**
+     * Whether generated expressions also compute their result with double values, which is available from {@link MolangExpression#getDouble(MolangEnvironment)}.
+     * Values are still read from and written to the environment as floats. This only has an effect on code generated from a control flow graph,
+     * so it requires {@link #OPTIMIZE_FLAG} without {@link #BASIC_OPTIMIZE_FLAG}. Constants are computed by the generated code instead of while compiling,
+     * since the compiler evaluates them as floats.
+     *
+     * @since 3.2.0
+     */
+    int DOUBLE_PRECISION_FLAG = 0b1000000;
 
     /**
      * All default compilation flags. This may change in future versions as more options are added.
@@ -36,6 +84,109 @@ public interface MolangCompiler {
      */
     MolangExpression compile(String input) throws MolangSyntaxException;
 
+    /**
+     * <p>Compiles all inputs into as few generated classes as possible.</p>
+     * <p>Every expression is a static method of a shared module class and the returned expressions are lightweight handles of a single type,
+     * so evaluating many of them from the same call site stays monomorphic. Packed expressions are not added to the expression cache.</p>
+     *
+     * @param inputs The data to compile
+     * @return The compiled expressions in the same order as the inputs
+     * @throws MolangSyntaxException If any input fails to compile
+     * @since 3.2.0
+     */
+    default List<MolangExpression> compileModule(List<String> inputs) throws MolangSyntaxException {
+        List<MolangExpression> expressions = new ArrayList<>(inputs.size());
+        for (String input : inputs) {
+            expressions.add(this.compile(input));
+        }
+        return expressions;
+    }
+
+    /**
+     * <p>Parses all inputs and encodes them into a compact binary form that can be compiled with {@link #compileSerialized(byte[])}.</p>
+     * <p>This allows servers to parse expressions once and send them to clients, which then skip lexing and parsing.
+     * The data is only compatible with the same version of the compiler.</p>
+     *
+     * @param inputs The data to parse
+     * @return The encoded expressions
+     * @throws MolangSyntaxException If any input fails to parse or is nested too deeply to encode
+     * @since 3.2.0
+     */
+    default byte[] serialize(List<String> inputs) throws MolangSyntaxException {
+        throw new UnsupportedOperationException("This compiler does not support serialized expressions");
+    }
+
+    /**
+     * Compiles expressions encoded with {@link #serialize(List)} without lexing or parsing them again.
+     *
+     * @param data The encoded expressions
+     * @return The compiled expressions in the same order as the original inputs
+     * @throws MolangSyntaxException If the data is invalid or any expression fails to compile
+     * @since 3.2.0
+     */
+    default List<MolangExpression> compileSerialized(byte[] data) throws MolangSyntaxException {
+        throw new UnsupportedOperationException("This compiler does not support serialized expressions");
+    }
+
+    /**
+     * <p>Creates a session for an expression that is compiled again after every edit, such as in an editor with a live preview.</p>
+     * <p>Sessions only lex the changed part of the source again and reuse unchanged top level statements.
+     * Each version is defined as a hidden class, so replaced versions are unloaded instead of staying in the compiler until it is discarded.</p>
+     *
+     * @return A new session
+     * @since 3.2.0
+     */
+    default Session createSession() {
+        throw new UnsupportedOperationException("This compiler does not support sessions");
+    }
+
+    /**
+     * <p>Compiles all inputs. Compilers created by {@link #create(int)} or {@link #builder()} compile them in parallel on the {@linkplain ForkJoinPool#commonPool() common pool},
+     * the default implementation compiles them one after another, since other implementations may not be safe to use from multiple threads.</p>
+     * <p>Unlike {@link #compile(String)} a syntax error does not stop the other inputs from compiling, it is reported in the result for that input instead.</p>
+     *
+     * @param inputs The data to compile
+     * @return A result for each input in iteration order
+     * @since 3.2.0
+     */
+    default List<CompileResult> compileAll(Collection<String> inputs) {
+        List<CompileResult> results = new ArrayList<>(inputs.size());
+        for (String input : inputs) {
+            try {
+                results.add(CompileResult.success(input, this.compile(input)));
+            } catch (MolangSyntaxException e) {
+                results.add(CompileResult.failure(input, e));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Compiles all inputs on the specified pool. Compilers created by {@link #create(int)} or {@link #builder()} compile them in parallel,
+     * the default implementation ignores the pool and calls {@link #compileAll(Collection)}.
+     *
+     * @param inputs The data to compile
+     * @param pool   The pool to lex, parse, and generate code on
+     * @return A result for each input in iteration order
+     * @see #compileAll(Collection)
+     * @since 3.2.0
+     */
+    default List<CompileResult> compileAll(Collection<String> inputs, ForkJoinPool pool) {
+        return this.compileAll(inputs);
+    }
+
+    /**
+     * Retrieves the counters of the compiled expression cache. Compilers created without a cache always report zero.
+     *
+     * @return A snapshot of the cache counters
+     * @see Builder#cache(int)
+     * @see Builder#weakCache()
+     * @since 3.2.0
+     */
+    default CacheStats getCacheStats() {
+        return CacheStats.EMPTY;
+    }
+
     /**
      * Creates a compiler with the {@linkplain MolangCompiler#DEFAULT_FLAGS default flags}.
      *
@@ -52,6 +203,11 @@ public interface MolangCompiler {
      * @return The compiler instance
      * @see MolangCompiler#OPTIMIZE_FLAG
      * @see MolangCompiler#WRITE_CLASSES_FLAG
+     * @see MolangCompiler#SHARED_CONSTANTS_FLAG
+     * @see MolangCompiler#HIDDEN_CLASSES_FLAG
+     * @see MolangCompiler#FAST_MATH_FLAG
+     * @see MolangCompiler#BASIC_OPTIMIZE_FLAG
+     * @see MolangCompiler#DOUBLE_PRECISION_FLAG
      * @see MolangCompiler#DEFAULT_FLAGS
      */
     static MolangCompiler create(int flags) {
@@ -67,9 +223,215 @@ public interface MolangCompiler {
      * @return The compiler instance
      * @see MolangCompiler#OPTIMIZE_FLAG
      * @see MolangCompiler#WRITE_CLASSES_FLAG
+     * @see MolangCompiler#SHARED_CONSTANTS_FLAG
+     * @see MolangCompiler#HIDDEN_CLASSES_FLAG
+     * @see MolangCompiler#FAST_MATH_FLAG
+     * @see MolangCompiler#BASIC_OPTIMIZE_FLAG
+     * @see MolangCompiler#DOUBLE_PRECISION_FLAG
      * @see MolangCompiler#DEFAULT_FLAGS
      */
     static MolangCompiler create(int flags, ClassLoader parent) {
         return new MolangCompilerImpl(flags, parent);
     }
+
+    /**
+     * Creates a builder for compilers that need more options than the flags.
+     *
+     * @return A new compiler builder
+     * @since 3.2.0
+     */
+    static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Counters for the compiled expression cache.
+     *
+     * @param hits      The number of compilations answered from the cache, including ones that waited for another thread to compile the same expression
+     * @param misses    The number of compilations that had to generate a new expression
+     * @param evictions The number of expressions removed to stay within the cache bounds or after being garbage collected
+     * @param size      The number of expressions currently cached
+     * @since 3.2.0
+     */
+    record CacheStats(long hits, long misses, long evictions, int size) {
+
+        public static final CacheStats EMPTY = new CacheStats(0, 0, 0, 0);
+
+        /**
+         * @return The fraction of compilations answered from the cache or <code>0</code> if nothing was compiled yet
+         */
+        public double hitRate() {
+            long requests = this.hits + this.misses;
+            return requests == 0 ? 0.0 : (double) this.hits / requests;
+        }
+    }
+
+    /**
+     * The outcome of compiling a single input with {@link #compileAll(Collection)}.
+     *
+     * @param input      The data that was compiled
+     * @param expression The compiled expression or <code>null</code> if compilation failed
+     * @param error      The reason compilation failed or <code>null</code> if it succeeded
+     * @since 3.2.0
+     */
+    record CompileResult(String input, @Nullable MolangExpression expression, @Nullable MolangSyntaxException error) {
+
+        public static CompileResult success(String input, MolangExpression expression) {
+            return new CompileResult(input, expression, null);
+        }
+
+        public static CompileResult failure(String input, MolangSyntaxException error) {
+            return new CompileResult(input, null, error);
+        }
+
+        /**
+         * @return Whether the input compiled successfully
+         */
+        public boolean isSuccess() {
+            return this.expression != null;
+        }
+    }
+
+    /**
+     * Compiles successive versions of a single expression. Sessions are not thread-safe.
+     *
+     * @see #createSession()
+     * @since 3.2.0
+     */
+    interface Session {
+
+        /**
+         * Compiles the new version of the expression. If the input is invalid, the previous expression is kept.
+         *
+         * @param input The full source of the new version
+         * @return The compiled expression
+         * @throws MolangSyntaxException If the input fails to compile
+         */
+        MolangExpression update(String input) throws MolangSyntaxException;
+
+        /**
+         * @return The last successfully compiled expression or <code>null</code> if no version compiled yet
+         */
+        @Nullable
+        MolangExpression getExpression();
+    }
+
+    /**
+     * Configures a new {@link MolangCompiler}.
+     *
+     * @since 3.2.0
+     */
+    final class Builder {
+
+        private int flags;
+        private ClassLoader parent;
+        private Supplier<MolangExpressionCache> cache;
+        private int tierThreshold;
+        private Executor tierExecutor;
+        private Path diskCache;
+
+        private Builder() {
+            this.flags = DEFAULT_FLAGS;
+            this.parent = null;
+            this.cache = null;
+            this.tierThreshold = 0;
+            this.tierExecutor = null;
+            this.diskCache = null;
+        }
+
+        /**
+         * Sets the compiler flags to use. Defaults to {@link #DEFAULT_FLAGS}.
+         *
+         * @param flags The compiler flags to use
+         * @see MolangCompiler#OPTIMIZE_FLAG
+         * @see MolangCompiler#WRITE_CLASSES_FLAG
+         * @see MolangCompiler#SHARED_CONSTANTS_FLAG
+         * @see MolangCompiler#HIDDEN_CLASSES_FLAG
+         * @see MolangCompiler#FAST_MATH_FLAG
+         * @see MolangCompiler#BASIC_OPTIMIZE_FLAG
+         * @see MolangCompiler#DOUBLE_PRECISION_FLAG
+         */
+        public Builder flags(int flags) {
+            this.flags = flags;
+            return this;
+        }
+
+        /**
+         * Sets the classloader to use as the parent of generated classes.
+         * This should only be set when the current class is not using the system class loader.
+         *
+         * @param parent The parent classloader or <code>null</code> to use the system class loader
+         */
+        public Builder parent(@Nullable ClassLoader parent) {
+            this.parent = parent;
+            return this;
+        }
+
+        /**
+         * Caches compiled expressions by their parsed structure, keeping at most the specified number of expressions.
+         * The least recently used expression is evicted first.
+         *
+         * @param maximumSize The maximum number of expressions to keep
+         */
+        public Builder cache(int maximumSize) {
+            if (maximumSize <= 0) {
+                throw new IllegalArgumentException("Maximum size must be positive");
+            }
+            this.cache = () -> MolangExpressionCache.bounded(maximumSize);
+            return this;
+        }
+
+        /**
+         * Caches compiled expressions by their parsed structure for as long as they are referenced outside the compiler.
+         */
+        public Builder weakCache() {
+            this.cache = MolangExpressionCache::weak;
+            return this;
+        }
+
+        /**
+         * Starts every expression in an interpreter and only generates bytecode once it has been evaluated the specified number of times.
+         * Bytecode is generated on the {@linkplain ForkJoinPool#commonPool() common pool} and replaces the interpreter as soon as it is ready.
+         *
+         * @param invocationThreshold The number of evaluations before an expression is compiled
+         */
+        public Builder tiered(int invocationThreshold) {
+            return this.tiered(invocationThreshold, ForkJoinPool.commonPool());
+        }
+
+        /**
+         * Starts every expression in an interpreter and only generates bytecode once it has been evaluated the specified number of times.
+         *
+         * @param invocationThreshold The number of evaluations before an expression is compiled
+         * @param executor            The executor to generate bytecode on
+         */
+        public Builder tiered(int invocationThreshold, Executor executor) {
+            if (invocationThreshold <= 0) {
+                throw new IllegalArgumentException("Invocation threshold must be positive");
+            }
+            this.tierThreshold = invocationThreshold;
+            this.tierExecutor = executor;
+            return this;
+        }
+
+        /**
+         * <p>Stores generated classes in the specified directory and loads them from there instead of compiling them again, even after a restart.</p>
+         * <p>Entries are keyed by the source with normalized whitespace, the compiler flags, and the code generator version,
+         * so entries written by a different version of the compiler are ignored. Corrupted entries are detected and compiled again.
+         * Expressions compiled with {@link #SHARED_CONSTANTS_FLAG} are not stored, since their classes are shared between many sources.</p>
+         *
+         * @param directory The directory to store generated classes in or <code>null</code> to disable the disk cache
+         */
+        public Builder diskCache(@Nullable Path directory) {
+            this.diskCache = directory;
+            return this;
+        }
+
+        /**
+         * @return A new compiler with the current options
+         */
+        public MolangCompiler build() {
+            return new MolangCompilerImpl(this.flags, this.parent != null ? this.parent : ClassLoader.getSystemClassLoader(), this.cache != null ? this.cache.get() : null, this.tierThreshold, this.tierExecutor, this.diskCache);
+        }
+    }
 }
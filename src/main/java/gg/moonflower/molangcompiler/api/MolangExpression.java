@@ -30,6 +30,20 @@ public interface MolangExpression {
     @ApiStatus.OverrideOnly
     float get(MolangEnvironment environment) throws MolangRuntimeException;
 
+    /**
+     * Resolves the value of this expression with double precision. Expressions compiled with {@link MolangCompiler#DOUBLE_PRECISION_FLAG}
+     * compute all values as doubles, others return the float value of {@link #get(MolangEnvironment)}.
+     *
+     * @param environment The environment to execute in
+     * @return The resulting value
+     * @throws MolangRuntimeException If any error occurs when resolving the value
+     * @since 3.2.0
+     */
+    @ApiStatus.OverrideOnly
+    default double getDouble(MolangEnvironment environment) throws MolangRuntimeException {
+        return this.get(environment);
+    }
+
     /**
      * Resolves the constant float value of this expression if {@link #isConstant()} returns <code>true</code>.
      *
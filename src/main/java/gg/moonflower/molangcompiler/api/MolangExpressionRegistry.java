@@ -0,0 +1,315 @@
+package gg.moonflower.molangcompiler.api;
+
+import gg.moonflower.molangcompiler.api.exception.MolangSyntaxException;
+import gg.moonflower.molangcompiler.core.MolangPrecompiler;
+import gg.moonflower.molangcompiler.core.node.MolangReferenceNode;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * <p>Hands out stable integer handles for expressions that can be recompiled while they are in use.</p>
+ * <p>Handles stay valid across reloads, so callers can store a handle or a {@linkplain #getReference(int) reference} once and always evaluate the latest version.
+ * Looking up a handle is a single array read and reloads swap in all recompiled expressions at once, so evaluation never waits for a reload
+ * and never sees a partially reloaded pack.</p>
+ *
+ * <pre>{@code
+ * MolangExpressionRegistry registry = new MolangExpressionRegistry(compiler);
+ * int walk = registry.handle("player.json#/animations/walk/loop");
+ * registry.watch(Path.of("packs/animations"),
+ *         errors -> errors.forEach((id, error) -> LOGGER.error("{}: {}", id, error.getMessage())),
+ *         (path, error) -> LOGGER.error("Failed to read {}", path, error));
+ * float value = environment.resolve(registry.get(walk));
+ * }</pre>
+ *
+ * @author Ocelot
+ * @since 3.2.0
+ */
+public final class MolangExpressionRegistry {
+
+    private static final long WATCH_DELAY = 100;
+
+    private final MolangCompiler compiler;
+    private final Map<String, Integer> handles;
+    private final List<String> ids;
+    private final Object lock;
+    private volatile MolangExpression[] expressions;
+
+    /**
+     * Creates an empty registry.
+     *
+     * @param compiler The compiler to compile registered expressions with
+     */
+    public MolangExpressionRegistry(MolangCompiler compiler) {
+        this.compiler = compiler;
+        this.handles = new HashMap<>();
+        this.ids = new ArrayList<>();
+        this.lock = new Object();
+        this.expressions = new MolangExpression[0];
+    }
+
+    /**
+     * Retrieves the handle for the specified id. If the id is not registered yet, a new handle that evaluates to <code>0</code> until the id is registered is created.
+     *
+     * @param id The id of the expression
+     * @return The handle for the id
+     */
+    public int handle(String id) {
+        synchronized (this.lock) {
+            Integer handle = this.handles.get(id);
+            if (handle != null) {
+                return handle;
+            }
+
+            int index = this.ids.size();
+            this.handles.put(id, index);
+            this.ids.add(id);
+            MolangExpression[] expressions = Arrays.copyOf(this.expressions, index + 1);
+            expressions[index] = MolangExpression.ZERO;
+            this.expressions = expressions;
+            return index;
+        }
+    }
+
+    /**
+     * Retrieves the current version of the expression with the specified handle.
+     *
+     * @param handle The handle of the expression
+     * @return The current expression
+     * @throws IndexOutOfBoundsException If the handle was not created by this registry
+     */
+    public MolangExpression get(int handle) {
+        return this.expressions[handle];
+    }
+
+    /**
+     * Creates an expression that always evaluates the current version of the expression with the specified handle.
+     * This allows code that stores {@link MolangExpression} instances to pick up reloads without changes.
+     *
+     * @param handle The handle of the expression
+     * @return An expression that evaluates the current version
+     * @throws IndexOutOfBoundsException If the handle was not created by this registry
+     */
+    public MolangExpression getReference(int handle) {
+        Objects.checkIndex(handle, this.expressions.length);
+        return new MolangReferenceNode(this, handle);
+    }
+
+    /**
+     * @param handle The handle of the expression
+     * @return The id of the handle or <code>null</code> if the handle was not created by this registry
+     */
+    @Nullable
+    public String getId(int handle) {
+        synchronized (this.lock) {
+            return handle >= 0 && handle < this.ids.size() ? this.ids.get(handle) : null;
+        }
+    }
+
+    /**
+     * @return The number of handles in this registry
+     */
+    public int size() {
+        return this.expressions.length;
+    }
+
+    /**
+     * Compiles and registers a single expression, replacing the previous version if the id is already registered.
+     *
+     * @param id     The id of the expression
+     * @param source The MoLang source
+     * @return The handle of the expression
+     * @throws MolangSyntaxException If the source fails to compile. The previous version is kept
+     */
+    public int register(String id, String source) throws MolangSyntaxException {
+        MolangExpression expression = this.compiler.compile(source);
+        int handle = this.handle(id);
+        synchronized (this.lock) {
+            MolangExpression[] expressions = this.expressions.clone();
+            expressions[handle] = expression;
+            this.expressions = expressions;
+        }
+        return handle;
+    }
+
+    /**
+     * <p>Compiles all sources in parallel and swaps them in at the same time.</p>
+     * <p>Expressions that fail to compile keep their previous version, and ids that are not in the sources are left unchanged.
+     * Evaluation can continue on other threads while the sources are compiled.</p>
+     *
+     * @param sources The MoLang sources by their id
+     * @return The errors of all expressions that failed to compile by their id
+     */
+    public Map<String, MolangSyntaxException> reload(Map<String, String> sources) {
+        List<String> ids = new ArrayList<>(sources.keySet());
+        List<String> inputs = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            inputs.add(sources.get(id));
+        }
+        List<MolangCompiler.CompileResult> results = this.compiler.compileAll(inputs);
+
+        int[] handles = new int[ids.size()];
+        for (int i = 0; i < handles.length; i++) {
+            handles[i] = this.handle(ids.get(i));
+        }
+
+        Map<String, MolangSyntaxException> failures = new LinkedHashMap<>();
+        synchronized (this.lock) {
+            MolangExpression[] expressions = this.expressions.clone();
+            for (int i = 0; i < handles.length; i++) {
+                MolangCompiler.CompileResult result = results.get(i);
+                if (result.isSuccess()) {
+                    expressions[handles[i]] = result.expression();
+                } else {
+                    failures.put(ids.get(i), result.error());
+                }
+            }
+            this.expressions = expressions;
+        }
+        return failures;
+    }
+
+    /**
+     * Reloads all sources on the specified executor.
+     *
+     * @param sources  The MoLang sources by their id
+     * @param executor The executor to compile on
+     * @return A future for the errors of all expressions that failed to compile by their id
+     * @see #reload(Map)
+     */
+    public CompletableFuture<Map<String, MolangSyntaxException>> reloadAsync(Map<String, String> sources, Executor executor) {
+        Map<String, String> copy = new LinkedHashMap<>(sources);
+        return CompletableFuture.supplyAsync(() -> this.reload(copy), executor);
+    }
+
+    /**
+     * Reloads the expressions in the specified file or directory. Ids are the same as used by the precompiler,
+     * so <code>.molang</code> files are identified by their path without the extension and expressions in <code>.json</code> files by their path and JSON pointer.
+     *
+     * @param path The file or directory to read
+     * @return The errors of all expressions that failed to compile by their id
+     * @throws IOException If any file could not be read
+     * @see #reload(Map)
+     */
+    public Map<String, MolangSyntaxException> reload(Path path) throws IOException {
+        Map<String, String> sources = new LinkedHashMap<>();
+        MolangPrecompiler.readPath(path, sources::put);
+        return this.reload(sources);
+    }
+
+    /**
+     * <p>Reloads the specified directory on a background thread whenever a file in it changes.</p>
+     * <p>Changes are collected for a short time before reloading, so saving many files at once only causes one reload.
+     * The directory is not loaded when watching starts, use {@link #reload(Path)} first.</p>
+     * <p>Files that cannot be read are passed to the uncaught exception handler of the watcher thread as an {@link UncheckedIOException},
+     * use {@link #watch(Path, Consumer, BiConsumer)} to handle them instead. Exceptions thrown by the listener
+     * are passed to the uncaught exception handler of the watcher thread, which keeps watching.</p>
+     *
+     * @param directory The directory to watch
+     * @param listener  The listener to receive the errors of every reload
+     * @return A handle to stop watching
+     * @throws IOException If the directory cannot be watched
+     */
+    public Closeable watch(Path directory, Consumer<Map<String, MolangSyntaxException>> listener) throws IOException {
+        return this.watch(directory, listener, (path, e) -> {
+            throw new UncheckedIOException(e);
+        });
+    }
+
+    /**
+     * <p>Reloads the specified directory on a background thread whenever a file in it changes.</p>
+     * <p>Changes are collected for a short time before reloading, so saving many files at once only causes one reload.
+     * The directory is not loaded when watching starts, use {@link #reload(Path)} first.</p>
+     * <p>Directories that cannot be watched and files that cannot be read are reported to the I/O listener with the failed path.
+     * A reload that fails to read does not change any expressions and is not reported to the listener. Exceptions thrown by either listener
+     * are passed to the uncaught exception handler of the watcher thread, which keeps watching.</p>
+     *
+     * @param directory  The directory to watch
+     * @param listener   The listener to receive the errors of every reload
+     * @param ioListener The listener to receive the path and error of every file or directory that could not be read
+     * @return A handle to stop watching
+     * @throws IOException If the directory cannot be watched
+     * @since 3.2.0
+     */
+    public Closeable watch(Path directory, Consumer<Map<String, MolangSyntaxException>> listener, BiConsumer<Path, IOException> ioListener) throws IOException {
+        WatchService watchService = directory.getFileSystem().newWatchService();
+        try {
+            registerAll(watchService, directory);
+        } catch (IOException e) {
+            watchService.close();
+            throw e;
+        }
+
+        Thread thread = new Thread(() -> {
+            try {
+                while (true) {
+                    WatchKey key = watchService.take();
+                    // Wait for related changes so they are reloaded together
+                    while (key != null) {
+                        for (WatchEvent<?> event : key.pollEvents()) {
+                            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && key.watchable() instanceof Path parent) {
+                                Path path = parent.resolve((Path) event.context());
+                                if (Files.isDirectory(path)) {
+                                    try {
+                                        registerAll(watchService, path);
+                                    } catch (IOException e) {
+                                        notifyListener(() -> ioListener.accept(path, e));
+                                    }
+                                }
+                            }
+                        }
+                        key.reset();
+                        key = watchService.poll(WATCH_DELAY, TimeUnit.MILLISECONDS);
+                    }
+
+                    Map<String, MolangSyntaxException> errors;
+                    try {
+                        errors = this.reload(directory);
+                    } catch (IOException e) {
+                        notifyListener(() -> ioListener.accept(directory, e));
+                        continue;
+                    }
+                    notifyListener(() -> listener.accept(errors));
+                }
+            } catch (InterruptedException | ClosedWatchServiceException ignored) {
+            }
+        }, "Molang Registry Watcher");
+        thread.setDaemon(true);
+        thread.start();
+
+        return () -> {
+            thread.interrupt();
+            watchService.close();
+        };
+    }
+
+    // Listeners must not stop the watcher thread
+    private static void notifyListener(Runnable listener) {
+        try {
+            listener.run();
+        } catch (RuntimeException e) {
+            Thread current = Thread.currentThread();
+            current.getUncaughtExceptionHandler().uncaughtException(current, e);
+        }
+    }
+
+    private static void registerAll(WatchService watchService, Path directory) throws IOException {
+        List<Path> directories;
+        try (Stream<Path> stream = Files.walk(directory)) {
+            directories = stream.filter(Files::isDirectory).toList();
+        }
+        for (Path path : directories) {
+            path.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package gg.moonflower.molangcompiler.api;
+
+import gg.moonflower.molangcompiler.api.exception.MolangSyntaxException;
+import gg.moonflower.molangcompiler.core.MolangPrecompiler;
+import gg.moonflower.molangcompiler.core.MolangUtil;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
+
+/**
+ * <p>Extracts and compiles every expression in a set of pack files.</p>
+ * <p>Files are memory mapped and scanned one at a time while the expressions found so far compile in parallel.
+ * Only a limited number of compilations can be pending at once, so reading waits for the compiler instead of buffering the whole pack.
+ * Each distinct source is only compiled once, no matter how many files contain it.</p>
+ * <p><code>.molang</code> files contain a single expression and every string value in <code>.json</code> files that looks like an expression is compiled.
+ * Other files are ignored.</p>
+ *
+ * @author Ocelot
+ * @since 3.2.0
+ */
+public final class MolangPackLoader {
+
+    private MolangPackLoader() {
+    }
+
+    /**
+     * Loads all expressions in the specified files or directories on the {@linkplain ForkJoinPool#commonPool() common pool}.
+     *
+     * @param compiler The compiler to compile expressions with
+     * @param paths    The files or directories to read
+     * @return The compiled expressions and all errors
+     * @see #load(MolangCompiler, Collection, Executor, int)
+     */
+    public static Result load(MolangCompiler compiler, Collection<Path> paths) {
+        return load(compiler, paths, ForkJoinPool.commonPool(), Math.max(1, ForkJoinPool.commonPool().getParallelism()) * 4);
+    }
+
+    /**
+     * Loads all expressions in the specified files or directories.
+     *
+     * @param compiler   The compiler to compile expressions with
+     * @param paths      The files or directories to read
+     * @param executor   The executor to compile expressions on
+     * @param maxPending The maximum number of expressions waiting to be compiled before reading pauses
+     * @return The compiled expressions and all errors
+     */
+    public static Result load(MolangCompiler compiler, Collection<Path> paths, Executor executor, int maxPending) {
+        if (maxPending <= 0) {
+            throw new IllegalArgumentException("Maximum pending compilations must be positive");
+        }
+
+        Map<String, MolangExpression> expressions = new ConcurrentHashMap<>();
+        Map<String, Failure> failures = new ConcurrentHashMap<>();
+        Map<Path, IOException> fileErrors = new LinkedHashMap<>();
+        Set<String> sources = new HashSet<>();
+        Semaphore pending = new Semaphore(maxPending);
+
+        for (Path path : paths) {
+            List<Path> files;
+            try {
+                files = listFiles(path);
+            } catch (IOException e) {
+                fileErrors.put(path, e);
+                continue;
+            }
+
+            for (Path file : files) {
+                String name = Files.isDirectory(path) ? path.relativize(file).toString().replace('\\', '/') : file.getFileName().toString();
+                try {
+                    MolangPrecompiler.readFile(name, file, (id, source) -> {
+                        String normalized = MolangUtil.normalizeSource(source);
+                        if (!sources.add(normalized)) {
+                            return;
+                        }
+
+                        pending.acquireUninterruptibly();
+                        try {
+                            executor.execute(() -> {
+                                try {
+                                    expressions.put(normalized, compiler.compile(normalized));
+                                } catch (MolangSyntaxException e) {
+                                    failures.put(normalized, new Failure(id, normalized, e));
+                                } catch (Throwable t) {
+                                    failures.put(normalized, new Failure(id, normalized, new MolangSyntaxException("Failed to compile expression", t)));
+                                } finally {
+                                    pending.release();
+                                }
+                            });
+                        } catch (RuntimeException e) {
+                            pending.release();
+                            throw e;
+                        }
+                    });
+                } catch (IOException e) {
+                    fileErrors.put(file, e);
+                }
+            }
+        }
+
+        // Wait for the remaining compilations
+        pending.acquireUninterruptibly(maxPending);
+        pending.release(maxPending);
+
+        List<Failure> sortedFailures = new ArrayList<>(failures.values());
+        sortedFailures.sort(Comparator.comparing(Failure::location));
+        return new Result(Collections.unmodifiableMap(expressions), Collections.unmodifiableList(sortedFailures), Collections.unmodifiableMap(fileErrors));
+    }
+
+    private static List<Path> listFiles(Path path) throws IOException {
+        if (!Files.isDirectory(path)) {
+            return List.of(path);
+        }
+        try (Stream<Path> stream = Files.walk(path)) {
+            return stream.filter(Files::isRegularFile).sorted().toList();
+        }
+    }
+
+    /**
+     * The outcome of loading a pack.
+     *
+     * @param expressions The compiled expressions by their source with normalized whitespace
+     * @param failures    The expressions that failed to compile, sorted by location
+     * @param fileErrors  The files that could not be read
+     * @since 3.2.0
+     */
+    public record Result(Map<String, MolangExpression> expressions, List<Failure> failures, Map<Path, IOException> fileErrors) {
+
+        /**
+         * Retrieves the expression compiled from the specified source. Whitespace differences are ignored.
+         *
+         * @param source The MoLang source
+         * @return The expression or <code>null</code> if the source was not in the pack or failed to compile
+         */
+        @Nullable
+        public MolangExpression get(String source) {
+            return this.expressions.get(MolangUtil.normalizeSource(source));
+        }
+
+        /**
+         * @return Whether every file was read and every expression compiled
+         */
+        public boolean isSuccess() {
+            return this.failures.isEmpty() && this.fileErrors.isEmpty();
+        }
+    }
+
+    /**
+     * An expression that failed to compile.
+     *
+     * @param location The first location the source was found at, as the file name and JSON pointer
+     * @param source   The source with normalized whitespace
+     * @param error    The reason compilation failed
+     * @since 3.2.0
+     */
+    public record Failure(String location, String source, MolangSyntaxException error) {
+    }
+}
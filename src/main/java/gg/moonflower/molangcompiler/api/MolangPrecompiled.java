@@ -0,0 +1,131 @@
+package gg.moonflower.molangcompiler.api;
+
+import gg.moonflower.molangcompiler.api.exception.MolangSyntaxException;
+import gg.moonflower.molangcompiler.core.MolangPrecompiledIndex;
+import gg.moonflower.molangcompiler.core.MolangUtil;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>Looks up expressions that were compiled ahead of time with the precompiler.</p>
+ * <p>Precompiled expressions are loaded as regular classes, so neither the compiler nor ASM is needed at runtime.
+ * Each generated class is only instantiated once and shared between all ids with the same source.</p>
+ *
+ * <pre>{@code
+ * java -cp molang-compiler.jar:asm.jar:asm-tree.jar gg.moonflower.molangcompiler.core.MolangPrecompiler build/molang.jar src/main/molang
+ * }</pre>
+ *
+ * @author Ocelot
+ * @since 3.2.0
+ */
+public final class MolangPrecompiled {
+
+    private final ClassLoader classLoader;
+    private final Map<String, MolangPrecompiledIndex.Entry> ids;
+    private final Map<String, MolangPrecompiledIndex.Entry> sources;
+    private final Map<String, MolangExpression> expressions;
+
+    private MolangPrecompiled(ClassLoader classLoader, Map<String, MolangPrecompiledIndex.Entry> ids, Map<String, MolangPrecompiledIndex.Entry> sources) {
+        this.classLoader = classLoader;
+        this.ids = ids;
+        this.sources = sources;
+        this.expressions = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Reads the index of every precompiled jar visible to the specified class loader.
+     *
+     * @param classLoader The class loader to find indices and load generated classes with
+     * @return The precompiled expressions
+     * @throws IOException If any index is invalid or was precompiled by an incompatible version
+     */
+    public static MolangPrecompiled load(ClassLoader classLoader) throws IOException {
+        Map<String, MolangPrecompiledIndex.Entry> ids = new HashMap<>();
+        Map<String, MolangPrecompiledIndex.Entry> sources = new HashMap<>();
+        Enumeration<URL> resources = classLoader.getResources(MolangPrecompiledIndex.LOCATION);
+        while (resources.hasMoreElements()) {
+            URL resource = resources.nextElement();
+            try (InputStream stream = resource.openStream()) {
+                for (MolangPrecompiledIndex.Entry entry : MolangPrecompiledIndex.read(stream)) {
+                    ids.put(entry.id(), entry);
+                    sources.putIfAbsent(entry.source(), entry);
+                }
+            } catch (IOException e) {
+                throw new IOException("Failed to read precompiled expressions from " + resource, e);
+            }
+        }
+        return new MolangPrecompiled(classLoader, ids, sources);
+    }
+
+    /**
+     * Retrieves the expression with the specified id.
+     *
+     * @param id The id of the expression
+     * @return The expression or <code>null</code> if no expression with that id was precompiled
+     * @throws MolangSyntaxException If the generated class could not be loaded
+     */
+    @Nullable
+    public MolangExpression get(String id) throws MolangSyntaxException {
+        MolangPrecompiledIndex.Entry entry = this.ids.get(id);
+        return entry != null ? this.create(entry) : null;
+    }
+
+    /**
+     * Retrieves the expression precompiled from the specified source. Whitespace differences are ignored.
+     *
+     * @param source The MoLang source
+     * @return The expression or <code>null</code> if the source was not precompiled
+     * @throws MolangSyntaxException If the generated class could not be loaded
+     */
+    @Nullable
+    public MolangExpression getBySource(String source) throws MolangSyntaxException {
+        MolangPrecompiledIndex.Entry entry = this.sources.get(MolangUtil.normalizeSource(source));
+        return entry != null ? this.create(entry) : null;
+    }
+
+    /**
+     * Retrieves the expression precompiled from the specified source or compiles it if it was not precompiled.
+     *
+     * @param source   The MoLang source
+     * @param compiler The compiler to use for sources that were not precompiled
+     * @return The expression
+     * @throws MolangSyntaxException If the generated class could not be loaded or the source could not be compiled
+     */
+    public MolangExpression getOrCompile(String source, MolangCompiler compiler) throws MolangSyntaxException {
+        MolangExpression expression = this.getBySource(source);
+        return expression != null ? expression : compiler.compile(source);
+    }
+
+    /**
+     * @return The ids of all precompiled expressions
+     */
+    public Set<String> getIds() {
+        return Collections.unmodifiableSet(this.ids.keySet());
+    }
+
+    private MolangExpression create(MolangPrecompiledIndex.Entry entry) throws MolangSyntaxException {
+        String className = entry.className();
+        if (className == null) {
+            return MolangExpression.of(entry.value());
+        }
+
+        MolangExpression expression = this.expressions.get(className);
+        if (expression != null) {
+            return expression;
+        }
+
+        try {
+            Class<?> expressionClass = Class.forName(className.replace('/', '.'), true, this.classLoader);
+            expression = (MolangExpression) expressionClass.getConstructor().newInstance();
+        } catch (Throwable t) {
+            throw new MolangSyntaxException("Failed to load precompiled expression '" + entry.source() + "'", t);
+        }
+        MolangExpression existing = this.expressions.putIfAbsent(className, expression);
+        return existing != null ? existing : expression;
+    }
+}
@@ -0,0 +1,152 @@
+package gg.moonflower.molangcompiler.api;
+
+import gg.moonflower.molangcompiler.api.exception.MolangException;
+import gg.moonflower.molangcompiler.api.exception.MolangSyntaxException;
+import gg.moonflower.molangcompiler.core.ast.FunctionNode;
+import gg.moonflower.molangcompiler.core.ast.Node;
+import gg.moonflower.molangcompiler.core.ast.VariableGetNode;
+import gg.moonflower.molangcompiler.core.ast.VariableSetNode;
+import gg.moonflower.molangcompiler.core.compiler.MolangLexer;
+import gg.moonflower.molangcompiler.core.compiler.MolangParser;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * <p>Checks MoLang expressions without compiling them.</p>
+ * <p>Expressions are only lexed and parsed, so no bytecode is generated and no classes are defined.
+ * This makes it suitable for linting large packs or for editor tooling that needs to know what an expression references.</p>
+ *
+ * @author Ocelot
+ * @since 3.2.0
+ */
+public final class MolangValidator {
+
+    private MolangValidator() {
+    }
+
+    /**
+     * Checks whether the specified input is a valid expression.
+     *
+     * @param input The data to check
+     * @throws MolangSyntaxException If the input is not a valid expression
+     */
+    public static void validate(String input) throws MolangSyntaxException {
+        MolangParser.parseTokens(MolangLexer.createTokens(input));
+    }
+
+    /**
+     * Parses the specified input and collects everything it references.
+     *
+     * @param input The data to analyze
+     * @return The result for the input. Syntax errors are reported in the result instead of being thrown
+     */
+    public static Result analyze(String input) {
+        Node node;
+        try {
+            node = MolangParser.parseTokens(MolangLexer.createTokens(input));
+        } catch (MolangSyntaxException e) {
+            return Result.failure(input, e);
+        }
+
+        Set<String> objects = new TreeSet<>();
+        Set<String> variables = new TreeSet<>();
+        Set<String> functions = new TreeSet<>();
+
+        // Walk with an explicit queue since parsed trees can be far deeper than the call stack allows
+        Deque<Node> queue = new ArrayDeque<>();
+        queue.add(node);
+        while (!queue.isEmpty()) {
+            Node next = queue.poll();
+            if (next instanceof VariableGetNode get) {
+                addVariable(objects, variables, get.object(), get.name());
+            } else if (next instanceof VariableSetNode set) {
+                addVariable(objects, variables, set.object(), set.name());
+            } else if (next instanceof FunctionNode function) {
+                objects.add(function.object());
+                functions.add(function.object() + "." + function.function());
+            }
+
+            try {
+                next.transformChildren(child -> {
+                    queue.add(child);
+                    return child;
+                });
+            } catch (MolangException e) {
+                throw new IllegalStateException("Failed to visit " + next, e);
+            }
+        }
+
+        return new Result(input, null, Collections.unmodifiableSet(objects), Collections.unmodifiableSet(variables), Collections.unmodifiableSet(functions));
+    }
+
+    /**
+     * Analyzes all inputs in parallel on the {@linkplain ForkJoinPool#commonPool() common pool}.
+     *
+     * @param inputs The data to analyze
+     * @return A result for each input in iteration order
+     * @see #analyze(String)
+     */
+    public static List<Result> analyzeAll(Collection<String> inputs) {
+        return analyzeAll(inputs, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Analyzes all inputs in parallel on the specified pool.
+     *
+     * @param inputs The data to analyze
+     * @param pool   The pool to lex and parse on
+     * @return A result for each input in iteration order
+     * @see #analyze(String)
+     */
+    public static List<Result> analyzeAll(Collection<String> inputs, ForkJoinPool pool) {
+        List<ForkJoinTask<Result>> tasks = new ArrayList<>(inputs.size());
+        for (String input : inputs) {
+            tasks.add(pool.submit(() -> analyze(input)));
+        }
+
+        List<Result> results = new ArrayList<>(tasks.size());
+        for (ForkJoinTask<Result> task : tasks) {
+            results.add(task.join());
+        }
+        return results;
+    }
+
+    private static void addVariable(Set<String> objects, Set<String> variables, String object, String name) {
+        // Temp variables are local to the expression, so the environment does not have to provide them
+        if (!"temp".equals(object)) {
+            objects.add(object);
+        }
+        variables.add(object + "." + name);
+    }
+
+    /**
+     * The outcome of analyzing a single input. All names use the full object names, so <code>q.anim_time</code> is reported as <code>query.anim_time</code>.
+     *
+     * @param input     The data that was analyzed
+     * @param error     The syntax error in the input or <code>null</code> if it is valid
+     * @param objects   The objects the environment must provide to evaluate the expression
+     * @param variables Every variable that is read or written, including temp variables
+     * @param functions Every function that is called, excluding built-in math functions
+     * @since 3.2.0
+     */
+    public record Result(String input,
+                         @Nullable MolangSyntaxException error,
+                         Set<String> objects,
+                         Set<String> variables,
+                         Set<String> functions) {
+
+        public static Result failure(String input, MolangSyntaxException error) {
+            return new Result(input, error, Collections.emptySet(), Collections.emptySet(), Collections.emptySet());
+        }
+
+        /**
+         * @return Whether the input is a valid expression
+         */
+        public boolean isValid() {
+            return this.error == null;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package gg.moonflower.molangcompiler.core;
+
+import gg.moonflower.molangcompiler.api.MolangCompiler;
+import gg.moonflower.molangcompiler.api.MolangExpression;
+import gg.moonflower.molangcompiler.api.exception.MolangSyntaxException;
+import gg.moonflower.molangcompiler.core.ast.Node;
+import gg.moonflower.molangcompiler.core.ast.ReturnNode;
+import gg.moonflower.molangcompiler.core.compiler.BytecodeCompiler;
+import gg.moonflower.molangcompiler.core.compiler.MolangLexer;
+import gg.moonflower.molangcompiler.core.compiler.MolangParser;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * <p>Compiles successive versions of a single expression.</p>
+ * <p>Only the changed part of the source is lexed again and top level statements that did not change reuse their previous nodes.
+ * Every version is defined as a hidden class, so replaced versions are unloaded once they are no longer referenced.</p>
+ *
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public class MolangCompileSession implements MolangCompiler.Session {
+
+    private final BytecodeCompiler compiler;
+    private final int tierThreshold;
+    private final Executor tierExecutor;
+    private String source;
+    private String compiledSource;
+    private MolangLexer.Token[] tokens;
+    private Map<String, Node> statements;
+    private Node node;
+    private MolangExpression expression;
+
+    public MolangCompileSession(int flags, ClassLoader classLoader, int tierThreshold, @Nullable Executor tierExecutor) {
+        this.compiler = new BytecodeCompiler(flags | MolangCompiler.HIDDEN_CLASSES_FLAG, classLoader);
+        this.tierThreshold = tierThreshold;
+        this.tierExecutor = tierExecutor;
+        this.source = null;
+        this.compiledSource = null;
+        this.tokens = null;
+        this.statements = new HashMap<>();
+        this.node = null;
+        this.expression = null;
+    }
+
+    @Override
+    public MolangExpression update(String input) throws MolangSyntaxException {
+        // The lexed source may have failed to compile, so only the last compiled source can be skipped
+        if (this.expression != null && input.equals(this.compiledSource)) {
+            return this.expression;
+        }
+
+        this.tokens = this.source != null ? this.updateTokens(input) : MolangLexer.createTokens(input);
+        this.source = input;
+
+        Map<String, Node> statements = new HashMap<>();
+        Node node = this.parse(input, statements);
+        if (node == null) {
+            // Statements can't be parsed on their own, so parse everything to report the error correctly
+            node = MolangParser.parseTokens(this.tokens);
+        }
+
+        // Formatting changes don't need a new class
+        if (!node.equals(this.node)) {
+            this.expression = this.tierThreshold > 0 ?
+                    this.compiler.buildTiered(node, this.tierThreshold, this.tierExecutor, null) :
+                    this.compiler.build(node);
+            this.node = node;
+        }
+        this.statements = statements;
+        this.compiledSource = input;
+        return this.expression;
+    }
+
+    private MolangLexer.Token[] updateTokens(String input) throws MolangSyntaxException {
+        String source = this.source;
+        int length = Math.min(source.length(), input.length());
+        int start = 0;
+        while (start < length && source.charAt(start) == input.charAt(start)) {
+            start++;
+        }
+        int end = 0;
+        while (end < length - start && source.charAt(source.length() - 1 - end) == input.charAt(input.length() - 1 - end)) {
+            end++;
+        }
+        return MolangLexer.updateTokens(this.tokens, input, start, source.length() - end, input.length() - end);
+    }
+
+    // Parses each top level statement on its own so unchanged statements can be reused. Returns null if the statements can't be split
+    @Nullable
+    private Node parse(String input, Map<String, Node> statements) {
+        MolangLexer.Token[] tokens = this.tokens;
+        List<Node> nodes = new ArrayList<>();
+        int depth = 0;
+        int start = 0;
+        for (int i = 0; i <= tokens.length; i++) {
+            if (i < tokens.length) {
+                MolangLexer.TokenType type = tokens[i].type();
+                if (type == MolangLexer.TokenType.LEFT_PARENTHESIS || type == MolangLexer.TokenType.LEFT_BRACE) {
+                    depth++;
+                    continue;
+                }
+                if (type == MolangLexer.TokenType.RIGHT_PARENTHESIS || type == MolangLexer.TokenType.RIGHT_BRACE) {
+                    depth--;
+                    continue;
+                }
+                // The else branch of an if statement comes after a semicolon
+                if (depth != 0 || !type.isTerminating() || (i + 1 < tokens.length && tokens[i + 1].type() == MolangLexer.TokenType.ELSE)) {
+                    continue;
+                }
+            }
+
+            if (start == i) {
+                // Only a single trailing semicolon is allowed
+                if (i < tokens.length || nodes.isEmpty()) {
+                    return null;
+                }
+                break;
+            }
+            // Nothing can follow a return statement
+            if (!nodes.isEmpty() && nodes.get(nodes.size() - 1) instanceof ReturnNode) {
+                return null;
+            }
+
+            MolangLexer.Token first = tokens[start];
+            MolangLexer.Token last = tokens[i - 1];
+            // Statements never start or end with an inserted semicolon, so both tokens come from the input
+            String key = input.substring(first.offset(), last.offset() + last.length());
+            Node node = this.statements.get(key);
+            if (node == null) {
+                try {
+                    node = MolangParser.parseStatement(Arrays.copyOfRange(tokens, start, i));
+                } catch (MolangSyntaxException e) {
+                    return null;
+                }
+            }
+            statements.put(key, node);
+            nodes.add(node);
+            start = i + 1;
+        }
+        return depth == 0 && !nodes.isEmpty() ? MolangParser.joinStatements(nodes) : null;
+    }
+
+    @Override
+    @Nullable
+    public MolangExpression getExpression() {
+        return this.expression;
+    }
+}
@@ -5,9 +5,20 @@ import gg.moonflower.molangcompiler.api.MolangExpression;
 import gg.moonflower.molangcompiler.api.exception.MolangSyntaxException;
 import gg.moonflower.molangcompiler.core.ast.Node;
 import gg.moonflower.molangcompiler.core.compiler.BytecodeCompiler;
+import gg.moonflower.molangcompiler.core.compiler.MolangNodeCodec;
 import gg.moonflower.molangcompiler.core.compiler.MolangParser;
 import gg.moonflower.molangcompiler.core.compiler.MolangLexer;
 import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.BiConsumer;
 
 /**
  * @author Ocelot
@@ -15,19 +26,133 @@ import org.jetbrains.annotations.ApiStatus;
 @ApiStatus.Internal
 public class MolangCompilerImpl implements MolangCompiler {
 
+    private final int flags;
+    private final ClassLoader classLoader;
     private final BytecodeCompiler compiler;
+    private final MolangExpressionCache cache;
+    private final int tierThreshold;
+    private final Executor tierExecutor;
+    private final MolangDiskCache diskCache;
 
     public MolangCompilerImpl(int flags) {
-        this.compiler = new BytecodeCompiler(flags);
+        this(flags, ClassLoader.getSystemClassLoader(), null);
     }
 
     public MolangCompilerImpl(int flags, ClassLoader classLoader) {
+        this(flags, classLoader, null);
+    }
+
+    public MolangCompilerImpl(int flags, ClassLoader classLoader, @Nullable MolangExpressionCache cache) {
+        this(flags, classLoader, cache, 0, null, null);
+    }
+
+    public MolangCompilerImpl(int flags, ClassLoader classLoader, @Nullable MolangExpressionCache cache, int tierThreshold, @Nullable Executor tierExecutor, @Nullable Path diskCacheDirectory) {
+        this.flags = flags;
+        this.classLoader = classLoader;
         this.compiler = new BytecodeCompiler(flags, classLoader);
+        this.cache = cache;
+        this.tierThreshold = tierThreshold;
+        this.tierExecutor = tierExecutor;
+        this.diskCache = diskCacheDirectory != null ? new MolangDiskCache(diskCacheDirectory, flags) : null;
     }
 
     public MolangExpression compile(String input) throws MolangSyntaxException {
+        if (this.cache != null) {
+            return this.cache.get(input, MolangCompilerImpl::parse, node -> this.load(input, node));
+        }
+        return this.load(input, null);
+    }
+
+    private static Node parse(String input) throws MolangSyntaxException {
         MolangLexer.Token[] tokens = MolangLexer.createTokens(input);
-        Node node = MolangParser.parseTokens(tokens);
-        return this.compiler.build(node);
+        return MolangParser.parseTokens(tokens);
+    }
+
+    // The disk is only checked once the expression isn't in memory. Stored expressions don't need to be parsed
+    private MolangExpression load(String input, @Nullable Node node) throws MolangSyntaxException {
+        if (this.diskCache != null) {
+            MolangExpression stored = this.diskCache.load(input, this.compiler);
+            if (stored != null) {
+                return stored;
+            }
+        }
+        return this.build(input, node != null ? node : parse(input));
+    }
+
+    private MolangExpression build(@Nullable String input, Node node) throws MolangSyntaxException {
+        BiConsumer<String, byte[]> listener = this.diskCache != null && input != null ? (name, data) -> this.diskCache.storeClass(input, name, data) : null;
+        MolangExpression expression = this.tierThreshold > 0 ?
+                this.compiler.buildTiered(node, this.tierThreshold, this.tierExecutor, listener) :
+                this.compiler.build(node, listener);
+        if (this.diskCache != null && input != null && expression.isConstant()) {
+            this.diskCache.storeConstant(input, expression.getConstant());
+        }
+        return expression;
+    }
+
+    @Override
+    public List<CompileResult> compileAll(Collection<String> inputs) {
+        return this.compileAll(inputs, ForkJoinPool.commonPool());
+    }
+
+    @Override
+    public List<CompileResult> compileAll(Collection<String> inputs, ForkJoinPool pool) {
+        List<ForkJoinTask<CompileResult>> tasks = new ArrayList<>(inputs.size());
+        for (String input : inputs) {
+            tasks.add(pool.submit(() -> {
+                try {
+                    return CompileResult.success(input, this.compile(input));
+                } catch (MolangSyntaxException e) {
+                    return CompileResult.failure(input, e);
+                }
+            }));
+        }
+
+        List<CompileResult> results = new ArrayList<>(tasks.size());
+        for (ForkJoinTask<CompileResult> task : tasks) {
+            results.add(task.join());
+        }
+        return results;
+    }
+
+    @Override
+    public List<MolangExpression> compileModule(List<String> inputs) throws MolangSyntaxException {
+        List<Node> nodes = new ArrayList<>(inputs.size());
+        for (String input : inputs) {
+            MolangLexer.Token[] tokens = MolangLexer.createTokens(input);
+            nodes.add(MolangParser.parseTokens(tokens));
+        }
+        return this.compiler.buildModule(nodes);
+    }
+
+    @Override
+    public byte[] serialize(List<String> inputs) throws MolangSyntaxException {
+        List<Node> nodes = new ArrayList<>(inputs.size());
+        for (String input : inputs) {
+            MolangLexer.Token[] tokens = MolangLexer.createTokens(input);
+            nodes.add(MolangParser.parseTokens(tokens));
+        }
+        return MolangNodeCodec.encode(nodes);
+    }
+
+    @Override
+    public List<MolangExpression> compileSerialized(byte[] data) throws MolangSyntaxException {
+        List<Node> nodes = MolangNodeCodec.decode(data);
+        List<MolangExpression> expressions = new ArrayList<>(nodes.size());
+        for (Node node : nodes) {
+            // There is no source to store on disk, but the structure can still be cached
+            expressions.add(this.cache != null ? this.cache.get(node, n -> this.build(null, n)) : this.build(null, node));
+        }
+        return expressions;
+    }
+
+    @Override
+    public Session createSession() {
+        return new MolangCompileSession(this.flags, this.classLoader, this.tierThreshold, this.tierExecutor);
+    }
+
+    @Override
+    public CacheStats getCacheStats() {
+        return this.cache != null ? this.cache.getStats() : CacheStats.EMPTY;
     }
 }
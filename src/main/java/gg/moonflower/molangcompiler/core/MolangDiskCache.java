@@ -0,0 +1,223 @@
+package gg.moonflower.molangcompiler.core;
+
+import gg.moonflower.molangcompiler.api.MolangExpression;
+import gg.moonflower.molangcompiler.api.exception.MolangSyntaxException;
+import gg.moonflower.molangcompiler.core.compiler.BytecodeCompiler;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
+import ru.timeconqueror.molang.custom.QueryDomain;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * <p>Stores generated expression classes in a directory so they can be loaded without compiling them again.</p>
+ * <p>Entries are keyed by a hash of the normalized source, {@link BytecodeCompiler#CODEGEN_VERSION}, the compiler flags,
+ * and the registered {@link QueryDomain query domains}, since those change which object a query is read from.
+ * Each entry is written to a temporary file and atomically moved into place, and is checked against a CRC32 checksum when read.
+ * Entries that fail any check are deleted and compiled again.</p>
+ *
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public final class MolangDiskCache {
+
+    private static final int MAGIC = 0x4D4F4C47; // MOLG
+    private static final int FORMAT_VERSION = 2;
+    private static final byte CONSTANT = 0;
+    private static final byte CLASS = 1;
+    private static final String EXTENSION = ".molangc";
+
+    private final Path directory;
+    private final int flags;
+
+    public MolangDiskCache(Path directory, int flags) {
+        this.directory = directory;
+        this.flags = flags;
+    }
+
+    /**
+     * Loads the stored expression for the specified input.
+     *
+     * @param input    The MoLang source
+     * @param compiler The compiler to define stored classes with
+     * @return The stored expression or <code>null</code> if there is no valid entry
+     */
+    @Nullable
+    public MolangExpression load(String input, BytecodeCompiler compiler) {
+        String source = MolangUtil.normalizeSource(input);
+        String domains = getDomains();
+        Path path = this.getPath(source, domains);
+
+        byte[] data;
+        try {
+            data = Files.readAllBytes(path);
+        } catch (IOException e) {
+            return null;
+        }
+
+        try {
+            if (data.length < Long.BYTES) {
+                throw new IOException("Truncated entry");
+            }
+
+            CRC32 crc = new CRC32();
+            crc.update(data, 0, data.length - Long.BYTES);
+            DataInputStream stream = new DataInputStream(new ByteArrayInputStream(data));
+            stream.skipNBytes(data.length - Long.BYTES);
+            if (stream.readLong() != crc.getValue()) {
+                throw new IOException("Checksum mismatch");
+            }
+
+            stream = new DataInputStream(new ByteArrayInputStream(data, 0, data.length - Long.BYTES));
+            if (stream.readInt() != MAGIC || stream.readInt() != FORMAT_VERSION || stream.readInt() != BytecodeCompiler.CODEGEN_VERSION || stream.readInt() != this.flags) {
+                throw new IOException("Incompatible entry");
+            }
+            if (!source.equals(readString(stream)) || !domains.equals(readString(stream))) {
+                throw new IOException("Source mismatch");
+            }
+
+            byte type = stream.readByte();
+            if (type == CONSTANT) {
+                return MolangExpression.of(stream.readFloat());
+            }
+            if (type != CLASS) {
+                throw new IOException("Unknown entry type: " + type);
+            }
+
+            String name = stream.readUTF();
+            byte[] classData = new byte[stream.readInt()];
+            stream.readFully(classData);
+            return compiler.define(name, classData);
+        } catch (IOException | MolangSyntaxException e) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException ignored) {
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Stores a constant value for the specified input.
+     *
+     * @param input The MoLang source
+     * @param value The value of the expression
+     */
+    public void storeConstant(String input, float value) {
+        String source = MolangUtil.normalizeSource(input);
+        this.write(source, stream -> {
+            stream.writeByte(CONSTANT);
+            stream.writeFloat(value);
+        });
+    }
+
+    /**
+     * Stores a generated class for the specified input.
+     *
+     * @param input The MoLang source
+     * @param name  The internal name of the class
+     * @param data  The class file data
+     */
+    public void storeClass(String input, String name, byte[] data) {
+        String source = MolangUtil.normalizeSource(input);
+        this.write(source, stream -> {
+            stream.writeByte(CLASS);
+            stream.writeUTF(name);
+            stream.writeInt(data.length);
+            stream.write(data);
+        });
+    }
+
+    private void write(String source, EntryWriter writer) {
+        String domains = getDomains();
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream stream = new DataOutputStream(bytes);
+            stream.writeInt(MAGIC);
+            stream.writeInt(FORMAT_VERSION);
+            stream.writeInt(BytecodeCompiler.CODEGEN_VERSION);
+            stream.writeInt(this.flags);
+            writeString(stream, source);
+            writeString(stream, domains);
+            writer.write(stream);
+
+            CRC32 crc = new CRC32();
+            crc.update(bytes.toByteArray());
+            stream.writeLong(crc.getValue());
+
+            Files.createDirectories(this.directory);
+            Path path = this.getPath(source, domains);
+            Path temp = Files.createTempFile(this.directory, path.getFileName().toString(), ".tmp");
+            try {
+                Files.write(temp, bytes.toByteArray());
+                try {
+                    Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException ignored) {
+            // The cache is only an optimization, so the expression is simply compiled again next time
+        }
+    }
+
+    private Path getPath(String source, String domains) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(source.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(Integer.toString(BytecodeCompiler.CODEGEN_VERSION).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(Integer.toString(this.flags).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(domains.getBytes(StandardCharsets.UTF_8));
+            return this.directory.resolve(HexFormat.of().formatHex(digest.digest()) + EXTENSION);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+    }
+
+    private static String getDomains() {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, String> entry : new TreeMap<>(QueryDomain.DOMAINS).entrySet()) {
+            builder.append(entry.getKey()).append('=').append(entry.getValue()).append(';');
+        }
+        return builder.toString();
+    }
+
+    // Sources can be longer than writeUTF allows
+    private static void writeString(DataOutputStream stream, String value) throws IOException {
+        byte[] data = value.getBytes(StandardCharsets.UTF_8);
+        stream.writeInt(data.length);
+        stream.write(data);
+    }
+
+    private static String readString(DataInputStream stream) throws IOException {
+        int length = stream.readInt();
+        if (length < 0 || length > stream.available()) {
+            throw new IOException("Invalid string length: " + length);
+        }
+        byte[] data = new byte[length];
+        stream.readFully(data);
+        return new String(data, StandardCharsets.UTF_8);
+    }
+
+    @FunctionalInterface
+    private interface EntryWriter {
+
+        void write(DataOutputStream stream) throws IOException;
+    }
+}
@@ -0,0 +1,322 @@
+package gg.moonflower.molangcompiler.core;
+
+import gg.moonflower.molangcompiler.api.MolangCompiler;
+import gg.moonflower.molangcompiler.api.MolangExpression;
+import gg.moonflower.molangcompiler.api.exception.MolangSyntaxException;
+import gg.moonflower.molangcompiler.core.ast.Node;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Caches compiled expressions by their parsed node tree.</p>
+ * <p>The parser already strips whitespace and redundant parentheses and nodes resolve object aliases,
+ * so structurally equal trees are used directly as the key. Concurrent requests for the same tree wait for a single build.</p>
+ * <p>The tree of each {@linkplain MolangUtil#normalizeSource(String) normalized source} is remembered as well,
+ * so compiling the same source again doesn't need to parse it.</p>
+ *
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public abstract class MolangExpressionCache {
+
+    private final Map<Node, CompletableFuture<MolangExpression>> pending;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    protected final LongAdder evictions;
+
+    protected MolangExpressionCache() {
+        this.pending = new ConcurrentHashMap<>();
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.evictions = new LongAdder();
+    }
+
+    /**
+     * Creates a cache that keeps at most the specified number of expressions, evicting the least recently used.
+     *
+     * @param maximumSize The maximum number of expressions to keep
+     * @return A new cache
+     */
+    public static MolangExpressionCache bounded(int maximumSize) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("Maximum size must be positive");
+        }
+        return new Bounded(maximumSize);
+    }
+
+    /**
+     * Creates a cache that keeps expressions as long as they are referenced somewhere else.
+     *
+     * @return A new cache
+     */
+    public static MolangExpressionCache weak() {
+        return new Weak();
+    }
+
+    /**
+     * Retrieves the expression for the specified source, only parsing it if the source has not been seen before.
+     *
+     * @param source  The source of the expression
+     * @param parser  The parser to create the node with if the source has not been seen before
+     * @param factory The factory to compile the expression with on a miss
+     * @return The cached or newly compiled expression
+     * @throws MolangSyntaxException If the expression could not be parsed or compiled
+     */
+    public MolangExpression get(String source, Parser parser, Factory factory) throws MolangSyntaxException {
+        String key = MolangUtil.normalizeSource(source);
+        Node node = this.lookupSource(key);
+        if (node == null) {
+            node = parser.parse(source);
+        }
+        MolangExpression expression = this.get(node, factory);
+        this.storeSource(key, node);
+        return expression;
+    }
+
+    /**
+     * Retrieves the expression for the specified node, compiling it if it is not already present.
+     *
+     * @param node    The parsed expression to look up
+     * @param factory The factory to compile the expression with on a miss
+     * @return The cached or newly compiled expression
+     * @throws MolangSyntaxException If the expression could not be compiled
+     */
+    public MolangExpression get(Node node, Factory factory) throws MolangSyntaxException {
+        MolangExpression expression = this.lookup(node);
+        if (expression != null) {
+            this.hits.increment();
+            return expression;
+        }
+
+        CompletableFuture<MolangExpression> future = new CompletableFuture<>();
+        CompletableFuture<MolangExpression> existing = this.pending.putIfAbsent(node, future);
+        if (existing != null) {
+            this.hits.increment();
+            return await(existing);
+        }
+
+        try {
+            // Another thread may have finished the same expression between the lookup and claiming the key
+            expression = this.lookup(node);
+            if (expression != null) {
+                this.hits.increment();
+            } else {
+                this.misses.increment();
+                expression = factory.create(node);
+                this.store(node, expression);
+            }
+            future.complete(expression);
+            return expression;
+        } catch (Throwable t) {
+            future.completeExceptionally(t);
+            throw t;
+        } finally {
+            this.pending.remove(node, future);
+        }
+    }
+
+    /**
+     * @return A snapshot of the current cache counters
+     */
+    public MolangCompiler.CacheStats getStats() {
+        return new MolangCompiler.CacheStats(this.hits.sum(), this.misses.sum(), this.evictions.sum(), this.size());
+    }
+
+    /**
+     * Removes all stored expressions. This does not count towards evictions.
+     */
+    public abstract void clear();
+
+    @Nullable
+    protected abstract MolangExpression lookup(Node node);
+
+    protected abstract void store(Node node, MolangExpression expression);
+
+    @Nullable
+    protected abstract Node lookupSource(String source);
+
+    protected abstract void storeSource(String source, Node node);
+
+    protected abstract int size();
+
+    private static MolangExpression await(CompletableFuture<MolangExpression> future) throws MolangSyntaxException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof MolangSyntaxException syntaxException) {
+                throw syntaxException;
+            }
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Parses a source that has not been seen before.
+     */
+    @FunctionalInterface
+    public interface Parser {
+
+        Node parse(String source) throws MolangSyntaxException;
+    }
+
+    /**
+     * Compiles an expression from a node on a cache miss.
+     */
+    @FunctionalInterface
+    public interface Factory {
+
+        MolangExpression create(Node node) throws MolangSyntaxException;
+    }
+
+    private static class Bounded extends MolangExpressionCache {
+
+        private final Map<Node, MolangExpression> entries;
+        private final Map<String, Node> sources;
+
+        private Bounded(int maximumSize) {
+            this.entries = new LinkedHashMap<>(16, 0.75F, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Node, MolangExpression> eldest) {
+                    if (this.size() > maximumSize) {
+                        Bounded.this.evictions.increment();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+            // Many sources can have the same node, so these are evicted separately
+            this.sources = new LinkedHashMap<>(16, 0.75F, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Node> eldest) {
+                    return this.size() > maximumSize;
+                }
+            };
+        }
+
+        @Override
+        protected synchronized MolangExpression lookup(Node node) {
+            return this.entries.get(node);
+        }
+
+        @Override
+        protected synchronized void store(Node node, MolangExpression expression) {
+            this.entries.put(node, expression);
+        }
+
+        @Override
+        protected synchronized Node lookupSource(String source) {
+            return this.sources.get(source);
+        }
+
+        @Override
+        protected synchronized void storeSource(String source, Node node) {
+            this.sources.put(source, node);
+        }
+
+        @Override
+        protected synchronized int size() {
+            return this.entries.size();
+        }
+
+        @Override
+        public synchronized void clear() {
+            this.entries.clear();
+            this.sources.clear();
+        }
+    }
+
+    private static class Weak extends MolangExpressionCache {
+
+        private final Map<Node, Entry> entries;
+        private final Map<String, Node> sources;
+        private final ReferenceQueue<MolangExpression> queue;
+
+        private Weak() {
+            this.entries = new ConcurrentHashMap<>();
+            this.sources = new ConcurrentHashMap<>();
+            this.queue = new ReferenceQueue<>();
+        }
+
+        private void expunge() {
+            Reference<? extends MolangExpression> reference;
+            while ((reference = this.queue.poll()) != null) {
+                Entry entry = (Entry) reference;
+                if (this.entries.remove(entry.node, entry)) {
+                    this.evictions.increment();
+                }
+                // Sources are only kept as long as their expression
+                for (String source : entry.sources) {
+                    this.sources.remove(source, entry.node);
+                }
+            }
+        }
+
+        @Override
+        protected MolangExpression lookup(Node node) {
+            this.expunge();
+            Entry entry = this.entries.get(node);
+            return entry != null ? entry.get() : null;
+        }
+
+        @Override
+        protected void store(Node node, MolangExpression expression) {
+            this.expunge();
+            this.entries.put(node, new Entry(node, expression, this.queue));
+        }
+
+        @Override
+        protected Node lookupSource(String source) {
+            return this.sources.get(source);
+        }
+
+        @Override
+        protected void storeSource(String source, Node node) {
+            Entry entry = this.entries.get(node);
+            if (entry != null && entry.get() != null && entry.sources.add(source)) {
+                this.sources.put(source, node);
+            }
+        }
+
+        @Override
+        protected int size() {
+            this.expunge();
+            return this.entries.size();
+        }
+
+        @Override
+        public void clear() {
+            this.entries.clear();
+            this.sources.clear();
+        }
+
+        private static class Entry extends WeakReference<MolangExpression> {
+
+            private final Node node;
+            private final Set<String> sources;
+
+            private Entry(Node node, MolangExpression referent, ReferenceQueue<? super MolangExpression> queue) {
+                super(referent, queue);
+                this.node = node;
+                this.sources = ConcurrentHashMap.newKeySet();
+            }
+        }
+    }
+}
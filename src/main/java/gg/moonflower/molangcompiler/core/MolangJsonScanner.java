@@ -0,0 +1,231 @@
+package gg.moonflower.molangcompiler.core;
+
+import org.jetbrains.annotations.ApiStatus;
+
+import java.io.IOException;
+import java.util.regex.Pattern;
+
+/**
+ * <p>Finds MoLang expressions in JSON documents such as resource pack entity and animation files.</p>
+ * <p>Only string values are reported. Keys, numbers, and literals are skipped without building a tree of the document.</p>
+ *
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public final class MolangJsonScanner {
+
+    // Strings that reference one of the built-in objects are almost certainly expressions, everything else is a name or path
+    private static final Pattern MOLANG = Pattern.compile("(?i)(?<![\\w.])(q|query|v|variable|t|temp|c|context|math)\\.[a-z_]");
+
+    private final CharSequence json;
+    private final Visitor visitor;
+    private int cursor;
+
+    private MolangJsonScanner(CharSequence json, Visitor visitor) {
+        this.json = json;
+        this.visitor = visitor;
+        this.cursor = 0;
+    }
+
+    /**
+     * Reports every string value in the specified document.
+     *
+     * @param json    The JSON document
+     * @param visitor The visitor to report values to
+     * @throws IOException If the document is not valid JSON
+     */
+    public static void scan(CharSequence json, Visitor visitor) throws IOException {
+        MolangJsonScanner scanner = new MolangJsonScanner(json, visitor);
+        scanner.skipWhitespace();
+        scanner.readValue(new StringBuilder());
+        scanner.skipWhitespace();
+        if (scanner.cursor < json.length()) {
+            throw scanner.error("Unexpected trailing data");
+        }
+    }
+
+    /**
+     * Checks whether the specified string looks like a MoLang expression instead of a name, path, or version.
+     *
+     * @param value The string value to check
+     * @return Whether the value should be compiled
+     */
+    public static boolean isMolang(String value) {
+        return MOLANG.matcher(value).find();
+    }
+
+    private void readValue(StringBuilder pointer) throws IOException {
+        if (this.cursor >= this.json.length()) {
+            throw this.error("Unexpected end of document");
+        }
+
+        char c = this.json.charAt(this.cursor);
+        switch (c) {
+            case '{' -> this.readObject(pointer);
+            case '[' -> this.readArray(pointer);
+            case '"' -> {
+                int start = this.cursor;
+                String value = this.readString();
+                this.visitor.visit(pointer.toString(), value, start);
+            }
+            default -> this.skipLiteral();
+        }
+    }
+
+    private void readObject(StringBuilder pointer) throws IOException {
+        this.cursor++;
+        this.skipWhitespace();
+        if (this.peek() == '}') {
+            this.cursor++;
+            return;
+        }
+
+        int length = pointer.length();
+        while (true) {
+            this.skipWhitespace();
+            if (this.peek() != '"') {
+                throw this.error("Expected key");
+            }
+            String key = this.readString();
+            this.skipWhitespace();
+            this.expect(':');
+            this.skipWhitespace();
+
+            pointer.append('/').append(key.replace("~", "~0").replace("/", "~1"));
+            this.readValue(pointer);
+            pointer.setLength(length);
+
+            this.skipWhitespace();
+            char c = this.next();
+            if (c == '}') {
+                return;
+            }
+            if (c != ',') {
+                throw this.error("Expected ',' or '}'");
+            }
+        }
+    }
+
+    private void readArray(StringBuilder pointer) throws IOException {
+        this.cursor++;
+        this.skipWhitespace();
+        if (this.peek() == ']') {
+            this.cursor++;
+            return;
+        }
+
+        int length = pointer.length();
+        for (int i = 0; ; i++) {
+            this.skipWhitespace();
+            pointer.append('/').append(i);
+            this.readValue(pointer);
+            pointer.setLength(length);
+
+            this.skipWhitespace();
+            char c = this.next();
+            if (c == ']') {
+                return;
+            }
+            if (c != ',') {
+                throw this.error("Expected ',' or ']'");
+            }
+        }
+    }
+
+    private String readString() throws IOException {
+        this.expect('"');
+        StringBuilder builder = new StringBuilder();
+        while (true) {
+            char c = this.next();
+            if (c == '"') {
+                return builder.toString();
+            }
+            if (c != '\\') {
+                builder.append(c);
+                continue;
+            }
+
+            char escaped = this.next();
+            switch (escaped) {
+                case 'b' -> builder.append('\b');
+                case 'f' -> builder.append('\f');
+                case 'n' -> builder.append('\n');
+                case 'r' -> builder.append('\r');
+                case 't' -> builder.append('\t');
+                case 'u' -> {
+                    if (this.cursor + 4 > this.json.length()) {
+                        throw this.error("Invalid unicode escape");
+                    }
+                    try {
+                        builder.append((char) Integer.parseInt(this.json, this.cursor, this.cursor + 4, 16));
+                    } catch (NumberFormatException e) {
+                        throw this.error("Invalid unicode escape");
+                    }
+                    this.cursor += 4;
+                }
+                default -> builder.append(escaped);
+            }
+        }
+    }
+
+    private void skipLiteral() throws IOException {
+        int start = this.cursor;
+        while (this.cursor < this.json.length()) {
+            char c = this.json.charAt(this.cursor);
+            if (c == ',' || c == '}' || c == ']' || Character.isWhitespace(c)) {
+                break;
+            }
+            this.cursor++;
+        }
+        if (start == this.cursor) {
+            throw this.error("Expected value");
+        }
+    }
+
+    private void skipWhitespace() {
+        while (this.cursor < this.json.length() && Character.isWhitespace(this.json.charAt(this.cursor))) {
+            this.cursor++;
+        }
+    }
+
+    private char peek() throws IOException {
+        if (this.cursor >= this.json.length()) {
+            throw this.error("Unexpected end of document");
+        }
+        return this.json.charAt(this.cursor);
+    }
+
+    private char next() throws IOException {
+        char c = this.peek();
+        this.cursor++;
+        return c;
+    }
+
+    private void expect(char expected) throws IOException {
+        if (this.next() != expected) {
+            this.cursor--;
+            throw this.error("Expected '" + expected + "'");
+        }
+    }
+
+    private IOException error(String message) {
+        return new IOException(message + " at position " + this.cursor);
+    }
+
+    /**
+     * Receives string values found in a document.
+     */
+    @FunctionalInterface
+    public interface Visitor {
+
+        /**
+         * Called for every string value in a document.
+         *
+         * @param pointer  The JSON pointer of the value, e.g. <code>/animations/walk/loop</code>
+         * @param value    The unescaped string value
+         * @param position The position of the opening quote in the document
+         * @throws IOException If the value could not be processed
+         */
+        void visit(String pointer, String value, int position) throws IOException;
+    }
+}
@@ -0,0 +1,128 @@
+package gg.moonflower.molangcompiler.core;
+
+import gg.moonflower.molangcompiler.core.compiler.BytecodeCompiler;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>Reads and writes the index of expressions generated ahead of time by {@link MolangPrecompiler}.</p>
+ * <p>This class must never load the bytecode compiler, so looking up precompiled expressions works without ASM on the classpath.
+ * {@link BytecodeCompiler#CODEGEN_VERSION} is a compile-time constant, so reading it does not load the class.</p>
+ *
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public final class MolangPrecompiledIndex {
+
+    /**
+     * The location of the index in a precompiled jar.
+     */
+    public static final String LOCATION = "META-INF/molang/precompiled.bin";
+
+    private static final int MAGIC = 0x4D4F4C49; // MOLI
+    private static final int FORMAT_VERSION = 1;
+    private static final byte CONSTANT = 0;
+    private static final byte CLASS = 1;
+
+    private MolangPrecompiledIndex() {
+    }
+
+    /**
+     * Writes the specified entries.
+     *
+     * @param stream  The stream to write to
+     * @param flags   The flags the expressions were compiled with
+     * @param entries The entries to write
+     * @throws IOException If an error occurs writing the index
+     */
+    public static void write(OutputStream stream, int flags, List<Entry> entries) throws IOException {
+        DataOutputStream output = new DataOutputStream(stream);
+        output.writeInt(MAGIC);
+        output.writeInt(FORMAT_VERSION);
+        output.writeInt(BytecodeCompiler.CODEGEN_VERSION);
+        output.writeInt(flags);
+        output.writeInt(entries.size());
+        for (Entry entry : entries) {
+            output.writeUTF(entry.id());
+            writeString(output, entry.source());
+            if (entry.className() != null) {
+                output.writeByte(CLASS);
+                output.writeUTF(entry.className());
+            } else {
+                output.writeByte(CONSTANT);
+                output.writeFloat(entry.value());
+            }
+        }
+        output.flush();
+    }
+
+    /**
+     * Reads all entries of an index.
+     *
+     * @param stream The stream to read from
+     * @return The entries in the index
+     * @throws IOException If the index is invalid or was generated by an incompatible version
+     */
+    public static List<Entry> read(InputStream stream) throws IOException {
+        DataInputStream input = new DataInputStream(stream);
+        if (input.readInt() != MAGIC) {
+            throw new IOException("Not a precompiled MoLang index");
+        }
+        int formatVersion = input.readInt();
+        if (formatVersion != FORMAT_VERSION) {
+            throw new IOException("Unsupported index version: " + formatVersion);
+        }
+        int codegenVersion = input.readInt();
+        if (codegenVersion != BytecodeCompiler.CODEGEN_VERSION) {
+            throw new IOException("Expressions were precompiled by an incompatible compiler version. Expected code generator " + BytecodeCompiler.CODEGEN_VERSION + ", got " + codegenVersion);
+        }
+        input.readInt(); // Flags are only informative
+
+        int count = input.readInt();
+        if (count < 0) {
+            throw new IOException("Invalid entry count: " + count);
+        }
+        List<Entry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String id = input.readUTF();
+            String source = readString(input);
+            byte type = input.readByte();
+            switch (type) {
+                case CONSTANT -> entries.add(new Entry(id, source, null, input.readFloat()));
+                case CLASS -> entries.add(new Entry(id, source, input.readUTF(), 0));
+                default -> throw new IOException("Unknown entry type: " + type);
+            }
+        }
+        return entries;
+    }
+
+    private static void writeString(DataOutputStream stream, String value) throws IOException {
+        byte[] data = value.getBytes(StandardCharsets.UTF_8);
+        stream.writeInt(data.length);
+        stream.write(data);
+    }
+
+    private static String readString(DataInputStream stream) throws IOException {
+        int length = stream.readInt();
+        if (length < 0) {
+            throw new IOException("Invalid string length: " + length);
+        }
+        return new String(stream.readNBytes(length), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A single precompiled expression.
+     *
+     * @param id        The unique id of the expression
+     * @param source    The normalized source of the expression
+     * @param className The internal name of the generated class or <code>null</code> if the expression is constant
+     * @param value     The value of the expression if it is constant
+     */
+    public record Entry(String id, String source, @Nullable String className, float value) {
+    }
+}
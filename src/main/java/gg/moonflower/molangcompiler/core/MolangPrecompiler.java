@@ -0,0 +1,229 @@
+package gg.moonflower.molangcompiler.core;
+
+import gg.moonflower.molangcompiler.api.MolangCompiler;
+import gg.moonflower.molangcompiler.api.MolangExpression;
+import gg.moonflower.molangcompiler.api.exception.MolangSyntaxException;
+import gg.moonflower.molangcompiler.core.ast.Node;
+import gg.moonflower.molangcompiler.core.compiler.BytecodeCompiler;
+import gg.moonflower.molangcompiler.core.compiler.MolangLexer;
+import gg.moonflower.molangcompiler.core.compiler.MolangParser;
+import org.jetbrains.annotations.ApiStatus;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Stream;
+
+/**
+ * <p>Compiles MoLang sources at build time and packages the generated classes with an index into a jar.</p>
+ * <p>The jar is read at runtime with {@link gg.moonflower.molangcompiler.api.MolangPrecompiled}, which does not need ASM.
+ * <code>.molang</code> files contain a single expression and are identified by their path without the extension.
+ * Every string value in <code>.json</code> files that looks like an expression is identified by its path and JSON pointer,
+ * e.g. <code>animations/player.json#/animations/walk/loop</code>.</p>
+ *
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public final class MolangPrecompiler {
+
+    private final BytecodeCompiler compiler;
+    private final int flags;
+    private final Map<String, String> sources;
+
+    public MolangPrecompiler(int flags) {
+        if ((flags & (MolangCompiler.HIDDEN_CLASSES_FLAG | MolangCompiler.SHARED_CONSTANTS_FLAG)) != 0) {
+            throw new IllegalArgumentException("Hidden and shared constant classes cannot be precompiled");
+        }
+        this.compiler = new BytecodeCompiler(flags);
+        this.flags = flags;
+        this.sources = new LinkedHashMap<>();
+    }
+
+    /**
+     * Adds a single expression.
+     *
+     * @param id     The id to look the expression up by
+     * @param source The MoLang source
+     */
+    public void add(String id, String source) {
+        this.sources.put(id, source);
+    }
+
+    /**
+     * Adds the expressions in the specified file, or in all files in the specified directory.
+     *
+     * @param path The file or directory to add
+     * @throws IOException If any file could not be read or a JSON file is invalid
+     */
+    public void addPath(Path path) throws IOException {
+        readPath(path, this::add);
+    }
+
+    /**
+     * Reads the expressions in the specified file, or in all files in the specified directory, with the same ids the precompiler uses.
+     *
+     * @param path     The file or directory to read
+     * @param consumer The consumer for the id and source of each expression
+     * @throws IOException If any file could not be read or a JSON file is invalid
+     */
+    public static void readPath(Path path, BiConsumer<String, String> consumer) throws IOException {
+        if (!Files.isDirectory(path)) {
+            readFile(path.getFileName().toString(), path, consumer);
+            return;
+        }
+
+        List<Path> files;
+        try (Stream<Path> stream = Files.walk(path)) {
+            files = stream.filter(Files::isRegularFile).sorted().toList();
+        }
+        for (Path file : files) {
+            readFile(path.relativize(file).toString().replace('\\', '/'), file, consumer);
+        }
+    }
+
+    /**
+     * Reads the expressions in a single file. <code>.molang</code> files are one expression and <code>.json</code> files are scanned for string values that look like expressions.
+     * Other files are ignored.
+     *
+     * @param name     The name of the file used for ids
+     * @param file     The file to read
+     * @param consumer The consumer for the id and source of each expression
+     * @throws IOException If the file could not be read or a JSON file is invalid
+     */
+    public static void readFile(String name, Path file, BiConsumer<String, String> consumer) throws IOException {
+        if (name.endsWith(".molang")) {
+            consumer.accept(name.substring(0, name.length() - ".molang".length()), mapFile(file).toString());
+        } else if (name.endsWith(".json")) {
+            try {
+                MolangJsonScanner.scan(mapFile(file), (pointer, value, position) -> {
+                    if (MolangJsonScanner.isMolang(value)) {
+                        consumer.accept(name + "#" + pointer, value);
+                    }
+                });
+            } catch (IOException e) {
+                throw new IOException("Failed to read " + file, e);
+            }
+        }
+    }
+
+    // Maps the file instead of reading it into an array first, so only the decoded characters are allocated
+    private static CharBuffer mapFile(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size == 0) {
+                return CharBuffer.allocate(0);
+            }
+            return StandardCharsets.UTF_8.newDecoder().decode(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    /**
+     * Compiles all added expressions and writes them to a jar.
+     * Expressions that fail to compile are left out of the jar and returned.
+     *
+     * @param jar The jar file to write
+     * @return The errors of all expressions that failed to compile by their id
+     * @throws IOException If the jar could not be written
+     */
+    public Map<String, MolangSyntaxException> write(Path jar) throws IOException {
+        Map<String, MolangPrecompiledIndex.Entry> compiled = new HashMap<>();
+        Map<String, byte[]> classes = new LinkedHashMap<>();
+        List<MolangPrecompiledIndex.Entry> entries = new ArrayList<>(this.sources.size());
+        Map<String, MolangSyntaxException> failures = new LinkedHashMap<>();
+
+        for (Map.Entry<String, String> source : this.sources.entrySet()) {
+            String normalized = MolangUtil.normalizeSource(source.getValue());
+            MolangPrecompiledIndex.Entry entry = compiled.get(normalized);
+            if (entry == null) {
+                try {
+                    entry = this.compile(normalized, classes);
+                } catch (MolangSyntaxException e) {
+                    failures.put(source.getKey(), e);
+                    continue;
+                }
+                compiled.put(normalized, entry);
+            }
+            entries.add(new MolangPrecompiledIndex.Entry(source.getKey(), normalized, entry.className(), entry.value()));
+        }
+
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        Path parent = jar.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        try (OutputStream stream = Files.newOutputStream(jar); JarOutputStream output = new JarOutputStream(stream, manifest)) {
+            for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+                output.putNextEntry(new JarEntry(entry.getKey() + ".class"));
+                output.write(entry.getValue());
+                output.closeEntry();
+            }
+            output.putNextEntry(new JarEntry(MolangPrecompiledIndex.LOCATION));
+            MolangPrecompiledIndex.write(output, this.flags, entries);
+            output.closeEntry();
+        }
+        return failures;
+    }
+
+    private MolangPrecompiledIndex.Entry compile(String source, Map<String, byte[]> classes) throws MolangSyntaxException {
+        MolangLexer.Token[] tokens = MolangLexer.createTokens(source);
+        Node node = MolangParser.parseTokens(tokens);
+
+        String[] className = new String[1];
+        MolangExpression expression = this.compiler.build(node, (name, data) -> {
+            className[0] = name;
+            classes.put(name, data);
+        });
+        if (className[0] != null) {
+            return new MolangPrecompiledIndex.Entry(source, source, className[0], 0);
+        }
+        if (expression.isConstant()) {
+            return new MolangPrecompiledIndex.Entry(source, source, null, expression.getConstant());
+        }
+        throw new MolangSyntaxException("Failed to precompile expression '" + source + "'");
+    }
+
+    /**
+     * Precompiles files from the command line.
+     * <p>Usage: <code>MolangPrecompiler [--flags &lt;flags&gt;] &lt;output jar&gt; &lt;file or directory&gt;...</code></p>
+     *
+     * @param args The command line arguments
+     */
+    public static void main(String[] args) throws IOException {
+        int flags = MolangCompiler.DEFAULT_FLAGS;
+        int index = 0;
+        if (args.length > 1 && "--flags".equals(args[0])) {
+            flags = Integer.decode(args[1]);
+            index = 2;
+        }
+        if (args.length - index < 2) {
+            System.err.println("Usage: MolangPrecompiler [--flags <flags>] <output jar> <file or directory>...");
+            System.exit(2);
+            return;
+        }
+
+        MolangPrecompiler precompiler = new MolangPrecompiler(flags);
+        Path jar = Path.of(args[index]);
+        for (int i = index + 1; i < args.length; i++) {
+            precompiler.addPath(Path.of(args[i]));
+        }
+
+        Map<String, MolangSyntaxException> failures = precompiler.write(jar);
+        failures.forEach((id, error) -> System.err.println(id + ": " + error.getMessage()));
+        System.out.println("Precompiled " + (precompiler.sources.size() - failures.size()) + " expressions into " + jar);
+        if (!failures.isEmpty()) {
+            System.exit(1);
+        }
+    }
+}
@@ -9,14 +9,34 @@ import gg.moonflower.molangcompiler.core.node.MolangConstantNode;
 import gg.moonflower.molangcompiler.core.node.MolangVariableNode;
 import org.jetbrains.annotations.ApiStatus;
 
+import java.util.regex.Pattern;
+
 @ApiStatus.Internal
 @SuppressWarnings("unused") // Methods are referenced in ASM
 public class MolangUtil {
 
+    // The lexer removes these before reading tokens, so they must be removed instead of replaced
+    private static final Pattern REMOVED_WHITESPACE = Pattern.compile("[\n\t]");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    /**
+     * Normalizes the whitespace of the specified source. Sources that normalize to the same string compile to the same expression.
+     *
+     * @param source The MoLang source
+     * @return The normalized source
+     */
+    public static String normalizeSource(String source) {
+        return WHITESPACE.matcher(REMOVED_WHITESPACE.matcher(source).replaceAll("")).replaceAll(" ").trim();
+    }
+
     public static float clamp(float value, float min, float max) {
         return Math.max(min, Math.min(max, value));
     }
 
+    public static double clamp(double value, double min, double max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
     public static float dieRoll(int num, float low, float high) {
         float sum = 0;
         for (int i = 0; i < num; i++) {
@@ -25,6 +45,14 @@ public class MolangUtil {
         return sum;
     }
 
+    public static double dieRoll(int num, double low, double high) {
+        double sum = 0;
+        for (int i = 0; i < num; i++) {
+            sum += low + Math.random() * (high - low);
+        }
+        return sum;
+    }
+
     public static float dieRollInt(int num, int low, int high) {
         int sum = 0;
         for (int i = 0; i < num; i++) {
@@ -37,14 +65,26 @@ public class MolangUtil {
         return 3 * value * value - 2 * value * value * value;
     }
 
+    public static double hermiteBlend(double value) {
+        return 3 * value * value - 2 * value * value * value;
+    }
+
     public static float lerp(float start, float end, float pct) {
         return start + (end - start) * pct;
     }
 
+    public static double lerp(double start, double end, double pct) {
+        return start + (end - start) * pct;
+    }
+
     public static float lerpRotate(float start, float end, float pct) {
         return start + wrapDegrees(end - start) * pct;
     }
 
+    public static double lerpRotate(double start, double end, double pct) {
+        return start + wrapDegrees(end - start) * pct;
+    }
+
     public static float wrapDegrees(float angle) {
         float wrapped = angle % 360.0F;
         if (wrapped >= 180.0F) {
@@ -58,14 +98,49 @@ public class MolangUtil {
         return wrapped;
     }
 
+    public static double wrapDegrees(double angle) {
+        double wrapped = angle % 360.0;
+        if (wrapped >= 180.0) {
+            wrapped -= 360.0;
+        }
+
+        if (wrapped < -180.0) {
+            wrapped += 360.0;
+        }
+
+        return wrapped;
+    }
+
     public static float random(float low, float high) {
         return (float) (low + Math.random() * (high - low));
     }
 
+    public static double random(double low, double high) {
+        return low + Math.random() * (high - low);
+    }
+
     public static float triangleWave(float x, float wavelength) {
         return (Math.abs(x % wavelength - wavelength * 0.5F) - wavelength * 0.25F) / (wavelength * 0.25F);
     }
 
+    public static double triangleWave(double x, double wavelength) {
+        return (Math.abs(x % wavelength - wavelength * 0.5) - wavelength * 0.25) / (wavelength * 0.25);
+    }
+
+    /**
+     * Widens literals to the doubles they were written as. Literals are parsed as floats, so the shortest decimal of each float is the written value.
+     *
+     * @param constants The float literals
+     * @return The double literals
+     */
+    public static double[] widenConstants(float[] constants) {
+        double[] widened = new double[constants.length];
+        for (int i = 0; i < constants.length; i++) {
+            widened[i] = Double.parseDouble(Float.toString(constants[i]));
+        }
+        return widened;
+    }
+
     public static MolangExpression getFunction(MolangObject object, String name, String fullKey) throws MolangException {
         if (object.has(fullKey)) {
             return object.get(fullKey);
@@ -2,10 +2,10 @@ package gg.moonflower.molangcompiler.core.ast;
 
 import gg.moonflower.molangcompiler.api.exception.MolangException;
 import gg.moonflower.molangcompiler.core.compiler.MolangBytecodeEnvironment;
+import gg.moonflower.molangcompiler.core.compiler.MolangInterpreterContext;
 import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.Label;
-import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.MethodNode;
 
 /**
@@ -38,6 +38,15 @@ public record BinaryConditionalNode(Node value, Node branch) implements Node {
         return this.value.evaluate(environment) != 0.0F ? this.branch.evaluate(environment) : 0.0F;
     }
 
+    @Override
+    public float interpret(MolangInterpreterContext context) throws MolangException {
+        context.initializeTemps(this.branch);
+        if (this.value.interpret(context) != 0.0F) {
+            this.branch.interpret(context);
+        }
+        return 0.0F;
+    }
+
     @Override
     public void writeBytecode(MethodNode method, MolangBytecodeEnvironment environment, @Nullable Label breakLabel, @Nullable Label continueLabel) throws MolangException {
         Label label_end = new Label();
@@ -49,11 +58,19 @@ public record BinaryConditionalNode(Node value, Node branch) implements Node {
             return;
         }
 
-        this.value.writeBytecode(method, environment, breakLabel, continueLabel);
-        method.visitInsn(Opcodes.FCONST_0);
-        method.visitInsn(Opcodes.FCMPL);
-        method.visitJumpInsn(Opcodes.IFEQ, label_end);
-        this.branch.writeBytecode(method, environment, breakLabel, continueLabel);
+        environment.initializeTemps(method, this.branch);
+        this.value.writeCondition(method, environment, label_end, false, breakLabel, continueLabel);
+        MolangBytecodeEnvironment localEnvironment = new MolangBytecodeEnvironment(environment);
+        this.branch.writeBytecode(method, localEnvironment, breakLabel, continueLabel);
+        localEnvironment.writeModifiedVariables(method);
+        environment.merge(localEnvironment);
         method.visitLabel(label_end);
     }
+
+    @Override
+    public Node transformChildren(NodeTransformer transformer) throws MolangException {
+        Node value = transformer.transform(this.value);
+        Node branch = transformer.transform(this.branch);
+        return value == this.value && branch == this.branch ? this : new BinaryConditionalNode(value, branch);
+    }
 }
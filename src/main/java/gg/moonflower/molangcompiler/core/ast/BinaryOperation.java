@@ -33,6 +33,16 @@ public enum BinaryOperation {
         return this.value;
     }
 
+    /**
+     * @return Whether this operation compares two values and results in <code>1</code> or <code>0</code>
+     */
+    public boolean isComparison() {
+        return switch (this) {
+            case EQUALS, NOT_EQUALS, LESS_EQUALS, LESS, GREATER_EQUALS, GREATER -> true;
+            default -> false;
+        };
+    }
+
     @Override
     public String toString() {
         return this.value;
@@ -4,6 +4,7 @@ import gg.moonflower.molangcompiler.api.exception.MolangException;
 import gg.moonflower.molangcompiler.api.exception.MolangSyntaxException;
 import gg.moonflower.molangcompiler.core.compiler.BytecodeCompiler;
 import gg.moonflower.molangcompiler.core.compiler.MolangBytecodeEnvironment;
+import gg.moonflower.molangcompiler.core.compiler.MolangInterpreterContext;
 import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.Label;
@@ -38,8 +39,36 @@ public record BinaryOperationNode(BinaryOperation operator, Node left, Node righ
 
     @Override
     public float evaluate(MolangBytecodeEnvironment environment) throws MolangException {
-        float left = this.left.evaluate(environment);
-        float right = this.right.evaluate(environment);
+        return this.apply(this.left.evaluate(environment), this.right.evaluate(environment));
+    }
+
+    @Override
+    public float interpret(MolangInterpreterContext context) throws MolangException {
+        switch (this.operator) {
+            case AND -> {
+                context.initializeTemps(this.right);
+                return this.left.interpret(context) != 0 && this.right.interpret(context) != 0 ? 1.0F : 0.0F;
+            }
+            case OR -> {
+                context.initializeTemps(this.right);
+                return this.left.interpret(context) != 0 || this.right.interpret(context) != 0 ? 1.0F : 0.0F;
+            }
+            case NULL_COALESCING -> {
+                if (!(this.left instanceof VariableGetNode lookup)) {
+                    throw new MolangSyntaxException("Expected variable lookup, got " + this.left);
+                }
+                // Temps are only initialized after testing, the same as the generated code
+                boolean has = context.hasVariable(lookup.object(), lookup.name());
+                context.initializeTemps(this.right);
+                return has ? this.left.interpret(context) : this.right.interpret(context);
+            }
+            default -> {
+                return this.apply(this.left.interpret(context), this.right.interpret(context));
+            }
+        }
+    }
+
+    private float apply(float left, float right) {
         return switch (this.operator) {
             case ADD -> left + right;
             case SUBTRACT -> left - right;
@@ -65,12 +94,25 @@ public record BinaryOperationNode(BinaryOperation operator, Node left, Node righ
                 BytecodeCompiler.writeFloatConst(method, this.evaluate(environment));
                 return;
             }
+            if (this.operator == BinaryOperation.AND || this.operator == BinaryOperation.OR) {
+                // Jump directly on both sides instead of creating and comparing their values
+                Label label_false = new Label();
+                Label label_end = new Label();
+                this.writeCondition(method, environment, label_false, false, breakLabel, continueLabel);
+                method.visitInsn(Opcodes.FCONST_1);
+                method.visitJumpInsn(Opcodes.GOTO, label_end);
+                method.visitLabel(label_false);
+                method.visitInsn(Opcodes.FCONST_0);
+                method.visitLabel(label_end);
+                return;
+            }
         }
 
         switch (this.operator) {
             case AND -> {
                 Label label_false = new Label();
                 Label label_end = new Label();
+                environment.initializeTemps(method, this.right);
                 writeNode(this.left, method, environment, breakLabel, continueLabel);
                 //left == 0: goto false
                 method.visitInsn(Opcodes.FCONST_0);
@@ -78,7 +120,7 @@ public record BinaryOperationNode(BinaryOperation operator, Node left, Node righ
                 method.visitJumpInsn(Opcodes.IFEQ, label_false);
 
                 //right == 0: goto false
-                writeNode(this.right, method, environment, breakLabel, continueLabel);
+                writeConditionalNode(this.right, method, environment, breakLabel, continueLabel);
                 method.visitInsn(Opcodes.FCONST_0);
                 method.visitInsn(Opcodes.FCMPL);
                 method.visitJumpInsn(Opcodes.IFEQ, label_false);
@@ -97,6 +139,7 @@ public record BinaryOperationNode(BinaryOperation operator, Node left, Node righ
             case OR -> {
                 Label label_true = new Label();
                 Label label_end = new Label();
+                environment.initializeTemps(method, this.right);
                 //left != 0: goto true
                 writeNode(this.left, method, environment, breakLabel, continueLabel);
                 method.visitInsn(Opcodes.FCONST_0);
@@ -104,7 +147,7 @@ public record BinaryOperationNode(BinaryOperation operator, Node left, Node righ
                 method.visitJumpInsn(Opcodes.IFNE, label_true);
 
                 //right != 0: goto true
-                writeNode(this.right, method, environment, breakLabel, continueLabel);
+                writeConditionalNode(this.right, method, environment, breakLabel, continueLabel);
                 method.visitInsn(Opcodes.FCONST_0);
                 method.visitInsn(Opcodes.FCMPL);
                 method.visitJumpInsn(Opcodes.IFNE, label_true);
@@ -125,17 +168,18 @@ public record BinaryOperationNode(BinaryOperation operator, Node left, Node righ
                     throw new MolangSyntaxException("Expected variable lookup, got " + this.left);
                 }
 
-                // Test if variable exists
+                // Test if variable exists. Temps are only initialized after testing, so assigning the same temp on the right does not make it exist
                 environment.loadObjectHas(method, lookup.object(), lookup.name());
+                environment.initializeTemps(method, this.right);
 
                 // Run branches
                 Label label_false = new Label();
                 Label label_end = new Label();
                 method.visitJumpInsn(Opcodes.IFEQ, label_false);
-                writeNode(this.left, method, environment, breakLabel, continueLabel);
+                writeConditionalNode(this.left, method, environment, breakLabel, continueLabel);
                 method.visitJumpInsn(Opcodes.GOTO, label_end);
                 method.visitLabel(label_false);
-                writeNode(this.right, method, environment, breakLabel, continueLabel);
+                writeConditionalNode(this.right, method, environment, breakLabel, continueLabel);
                 method.visitLabel(label_end);
             }
             case MULTIPLY -> {
@@ -163,17 +207,148 @@ public record BinaryOperationNode(BinaryOperation operator, Node left, Node righ
                 switch (this.operator) {
                     case ADD -> method.visitInsn(Opcodes.FADD);
                     case SUBTRACT -> method.visitInsn(Opcodes.FSUB);
-                    case EQUALS -> writeComparision(method, Opcodes.IFNE);
-                    case NOT_EQUALS -> writeComparision(method, Opcodes.IFEQ);
-                    case LESS_EQUALS -> writeComparision(method, Opcodes.IFGT);
-                    case LESS -> writeComparision(method, Opcodes.IFGE);
-                    case GREATER_EQUALS -> writeComparision(method, Opcodes.IFLT);
-                    case GREATER -> writeComparision(method, Opcodes.IFLE);
+                    default -> {
+                        if (environment.optimize()) {
+                            writeBranchlessComparison(method, this.operator);
+                        } else {
+                            writeComparision(method, this.operator);
+                        }
+                    }
                 }
             }
         }
     }
 
+    @Override
+    public void writeCondition(MethodNode method, MolangBytecodeEnvironment environment, Label target, boolean jumpIf, @Nullable Label breakLabel, @Nullable Label continueLabel) throws MolangException {
+        if (!environment.optimize() || this.isConstant()) {
+            Node.super.writeCondition(method, environment, target, jumpIf, breakLabel, continueLabel);
+            return;
+        }
+
+        if (this.operator.isComparison()) {
+            writeNode(this.left, method, environment, breakLabel, continueLabel);
+            writeNode(this.right, method, environment, breakLabel, continueLabel);
+            method.visitInsn(getCompareInsn(this.operator));
+            method.visitJumpInsn(getJumpInsn(this.operator, jumpIf), target);
+            return;
+        }
+
+        // Jumps if either side is the value that decides the result, otherwise falls through to the right side
+        if (this.operator == BinaryOperation.AND || this.operator == BinaryOperation.OR) {
+            boolean decides = this.operator == BinaryOperation.OR;
+            environment.initializeTemps(method, this.right);
+            if (jumpIf == decides) {
+                this.left.writeCondition(method, environment, target, jumpIf, breakLabel, continueLabel);
+                writeConditionalCondition(this.right, method, environment, target, jumpIf, breakLabel, continueLabel);
+            } else {
+                Label label_skip = new Label();
+                this.left.writeCondition(method, environment, label_skip, decides, breakLabel, continueLabel);
+                writeConditionalCondition(this.right, method, environment, target, jumpIf, breakLabel, continueLabel);
+                method.visitLabel(label_skip);
+            }
+            return;
+        }
+
+        Node.super.writeCondition(method, environment, target, jumpIf, breakLabel, continueLabel);
+    }
+
+    /**
+     * Compares the two floats on the stack. The comparison leaves -1, 0, or 1 which is turned into 0 or 1 without jumping.
+     *
+     * @param method   The method to write into
+     * @param operator The comparison to make
+     */
+    public static void writeBranchlessComparison(MethodNode method, BinaryOperation operator) {
+        writeBranchlessComparison(method, operator, false);
+    }
+
+    /**
+     * Compares the two floats or doubles on the stack. The comparison leaves -1, 0, or 1 which is turned into 0 or 1 without jumping.
+     *
+     * @param method          The method to write into
+     * @param operator        The comparison to make
+     * @param doublePrecision Whether the values and the result are doubles instead of floats
+     */
+    public static void writeBranchlessComparison(MethodNode method, BinaryOperation operator, boolean doublePrecision) {
+        method.visitInsn(getCompareInsn(operator, doublePrecision));
+        switch (operator) {
+            case EQUALS -> { // (c & 1) ^ 1
+                method.visitInsn(Opcodes.ICONST_1);
+                method.visitInsn(Opcodes.IAND);
+                method.visitInsn(Opcodes.ICONST_1);
+                method.visitInsn(Opcodes.IXOR);
+            }
+            case NOT_EQUALS -> { // c & 1
+                method.visitInsn(Opcodes.ICONST_1);
+                method.visitInsn(Opcodes.IAND);
+            }
+            case LESS_EQUALS -> { // (c - 1) >>> 31
+                method.visitInsn(Opcodes.ICONST_1);
+                method.visitInsn(Opcodes.ISUB);
+                BytecodeCompiler.writeIntConst(method, 31);
+                method.visitInsn(Opcodes.IUSHR);
+            }
+            case LESS -> { // c >>> 31
+                BytecodeCompiler.writeIntConst(method, 31);
+                method.visitInsn(Opcodes.IUSHR);
+            }
+            case GREATER_EQUALS -> { // (c >>> 31) ^ 1
+                BytecodeCompiler.writeIntConst(method, 31);
+                method.visitInsn(Opcodes.IUSHR);
+                method.visitInsn(Opcodes.ICONST_1);
+                method.visitInsn(Opcodes.IXOR);
+            }
+            case GREATER -> { // -c >>> 31
+                method.visitInsn(Opcodes.INEG);
+                BytecodeCompiler.writeIntConst(method, 31);
+                method.visitInsn(Opcodes.IUSHR);
+            }
+        }
+        method.visitInsn(doublePrecision ? Opcodes.I2D : Opcodes.I2F);
+    }
+
+    /**
+     * Comparisons with NaN are false, so less than comparisons treat NaN as greater and the others as less.
+     *
+     * @param operator The comparison to make
+     * @return The instruction comparing two floats for the operator
+     */
+    public static int getCompareInsn(BinaryOperation operator) {
+        return getCompareInsn(operator, false);
+    }
+
+    /**
+     * @param operator        The comparison to make
+     * @param doublePrecision Whether to compare doubles instead of floats
+     * @return The instruction comparing two values for the operator
+     * @see #getCompareInsn(BinaryOperation)
+     */
+    public static int getCompareInsn(BinaryOperation operator, boolean doublePrecision) {
+        boolean less = operator == BinaryOperation.LESS || operator == BinaryOperation.LESS_EQUALS;
+        if (doublePrecision) {
+            return less ? Opcodes.DCMPG : Opcodes.DCMPL;
+        }
+        return less ? Opcodes.FCMPG : Opcodes.FCMPL;
+    }
+
+    /**
+     * @param operator The comparison to make
+     * @param jumpIf   Whether to jump if the comparison is true instead of false
+     * @return The instruction jumping on the result of {@link #getCompareInsn(BinaryOperation)}
+     */
+    public static int getJumpInsn(BinaryOperation operator, boolean jumpIf) {
+        return switch (operator) {
+            case EQUALS -> jumpIf ? Opcodes.IFEQ : Opcodes.IFNE;
+            case NOT_EQUALS -> jumpIf ? Opcodes.IFNE : Opcodes.IFEQ;
+            case LESS_EQUALS -> jumpIf ? Opcodes.IFLE : Opcodes.IFGT;
+            case LESS -> jumpIf ? Opcodes.IFLT : Opcodes.IFGE;
+            case GREATER_EQUALS -> jumpIf ? Opcodes.IFGE : Opcodes.IFLT;
+            case GREATER -> jumpIf ? Opcodes.IFGT : Opcodes.IFLE;
+            default -> throw new IllegalArgumentException("Not a comparison: " + operator);
+        };
+    }
+
     // Try to replace with the negate operation if multiplying/dividing by -1
     private boolean tryWriteNegate(MethodNode method, MolangBytecodeEnvironment environment, @Nullable Label breakLabel, @Nullable Label continueLabel) throws MolangException {
         if (this.left.isConstant()) {
@@ -202,15 +377,57 @@ public record BinaryOperationNode(BinaryOperation operator, Node left, Node righ
         }
     }
 
-    private static void writeComparision(MethodNode method, int success) {
+    // Locals loaded by a node that is not always evaluated can't be used after it
+    private static void writeConditionalNode(Node node, MethodNode method, MolangBytecodeEnvironment environment, @Nullable Label breakLabel, @Nullable Label continueLabel) throws MolangException {
+        MolangBytecodeEnvironment localEnvironment = new MolangBytecodeEnvironment(environment);
+        writeNode(node, method, localEnvironment, breakLabel, continueLabel);
+        localEnvironment.writeModifiedVariables(method);
+        environment.merge(localEnvironment);
+    }
+
+    // Variables set on the right side must be written back before jumping, so only nodes without any use the direct jumps
+    private static void writeConditionalCondition(Node node, MethodNode method, MolangBytecodeEnvironment environment, Label target, boolean jumpIf, @Nullable Label breakLabel, @Nullable Label continueLabel) throws MolangException {
+        MolangBytecodeEnvironment localEnvironment = new MolangBytecodeEnvironment(environment);
+        if (hasSet(node)) {
+            writeNode(node, method, localEnvironment, breakLabel, continueLabel);
+            localEnvironment.writeModifiedVariables(method);
+            method.visitInsn(Opcodes.FCONST_0);
+            method.visitInsn(Opcodes.FCMPL);
+            method.visitJumpInsn(jumpIf ? Opcodes.IFNE : Opcodes.IFEQ, target);
+        } else {
+            node.writeCondition(method, localEnvironment, target, jumpIf, breakLabel, continueLabel);
+        }
+        environment.merge(localEnvironment);
+    }
+
+    private static boolean hasSet(Node node) throws MolangException {
+        if (node instanceof VariableSetNode) {
+            return true;
+        }
+        boolean[] set = {false};
+        node.transformChildren(child -> {
+            set[0] |= hasSet(child);
+            return child;
+        });
+        return set[0];
+    }
+
+    private static void writeComparision(MethodNode method, BinaryOperation operator) {
         Label label_false = new Label();
         Label label_end = new Label();
-        method.visitInsn(Opcodes.FCMPL);
-        method.visitJumpInsn(success, label_false);
+        method.visitInsn(getCompareInsn(operator));
+        method.visitJumpInsn(getJumpInsn(operator, false), label_false);
         method.visitInsn(Opcodes.FCONST_1);
         method.visitJumpInsn(Opcodes.GOTO, label_end);
         method.visitLabel(label_false);
         method.visitInsn(Opcodes.FCONST_0);
         method.visitLabel(label_end);
     }
+
+    @Override
+    public Node transformChildren(NodeTransformer transformer) throws MolangException {
+        Node left = transformer.transform(this.left);
+        Node right = transformer.transform(this.right);
+        return left == this.left && right == this.right ? this : new BinaryOperationNode(this.operator, left, right);
+    }
 }
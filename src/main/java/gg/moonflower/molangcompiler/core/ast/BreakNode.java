@@ -3,6 +3,7 @@ package gg.moonflower.molangcompiler.core.ast;
 import gg.moonflower.molangcompiler.api.exception.MolangException;
 import gg.moonflower.molangcompiler.api.exception.MolangSyntaxException;
 import gg.moonflower.molangcompiler.core.compiler.MolangBytecodeEnvironment;
+import gg.moonflower.molangcompiler.core.compiler.MolangInterpreterContext;
 import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.Label;
@@ -32,6 +33,12 @@ public record BreakNode() implements Node {
         return false;
     }
 
+    @Override
+    public float interpret(MolangInterpreterContext context) {
+        context.setSignal(MolangInterpreterContext.Signal.BREAK);
+        return 0.0F;
+    }
+
     @Override
     public void writeBytecode(MethodNode method, MolangBytecodeEnvironment environment, @Nullable Label breakLabel, @Nullable Label continueLabel) throws MolangException {
         if (breakLabel == null) {
@@ -2,11 +2,14 @@ package gg.moonflower.molangcompiler.core.ast;
 
 import gg.moonflower.molangcompiler.api.exception.MolangException;
 import gg.moonflower.molangcompiler.core.compiler.MolangBytecodeEnvironment;
+import gg.moonflower.molangcompiler.core.compiler.MolangInterpreterContext;
 import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.Label;
 import org.objectweb.asm.tree.MethodNode;
 
+import java.util.Arrays;
+
 /**
  * Inserts multiple nodes in order.
  *
@@ -40,10 +43,40 @@ public record CompoundNode(Node... nodes) implements Node {
         return this.nodes[0].evaluate(environment);
     }
 
+    @Override
+    public float interpret(MolangInterpreterContext context) throws MolangException {
+        float value = 0.0F;
+        for (Node node : this.nodes) {
+            value = node.interpret(context);
+            if (context.getSignal() != MolangInterpreterContext.Signal.NONE) {
+                break;
+            }
+        }
+        return value;
+    }
+
     @Override
     public void writeBytecode(MethodNode method, MolangBytecodeEnvironment environment, @Nullable Label breakLabel, @Nullable Label continueLabel) throws MolangException {
         for (Node node : this.nodes) {
             node.writeBytecode(method, environment, breakLabel, continueLabel);
         }
     }
+
+    @Override
+    public Node transformChildren(NodeTransformer transformer) throws MolangException {
+        Node[] nodes = transformer.transformAll(this.nodes);
+        return nodes == this.nodes ? this : new CompoundNode(nodes);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) return true;
+        if (obj == null || obj.getClass() != this.getClass()) return false;
+        return Arrays.equals(this.nodes, ((CompoundNode) obj).nodes);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(this.nodes);
+    }
 }
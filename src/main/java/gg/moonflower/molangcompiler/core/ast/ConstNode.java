@@ -3,6 +3,7 @@ package gg.moonflower.molangcompiler.core.ast;
 import gg.moonflower.molangcompiler.api.exception.MolangException;
 import gg.moonflower.molangcompiler.core.compiler.BytecodeCompiler;
 import gg.moonflower.molangcompiler.core.compiler.MolangBytecodeEnvironment;
+import gg.moonflower.molangcompiler.core.compiler.MolangInterpreterContext;
 import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.Label;
@@ -37,6 +38,11 @@ public record ConstNode(float value) implements Node {
         return this.value;
     }
 
+    @Override
+    public float interpret(MolangInterpreterContext context) {
+        return this.value;
+    }
+
     @Override
     public void writeBytecode(MethodNode method, MolangBytecodeEnvironment environment, @Nullable Label breakLabel, @Nullable Label continueLabel) throws MolangException {
         BytecodeCompiler.writeFloatConst(method, this.value);
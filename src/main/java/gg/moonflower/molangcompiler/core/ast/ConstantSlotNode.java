@@ -0,0 +1,43 @@
+package gg.moonflower.molangcompiler.core.ast;
+
+import gg.moonflower.molangcompiler.api.exception.MolangException;
+import gg.moonflower.molangcompiler.core.compiler.BytecodeCompiler;
+import gg.moonflower.molangcompiler.core.compiler.MolangBytecodeEnvironment;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.MethodNode;
+
+/**
+ * Pushes a literal stored in the constant array of the expression instance onto the stack.
+ * This allows expressions that only differ in their literals to share a single class.
+ *
+ * @param index The index of the literal in the constant array
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public record ConstantSlotNode(int index) implements Node {
+
+    @Override
+    public String toString() {
+        return "$" + this.index;
+    }
+
+    @Override
+    public boolean isConstant() {
+        return false;
+    }
+
+    @Override
+    public boolean hasValue() {
+        return true;
+    }
+
+    @Override
+    public void writeBytecode(MethodNode method, MolangBytecodeEnvironment environment, @Nullable Label breakLabel, @Nullable Label continueLabel) throws MolangException {
+        method.visitVarInsn(Opcodes.ALOAD, environment.getConstantsIndex());
+        BytecodeCompiler.writeIntConst(method, this.index);
+        method.visitInsn(Opcodes.FALOAD);
+    }
+}
@@ -1,15 +1,21 @@
 package gg.moonflower.molangcompiler.core.ast;
 
+import gg.moonflower.molangcompiler.api.MolangEnvironment;
+import gg.moonflower.molangcompiler.api.MolangExpression;
 import gg.moonflower.molangcompiler.api.exception.MolangException;
+import gg.moonflower.molangcompiler.core.MolangUtil;
 import gg.moonflower.molangcompiler.core.compiler.BytecodeCompiler;
 import gg.moonflower.molangcompiler.core.compiler.MolangBytecodeEnvironment;
+import gg.moonflower.molangcompiler.core.compiler.MolangInterpreterContext;
 import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.Label;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.MethodNode;
+import ru.timeconqueror.molang.custom.QueryDomain;
 
 import java.util.Arrays;
+import java.util.Objects;
 import java.util.stream.Collectors;
 
 /**
@@ -23,6 +29,10 @@ import java.util.stream.Collectors;
 @ApiStatus.Internal
 public record FunctionNode(String object, String function, Node... arguments) implements Node {
 
+    public FunctionNode {
+        object = QueryDomain.resolveObject(object, function);
+    }
+
     @Override
     public String toString() {
         return this.object + "." + this.function + "(" + Arrays.stream(this.arguments).map(Node::toString).collect(Collectors.joining(", ")) + ")";
@@ -38,6 +48,18 @@ public record FunctionNode(String object, String function, Node... arguments) im
         return true;
     }
 
+    @Override
+    public float interpret(MolangInterpreterContext context) throws MolangException {
+        MolangEnvironment environment = context.environment();
+        MolangExpression expression = MolangUtil.getFunction(context.getObject(this.object), this.function, this.function + "$" + this.arguments.length);
+        for (Node node : this.arguments) {
+            environment.loadParameter(node.interpret(context));
+        }
+        float value = environment.resolve(expression);
+        environment.clearParameters();
+        return value;
+    }
+
     @Override
     public void writeBytecode(MethodNode method, MolangBytecodeEnvironment environment, @Nullable Label breakLabel, @Nullable Label continueLabel) throws MolangException {
         int objectIndex = environment.getObjectIndex(method, this.object);
@@ -99,4 +121,25 @@ public record FunctionNode(String object, String function, Node... arguments) im
                 true
         );
     }
+
+    @Override
+    public Node transformChildren(NodeTransformer transformer) throws MolangException {
+        Node[] arguments = transformer.transformAll(this.arguments);
+        return arguments == this.arguments ? this : new FunctionNode(this.object, this.function, arguments);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) return true;
+        if (obj == null || obj.getClass() != this.getClass()) return false;
+        var that = (FunctionNode) obj;
+        return Objects.equals(this.object, that.object) &&
+                Objects.equals(this.function, that.function) &&
+                Arrays.equals(this.arguments, that.arguments);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Objects.hash(this.object, this.function) + Arrays.hashCode(this.arguments);
+    }
 }
@@ -3,6 +3,7 @@ package gg.moonflower.molangcompiler.core.ast;
 import gg.moonflower.molangcompiler.api.exception.MolangException;
 import gg.moonflower.molangcompiler.core.compiler.BytecodeCompiler;
 import gg.moonflower.molangcompiler.core.compiler.MolangBytecodeEnvironment;
+import gg.moonflower.molangcompiler.core.compiler.MolangInterpreterContext;
 import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.Label;
@@ -34,20 +35,48 @@ public record LoopNode(Node iterations, Node body) implements Node {
         return false;
     }
 
+    @Override
+    public float interpret(MolangInterpreterContext context) throws MolangException {
+        // Breaking or continuing skips the rest of the body
+        context.initializeTemps(this.body);
+        int iterations = (int) this.iterations.interpret(context);
+        // The body always runs at least once, the same as the generated loop
+        int i = 0;
+        do {
+            this.body.interpret(context);
+            MolangInterpreterContext.Signal signal = context.getSignal();
+            if (signal == MolangInterpreterContext.Signal.RETURN) {
+                return 0.0F;
+            }
+            context.setSignal(MolangInterpreterContext.Signal.NONE);
+            if (signal == MolangInterpreterContext.Signal.BREAK) {
+                break;
+            }
+        } while (++i < iterations);
+        return 0.0F;
+    }
+
     @Override
     public void writeBytecode(MethodNode method, MolangBytecodeEnvironment environment, @Nullable Label breakLabel, @Nullable Label continueLabel) throws MolangException {
         Label begin = new Label();
         Label next = new Label();
         Label end = new Label();
 
+        // Breaking or continuing skips the rest of the body
+        if (hasJump(this.body)) {
+            environment.initializeTemps(method, this.body);
+        }
+
         // iterations
         this.iterations.writeBytecode(method, environment, breakLabel, continueLabel);
         method.visitInsn(Opcodes.F2I);
+        // The body must not reuse the locals loaded by the iterations
+        MolangBytecodeEnvironment bodyEnvironment = environment.createLoop();
 
         BytecodeCompiler.writeIntConst(method, 0); // int i = 0;
         method.visitLabel(begin);
 
-        this.body.writeBytecode(method, environment, end, next);
+        this.body.writeBytecode(method, bodyEnvironment, end, next);
         if (this.body.hasValue()) { // Must return void
             method.visitInsn(Opcodes.POP);
         }
@@ -58,5 +87,34 @@ public record LoopNode(Node iterations, Node body) implements Node {
         method.visitInsn(Opcodes.DUP2);
         method.visitJumpInsn(Opcodes.IF_ICMPGT, begin);
         method.visitLabel(end);
+        method.visitInsn(Opcodes.POP2); // Nested loops must not see the counters
+        environment.merge(bodyEnvironment);
+    }
+
+    @Override
+    public Node transformChildren(NodeTransformer transformer) throws MolangException {
+        Node iterations = transformer.transform(this.iterations);
+        Node body = transformer.transform(this.body);
+        return iterations == this.iterations && body == this.body ? this : new LoopNode(iterations, body);
+    }
+
+    /**
+     * @param node The node in a loop body
+     * @return Whether the node breaks or continues the loop it is in
+     * @throws MolangException If the node cannot be searched
+     */
+    public static boolean hasJump(Node node) throws MolangException {
+        if (node instanceof BreakNode || node instanceof ContinueNode) {
+            return true;
+        }
+        if (node instanceof LoopNode loop) {
+            return hasJump(loop.iterations());
+        }
+        boolean[] jump = {false};
+        node.transformChildren(child -> {
+            jump[0] |= hasJump(child);
+            return child;
+        });
+        return jump[0];
     }
 }
@@ -4,6 +4,7 @@ import gg.moonflower.molangcompiler.api.exception.MolangException;
 import gg.moonflower.molangcompiler.core.MolangUtil;
 import gg.moonflower.molangcompiler.core.compiler.BytecodeCompiler;
 import gg.moonflower.molangcompiler.core.compiler.MolangBytecodeEnvironment;
+import gg.moonflower.molangcompiler.core.compiler.MolangInterpreterContext;
 import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.Label;
@@ -11,6 +12,7 @@ import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.MethodNode;
 
 import java.util.Arrays;
+import java.util.Objects;
 import java.util.stream.Collectors;
 
 /**
@@ -59,7 +61,19 @@ public record MathNode(MathOperation function, Node... arguments) implements Nod
         for (int i = 0; i < values.length; i++) {
             values[i] = this.arguments[i].evaluate(environment);
         }
+        return this.apply(values);
+    }
 
+    @Override
+    public float interpret(MolangInterpreterContext context) throws MolangException {
+        float[] values = new float[this.arguments.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = this.arguments[i].interpret(context);
+        }
+        return this.apply(values);
+    }
+
+    private float apply(float[] values) {
         return switch (this.function) {
             case ABS -> Math.abs(values[0]);
             case ACOS -> RADIANS_TO_DEGREES * (float) Math.acos(values[0]);
@@ -87,7 +101,10 @@ public record MathNode(MathOperation function, Node... arguments) implements Nod
             case TRUNC -> (int) values[0];
             case SIGN -> Math.signum(values[0]);
             case TRIANGLE_WAVE -> MolangUtil.triangleWave(values[0], values[1]);
-            default -> throw new MolangException("Unexpected value: " + this.function);
+            case DIE_ROLL -> MolangUtil.dieRoll((int) values[0], values[1], values[2]);
+            case DIE_ROLL_INTEGER -> (int) MolangUtil.dieRoll((int) values[0], (int) values[1], (int) values[2]);
+            case RANDOM -> MolangUtil.random(values[0], values[1]);
+            case RANDOM_INTEGER -> (int) MolangUtil.random((int) values[0], (int) values[1]);
         };
     }
 
@@ -115,12 +132,19 @@ public record MathNode(MathOperation function, Node... arguments) implements Nod
                 method.visitInsn(Opcodes.FMUL);
             }
             // Single-argument Double
-            case CEIL, EXP, FLOOR, LN, SQRT -> {
+            case CEIL, EXP, FLOOR, SQRT -> {
                 this.arguments[0].writeBytecode(method, env, breakLabel, continueLabel);
                 method.visitInsn(Opcodes.F2D);
                 method.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Math", this.function.getName(), "(D)D", false);
                 method.visitInsn(Opcodes.D2F);
             }
+            // Math calls it log instead of ln
+            case LN -> {
+                this.arguments[0].writeBytecode(method, env, breakLabel, continueLabel);
+                method.visitInsn(Opcodes.F2D);
+                method.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Math", "log", "(D)D", false);
+                method.visitInsn(Opcodes.D2F);
+            }
             // Convert to radians
             case COS, SIN -> {
                 this.arguments[0].writeBytecode(method, env, breakLabel, continueLabel);
@@ -150,10 +174,9 @@ public record MathNode(MathOperation function, Node... arguments) implements Nod
                 BytecodeCompiler.writeFloatConst(method, RADIANS_TO_DEGREES);
                 method.visitInsn(Opcodes.FMUL);
             }
-            // Single-argument Float->Int
-            case ROUND -> {
-                this.arguments[0].writeBytecode(method, env, breakLabel, continueLabel);
-                method.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Math", this.function.getName(), "(F)I", false);
+            // Integer results
+            case ROUND, TRUNC, DIE_ROLL_INTEGER, RANDOM_INTEGER -> {
+                this.writeIntBytecode(method, env, breakLabel, continueLabel);
                 method.visitInsn(Opcodes.I2F);
             }
             // Operations
@@ -163,11 +186,6 @@ public record MathNode(MathOperation function, Node... arguments) implements Nod
                 method.visitInsn(Opcodes.FREM);
             }
             case PI -> BytecodeCompiler.writeFloatConst(method, (float) Math.PI);
-            case TRUNC -> {
-                this.arguments[0].writeBytecode(method, env, breakLabel, continueLabel);
-                method.visitInsn(Opcodes.F2I);
-                method.visitInsn(Opcodes.I2F);
-            }
             // Custom
             case CLAMP -> {
                 this.arguments[0].writeBytecode(method, env, breakLabel, continueLabel);
@@ -182,19 +200,6 @@ public record MathNode(MathOperation function, Node... arguments) implements Nod
                 this.arguments[2].writeBytecode(method, env, breakLabel, continueLabel);
                 method.visitMethodInsn(Opcodes.INVOKESTATIC, "gg/moonflower/molangcompiler/core/MolangUtil", "dieRoll", "(IFF)F", false);
             }
-            case DIE_ROLL_INTEGER -> {
-                this.arguments[0].writeBytecode(method, env, breakLabel, continueLabel);
-                method.visitInsn(Opcodes.F2I);
-                this.arguments[1].writeBytecode(method, env, breakLabel, continueLabel);
-                method.visitInsn(Opcodes.F2I);
-                method.visitInsn(Opcodes.I2F);
-                this.arguments[2].writeBytecode(method, env, breakLabel, continueLabel);
-                method.visitInsn(Opcodes.F2I);
-                method.visitInsn(Opcodes.I2F);
-                method.visitMethodInsn(Opcodes.INVOKESTATIC, "gg/moonflower/molangcompiler/core/MolangUtil", "dieRoll", "(IFF)F", false);
-                method.visitInsn(Opcodes.F2I);
-                method.visitInsn(Opcodes.I2F);
-            }
             case HERMITE_BLEND -> {
                 this.arguments[0].writeBytecode(method, env, breakLabel, continueLabel);
                 method.visitMethodInsn(Opcodes.INVOKESTATIC, "gg/moonflower/molangcompiler/core/MolangUtil", "hermiteBlend", "(F)F", false);
@@ -220,17 +225,6 @@ public record MathNode(MathOperation function, Node... arguments) implements Nod
                 this.arguments[1].writeBytecode(method, env, breakLabel, continueLabel);
                 method.visitMethodInsn(Opcodes.INVOKESTATIC, "gg/moonflower/molangcompiler/core/MolangUtil", "random", "(FF)F", false);
             }
-            case RANDOM_INTEGER -> {
-                this.arguments[0].writeBytecode(method, env, breakLabel, continueLabel);
-                method.visitInsn(Opcodes.F2I);
-                method.visitInsn(Opcodes.I2F);
-                this.arguments[1].writeBytecode(method, env, breakLabel, continueLabel);
-                method.visitInsn(Opcodes.F2I);
-                method.visitInsn(Opcodes.I2F);
-                method.visitMethodInsn(Opcodes.INVOKESTATIC, "gg/moonflower/molangcompiler/core/MolangUtil", "random", "(FF)F", false);
-                method.visitInsn(Opcodes.F2I);
-                method.visitInsn(Opcodes.I2F);
-            }
             case SIGN -> {
                 this.arguments[0].writeBytecode(method, env, breakLabel, continueLabel);
                 method.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Math", "signum", "(F)F", false);
@@ -242,4 +236,203 @@ public record MathNode(MathOperation function, Node... arguments) implements Nod
             }
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Writes the result of a function with double values instead of floats. Arguments are expected to write doubles as well.
+     *
+     * @param method        The method to write into
+     * @param env           The bytecode compilation environment
+     * @param breakLabel    The label to jump to when breaking out of a loop
+     * @param continueLabel The label to jump to when continuing a loop
+     * @throws MolangException If any argument could not be written
+     */
+    public void writeDoubleBytecode(MethodNode method, MolangBytecodeEnvironment env, @Nullable Label breakLabel, @Nullable Label continueLabel) throws MolangException {
+        switch (this.function) {
+            case ABS, CEIL, EXP, FLOOR, SQRT -> {
+                this.writeArguments(method, env, breakLabel, continueLabel);
+                method.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Math", this.function.getName(), "(D)D", false);
+            }
+            case LN -> {
+                this.writeArguments(method, env, breakLabel, continueLabel);
+                method.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Math", "log", "(D)D", false);
+            }
+            case MAX, MIN, POW -> {
+                this.writeArguments(method, env, breakLabel, continueLabel);
+                method.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Math", this.function.getName(), "(DD)D", false);
+            }
+            // Convert to degrees
+            case ACOS, ASIN, ATAN -> {
+                this.writeArguments(method, env, breakLabel, continueLabel);
+                method.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Math", this.function.getName(), "(D)D", false);
+                method.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Math", "toDegrees", "(D)D", false);
+            }
+            case ATAN2 -> {
+                this.writeArguments(method, env, breakLabel, continueLabel);
+                method.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Math", this.function.getName(), "(DD)D", false);
+                method.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Math", "toDegrees", "(D)D", false);
+            }
+            // Convert to radians
+            case COS, SIN -> {
+                this.writeArguments(method, env, breakLabel, continueLabel);
+                method.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Math", "toRadians", "(D)D", false);
+                method.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Math", this.function.getName(), "(D)D", false);
+            }
+            case ROUND -> {
+                this.arguments[0].writeBytecode(method, env, breakLabel, continueLabel);
+                method.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Math", this.function.getName(), "(D)J", false);
+                method.visitInsn(Opcodes.L2D);
+            }
+            // Integer results
+            case TRUNC, DIE_ROLL_INTEGER, RANDOM_INTEGER -> {
+                this.writeIntBytecode(method, env, breakLabel, continueLabel, true);
+                method.visitInsn(Opcodes.I2D);
+            }
+            case MOD -> {
+                this.writeArguments(method, env, breakLabel, continueLabel);
+                method.visitInsn(Opcodes.DREM);
+            }
+            case PI -> method.visitLdcInsn(Math.PI);
+            // Custom
+            case CLAMP -> {
+                this.writeArguments(method, env, breakLabel, continueLabel);
+                method.visitMethodInsn(Opcodes.INVOKESTATIC, "gg/moonflower/molangcompiler/core/MolangUtil", "clamp", "(DDD)D", false);
+            }
+            case DIE_ROLL -> {
+                this.arguments[0].writeBytecode(method, env, breakLabel, continueLabel);
+                method.visitInsn(Opcodes.D2I);
+                this.arguments[1].writeBytecode(method, env, breakLabel, continueLabel);
+                this.arguments[2].writeBytecode(method, env, breakLabel, continueLabel);
+                method.visitMethodInsn(Opcodes.INVOKESTATIC, "gg/moonflower/molangcompiler/core/MolangUtil", "dieRoll", "(IDD)D", false);
+            }
+            case HERMITE_BLEND -> {
+                this.writeArguments(method, env, breakLabel, continueLabel);
+                method.visitMethodInsn(Opcodes.INVOKESTATIC, "gg/moonflower/molangcompiler/core/MolangUtil", "hermiteBlend", "(D)D", false);
+            }
+            case LERP -> {
+                this.writeArguments(method, env, breakLabel, continueLabel);
+                method.visitMethodInsn(Opcodes.INVOKESTATIC, "gg/moonflower/molangcompiler/core/MolangUtil", "lerp", "(DDD)D", false);
+            }
+            case LERPROTATE -> {
+                this.writeArguments(method, env, breakLabel, continueLabel);
+                method.visitMethodInsn(Opcodes.INVOKESTATIC, "gg/moonflower/molangcompiler/core/MolangUtil", "lerpRotate", "(DDD)D", false);
+            }
+            case MIN_ANGLE -> {
+                this.writeArguments(method, env, breakLabel, continueLabel);
+                method.visitMethodInsn(Opcodes.INVOKESTATIC, "gg/moonflower/molangcompiler/core/MolangUtil", "wrapDegrees", "(D)D", false);
+            }
+            case RANDOM -> {
+                this.writeArguments(method, env, breakLabel, continueLabel);
+                method.visitMethodInsn(Opcodes.INVOKESTATIC, "gg/moonflower/molangcompiler/core/MolangUtil", "random", "(DD)D", false);
+            }
+            case SIGN -> {
+                this.writeArguments(method, env, breakLabel, continueLabel);
+                method.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Math", "signum", "(D)D", false);
+            }
+            case TRIANGLE_WAVE -> {
+                this.writeArguments(method, env, breakLabel, continueLabel);
+                method.visitMethodInsn(Opcodes.INVOKESTATIC, "gg/moonflower/molangcompiler/core/MolangUtil", "triangleWave", "(DD)D", false);
+            }
+        }
+    }
+
+    /**
+     * Writes the result of a function that always results in an integer as an int instead of a float.
+     *
+     * @param method        The method to write into
+     * @param env           The bytecode compilation environment
+     * @param breakLabel    The label to jump to when breaking out of a loop
+     * @param continueLabel The label to jump to when continuing a loop
+     * @throws MolangException If the function does not result in an integer
+     * @see #isInteger(MathOperation)
+     */
+    public void writeIntBytecode(MethodNode method, MolangBytecodeEnvironment env, @Nullable Label breakLabel, @Nullable Label continueLabel) throws MolangException {
+        this.writeIntBytecode(method, env, breakLabel, continueLabel, false);
+    }
+
+    /**
+     * Writes the result of a function that always results in an integer as an int instead of a float.
+     *
+     * @param method          The method to write into
+     * @param env             The bytecode compilation environment
+     * @param breakLabel      The label to jump to when breaking out of a loop
+     * @param continueLabel   The label to jump to when continuing a loop
+     * @param doublePrecision Whether the arguments write doubles instead of floats
+     * @throws MolangException If the function does not result in an integer
+     * @see #isInteger(MathOperation)
+     */
+    public void writeIntBytecode(MethodNode method, MolangBytecodeEnvironment env, @Nullable Label breakLabel, @Nullable Label continueLabel, boolean doublePrecision) throws MolangException {
+        int toInt = doublePrecision ? Opcodes.D2I : Opcodes.F2I;
+        switch (this.function) {
+            case ROUND -> {
+                this.arguments[0].writeBytecode(method, env, breakLabel, continueLabel);
+                if (doublePrecision) {
+                    method.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Math", this.function.getName(), "(D)J", false);
+                    method.visitInsn(Opcodes.L2I);
+                } else {
+                    method.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Math", this.function.getName(), "(F)I", false);
+                }
+            }
+            case TRUNC -> {
+                this.arguments[0].writeBytecode(method, env, breakLabel, continueLabel);
+                method.visitInsn(toInt);
+            }
+            case DIE_ROLL_INTEGER -> {
+                this.arguments[0].writeBytecode(method, env, breakLabel, continueLabel);
+                method.visitInsn(toInt);
+                this.arguments[1].writeBytecode(method, env, breakLabel, continueLabel);
+                method.visitInsn(toInt);
+                method.visitInsn(Opcodes.I2F);
+                this.arguments[2].writeBytecode(method, env, breakLabel, continueLabel);
+                method.visitInsn(toInt);
+                method.visitInsn(Opcodes.I2F);
+                method.visitMethodInsn(Opcodes.INVOKESTATIC, "gg/moonflower/molangcompiler/core/MolangUtil", "dieRoll", "(IFF)F", false);
+                method.visitInsn(Opcodes.F2I);
+            }
+            case RANDOM_INTEGER -> {
+                this.arguments[0].writeBytecode(method, env, breakLabel, continueLabel);
+                method.visitInsn(toInt);
+                method.visitInsn(Opcodes.I2F);
+                this.arguments[1].writeBytecode(method, env, breakLabel, continueLabel);
+                method.visitInsn(toInt);
+                method.visitInsn(Opcodes.I2F);
+                method.visitMethodInsn(Opcodes.INVOKESTATIC, "gg/moonflower/molangcompiler/core/MolangUtil", "random", "(FF)F", false);
+                method.visitInsn(Opcodes.F2I);
+            }
+            default -> throw new MolangException("Function " + this.function + " does not result in an integer");
+        }
+    }
+
+    private void writeArguments(MethodNode method, MolangBytecodeEnvironment env, @Nullable Label breakLabel, @Nullable Label continueLabel) throws MolangException {
+        for (Node argument : this.arguments) {
+            argument.writeBytecode(method, env, breakLabel, continueLabel);
+        }
+    }
+
+    /**
+     * @param function The function to check
+     * @return Whether the function always results in an integer that can be written as an int
+     */
+    public static boolean isInteger(MathOperation function) {
+        return function == MathOperation.ROUND || function == MathOperation.TRUNC || function == MathOperation.DIE_ROLL_INTEGER || function == MathOperation.RANDOM_INTEGER;
+    }
+
+    @Override
+    public Node transformChildren(NodeTransformer transformer) throws MolangException {
+        Node[] arguments = transformer.transformAll(this.arguments);
+        return arguments == this.arguments ? this : new MathNode(this.function, arguments);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) return true;
+        if (obj == null || obj.getClass() != this.getClass()) return false;
+        var that = (MathNode) obj;
+        return this.function == that.function &&
+                Arrays.equals(this.arguments, that.arguments);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Objects.hashCode(this.function) + Arrays.hashCode(this.arguments);
+    }
+}
@@ -3,6 +3,7 @@ package gg.moonflower.molangcompiler.core.ast;
 import gg.moonflower.molangcompiler.api.exception.MolangException;
 import gg.moonflower.molangcompiler.core.compiler.BytecodeCompiler;
 import gg.moonflower.molangcompiler.core.compiler.MolangBytecodeEnvironment;
+import gg.moonflower.molangcompiler.core.compiler.MolangInterpreterContext;
 import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.Label;
@@ -37,10 +38,28 @@ public record NegateNode(Node value) implements Node {
         return this.value.evaluate(environment) == 0.0F ? 1.0F : 0.0F;
     }
 
+    @Override
+    public float interpret(MolangInterpreterContext context) throws MolangException {
+        return this.value.interpret(context) == 0.0F ? 1.0F : 0.0F;
+    }
+
     @Override
     public void writeBytecode(MethodNode method, MolangBytecodeEnvironment environment, @Nullable Label breakLabel, @Nullable Label continueLabel) throws MolangException {
-        if (environment.optimize() && this.isConstant()) {
-            BytecodeCompiler.writeFloatConst(method, this.evaluate(environment));
+        if (environment.optimize()) {
+            if (this.isConstant()) {
+                BytecodeCompiler.writeFloatConst(method, this.evaluate(environment));
+                return;
+            }
+
+            // (compare(value, 0) & 1) ^ 1
+            this.value.writeBytecode(method, environment, breakLabel, continueLabel);
+            method.visitInsn(Opcodes.FCONST_0);
+            method.visitInsn(Opcodes.FCMPL);
+            method.visitInsn(Opcodes.ICONST_1);
+            method.visitInsn(Opcodes.IAND);
+            method.visitInsn(Opcodes.ICONST_1);
+            method.visitInsn(Opcodes.IXOR);
+            method.visitInsn(Opcodes.I2F);
             return;
         }
 
@@ -52,7 +71,7 @@ public record NegateNode(Node value) implements Node {
         method.visitInsn(Opcodes.FCMPL);
 
         //value ?
-        method.visitJumpInsn(Opcodes.IFEQ, label_right);
+        method.visitJumpInsn(Opcodes.IFNE, label_right);
 
         // 1
         method.visitInsn(Opcodes.FCONST_1);
@@ -64,4 +83,19 @@ public record NegateNode(Node value) implements Node {
 
         method.visitLabel(label_end);
     }
+
+    @Override
+    public void writeCondition(MethodNode method, MolangBytecodeEnvironment environment, Label target, boolean jumpIf, @Nullable Label breakLabel, @Nullable Label continueLabel) throws MolangException {
+        if (environment.optimize() && !this.isConstant()) {
+            this.value.writeCondition(method, environment, target, !jumpIf, breakLabel, continueLabel);
+        } else {
+            Node.super.writeCondition(method, environment, target, jumpIf, breakLabel, continueLabel);
+        }
+    }
+
+    @Override
+    public Node transformChildren(NodeTransformer transformer) throws MolangException {
+        Node value = transformer.transform(this.value);
+        return value == this.value ? this : new NegateNode(value);
+    }
 }
@@ -2,9 +2,11 @@ package gg.moonflower.molangcompiler.core.ast;
 
 import gg.moonflower.molangcompiler.api.exception.MolangException;
 import gg.moonflower.molangcompiler.core.compiler.MolangBytecodeEnvironment;
+import gg.moonflower.molangcompiler.core.compiler.MolangInterpreterContext;
 import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.Label;
+import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.MethodNode;
 
 /**
@@ -36,6 +38,17 @@ public interface Node {
         throw new MolangException("Cannot statically evaluate " + this.getClass().getSimpleName());
     }
 
+    /**
+     * Evaluates this node without generating bytecode.
+     *
+     * @param context The state of the current evaluation
+     * @return The value of this node or <code>0</code> if it does not have a value
+     * @throws MolangException If any error occurs while evaluating this node
+     */
+    default float interpret(MolangInterpreterContext context) throws MolangException {
+        throw new MolangException("Cannot interpret " + this.getClass().getSimpleName());
+    }
+
     /**
      * Writes java bytecode representing this node to the specified method.
      *
@@ -48,4 +61,34 @@ public interface Node {
     default void writeBytecode(MethodNode method, MolangBytecodeEnvironment environment, @Nullable Label breakLabel, @Nullable Label continueLabel) throws MolangException {
         throw new MolangException("Not implemented (" + this.getClass().getSimpleName() + " " + this + ")");
     }
+
+    /**
+     * Writes java bytecode that jumps to the target if this node is <code>true</code> or <code>false</code>. Nothing is left on the stack.
+     *
+     * @param method        The method to write into
+     * @param environment   The bytecode compilation environment
+     * @param target        The label to jump to
+     * @param jumpIf        Whether to jump if the value is not zero instead of if it is zero
+     * @param breakLabel    A label to break out of loops or <code>null</code> if not in a loop
+     * @param continueLabel A label to continue to the next loop iteration or <code>null</code> if not in a loop
+     * @throws MolangException If any syntax problems prevent the expression from being written
+     */
+    default void writeCondition(MethodNode method, MolangBytecodeEnvironment environment, Label target, boolean jumpIf, @Nullable Label breakLabel, @Nullable Label continueLabel) throws MolangException {
+        this.writeBytecode(method, environment, breakLabel, continueLabel);
+        method.visitInsn(Opcodes.FCONST_0);
+        method.visitInsn(Opcodes.FCMPL);
+        method.visitJumpInsn(jumpIf ? Opcodes.IFNE : Opcodes.IFEQ, target);
+    }
+
+    /**
+     * Creates a copy of this node with each direct child replaced by the result of the transformer.
+     * Nodes without children, or where every child was returned unchanged, return themselves.
+     *
+     * @param transformer The transformer to apply to each child
+     * @return The node with transformed children
+     * @throws MolangException If any child cannot be transformed
+     */
+    default Node transformChildren(NodeTransformer transformer) throws MolangException {
+        return this;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,43 @@
+package gg.moonflower.molangcompiler.core.ast;
+
+import gg.moonflower.molangcompiler.api.exception.MolangException;
+import org.jetbrains.annotations.ApiStatus;
+
+/**
+ * Replaces a node with another node while walking a tree.
+ *
+ * @author Ocelot
+ * @see Node#transformChildren(NodeTransformer)
+ */
+@ApiStatus.Internal
+@FunctionalInterface
+public interface NodeTransformer {
+
+    /**
+     * @param node The node to transform
+     * @return The node to use instead or the same node to keep it
+     * @throws MolangException If the node cannot be transformed
+     */
+    Node transform(Node node) throws MolangException;
+
+    /**
+     * Transforms every node in the array.
+     *
+     * @param nodes The nodes to transform
+     * @return The same array if no node changed, otherwise a new array with the transformed nodes
+     * @throws MolangException If any node cannot be transformed
+     */
+    default Node[] transformAll(Node[] nodes) throws MolangException {
+        Node[] result = nodes;
+        for (int i = 0; i < nodes.length; i++) {
+            Node node = this.transform(nodes[i]);
+            if (node != nodes[i]) {
+                if (result == nodes) {
+                    result = nodes.clone();
+                }
+                result[i] = node;
+            }
+        }
+        return result;
+    }
+}
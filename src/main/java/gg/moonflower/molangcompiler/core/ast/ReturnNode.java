@@ -3,6 +3,7 @@ package gg.moonflower.molangcompiler.core.ast;
 import gg.moonflower.molangcompiler.api.exception.MolangException;
 import gg.moonflower.molangcompiler.core.compiler.BytecodeCompiler;
 import gg.moonflower.molangcompiler.core.compiler.MolangBytecodeEnvironment;
+import gg.moonflower.molangcompiler.core.compiler.MolangInterpreterContext;
 import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.Label;
@@ -38,6 +39,14 @@ public record ReturnNode(Node value) implements Node {
         return this.value.evaluate(environment);
     }
 
+    @Override
+    public float interpret(MolangInterpreterContext context) throws MolangException {
+        float value = this.value.interpret(context);
+        context.writeModifiedVariables();
+        context.setReturnValue(this.value.hasValue() ? value : 0.0F);
+        return context.getReturnValue();
+    }
+
     @Override
     public void writeBytecode(MethodNode method, MolangBytecodeEnvironment environment, @Nullable Label breakLabel, @Nullable Label continueLabel) throws MolangException {
         if (environment.optimize() && this.isConstant()) {
@@ -51,4 +60,10 @@ public record ReturnNode(Node value) implements Node {
         environment.writeModifiedVariables(method);
         method.visitInsn(Opcodes.FRETURN);
     }
-}
\ No newline at end of file
+
+    @Override
+    public Node transformChildren(NodeTransformer transformer) throws MolangException {
+        Node value = transformer.transform(this.value);
+        return value == this.value ? this : new ReturnNode(value);
+    }
+}
@@ -2,11 +2,14 @@ package gg.moonflower.molangcompiler.core.ast;
 
 import gg.moonflower.molangcompiler.api.exception.MolangException;
 import gg.moonflower.molangcompiler.core.compiler.MolangBytecodeEnvironment;
+import gg.moonflower.molangcompiler.core.compiler.MolangInterpreterContext;
 import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.Label;
 import org.objectweb.asm.tree.MethodNode;
 
+import java.util.Set;
+
 /**
  * Represents a local scope with independent variables.
  *
@@ -36,10 +39,26 @@ public record ScopeNode(Node node) implements Node {
         return this.node.evaluate(environment);
     }
 
+    @Override
+    public float interpret(MolangInterpreterContext context) throws MolangException {
+        Set<String> known = context.getVariables();
+        float value = this.node.interpret(context);
+        context.writeModifiedVariables();
+        // Values first read in the scope are read again after it
+        context.forgetAllExcept(known);
+        return value;
+    }
+
     @Override
     public void writeBytecode(MethodNode method, MolangBytecodeEnvironment environment, @Nullable Label breakLabel, @Nullable Label continueLabel) throws MolangException {
         MolangBytecodeEnvironment scopeEnvironment = new MolangBytecodeEnvironment(environment);
         this.node.writeBytecode(method, scopeEnvironment, breakLabel, continueLabel);
         scopeEnvironment.writeModifiedVariables(method);
     }
+
+    @Override
+    public Node transformChildren(NodeTransformer transformer) throws MolangException {
+        Node node = transformer.transform(this.node);
+        return node == this.node ? this : new ScopeNode(node);
+    }
 }
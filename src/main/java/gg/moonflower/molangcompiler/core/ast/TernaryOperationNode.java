@@ -2,12 +2,17 @@ package gg.moonflower.molangcompiler.core.ast;
 
 import gg.moonflower.molangcompiler.api.exception.MolangException;
 import gg.moonflower.molangcompiler.core.compiler.MolangBytecodeEnvironment;
+import gg.moonflower.molangcompiler.core.compiler.MolangInterpreterContext;
 import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.Label;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.MethodNode;
 
+import java.util.Arrays;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
 /**
  * Performs an "if" check on the specified value and chooses a branch.
  *
@@ -19,6 +24,8 @@ import org.objectweb.asm.tree.MethodNode;
 @ApiStatus.Internal
 public record TernaryOperationNode(Node value, Node left, Node right) implements Node {
 
+    private static final int MIN_SWITCH_CASES = 3;
+
     @Override
     public String toString() {
         return this.value + " ? " + this.left + " : " + this.right;
@@ -26,7 +33,8 @@ public record TernaryOperationNode(Node value, Node left, Node right) implements
 
     @Override
     public boolean isConstant() {
-        return this.value.isConstant();
+        // A constant condition only selects a branch, the result is constant when both branches are as well
+        return this.value.isConstant() && this.left.isConstant() && this.right.isConstant();
     }
 
     @Override
@@ -39,6 +47,15 @@ public record TernaryOperationNode(Node value, Node left, Node right) implements
         return this.value.evaluate(environment) != 0.0F ? this.left.evaluate(environment) : this.right.evaluate(environment);
     }
 
+    @Override
+    public float interpret(MolangInterpreterContext context) throws MolangException {
+        context.initializeTemps(this.left);
+        context.initializeTemps(this.right);
+        float value = this.value.interpret(context) != 0.0F ? this.left.interpret(context) : this.right.interpret(context);
+        context.writeModifiedVariables();
+        return this.hasValue() ? value : 0.0F;
+    }
+
     @Override
     public void writeBytecode(MethodNode method, MolangBytecodeEnvironment environment, @Nullable Label breakLabel, @Nullable Label continueLabel) throws MolangException {
         Label label_right = new Label();
@@ -58,36 +75,177 @@ public record TernaryOperationNode(Node value, Node left, Node right) implements
             }
             return;
         }
+        if (environment.optimize() && isBoolean(this.value) && this.left instanceof ConstNode left && left.value() == 1.0F && this.right instanceof ConstNode right && right.value() == 0.0F) {
+            // The condition already is 1 or 0
+            this.value.writeBytecode(method, environment, breakLabel, continueLabel);
+            return;
+        }
 
-        this.value.writeBytecode(method, environment, breakLabel, continueLabel);
-        method.visitInsn(Opcodes.FCONST_0);
-        method.visitInsn(Opcodes.FCMPL);
+        environment.initializeTemps(method, this.left);
+        environment.initializeTemps(method, this.right);
+        if (environment.optimize() && this.tryWriteSwitch(method, environment, breakLabel, continueLabel)) {
+            return;
+        }
 
         //value ?
-        method.visitJumpInsn(Opcodes.IFEQ, label_right);
+        this.value.writeCondition(method, environment, label_right, false, breakLabel, continueLabel);
 
         // [left]
-        {
-            MolangBytecodeEnvironment localEnvironment = new MolangBytecodeEnvironment(environment);
-            this.left.writeBytecode(method, localEnvironment, breakLabel, continueLabel);
-            if (this.left.hasValue() && !this.hasValue()) {
-                method.visitInsn(Opcodes.POP);
-            }
-            localEnvironment.writeModifiedVariables(method);
-        }
+        this.writeBranch(this.left, method, environment, breakLabel, continueLabel);
         method.visitJumpInsn(Opcodes.GOTO, label_end);
 
         //: [right]
         method.visitLabel(label_right);
-        {
-            MolangBytecodeEnvironment localEnvironment = new MolangBytecodeEnvironment(environment);
-            this.right.writeBytecode(method, environment, breakLabel, continueLabel);
-            if (this.right.hasValue() && !this.hasValue()) {
-                method.visitInsn(Opcodes.POP);
-            }
-            localEnvironment.writeModifiedVariables(method);
+        this.writeBranch(this.right, method, environment, breakLabel, continueLabel);
+
+        method.visitLabel(label_end);
+    }
+
+    // Locals loaded by a branch can't be used after the ternary
+    private void writeBranch(Node branch, MethodNode method, MolangBytecodeEnvironment environment, @Nullable Label breakLabel, @Nullable Label continueLabel) throws MolangException {
+        MolangBytecodeEnvironment localEnvironment = new MolangBytecodeEnvironment(environment);
+        branch.writeBytecode(method, localEnvironment, breakLabel, continueLabel);
+        if (branch.hasValue() && !this.hasValue()) {
+            method.visitInsn(Opcodes.POP);
+        }
+        localEnvironment.writeModifiedVariables(method);
+        environment.merge(localEnvironment);
+    }
+
+    // Chains like "v.x == 0 ? a : v.x == 1 ? b : c" jump straight to the matching branch
+    private boolean tryWriteSwitch(MethodNode method, MolangBytecodeEnvironment environment, @Nullable Label breakLabel, @Nullable Label continueLabel) throws MolangException {
+        VariableGetNode variable = getSwitchVariable(this.value);
+        if (variable == null) {
+            return false;
+        }
+
+        // The first matching condition wins, so later duplicates are never selected
+        SortedMap<Integer, Node> cases = new TreeMap<>();
+        Node fallback = this;
+        while (fallback instanceof TernaryOperationNode ternary && variable.equals(getSwitchVariable(ternary.value()))) {
+            cases.putIfAbsent(getSwitchKey(ternary.value()), ternary.left());
+            fallback = ternary.right();
+        }
+        if (cases.size() < MIN_SWITCH_CASES) {
+            return false;
+        }
+
+        Label label_fraction = new Label();
+        Label label_default = new Label();
+        Label label_end = new Label();
+
+        variable.writeBytecode(method, environment, breakLabel, continueLabel);
+        int[] keys = cases.keySet().stream().mapToInt(Integer::intValue).toArray();
+        Label[] labels = new Label[keys.length];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = new Label();
+        }
+        writeSwitch(method, keys, labels, label_default, label_fraction);
+
+        int index = 0;
+        for (Node branch : cases.values()) {
+            method.visitLabel(labels[index++]);
+            this.writeBranch(branch, method, environment, breakLabel, continueLabel);
+            method.visitJumpInsn(Opcodes.GOTO, label_end);
         }
 
+        method.visitLabel(label_fraction);
+        method.visitInsn(Opcodes.POP);
+        method.visitLabel(label_default);
+        this.writeBranch(fallback, method, environment, breakLabel, continueLabel);
         method.visitLabel(label_end);
+        return true;
+    }
+
+    /**
+     * Jumps to the label of the key equal to the float on the stack. Values that are not exactly an int jump to the fraction label with the value still on the stack.
+     *
+     * @param method        The method to write into
+     * @param keys          The keys to match in ascending order
+     * @param labels        The label to jump to for each key
+     * @param defaultLabel  The label to jump to if no key matches
+     * @param fractionLabel The label to jump to if the value has a fraction
+     */
+    public static void writeSwitch(MethodNode method, int[] keys, Label[] labels, Label defaultLabel, Label fractionLabel) {
+        writeSwitch(method, keys, labels, defaultLabel, fractionLabel, false);
+    }
+
+    /**
+     * Jumps to the label of the key equal to the float or double on the stack. Values that are not exactly an int jump to the fraction label with the int value on the stack.
+     *
+     * @param method          The method to write into
+     * @param keys            The keys to match in ascending order
+     * @param labels          The label to jump to for each key
+     * @param defaultLabel    The label to jump to if no key matches
+     * @param fractionLabel   The label to jump to if the value has a fraction
+     * @param doublePrecision Whether the value on the stack is a double instead of a float
+     */
+    public static void writeSwitch(MethodNode method, int[] keys, Label[] labels, Label defaultLabel, Label fractionLabel, boolean doublePrecision) {
+        // Only values that are exactly an int can match a case
+        if (doublePrecision) {
+            method.visitInsn(Opcodes.DUP2);
+            method.visitInsn(Opcodes.D2I);
+            method.visitInsn(Opcodes.DUP_X2);
+            method.visitInsn(Opcodes.I2D);
+            method.visitInsn(Opcodes.DCMPL);
+        } else {
+            method.visitInsn(Opcodes.DUP);
+            method.visitInsn(Opcodes.F2I);
+            method.visitInsn(Opcodes.DUP_X1);
+            method.visitInsn(Opcodes.I2F);
+            method.visitInsn(Opcodes.FCMPL);
+        }
+        method.visitJumpInsn(Opcodes.IFNE, fractionLabel);
+
+        int min = keys[0];
+        int max = keys[keys.length - 1];
+        // Same cost estimate as javac
+        long tableCost = 4L + ((long) max - min + 1) + 3 * 3;
+        long lookupCost = 3L + 2L * keys.length + 3L * keys.length;
+        if (tableCost <= lookupCost) {
+            Label[] table = new Label[max - min + 1];
+            Arrays.fill(table, defaultLabel);
+            for (int i = 0; i < keys.length; i++) {
+                table[keys[i] - min] = labels[i];
+            }
+            method.visitTableSwitchInsn(min, max, defaultLabel, table);
+        } else {
+            method.visitLookupSwitchInsn(defaultLabel, keys, labels);
+        }
+    }
+
+    @Nullable
+    private static VariableGetNode getSwitchVariable(Node node) {
+        if (!(node instanceof BinaryOperationNode operation) || operation.operator() != BinaryOperation.EQUALS) {
+            return null;
+        }
+        if (operation.left() instanceof VariableGetNode variable && isSwitchKey(operation.right())) {
+            return variable;
+        }
+        if (operation.right() instanceof VariableGetNode variable && isSwitchKey(operation.left())) {
+            return variable;
+        }
+        return null;
+    }
+
+    private static int getSwitchKey(Node node) {
+        BinaryOperationNode operation = (BinaryOperationNode) node;
+        return (int) ((ConstNode) (operation.left() instanceof ConstNode ? operation.left() : operation.right())).value();
+    }
+
+    private static boolean isSwitchKey(Node node) {
+        return node instanceof ConstNode constant && (float) (int) constant.value() == constant.value();
+    }
+
+    private static boolean isBoolean(Node node) {
+        return node instanceof NegateNode || node instanceof BinaryOperationNode operation && (operation.operator().isComparison() || operation.operator() == BinaryOperation.AND || operation.operator() == BinaryOperation.OR);
+    }
+
+    @Override
+    public Node transformChildren(NodeTransformer transformer) throws MolangException {
+        Node value = transformer.transform(this.value);
+        Node left = transformer.transform(this.left);
+        Node right = transformer.transform(this.right);
+        return value == this.value && left == this.left && right == this.right ? this : new TernaryOperationNode(value, left, right);
     }
 }
@@ -2,12 +2,12 @@ package gg.moonflower.molangcompiler.core.ast;
 
 import gg.moonflower.molangcompiler.api.exception.MolangException;
 import gg.moonflower.molangcompiler.core.compiler.MolangBytecodeEnvironment;
+import gg.moonflower.molangcompiler.core.compiler.MolangInterpreterContext;
 import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.Label;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.MethodNode;
-import ru.timeconqueror.molang.custom.Aliases;
 import ru.timeconqueror.molang.custom.QueryDomain;
 
 import java.util.Locale;
@@ -24,14 +24,7 @@ import java.util.Objects;
 public record VariableGetNode(String object, String name) implements Node {
     public VariableGetNode {
         name = name.toLowerCase(Locale.ROOT);
-
-        object = Aliases.resolve(object);
-        if (Objects.equals(object, "query")) {
-            String domain = QueryDomain.getDomain(name);
-            if (domain != null) {
-                object = domain;
-            }
-        }
+        object = QueryDomain.resolveObject(object, name);
     }
 
     @Override
@@ -49,6 +42,11 @@ public record VariableGetNode(String object, String name) implements Node {
         return true;
     }
 
+    @Override
+    public float interpret(MolangInterpreterContext context) throws MolangException {
+        return context.getVariable(this.object, this.name);
+    }
+
     @Override
     public void writeBytecode(MethodNode method, MolangBytecodeEnvironment environment, @Nullable Label breakLabel, @Nullable Label continueLabel) throws MolangException {
         int index = environment.loadVariable(method, this.object, this.name);
@@ -2,11 +2,13 @@ package gg.moonflower.molangcompiler.core.ast;
 
 import gg.moonflower.molangcompiler.api.exception.MolangException;
 import gg.moonflower.molangcompiler.core.compiler.MolangBytecodeEnvironment;
+import gg.moonflower.molangcompiler.core.compiler.MolangInterpreterContext;
 import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.Label;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.MethodNode;
+import ru.timeconqueror.molang.custom.QueryDomain;
 
 /**
  * Sets the value of a variable.
@@ -23,6 +25,10 @@ public record VariableSetNode(String object,
                               Node value,
                               boolean returnValue) implements OptionalValueNode {
 
+    public VariableSetNode {
+        object = QueryDomain.resolveObject(object, name);
+    }
+
     public VariableSetNode(String object, String name, Node value) {
         this(object, name, value, false);
     }
@@ -42,6 +48,13 @@ public record VariableSetNode(String object,
         return this.returnValue;
     }
 
+    @Override
+    public float interpret(MolangInterpreterContext context) throws MolangException {
+        float value = this.value.interpret(context);
+        context.setVariable(this.object, this.name, value);
+        return this.returnValue ? value : 0.0F;
+    }
+
     @Override
     public void writeBytecode(MethodNode method, MolangBytecodeEnvironment environment, @Nullable Label breakLabel, @Nullable Label continueLabel) throws MolangException {
         if (!"temp".equals(this.object)) {
@@ -55,11 +68,17 @@ public record VariableSetNode(String object,
         }
         int index = environment.allocateVariable(this.object + "." + this.name);
         method.visitVarInsn(Opcodes.FSTORE, index);
-        environment.markDirty(this.object, this.name);
+        environment.markDirty(method, this.object, this.name);
     }
 
     @Override
     public VariableSetNode withReturnValue() {
         return this.returnValue ? this : new VariableSetNode(this.object, this.name, this.value, true);
     }
-}
\ No newline at end of file
+
+    @Override
+    public Node transformChildren(NodeTransformer transformer) throws MolangException {
+        Node value = transformer.transform(this.value);
+        return value == this.value ? this : new VariableSetNode(this.object, this.name, value, this.returnValue);
+    }
+}
@@ -2,21 +2,43 @@ package gg.moonflower.molangcompiler.core.compiler;
 
 import gg.moonflower.molangcompiler.api.MolangCompiler;
 import gg.moonflower.molangcompiler.api.MolangExpression;
+import gg.moonflower.molangcompiler.api.exception.MolangException;
 import gg.moonflower.molangcompiler.api.exception.MolangSyntaxException;
 import gg.moonflower.molangcompiler.core.ast.Node;
+import gg.moonflower.molangcompiler.core.ir.IrEmitter;
+import gg.moonflower.molangcompiler.core.ir.IrFunction;
+import gg.moonflower.molangcompiler.core.node.MolangModuleNode;
+import gg.moonflower.molangcompiler.core.node.MolangTieredNode;
+import gg.moonflower.molangcompiler.core.optimizer.AlgebraicSimplifier;
+import gg.moonflower.molangcompiler.core.optimizer.ConstantFolder;
+import gg.moonflower.molangcompiler.core.optimizer.PassManager;
 import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.Label;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
 import org.objectweb.asm.tree.MethodNode;
 import ru.timeconqueror.molang.CompilerUtils;
 
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
 
 /**
@@ -26,23 +48,52 @@ import java.util.regex.Pattern;
 public class BytecodeCompiler extends ClassLoader {
 
     public static final int FLAG_OPTIMIZE = 1;
+    /**
+     * The version of the generated code. This must be changed whenever the bytecode generated for the same node changes,
+     * so classes stored by older versions are no longer used.
+     */
+    public static final int CODEGEN_VERSION = 12;
 
     public static final int THIS_INDEX = 0;
     public static final int RUNTIME_INDEX = 1;
     public static final int VARIABLE_START = 2;
 
+    // Keeps the switch and constant pool of a single module well within the class file limits
+    private static final int MODULE_SIZE = 1024;
     private static final Pattern DASH = Pattern.compile("-");
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final String PACKAGE = BytecodeCompiler.class.getPackageName().replace('.', '/') + "/";
 
     //here to skip compiler optimization for future library shading
     private static final String molangEnvDescriptor = CompilerUtils.compilerOptimizationHack("(L", "gg/moonflower/molangcompiler/api/MolangEnvironment", ";)F");
+    private static final String molangEnvDoubleDescriptor = CompilerUtils.compilerOptimizationHack("(L", "gg/moonflower/molangcompiler/api/MolangEnvironment", ";)D");
+
+    static {
+        // Expressions are compiled from many threads at once, so class definition must not lock the whole loader
+        ClassLoader.registerAsParallelCapable();
+    }
 
     private final ThreadLocal<MolangBytecodeEnvironment> environment;
     private final boolean writeClasses;
+    private final boolean sharedConstants;
+    private final boolean hiddenClasses;
+    private final boolean fastMath;
+    private final boolean doublePrecision;
+    private final PassManager passes;
+    private final Map<Node, SharedClass> sharedClasses;
+    private final ReferenceQueue<Class<?>> sharedClassQueue;
 
     public BytecodeCompiler(int flags, ClassLoader parent) {
         super(parent);
         this.environment = ThreadLocal.withInitial(() -> new MolangBytecodeEnvironment(flags));
         this.writeClasses = (flags & MolangCompiler.WRITE_CLASSES_FLAG) > 0;
+        this.sharedConstants = (flags & MolangCompiler.SHARED_CONSTANTS_FLAG) > 0;
+        this.hiddenClasses = (flags & MolangCompiler.HIDDEN_CLASSES_FLAG) > 0;
+        this.fastMath = (flags & MolangCompiler.FAST_MATH_FLAG) > 0;
+        this.doublePrecision = (flags & MolangCompiler.DOUBLE_PRECISION_FLAG) > 0;
+        this.passes = PassManager.create(flags);
+        this.sharedClasses = new ConcurrentHashMap<>();
+        this.sharedClassQueue = new ReferenceQueue<>();
     }
 
     public BytecodeCompiler(int flags) {
@@ -50,101 +101,433 @@ public class BytecodeCompiler extends ClassLoader {
     }
 
     public MolangExpression build(Node node) throws MolangSyntaxException {
+        return this.build(node, null);
+    }
+
+    /**
+     * Compiles the specified node into an expression.
+     *
+     * @param node     The node to compile
+     * @param listener A listener to receive the name and data of the generated class or <code>null</code>.
+     *                 This is only called for classes that can be defined again with {@link #define(String, byte[])}
+     * @return A new expression
+     * @throws MolangSyntaxException If the node could not be converted to bytecode
+     */
+    public MolangExpression build(Node node, @Nullable BiConsumer<String, byte[]> listener) throws MolangSyntaxException {
         MolangBytecodeEnvironment environment = this.environment.get();
         environment.reset();
         try {
-            if (environment.optimize() && node.isConstant()) {
+            if (this.isFolded(node, environment)) {
                 return MolangExpression.of(node.evaluate(environment));
             }
 
-            ClassNode classNode = new ClassNode(Opcodes.ASM5);
-            classNode.version = Opcodes.V1_8;
-            classNode.superName = "java/lang/Object";
-            classNode.name = "Expression_" + DASH.matcher(UUID.randomUUID().toString()).replaceAll("");
-            classNode.access = Opcodes.ACC_PUBLIC;
-            classNode.interfaces.add(MolangExpression.class.getName().replaceAll("\\.", "/"));
-
-            MethodNode init = new MethodNode();
-            init.access = Opcodes.ACC_PUBLIC;
-            init.name = "<init>";
-            init.desc = "()V";
-            init.visitVarInsn(Opcodes.ALOAD, 0);
-            init.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
-            init.visitInsn(Opcodes.RETURN);
-            classNode.methods.add(init);
-
-            MethodNode method = new MethodNode();
-            method.access = Opcodes.ACC_PUBLIC;
-            method.name = "get";
-            method.desc = molangEnvDescriptor;
-            method.exceptions = List.of("gg/moonflower/molangcompiler/api/exception/MolangRuntimeException");
-            node.writeBytecode(method, environment, null, null);
-            classNode.methods.add(method);
+            if (this.sharedConstants) {
+                return this.buildShared(node, environment);
+            }
 
             String compiledSource = node.toString();
+            ClassNode classNode = this.createClass("Expression_", MolangExpression.class);
+            classNode.methods.add(createDefaultConstructor());
+
+            Node generated = environment.optimize() ? this.passes.optimize(node, environment) : node;
+            this.writeGetMethods(classNode, generated, environment, null);
+
+            writeObjectMethods(classNode, source -> source.visitLdcInsn(compiledSource), hashCode -> BytecodeCompiler.writeIntConst(hashCode, compiledSource.hashCode()));
+
+            byte[] data = this.writeClass(classNode);
+            if (listener != null) {
+                listener.accept(classNode.name, data);
+            }
+            return (MolangExpression) this.defineClass(classNode.name, data).getConstructor().newInstance();
+        } catch (Throwable t) {
+            throw new MolangSyntaxException("Failed to convert expression '" + node + "' to bytecode", t);
+        }
+    }
 
-            MethodNode equals = new MethodNode();
-            Label equalsFail = new Label();
-            Label equalsReturn = new Label();
-            equals.access = Opcodes.ACC_PUBLIC;
-            equals.name = "equals";
-            equals.desc = "(Ljava/lang/Object;)Z";
-
-            equals.visitVarInsn(Opcodes.ALOAD, 1);
-            equals.visitTypeInsn(Opcodes.INSTANCEOF, "gg/moonflower/molangcompiler/api/MolangExpression");
-            equals.visitJumpInsn(Opcodes.IFEQ, equalsFail); // if !(obj instanceof MolangExpression) goto equalsFail
-
-            equals.visitLdcInsn(compiledSource);
-            equals.visitVarInsn(Opcodes.ALOAD, 1);
-            equals.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/Object", "toString", "()Ljava/lang/String;", false);
-            equals.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/String", "equals", "(Ljava/lang/Object;)Z", false);
-            equals.visitJumpInsn(Opcodes.IFEQ, equalsFail); // if !source.equals(obj.toString()) goto equalsFail
-
-            BytecodeCompiler.writeIntConst(equals, 1);
-            equals.visitJumpInsn(Opcodes.GOTO, equalsReturn);
-
-            equals.visitLabel(equalsFail);
-            BytecodeCompiler.writeIntConst(equals, 0);
-
-            equals.visitLabel(equalsReturn);
-            equals.visitInsn(Opcodes.IRETURN);
-
-            classNode.methods.add(equals);
-
-            MethodNode hashCode = new MethodNode();
-            hashCode.access = Opcodes.ACC_PUBLIC;
-            hashCode.name = "hashCode";
-            hashCode.desc = "()I";
-            BytecodeCompiler.writeIntConst(hashCode, compiledSource.hashCode());
-            hashCode.visitInsn(Opcodes.IRETURN);
-            classNode.methods.add(hashCode);
-
-            MethodNode toString = new MethodNode();
-            toString.access = Opcodes.ACC_PUBLIC;
-            toString.name = "toString";
-            toString.desc = "()Ljava/lang/String;";
-            toString.visitLdcInsn(compiledSource);
-            toString.visitInsn(Opcodes.ARETURN);
-            classNode.methods.add(toString);
-
-            ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
-            classNode.accept(cw);
-            byte[] data = cw.toByteArray();
-
-            if (this.writeClasses) {
-                Path path = Paths.get(classNode.name + ".class");
-                if (!Files.exists(path)) {
-                    Files.createFile(path);
+    /**
+     * Defines a class previously generated by this compiler with the same flags.
+     *
+     * @param name The internal name of the class
+     * @param data The class file data
+     * @return A new instance of the expression
+     * @throws MolangSyntaxException If the class could not be defined
+     */
+    public MolangExpression define(String name, byte[] data) throws MolangSyntaxException {
+        try {
+            Class<?> expressionClass;
+            if (this.hiddenClasses) {
+                expressionClass = this.defineClass(name, data);
+            } else {
+                // The same stored class may be requested multiple times
+                synchronized (this.getClassLoadingLock(name)) {
+                    expressionClass = this.findLoadedClass(name.replace('/', '.'));
+                    if (expressionClass == null) {
+                        expressionClass = this.defineClass(name, data);
+                    }
                 }
-                Files.write(path, data);
             }
+            return (MolangExpression) expressionClass.getConstructor().newInstance();
+        } catch (Throwable t) {
+            throw new MolangSyntaxException("Failed to define stored expression " + name, t);
+        }
+    }
 
-            return (MolangExpression) this.defineClass(classNode.name, data, 0, data.length).getConstructor().newInstance();
+    /**
+     * Creates an expression that interprets the node until it has been evaluated the specified number of times, then switches to bytecode.
+     * Syntax errors are still reported immediately, only the class is generated later.
+     *
+     * @param node      The node to compile
+     * @param threshold The number of evaluations before bytecode is generated
+     * @param executor  The executor to generate bytecode on
+     * @param listener  A listener to receive the generated class once it is compiled or <code>null</code>
+     * @return A new expression
+     * @throws MolangSyntaxException If the node could not be converted to bytecode
+     */
+    public MolangExpression buildTiered(Node node, int threshold, Executor executor, @Nullable BiConsumer<String, byte[]> listener) throws MolangSyntaxException {
+        MolangBytecodeEnvironment environment = this.environment.get();
+        environment.reset();
+        try {
+            if (this.isFolded(node, environment)) {
+                return MolangExpression.of(node.evaluate(environment));
+            }
+
+            // Writing the method is cheap compared to generating and defining the class, and finds the same errors
+            node.writeBytecode(createGetMethod(), environment, null, null);
+            environment.reset();
+
+            Node interpreted = environment.optimize() ? AlgebraicSimplifier.simplify(ConstantFolder.fold(node, environment), this.fastMath) : node;
+            return new MolangTieredNode(node, interpreted, MolangInterpreterContext.findTemps(interpreted), threshold, executor, tieredNode -> this.build(tieredNode, listener));
         } catch (Throwable t) {
             throw new MolangSyntaxException("Failed to convert expression '" + node + "' to bytecode", t);
         }
     }
 
+    /**
+     * Compiles all nodes as static methods of as few module classes as possible.
+     * Each returned expression is a {@link MolangModuleNode} handle, so callers only ever see one expression class.
+     *
+     * @param nodes The nodes to compile
+     * @return An expression for each node in the same order
+     * @throws MolangSyntaxException If any node could not be converted to bytecode
+     */
+    public List<MolangExpression> buildModule(List<Node> nodes) throws MolangSyntaxException {
+        MolangBytecodeEnvironment environment = this.environment.get();
+        MolangExpression[] expressions = new MolangExpression[nodes.size()];
+        List<Integer> packed = new ArrayList<>(nodes.size());
+
+        for (int i = 0; i < nodes.size(); i++) {
+            Node node = nodes.get(i);
+            environment.reset();
+            if (environment.optimize() && node.isConstant()) {
+                try {
+                    expressions[i] = MolangExpression.of(node.evaluate(environment));
+                    continue;
+                } catch (Throwable t) {
+                    throw new MolangSyntaxException("Failed to convert expression '" + node + "' to bytecode", t);
+                }
+            }
+            packed.add(i);
+        }
+
+        for (int start = 0; start < packed.size(); start += MODULE_SIZE) {
+            this.defineModule(nodes, packed.subList(start, Math.min(start + MODULE_SIZE, packed.size())), expressions, environment);
+        }
+        return Arrays.asList(expressions);
+    }
+
+    private void defineModule(List<Node> nodes, List<Integer> indices, MolangExpression[] expressions, MolangBytecodeEnvironment environment) throws MolangSyntaxException {
+        ClassNode classNode = this.createClass("Module_", MolangExpressionModule.class);
+        classNode.methods.add(createDefaultConstructor());
+
+        // The module is passed as the first parameter so expressions keep the same locals as an instance get method.
+        // Hidden classes cannot refer to themselves by name in descriptors, so the interface is used as the parameter type
+        String expressionDescriptor = "(L" + MolangExpressionModule.class.getName().replace('.', '/') + ";" + molangEnvDescriptor.substring(1);
+        for (int i = 0; i < indices.size(); i++) {
+            Node node = nodes.get(indices.get(i));
+            environment.reset();
+            try {
+                MethodNode method = createGetMethod();
+                method.access = Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC;
+                method.name = "expression" + i;
+                method.desc = expressionDescriptor;
+                Node generated = environment.optimize() ? this.passes.optimize(node, environment) : node;
+                this.passes.writeBytecode(generated, method, environment);
+                classNode.methods.add(method);
+            } catch (Throwable t) {
+                throw new MolangSyntaxException("Failed to convert expression '" + node + "' to bytecode", t);
+            }
+        }
+
+        MethodNode get = createGetMethod();
+        get.desc = "(I" + molangEnvDescriptor.substring(1);
+        Label[] labels = new Label[indices.size()];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = new Label();
+        }
+        Label invalidIndex = new Label();
+        get.visitVarInsn(Opcodes.ILOAD, 1);
+        get.visitTableSwitchInsn(0, labels.length - 1, invalidIndex, labels);
+        for (int i = 0; i < labels.length; i++) {
+            get.visitLabel(labels[i]);
+            get.visitVarInsn(Opcodes.ALOAD, 0);
+            get.visitVarInsn(Opcodes.ALOAD, 2);
+            get.visitMethodInsn(Opcodes.INVOKESTATIC, classNode.name, "expression" + i, expressionDescriptor, false);
+            get.visitInsn(Opcodes.FRETURN);
+        }
+        get.visitLabel(invalidIndex);
+        get.visitTypeInsn(Opcodes.NEW, "java/lang/IndexOutOfBoundsException");
+        get.visitInsn(Opcodes.DUP);
+        get.visitVarInsn(Opcodes.ILOAD, 1);
+        get.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/IndexOutOfBoundsException", "<init>", "(I)V", false);
+        get.visitInsn(Opcodes.ATHROW);
+        classNode.methods.add(get);
+
+        MolangExpressionModule module;
+        try {
+            module = (MolangExpressionModule) this.defineExpression(classNode).getConstructor().newInstance();
+        } catch (Throwable t) {
+            throw new MolangSyntaxException("Failed to define module of " + indices.size() + " expressions", t);
+        }
+        for (int i = 0; i < indices.size(); i++) {
+            int index = indices.get(i);
+            expressions[index] = new MolangModuleNode(module, i, nodes.get(index).toString());
+        }
+    }
+
+    // Structurally equal trees only differing in literals reuse the same class with a different constant array
+    private MolangExpression buildShared(Node node, MolangBytecodeEnvironment environment) throws Throwable {
+        String compiledSource = node.toString();
+        if (environment.optimize()) {
+            node = this.passes.optimize(node, environment);
+        }
+
+        ConstantLifter.Result lifted = ConstantLifter.lift(node);
+        Class<?> expressionClass = this.getSharedClass(lifted.shape());
+        if (expressionClass == null) {
+            expressionClass = this.defineShared(lifted.shape(), lifted.constants().length, environment);
+            this.sharedClasses.put(lifted.shape(), new SharedClass(lifted.shape(), expressionClass, this.sharedClassQueue));
+        }
+        return (MolangExpression) expressionClass.getConstructor(float[].class, String.class).newInstance(lifted.constants(), compiledSource);
+    }
+
+    @Nullable
+    private Class<?> getSharedClass(Node shape) {
+        Reference<? extends Class<?>> reference;
+        while ((reference = this.sharedClassQueue.poll()) != null) {
+            SharedClass sharedClass = (SharedClass) reference;
+            this.sharedClasses.remove(sharedClass.shape, sharedClass);
+        }
+        SharedClass sharedClass = this.sharedClasses.get(shape);
+        return sharedClass != null ? sharedClass.get() : null;
+    }
+
+    private Class<?> defineShared(Node shape, int constants, MolangBytecodeEnvironment environment) throws Throwable {
+        ClassNode classNode = this.createClass("Expression_", MolangExpression.class);
+        classNode.fields.add(new FieldNode(Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL, "constants", "[F", null, null));
+        classNode.fields.add(new FieldNode(Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL, "source", "Ljava/lang/String;", null, null));
+        boolean doublePrecision = this.isDoublePrecision();
+        if (doublePrecision) {
+            classNode.fields.add(new FieldNode(Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL, "doubleConstants", "[D", null, null));
+        }
+
+        MethodNode init = new MethodNode();
+        init.access = Opcodes.ACC_PUBLIC;
+        init.name = "<init>";
+        init.desc = "([FLjava/lang/String;)V";
+        init.visitVarInsn(Opcodes.ALOAD, 0);
+        init.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        init.visitVarInsn(Opcodes.ALOAD, 0);
+        init.visitVarInsn(Opcodes.ALOAD, 1);
+        init.visitFieldInsn(Opcodes.PUTFIELD, classNode.name, "constants", "[F");
+        init.visitVarInsn(Opcodes.ALOAD, 0);
+        init.visitVarInsn(Opcodes.ALOAD, 2);
+        init.visitFieldInsn(Opcodes.PUTFIELD, classNode.name, "source", "Ljava/lang/String;");
+        if (doublePrecision) {
+            // Widened once here so getDouble reads constants with the same value as embedded literals
+            init.visitVarInsn(Opcodes.ALOAD, 0);
+            init.visitVarInsn(Opcodes.ALOAD, 1);
+            init.visitMethodInsn(Opcodes.INVOKESTATIC, "gg/moonflower/molangcompiler/core/MolangUtil", "widenConstants", "([F)[D", false);
+            init.visitFieldInsn(Opcodes.PUTFIELD, classNode.name, "doubleConstants", "[D");
+        }
+        init.visitInsn(Opcodes.RETURN);
+        classNode.methods.add(init);
+
+        this.writeGetMethods(classNode, shape, environment, constants > 0 ? (method, widened) -> {
+            // Load the array into a local once instead of reading the field for every literal
+            method.visitVarInsn(Opcodes.ALOAD, THIS_INDEX);
+            if (widened) {
+                method.visitFieldInsn(Opcodes.GETFIELD, classNode.name, "doubleConstants", "[D");
+            } else {
+                method.visitFieldInsn(Opcodes.GETFIELD, classNode.name, "constants", "[F");
+            }
+            method.visitVarInsn(Opcodes.ASTORE, environment.allocateVariable(MolangBytecodeEnvironment.CONSTANTS));
+        } : null);
+
+        Consumer<MethodNode> loadSource = source -> {
+            source.visitVarInsn(Opcodes.ALOAD, 0);
+            source.visitFieldInsn(Opcodes.GETFIELD, classNode.name, "source", "Ljava/lang/String;");
+        };
+        writeObjectMethods(classNode, loadSource, hashCode -> {
+            loadSource.accept(hashCode);
+            hashCode.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/String", "hashCode", "()I", false);
+        });
+
+        return this.defineExpression(classNode);
+    }
+
+    // Nodes are evaluated as floats, so double precision expressions leave constants to the generated code instead
+    private boolean isFolded(Node node, MolangBytecodeEnvironment environment) {
+        return environment.optimize() && node.isConstant() && !this.isDoublePrecision();
+    }
+
+    // Only code generated from the IR computes in double
+    private boolean isDoublePrecision() {
+        return this.doublePrecision && this.passes.getLevel() == PassManager.Level.O2;
+    }
+
+    // With double precision the expression is written as getDouble and get narrows its result. Nodes that cannot be lowered only have a float get method.
+    // The prologue is told whether it is writing getDouble
+    private void writeGetMethods(ClassNode classNode, Node node, MolangBytecodeEnvironment environment, @Nullable BiConsumer<MethodNode, Boolean> prologue) throws MolangException {
+        IrFunction function = this.isDoublePrecision() ? this.passes.lower(node, environment) : null;
+        if (function == null) {
+            MethodNode method = createGetMethod();
+            if (prologue != null) {
+                prologue.accept(method, false);
+            }
+            this.passes.writeBytecode(node, method, environment);
+            classNode.methods.add(method);
+            return;
+        }
+
+        MethodNode getDouble = createGetMethod();
+        getDouble.name = "getDouble";
+        getDouble.desc = molangEnvDoubleDescriptor;
+        if (prologue != null) {
+            prologue.accept(getDouble, true);
+        }
+        IrEmitter.emit(function, getDouble, environment, true);
+        classNode.methods.add(getDouble);
+
+        MethodNode get = createGetMethod();
+        get.visitVarInsn(Opcodes.ALOAD, THIS_INDEX);
+        get.visitVarInsn(Opcodes.ALOAD, RUNTIME_INDEX);
+        get.visitMethodInsn(Opcodes.INVOKEINTERFACE, "gg/moonflower/molangcompiler/api/MolangExpression", "getDouble", molangEnvDoubleDescriptor, true);
+        get.visitInsn(Opcodes.D2F);
+        get.visitInsn(Opcodes.FRETURN);
+        classNode.methods.add(get);
+    }
+
+    private Class<?> defineExpression(ClassNode classNode) throws IOException, IllegalAccessException {
+        return this.defineClass(classNode.name, this.writeClass(classNode));
+    }
+
+    private byte[] writeClass(ClassNode classNode) throws IOException {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
+        classNode.accept(cw);
+        byte[] data = cw.toByteArray();
+
+        if (this.writeClasses) {
+            Path path = Paths.get(classNode.name + ".class");
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            if (!Files.exists(path)) {
+                Files.createFile(path);
+            }
+            Files.write(path, data);
+        }
+        return data;
+    }
+
+    private Class<?> defineClass(String name, byte[] data) throws IllegalAccessException {
+        if (this.hiddenClasses) {
+            // Not strongly reachable from the defining loader, so the class is unloaded once the last expression using it is collected
+            return LOOKUP.defineHiddenClass(data, true).lookupClass();
+        }
+        return this.defineClass(name.replace('/', '.'), data, 0, data.length);
+    }
+
+    private ClassNode createClass(String prefix, Class<?> type) {
+        ClassNode classNode = new ClassNode(Opcodes.ASM5);
+        classNode.version = Opcodes.V1_8;
+        classNode.superName = "java/lang/Object";
+        classNode.name = prefix + DASH.matcher(UUID.randomUUID().toString()).replaceAll("");
+        if (this.hiddenClasses) {
+            // Hidden classes must be in the same package as the lookup, which changes when the library is shaded
+            classNode.name = PACKAGE + classNode.name;
+        }
+        classNode.access = Opcodes.ACC_PUBLIC;
+        classNode.interfaces.add(type.getName().replaceAll("\\.", "/"));
+        return classNode;
+    }
+
+    private static MethodNode createDefaultConstructor() {
+        MethodNode init = new MethodNode();
+        init.access = Opcodes.ACC_PUBLIC;
+        init.name = "<init>";
+        init.desc = "()V";
+        init.visitVarInsn(Opcodes.ALOAD, 0);
+        init.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        init.visitInsn(Opcodes.RETURN);
+        return init;
+    }
+
+    private static MethodNode createGetMethod() {
+        MethodNode method = new MethodNode();
+        method.access = Opcodes.ACC_PUBLIC;
+        method.name = "get";
+        method.desc = molangEnvDescriptor;
+        method.exceptions = List.of("gg/moonflower/molangcompiler/api/exception/MolangRuntimeException");
+        return method;
+    }
+
+    // Expressions are equal to any expression with the same source
+    private static void writeObjectMethods(ClassNode classNode, Consumer<MethodNode> loadSource, Consumer<MethodNode> loadHashCode) {
+        MethodNode equals = new MethodNode();
+        Label equalsFail = new Label();
+        Label equalsReturn = new Label();
+        equals.access = Opcodes.ACC_PUBLIC;
+        equals.name = "equals";
+        equals.desc = "(Ljava/lang/Object;)Z";
+
+        equals.visitVarInsn(Opcodes.ALOAD, 1);
+        equals.visitTypeInsn(Opcodes.INSTANCEOF, "gg/moonflower/molangcompiler/api/MolangExpression");
+        equals.visitJumpInsn(Opcodes.IFEQ, equalsFail); // if !(obj instanceof MolangExpression) goto equalsFail
+
+        loadSource.accept(equals);
+        equals.visitVarInsn(Opcodes.ALOAD, 1);
+        equals.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/Object", "toString", "()Ljava/lang/String;", false);
+        equals.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/String", "equals", "(Ljava/lang/Object;)Z", false);
+        equals.visitJumpInsn(Opcodes.IFEQ, equalsFail); // if !source.equals(obj.toString()) goto equalsFail
+
+        BytecodeCompiler.writeIntConst(equals, 1);
+        equals.visitJumpInsn(Opcodes.GOTO, equalsReturn);
+
+        equals.visitLabel(equalsFail);
+        BytecodeCompiler.writeIntConst(equals, 0);
+
+        equals.visitLabel(equalsReturn);
+        equals.visitInsn(Opcodes.IRETURN);
+
+        classNode.methods.add(equals);
+
+        MethodNode hashCode = new MethodNode();
+        hashCode.access = Opcodes.ACC_PUBLIC;
+        hashCode.name = "hashCode";
+        hashCode.desc = "()I";
+        loadHashCode.accept(hashCode);
+        hashCode.visitInsn(Opcodes.IRETURN);
+        classNode.methods.add(hashCode);
+
+        MethodNode toString = new MethodNode();
+        toString.access = Opcodes.ACC_PUBLIC;
+        toString.name = "toString";
+        toString.desc = "()Ljava/lang/String;";
+        loadSource.accept(toString);
+        toString.visitInsn(Opcodes.ARETURN);
+        classNode.methods.add(toString);
+    }
+
     public static void writeFloatConst(MethodNode method, float value) {
         if (value == 0.0F) {
             method.visitInsn(Opcodes.FCONST_0);
@@ -157,6 +540,16 @@ public class BytecodeCompiler extends ClassLoader {
         }
     }
 
+    public static void writeDoubleConst(MethodNode method, double value) {
+        if (Double.doubleToRawLongBits(value) == 0L) {
+            method.visitInsn(Opcodes.DCONST_0);
+        } else if (value == 1.0) {
+            method.visitInsn(Opcodes.DCONST_1);
+        } else {
+            method.visitLdcInsn(value);
+        }
+    }
+
     public static void writeIntConst(MethodNode method, int value) {
         switch (value) {
             case 0 -> method.visitInsn(Opcodes.ICONST_0);
@@ -176,4 +569,15 @@ public class BytecodeCompiler extends ClassLoader {
             }
         }
     }
-}
\ No newline at end of file
+
+    // Shapes are kept weakly so hidden classes can still be unloaded
+    private static class SharedClass extends WeakReference<Class<?>> {
+
+        private final Node shape;
+
+        private SharedClass(Node shape, Class<?> referent, ReferenceQueue<? super Class<?>> queue) {
+            super(referent, queue);
+            this.shape = shape;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package gg.moonflower.molangcompiler.core.compiler;
+
+import gg.moonflower.molangcompiler.api.exception.MolangException;
+import gg.moonflower.molangcompiler.core.ast.*;
+import org.jetbrains.annotations.ApiStatus;
+
+import java.util.Arrays;
+
+/**
+ * <p>Moves literals out of a node tree into a constant array.</p>
+ * <p>The resulting tree only contains the literals the compiler specializes code on, such as constant conditions and negation,
+ * so two trees that only differ in their other literals produce equal shapes and can share one generated class.</p>
+ *
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public final class ConstantLifter {
+
+    private float[] constants;
+    private int size;
+
+    private ConstantLifter() {
+        this.constants = new float[8];
+        this.size = 0;
+    }
+
+    /**
+     * Lifts all literals out of the specified node. Constant subtrees should be folded before this is called.
+     *
+     * @param node The node to lift literals out of
+     * @return The shape of the tree and the literals in the order they are referenced
+     * @throws MolangException If the tree cannot be transformed
+     */
+    public static Result lift(Node node) throws MolangException {
+        ConstantLifter lifter = new ConstantLifter();
+        Node shape = lifter.liftNode(node);
+        return new Result(shape, Arrays.copyOf(lifter.constants, lifter.size));
+    }
+
+    private Node liftNode(Node node) throws MolangException {
+        if (node instanceof ConstNode constNode) {
+            if (this.size == this.constants.length) {
+                this.constants = Arrays.copyOf(this.constants, this.size * 2);
+            }
+            this.constants[this.size] = constNode.value();
+            return new ConstantSlotNode(this.size++);
+        }
+        // Constant conditions remove branches entirely, so they must stay part of the shape
+        if (node instanceof TernaryOperationNode ternary) {
+            Node value = ternary.value().isConstant() ? ternary.value() : this.liftNode(ternary.value());
+            return new TernaryOperationNode(value, this.liftNode(ternary.left()), this.liftNode(ternary.right()));
+        }
+        if (node instanceof BinaryConditionalNode conditional) {
+            Node value = conditional.value().isConstant() ? conditional.value() : this.liftNode(conditional.value());
+            return new BinaryConditionalNode(value, this.liftNode(conditional.branch()));
+        }
+        // Multiplying by -1 is written as a negation
+        if (node instanceof BinaryOperationNode operation && (operation.operator() == BinaryOperation.MULTIPLY || operation.operator() == BinaryOperation.DIVIDE)) {
+            return operation.transformChildren(child -> isNegativeOne(child) ? child : this.liftNode(child));
+        }
+        return node.transformChildren(this::liftNode);
+    }
+
+    private static boolean isNegativeOne(Node node) {
+        return node instanceof ConstNode constNode && constNode.value() == -1.0F;
+    }
+
+    /**
+     * @param shape     The tree with literals replaced by {@link ConstantSlotNode}
+     * @param constants The values of each constant slot
+     */
+    public record Result(Node shape, float[] constants) {
+    }
+}
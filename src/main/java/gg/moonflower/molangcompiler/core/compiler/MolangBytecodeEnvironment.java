@@ -1,6 +1,10 @@
 package gg.moonflower.molangcompiler.core.compiler;
 
+import gg.moonflower.molangcompiler.api.exception.MolangException;
 import gg.moonflower.molangcompiler.api.exception.MolangSyntaxException;
+import gg.moonflower.molangcompiler.core.ast.Node;
+import gg.moonflower.molangcompiler.core.ast.ScopeNode;
+import gg.moonflower.molangcompiler.core.ast.VariableSetNode;
 import org.jetbrains.annotations.ApiStatus;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.MethodNode;
@@ -12,19 +16,40 @@ import java.util.Map;
 import java.util.Set;
 
 /**
+ * @param variables         The local index of every loaded variable and object
+ * @param modifiedVariables The variables that must be written back to their objects
+ * @param optimize          Whether the expression is optimized
+ * @param writeThrough      Whether variables are written to their objects as soon as they are set. This is used in {@linkplain #createLoop() loop bodies}
  * @author Ocelot
  */
 @ApiStatus.Internal
 public record MolangBytecodeEnvironment(Map<String, Integer> variables,
                                         Set<String> modifiedVariables,
-                                        boolean optimize) {
+                                        boolean optimize,
+                                        boolean writeThrough) {
+
+    /**
+     * The variable name of the local holding the constant array in {@linkplain gg.moonflower.molangcompiler.api.MolangCompiler#SHARED_CONSTANTS_FLAG shared constant} expressions.
+     */
+    public static final String CONSTANTS = "$constants";
 
     public MolangBytecodeEnvironment(MolangBytecodeEnvironment environment) {
-        this(new HashMap<>(environment.variables), new LinkedHashSet<>(), environment.optimize);
+        this(new HashMap<>(environment.variables), new LinkedHashSet<>(), environment.optimize, environment.writeThrough);
     }
 
     public MolangBytecodeEnvironment(int flags) {
-        this(new HashMap<>(), new LinkedHashSet<>(), (flags & BytecodeCompiler.FLAG_OPTIMIZE) > 0);
+        this(new HashMap<>(), new LinkedHashSet<>(), (flags & BytecodeCompiler.FLAG_OPTIMIZE) > 0, false);
+    }
+
+    /**
+     * Creates the environment of a loop body. Variables set by the body are written to their objects immediately,
+     * since the next iteration reads variables that are not in a local from their objects again.
+     * Variables already in a local keep using it, so every iteration sees the values of the previous one.
+     *
+     * @return The environment to write the body with
+     */
+    public MolangBytecodeEnvironment createLoop() {
+        return new MolangBytecodeEnvironment(new HashMap<>(this.variables), new LinkedHashSet<>(), this.optimize, true);
     }
 
     /**
@@ -90,12 +115,67 @@ public record MolangBytecodeEnvironment(Map<String, Integer> variables,
             return index;
         }
 
-        // Calculate variable offset
-        index = this.variables.size() + BytecodeCompiler.VARIABLE_START;
+        // Calculate variable offset. Merged branches can leave gaps, so this can't be based on the number of variables
+        index = BytecodeCompiler.VARIABLE_START;
+        for (int existing : this.variables.values()) {
+            index = Math.max(index, existing + 1);
+        }
         this.variables.put(name, index);
         return index;
     }
 
+    /**
+     * Allocates and zeroes the temp variables assigned by a node that may not run or may stop early.
+     * This makes them assigned on every path, so they can be {@linkplain #merge(MolangBytecodeEnvironment) merged} and read after the node.
+     *
+     * @param method The method to write into
+     * @param node   The node that is not always fully run
+     * @throws MolangException If the node cannot be searched
+     */
+    public void initializeTemps(MethodNode method, Node node) throws MolangException {
+        for (String temp : getTemps(node)) {
+            if (!this.variables.containsKey(temp)) {
+                method.visitInsn(Opcodes.FCONST_0);
+                method.visitVarInsn(Opcodes.FSTORE, this.allocateVariable(temp));
+            }
+        }
+    }
+
+    static Set<String> getTemps(Node node) throws MolangException {
+        Set<String> temps = new LinkedHashSet<>();
+        collectTemps(node, temps);
+        return temps;
+    }
+
+    private static void collectTemps(Node node, Set<String> temps) throws MolangException {
+        // Temps assigned in a scope don't exist after it
+        if (node instanceof ScopeNode) {
+            return;
+        }
+        if (node instanceof VariableSetNode set && "temp".equals(set.object())) {
+            temps.add("temp." + set.name());
+        }
+        node.transformChildren(child -> {
+            collectTemps(child, temps);
+            return child;
+        });
+    }
+
+    /**
+     * Makes temp variables allocated in a conditionally run environment available after it.
+     * Values loaded from objects are only cached in the branch, since they are not loaded if the branch doesn't run.
+     * The temps must have been {@linkplain #initializeTemps(MethodNode, Node) initialized} before the branch.
+     *
+     * @param branch An environment created from this environment
+     */
+    public void merge(MolangBytecodeEnvironment branch) {
+        for (Map.Entry<String, Integer> entry : branch.variables.entrySet()) {
+            if (entry.getKey().startsWith("temp.")) {
+                this.variables.putIfAbsent(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
     /**
      * Retrieves the local index for the specified object, loading it if necessary.
      *
@@ -123,6 +203,20 @@ public record MolangBytecodeEnvironment(Map<String, Integer> variables,
         return index;
     }
 
+    /**
+     * Retrieves the local index of the constant array.
+     *
+     * @return The index of the local holding the constant array
+     * @throws MolangSyntaxException If the expression being compiled does not have a constant array
+     */
+    public int getConstantsIndex() throws MolangSyntaxException {
+        Integer index = this.variables.get(CONSTANTS);
+        if (index == null) {
+            throw new MolangSyntaxException("Expression does not have a constant array");
+        }
+        return index;
+    }
+
     /**
      * Loads whether the specified object has the specified variable onto the stack.
      *
@@ -160,16 +254,22 @@ public record MolangBytecodeEnvironment(Map<String, Integer> variables,
     }
 
     /**
-     * Marks the specified object as requiring an update before returning.
+     * Marks the specified object as requiring an update before returning. In {@linkplain #writeThrough() loop bodies} the variable is written immediately.
      *
+     * @param method The method to write the variable into
      * @param object The name of the object the variable is in
      * @param name   The name of the variable to mark dirty
+     * @throws MolangSyntaxException If any error occurs with the format of the variable
      */
-    public void markDirty(String object, String name) {
+    public void markDirty(MethodNode method, String object, String name) throws MolangSyntaxException {
         // Don't try to save temporary variables
         if ("temp".equals(object)) {
             return;
         }
+        if (this.writeThrough) {
+            this.writeVariable(method, object + "." + name);
+            return;
+        }
         this.modifiedVariables.add(object + "." + name);
     }
 
@@ -181,29 +281,33 @@ public record MolangBytecodeEnvironment(Map<String, Integer> variables,
      */
     public void writeModifiedVariables(MethodNode method) throws MolangSyntaxException {
         for (String name : this.modifiedVariables) {
-            Integer index = this.variables.get(name);
-            if (index == null) {
-                throw new MolangSyntaxException("Unknown variable index: " + name);
-            }
-
-            String[] parts = name.split("\\.", 2);
-            if (parts.length != 2) {
-                throw new MolangSyntaxException("Expected 2 variable parts for " + name + ", got " + parts.length);
-            }
+            this.writeVariable(method, name);
+        }
+        this.modifiedVariables.clear();
+    }
 
-            int objectIndex = this.getObjectIndex(method, parts[0]);
+    private void writeVariable(MethodNode method, String name) throws MolangSyntaxException {
+        Integer index = this.variables.get(name);
+        if (index == null) {
+            throw new MolangSyntaxException("Unknown variable index: " + name);
+        }
 
-            method.visitVarInsn(Opcodes.ALOAD, objectIndex);
-            method.visitLdcInsn(parts[1]);
-            method.visitVarInsn(Opcodes.FLOAD, index);
-            method.visitMethodInsn(
-                    Opcodes.INVOKESTATIC,
-                    "gg/moonflower/molangcompiler/core/MolangUtil",
-                    "setValue",
-                    CompilerUtils.compilerOptimizationHack("(L", "gg/moonflower/molangcompiler/api/object/MolangObject", ";Ljava/lang/String;F)V"),
-                    false
-            );
+        String[] parts = name.split("\\.", 2);
+        if (parts.length != 2) {
+            throw new MolangSyntaxException("Expected 2 variable parts for " + name + ", got " + parts.length);
         }
-        this.modifiedVariables.clear();
+
+        int objectIndex = this.getObjectIndex(method, parts[0]);
+
+        method.visitVarInsn(Opcodes.ALOAD, objectIndex);
+        method.visitLdcInsn(parts[1]);
+        method.visitVarInsn(Opcodes.FLOAD, index);
+        method.visitMethodInsn(
+                Opcodes.INVOKESTATIC,
+                "gg/moonflower/molangcompiler/core/MolangUtil",
+                "setValue",
+                CompilerUtils.compilerOptimizationHack("(L", "gg/moonflower/molangcompiler/api/object/MolangObject", ";Ljava/lang/String;F)V"),
+                false
+        );
     }
 }
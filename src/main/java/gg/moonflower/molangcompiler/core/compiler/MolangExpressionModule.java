@@ -0,0 +1,25 @@
+package gg.moonflower.molangcompiler.core.compiler;
+
+import gg.moonflower.molangcompiler.api.MolangEnvironment;
+import gg.moonflower.molangcompiler.api.exception.MolangRuntimeException;
+import org.jetbrains.annotations.ApiStatus;
+
+/**
+ * A generated class holding many expressions as static methods.
+ *
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public interface MolangExpressionModule {
+
+    /**
+     * Resolves the float value of the expression at the specified index.
+     *
+     * @param index       The index of the expression in this module
+     * @param environment The environment to execute in
+     * @return The resulting value
+     * @throws MolangRuntimeException    If any error occurs when resolving the value
+     * @throws IndexOutOfBoundsException If there is no expression at the specified index
+     */
+    float get(int index, MolangEnvironment environment) throws MolangRuntimeException;
+}
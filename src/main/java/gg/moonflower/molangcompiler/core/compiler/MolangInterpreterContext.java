@@ -0,0 +1,269 @@
+package gg.moonflower.molangcompiler.core.compiler;
+
+import gg.moonflower.molangcompiler.api.MolangEnvironment;
+import gg.moonflower.molangcompiler.api.exception.MolangException;
+import gg.moonflower.molangcompiler.api.exception.MolangRuntimeException;
+import gg.moonflower.molangcompiler.api.object.MolangObject;
+import gg.moonflower.molangcompiler.core.MolangUtil;
+import gg.moonflower.molangcompiler.core.ast.BinaryConditionalNode;
+import gg.moonflower.molangcompiler.core.ast.BinaryOperation;
+import gg.moonflower.molangcompiler.core.ast.BinaryOperationNode;
+import gg.moonflower.molangcompiler.core.ast.LoopNode;
+import gg.moonflower.molangcompiler.core.ast.Node;
+import gg.moonflower.molangcompiler.core.ast.TernaryOperationNode;
+import org.jetbrains.annotations.ApiStatus;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>The state of a single evaluation of a node tree without generating bytecode.</p>
+ * <p>Variables behave the same as the locals of {@link MolangBytecodeEnvironment}. They are read from their object once,
+ * and modified values are only written back at the end of a scope or when returning. Temps assigned by a node that may not run
+ * are 0 when it doesn't assign them, the same as {@link MolangBytecodeEnvironment#initializeTemps(org.objectweb.asm.tree.MethodNode, Node)}.</p>
+ *
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public final class MolangInterpreterContext {
+
+    private final MolangEnvironment environment;
+    private final Map<String, Float> variables;
+    private final Map<String, MolangObject> objects;
+    private final Set<String> modifiedVariables;
+    private final Map<Node, Set<String>> temps;
+    private Signal signal;
+    private float returnValue;
+
+    public MolangInterpreterContext(MolangEnvironment environment) {
+        this(environment, Collections.emptyMap());
+    }
+
+    /**
+     * @param environment The environment to evaluate in
+     * @param temps       The temps of every node that may not run, created with {@link #findTemps(Node)}
+     */
+    public MolangInterpreterContext(MolangEnvironment environment, Map<Node, Set<String>> temps) {
+        this.environment = environment;
+        this.variables = new HashMap<>();
+        this.objects = new HashMap<>();
+        this.modifiedVariables = new LinkedHashSet<>();
+        this.temps = temps;
+        this.signal = Signal.NONE;
+    }
+
+    /**
+     * Finds the temps assigned by every node in the specified tree that may not run or may stop early.
+     * This only needs to be done once for each tree.
+     *
+     * @param node The root of the tree
+     * @return The temps assigned by each node, by identity
+     * @throws MolangException If the tree cannot be searched
+     */
+    public static Map<Node, Set<String>> findTemps(Node node) throws MolangException {
+        Map<Node, Set<String>> temps = new IdentityHashMap<>();
+        collectTemps(node, temps);
+        return temps;
+    }
+
+    private static void collectTemps(Node node, Map<Node, Set<String>> temps) throws MolangException {
+        if (node instanceof BinaryConditionalNode conditional) {
+            putTemps(conditional.branch(), temps);
+        } else if (node instanceof TernaryOperationNode ternary) {
+            putTemps(ternary.left(), temps);
+            putTemps(ternary.right(), temps);
+        } else if (node instanceof BinaryOperationNode operation && (operation.operator() == BinaryOperation.AND || operation.operator() == BinaryOperation.OR || operation.operator() == BinaryOperation.NULL_COALESCING)) {
+            putTemps(operation.right(), temps);
+        } else if (node instanceof LoopNode loop && LoopNode.hasJump(loop.body())) {
+            putTemps(loop.body(), temps);
+        }
+        node.transformChildren(child -> {
+            collectTemps(child, temps);
+            return child;
+        });
+    }
+
+    private static void putTemps(Node node, Map<Node, Set<String>> temps) throws MolangException {
+        Set<String> assigned = MolangBytecodeEnvironment.getTemps(node);
+        if (!assigned.isEmpty()) {
+            temps.put(node, assigned);
+        }
+    }
+
+    /**
+     * Sets the temps assigned by a node that may not run or may stop early to 0 if they don't have a value yet.
+     *
+     * @param node The node that is not always fully run
+     */
+    public void initializeTemps(Node node) {
+        Set<String> temps = this.temps.get(node);
+        if (temps != null) {
+            for (String temp : temps) {
+                this.variables.putIfAbsent(temp, 0.0F);
+            }
+        }
+    }
+
+    /**
+     * Retrieves the value of the specified variable, loading it from the object if necessary.
+     *
+     * @param object The object to get the variable from
+     * @param name   The name of the variable to get
+     * @return The value of the variable
+     * @throws MolangRuntimeException If the object or variable does not exist
+     */
+    public float getVariable(String object, String name) throws MolangRuntimeException {
+        String key = object + "." + name;
+        Float value = this.variables.get(key);
+        if (value != null) {
+            return value;
+        }
+
+        float resolved = this.environment.resolve(this.getObject(object).get(name));
+        this.variables.put(key, resolved);
+        return resolved;
+    }
+
+    /**
+     * Sets the value of the specified variable. The value is written to the object with {@link #writeModifiedVariables()}.
+     *
+     * @param object The object the variable is in
+     * @param name   The name of the variable to set
+     * @param value  The new value
+     * @throws MolangRuntimeException If the object does not exist
+     */
+    public void setVariable(String object, String name, float value) throws MolangRuntimeException {
+        String key = object + "." + name;
+        // Don't try to save temporary variables
+        if (!"temp".equals(object)) {
+            this.getObject(object);
+            this.modifiedVariables.add(key);
+        }
+        this.variables.put(key, value);
+    }
+
+    /**
+     * Checks whether the specified variable exists.
+     *
+     * @param object The object to check
+     * @param name   The name of the variable to test for
+     * @return Whether the variable can be read
+     * @throws MolangRuntimeException If the object does not exist
+     */
+    public boolean hasVariable(String object, String name) throws MolangRuntimeException {
+        if ("temp".equals(object)) {
+            return this.variables.containsKey("temp." + name);
+        }
+        return this.getObject(object).has(name);
+    }
+
+    /**
+     * Retrieves the specified object from the environment, caching it for the rest of the evaluation.
+     *
+     * @param object The name of the object
+     * @return The object
+     * @throws MolangRuntimeException If the object does not exist
+     */
+    public MolangObject getObject(String object) throws MolangRuntimeException {
+        MolangObject value = this.objects.get(object);
+        if (value == null) {
+            value = this.environment.get(object);
+            this.objects.put(object, value);
+        }
+        return value;
+    }
+
+    /**
+     * @return The value of <code>this</code> for this evaluation
+     */
+    public float getThis() {
+        Float value = this.variables.get("this");
+        if (value == null) {
+            value = this.environment.getThis();
+            this.variables.put("this", value);
+        }
+        return value;
+    }
+
+    /**
+     * @return The names of all variables that currently have a value
+     */
+    public Set<String> getVariables() {
+        return new HashSet<>(this.variables.keySet());
+    }
+
+    /**
+     * Stops tracking the values of all other variables. Variables are read from their objects again and temps no longer exist.
+     * Modified variables must be {@linkplain #writeModifiedVariables() written} first.
+     *
+     * @param kept The variables to keep the values of
+     */
+    public void forgetAllExcept(Set<String> kept) {
+        this.variables.keySet().retainAll(kept);
+    }
+
+    /**
+     * Writes all modified variables back into their objects.
+     *
+     * @throws MolangRuntimeException If any variable could not be set
+     */
+    public void writeModifiedVariables() throws MolangRuntimeException {
+        for (String key : this.modifiedVariables) {
+            String[] parts = key.split("\\.", 2);
+            MolangUtil.setValue(this.getObject(parts[0]), parts[1], this.variables.get(key));
+        }
+        this.modifiedVariables.clear();
+    }
+
+    /**
+     * @return The environment expressions are evaluated in
+     */
+    public MolangEnvironment environment() {
+        return this.environment;
+    }
+
+    /**
+     * @return The control flow statement that is unwinding evaluation or {@link Signal#NONE}
+     */
+    public Signal getSignal() {
+        return this.signal;
+    }
+
+    /**
+     * Starts unwinding evaluation until the specified signal is consumed.
+     *
+     * @param signal The control flow statement that was reached
+     */
+    public void setSignal(Signal signal) {
+        this.signal = signal;
+    }
+
+    /**
+     * Stops evaluation and returns the specified value from the expression.
+     *
+     * @param value The value to return
+     */
+    public void setReturnValue(float value) {
+        this.signal = Signal.RETURN;
+        this.returnValue = value;
+    }
+
+    /**
+     * @return The value passed to {@link #setReturnValue(float)}
+     */
+    public float getReturnValue() {
+        return this.returnValue;
+    }
+
+    /**
+     * Control flow statements that stop evaluation of the remaining nodes.
+     */
+    public enum Signal {
+        NONE, BREAK, CONTINUE, RETURN
+    }
+}
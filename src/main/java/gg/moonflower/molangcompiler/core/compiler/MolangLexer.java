@@ -2,67 +2,276 @@ package gg.moonflower.molangcompiler.core.compiler;
 
 import gg.moonflower.molangcompiler.api.exception.MolangSyntaxException;
 import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
+ * <p>Splits MoLang source into tokens in a single pass over the characters.</p>
+ * <p>Tokens only store their position in the source, so lexing does not copy the input.
+ * New lines and tabs are ignored everywhere, even inside names, and other whitespace separates tokens.</p>
+ *
  * @author Ocelot
  */
 @ApiStatus.Internal
 public final class MolangLexer {
 
-    private static final Pattern WHITESPACE_PATTERN = Pattern.compile("[\n\t]");
-
-    public static Token[] createTokens(String input) throws MolangSyntaxException {
-        StringReader reader = new StringReader(WHITESPACE_PATTERN.matcher(input).replaceAll(""));
-        List<Token> tokens = new ArrayList<>();
-
-        while (reader.canRead()) {
-            reader.skipWhitespace();
-            Token token = getToken(reader);
-            if (token != null) {
-                if (!tokens.isEmpty()) {
-                    Token lastToken = tokens.get(tokens.size() - 1);
-                    // Insert semicolon after scopes
-                    if (lastToken.type == TokenType.RIGHT_BRACE && token.type != TokenType.SEMICOLON) {
-                        tokens.add(new Token(TokenType.SEMICOLON, ";"));
+    private static final Token INSERTED_SEMICOLON = new Token(TokenType.SEMICOLON, ";");
+
+    public static Token[] createTokens(CharSequence input) throws MolangSyntaxException {
+        List<Token> tokens = new ArrayList<>(Math.max(4, input.length() / 3));
+        lex(input, 0, null, tokens, null, 0, 0, 0);
+        return tokens.toArray(Token[]::new);
+    }
+
+    /**
+     * <p>Updates the tokens of a source after a single range of it was replaced.</p>
+     * <p>Tokens before the change are reused and lexing stops as soon as it lines up with the old tokens after the change,
+     * which are moved to the new source instead of being lexed again.</p>
+     *
+     * @param previous The tokens of the old source
+     * @param input    The new source
+     * @param start    The index of the first changed character
+     * @param oldEnd   The end of the changed range in the old source
+     * @param newEnd   The end of the changed range in the new source
+     * @return The tokens of the new source
+     * @throws MolangSyntaxException If the changed range contains an invalid token
+     */
+    public static Token[] updateTokens(Token[] previous, CharSequence input, int start, int oldEnd, int newEnd) throws MolangSyntaxException {
+        int keep = 0;
+        while (keep < previous.length && (previous[keep] == INSERTED_SEMICOLON || previous[keep].offset + previous[keep].length < start)) {
+            keep++;
+        }
+        // The token before the change may continue into it through ignored characters, so it is lexed again as well
+        do {
+            keep--;
+        } while (keep > 0 && previous[keep] == INSERTED_SEMICOLON);
+        keep = Math.max(0, keep);
+
+        List<Token> tokens = new ArrayList<>(previous.length + 4);
+        for (int i = 0; i < keep; i++) {
+            tokens.add(rebase(previous[i], input, 0));
+        }
+        int cursor = keep > 0 ? previous[keep].offset : 0;
+        lex(input, cursor, keep > 0 ? previous[keep - 1].type : null, tokens, previous, keep, oldEnd, newEnd);
+        return tokens.toArray(Token[]::new);
+    }
+
+    // Lexes from the cursor to the end of the input. If previous tokens are specified, lexing stops once a token after the change matches an old token
+    private static void lex(CharSequence input, int cursor, @Nullable TokenType lastType, List<Token> tokens, @Nullable Token[] previous, int previousIndex, int oldEnd, int newEnd) throws MolangSyntaxException {
+        int length = input.length();
+        while (true) {
+            cursor = skipWhitespace(input, cursor);
+            if (cursor >= length) {
+                break;
+            }
+
+            int start = cursor;
+            char c = input.charAt(cursor);
+            TokenType type;
+            if (isDigit(c)) {
+                cursor = skipWhile(input, cursor, CharType.DIGIT);
+                type = TokenType.NUMERAL;
+            } else if (isIdentifierStart(c)) {
+                cursor = skipWhile(input, cursor, CharType.IDENTIFIER);
+                type = getKeyword(input, start, cursor);
+            } else {
+                int next = skipIgnored(input, cursor + 1);
+                char following = next < length ? input.charAt(next) : 0;
+                cursor++;
+                type = switch (c) {
+                    case '?' -> {
+                        if (following == '?') {
+                            cursor = next + 1;
+                            yield TokenType.NULL_COALESCING;
+                        }
+                        yield TokenType.SPECIAL;
+                    }
+                    case '+' -> {
+                        if (following == '+') {
+                            cursor = next + 1;
+                            yield TokenType.INCREMENT;
+                        }
+                        yield TokenType.BINARY_OPERATION;
+                    }
+                    case '-' -> {
+                        if (following == '-') {
+                            cursor = next + 1;
+                            yield TokenType.DECREMENT;
+                        }
+                        yield TokenType.BINARY_OPERATION;
+                    }
+                    case '<', '>', '&', '|', '!', ':' -> TokenType.SPECIAL;
+                    case '*', '/' -> TokenType.BINARY_OPERATION;
+                    case '(' -> TokenType.LEFT_PARENTHESIS;
+                    case ')' -> TokenType.RIGHT_PARENTHESIS;
+                    case '{' -> TokenType.LEFT_BRACE;
+                    case '}' -> TokenType.RIGHT_BRACE;
+                    case '.' -> TokenType.DOT;
+                    case ',' -> TokenType.COMMA;
+                    case '=' -> TokenType.EQUAL;
+                    case ';' -> TokenType.SEMICOLON;
+                    default -> throw new MolangSyntaxException("Unknown Token", input.toString(), start);
+                };
+            }
+
+            // Insert semicolon after scopes
+            if (lastType == TokenType.RIGHT_BRACE && type != TokenType.SEMICOLON) {
+                tokens.add(INSERTED_SEMICOLON);
+            }
+            tokens.add(new Token(type, input, start, cursor - start));
+            lastType = type;
+
+            if (previous != null && start >= newEnd) {
+                // Everything after an identical token at the same place in the unchanged text is identical as well
+                int oldStart = start - newEnd + oldEnd;
+                while (previousIndex < previous.length && (previous[previousIndex] == INSERTED_SEMICOLON || previous[previousIndex].offset < oldStart)) {
+                    previousIndex++;
+                }
+                if (previousIndex < previous.length) {
+                    Token match = previous[previousIndex];
+                    if (match.offset == oldStart && match.type == type && match.length == cursor - start) {
+                        for (int i = previousIndex + 1; i < previous.length; i++) {
+                            tokens.add(rebase(previous[i], input, newEnd - oldEnd));
+                        }
+                        return;
                     }
                 }
-                tokens.add(token);
-                continue;
             }
+        }
+    }
+
+    private static Token rebase(Token token, CharSequence input, int shift) {
+        return token == INSERTED_SEMICOLON ? token : new Token(token.type, input, token.offset + shift, token.length);
+    }
 
-            throw new MolangSyntaxException("Unknown Token", reader.getString(), reader.getCursor());
+    private static TokenType getKeyword(CharSequence input, int start, int end) {
+        // Keywords are short, so anything longer is always a name
+        int length = end - start;
+        if (length < 2 || length > 8) {
+            return TokenType.ALPHANUMERIC;
         }
+        for (TokenType keyword : TokenType.KEYWORDS) {
+            if (matches(input, start, end, keyword.keyword)) {
+                return keyword;
+            }
+        }
+        return TokenType.ALPHANUMERIC;
+    }
 
-        return tokens.toArray(Token[]::new);
+    private static boolean matches(CharSequence input, int start, int end, String keyword) {
+        int i = start;
+        for (int j = 0; j < keyword.length(); j++) {
+            i = skipIgnored(input, i);
+            if (i >= end || input.charAt(i) != keyword.charAt(j)) {
+                return false;
+            }
+            i++;
+        }
+        return skipIgnored(input, i) >= end;
     }
 
-    private static Token getToken(StringReader reader) {
-        String word = reader.getString().substring(reader.getCursor());
-        for (TokenType type : TokenType.values()) {
-            Matcher matcher = type.pattern.matcher(word);
-            if (matcher.find() && matcher.start() == 0) {
-                reader.skip(matcher.end());
-                return new Token(type, word.substring(0, matcher.end()));
+    private static int skipWhitespace(CharSequence input, int cursor) {
+        while (cursor < input.length() && Character.isWhitespace(input.charAt(cursor))) {
+            cursor++;
+        }
+        return cursor;
+    }
+
+    private static int skipIgnored(CharSequence input, int cursor) {
+        while (cursor < input.length() && isIgnored(input.charAt(cursor))) {
+            cursor++;
+        }
+        return cursor;
+    }
+
+    // Returns the end of the token, ignoring new lines and tabs inside it
+    private static int skipWhile(CharSequence input, int cursor, CharType type) {
+        int end = cursor + 1;
+        for (int i = end; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (isIgnored(c)) {
+                continue;
+            }
+            if (type == CharType.DIGIT ? !isDigit(c) : !isIdentifierPart(c)) {
+                break;
             }
+            end = i + 1;
         }
+        return end;
+    }
+
+    private static boolean isIgnored(char c) {
+        return c == '\n' || c == '\t';
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isIdentifierStart(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return isIdentifierStart(c) || isDigit(c);
+    }
 
-        return null;
+    private enum CharType {
+        DIGIT, IDENTIFIER
     }
 
-    public record Token(TokenType type, String value) {
+    /**
+     * A single token.
+     *
+     * @param type   The type of token
+     * @param source The source the token was read from
+     * @param offset The index of the first character of the token in the source
+     * @param length The number of characters in the source the token spans
+     */
+    public record Token(TokenType type, CharSequence source, int offset, int length) {
+
+        public Token(TokenType type, String value) {
+            this(type, value, 0, value.length());
+        }
+
+        /**
+         * @return The text of this token without any new lines or tabs
+         */
+        public String value() {
+            StringBuilder builder = null;
+            for (int i = this.offset; i < this.offset + this.length; i++) {
+                if (isIgnored(this.source.charAt(i))) {
+                    if (builder == null) {
+                        builder = new StringBuilder(this.length);
+                        builder.append(this.source, this.offset, i);
+                    }
+                } else if (builder != null) {
+                    builder.append(this.source.charAt(i));
+                }
+            }
+            return builder != null ? builder.toString() : this.source.subSequence(this.offset, this.offset + this.length).toString();
+        }
+
         public String lowercaseValue() {
-            return this.value.toLowerCase(Locale.ROOT);
+            return this.value().toLowerCase(Locale.ROOT);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Token token && this.type == token.type && this.value().equals(token.value());
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * this.type.hashCode() + this.value().hashCode();
         }
 
         @Override
         public String toString() {
-            return this.type + "[" + this.value + "]";
+            return this.type + "[" + this.value() + "]";
         }
     }
 
@@ -76,26 +285,28 @@ public final class MolangLexer {
         THIS("this"),
         TRUE("true"),
         FALSE("false"),
-        NUMERAL("\\d+"),
-        ALPHANUMERIC("[A-Za-z_][A-Za-z0-9_]*"),
-        NULL_COALESCING("\\?\\?"),
-        INCREMENT("\\+\\+"),
-        DECREMENT("\\-\\-"),
-        SPECIAL("[<>&|!?:]"),
-        BINARY_OPERATION("[-+*/]"),
-        LEFT_PARENTHESIS("\\("),
-        RIGHT_PARENTHESIS("\\)"),
-        LEFT_BRACE("\\{"),
-        RIGHT_BRACE("\\}"),
-        DOT("\\."),
-        COMMA("\\,"),
-        EQUAL("="),
-        SEMICOLON(";");
-
-        private final Pattern pattern;
-
-        TokenType(String regex) {
-            this.pattern = Pattern.compile(regex);
+        NUMERAL(null),
+        ALPHANUMERIC(null),
+        NULL_COALESCING(null),
+        INCREMENT(null),
+        DECREMENT(null),
+        SPECIAL(null),
+        BINARY_OPERATION(null),
+        LEFT_PARENTHESIS(null),
+        RIGHT_PARENTHESIS(null),
+        LEFT_BRACE(null),
+        RIGHT_BRACE(null),
+        DOT(null),
+        COMMA(null),
+        EQUAL(null),
+        SEMICOLON(null);
+
+        private static final TokenType[] KEYWORDS = {RETURN, LOOP, CONTINUE, BREAK, IF, ELSE, THIS, TRUE, FALSE};
+
+        private final String keyword;
+
+        TokenType(String keyword) {
+            this.keyword = keyword;
         }
 
         public boolean validVariableName() {
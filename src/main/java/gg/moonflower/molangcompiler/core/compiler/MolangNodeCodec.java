@@ -0,0 +1,331 @@
+package gg.moonflower.molangcompiler.core.compiler;
+
+import gg.moonflower.molangcompiler.api.exception.MolangSyntaxException;
+import gg.moonflower.molangcompiler.core.ast.*;
+import org.jetbrains.annotations.ApiStatus;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * <p>Encodes parsed node trees into a compact binary form, so they can be compiled later without lexing or parsing the source again.</p>
+ * <p>The data starts with a table of every object, variable, and function name used by the trees, followed by the trees themselves.
+ * Tags, counts, and name indices are unsigned varints and constants are stored as raw IEEE 754 floats.
+ * Operators and math functions are stored by ordinal, so the header also stores a hash of their names and data written with a different set is rejected.
+ * The format version must be changed whenever the tags or the layout of a node change.</p>
+ *
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public final class MolangNodeCodec {
+
+    private static final int MAGIC = 0x4D4C4E43; // MLNC
+    private static final int FORMAT_VERSION = 2;
+    // The parser accepts deeper trees, but compiling them comes close to overflowing the stack.
+    // The same limit applies when encoding, so everything that is encoded can be decoded again
+    private static final int MAX_DEPTH = 1024;
+
+    private static final BinaryOperation[] BINARY_OPERATIONS = BinaryOperation.values();
+    private static final MathOperation[] MATH_OPERATIONS = MathOperation.values();
+    private static final int OPERATIONS_HASH = hashNames(BINARY_OPERATIONS) * 31 + hashNames(MATH_OPERATIONS);
+
+    private static final int CONST = 0;
+    private static final int THIS = 1;
+    private static final int VARIABLE_GET = 2;
+    private static final int VARIABLE_SET = 3;
+    private static final int VARIABLE_SET_RETURN = 4;
+    private static final int BINARY_OPERATION = 5;
+    private static final int BINARY_CONDITIONAL = 6;
+    private static final int TERNARY_OPERATION = 7;
+    private static final int NEGATE = 8;
+    private static final int MATH = 9;
+    private static final int FUNCTION = 10;
+    private static final int COMPOUND = 11;
+    private static final int SCOPE = 12;
+    private static final int LOOP = 13;
+    private static final int RETURN = 14;
+    private static final int BREAK = 15;
+    private static final int CONTINUE = 16;
+
+    private MolangNodeCodec() {
+    }
+
+    /**
+     * Encodes the specified trees. Names are shared between all trees.
+     *
+     * @param nodes The trees to encode
+     * @return The encoded data
+     * @throws MolangSyntaxException If any tree contains a node that cannot be encoded or is nested too deeply
+     */
+    public static byte[] encode(List<Node> nodes) throws MolangSyntaxException {
+        Map<String, Integer> names = new LinkedHashMap<>();
+        Output body = new Output();
+        body.writeVarInt(nodes.size());
+        for (Node node : nodes) {
+            writeNode(body, names, node, 0);
+        }
+
+        Output output = new Output();
+        output.writeInt(MAGIC);
+        output.writeVarInt(FORMAT_VERSION);
+        output.writeInt(OPERATIONS_HASH);
+        output.writeVarInt(names.size());
+        for (String name : names.keySet()) {
+            byte[] data = name.getBytes(StandardCharsets.UTF_8);
+            output.writeVarInt(data.length);
+            output.write(data, 0, data.length);
+        }
+        body.writeTo(output);
+        return output.toByteArray();
+    }
+
+    /**
+     * Decodes all trees in the specified data.
+     *
+     * @param data The data created by {@link #encode(List)}
+     * @return The decoded trees in the same order they were encoded
+     * @throws MolangSyntaxException If the data is invalid
+     */
+    public static List<Node> decode(byte[] data) throws MolangSyntaxException {
+        Input input = new Input(data);
+        if (input.readInt() != MAGIC) {
+            throw new MolangSyntaxException("Invalid serialized expression data");
+        }
+        int version = input.readVarInt();
+        if (version != FORMAT_VERSION) {
+            throw new MolangSyntaxException("Unsupported serialized expression version: " + version);
+        }
+        if (input.readInt() != OPERATIONS_HASH) {
+            throw new MolangSyntaxException("Serialized expression was written with different operations");
+        }
+
+        String[] names = new String[input.readCount()];
+        for (int i = 0; i < names.length; i++) {
+            int length = input.readCount();
+            names[i] = new String(data, input.skip(length), length, StandardCharsets.UTF_8);
+        }
+
+        int count = input.readCount();
+        List<Node> nodes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            nodes.add(readNode(input, names, 0));
+        }
+        if (input.position != data.length) {
+            throw new MolangSyntaxException("Trailing serialized expression data");
+        }
+        return nodes;
+    }
+
+    private static void writeNode(Output output, Map<String, Integer> names, Node node, int depth) throws MolangSyntaxException {
+        if (depth > MAX_DEPTH) {
+            throw new MolangSyntaxException("Expression is too deeply nested to serialize");
+        }
+
+        if (node instanceof ConstNode constNode) {
+            output.writeVarInt(CONST);
+            output.writeInt(Float.floatToRawIntBits(constNode.value()));
+        } else if (node instanceof ThisNode) {
+            output.writeVarInt(THIS);
+        } else if (node instanceof VariableGetNode getNode) {
+            output.writeVarInt(VARIABLE_GET);
+            writeName(output, names, getNode.object());
+            writeName(output, names, getNode.name());
+        } else if (node instanceof VariableSetNode setNode) {
+            output.writeVarInt(setNode.returnValue() ? VARIABLE_SET_RETURN : VARIABLE_SET);
+            writeName(output, names, setNode.object());
+            writeName(output, names, setNode.name());
+            writeNode(output, names, setNode.value(), depth + 1);
+        } else if (node instanceof BinaryOperationNode operationNode) {
+            output.writeVarInt(BINARY_OPERATION);
+            output.writeVarInt(operationNode.operator().ordinal());
+            writeNode(output, names, operationNode.left(), depth + 1);
+            writeNode(output, names, operationNode.right(), depth + 1);
+        } else if (node instanceof BinaryConditionalNode conditionalNode) {
+            output.writeVarInt(BINARY_CONDITIONAL);
+            writeNode(output, names, conditionalNode.value(), depth + 1);
+            writeNode(output, names, conditionalNode.branch(), depth + 1);
+        } else if (node instanceof TernaryOperationNode ternaryNode) {
+            output.writeVarInt(TERNARY_OPERATION);
+            writeNode(output, names, ternaryNode.value(), depth + 1);
+            writeNode(output, names, ternaryNode.left(), depth + 1);
+            writeNode(output, names, ternaryNode.right(), depth + 1);
+        } else if (node instanceof NegateNode negateNode) {
+            output.writeVarInt(NEGATE);
+            writeNode(output, names, negateNode.value(), depth + 1);
+        } else if (node instanceof MathNode mathNode) {
+            output.writeVarInt(MATH);
+            output.writeVarInt(mathNode.function().ordinal());
+            writeNodes(output, names, mathNode.arguments(), depth);
+        } else if (node instanceof FunctionNode functionNode) {
+            output.writeVarInt(FUNCTION);
+            writeName(output, names, functionNode.object());
+            writeName(output, names, functionNode.function());
+            writeNodes(output, names, functionNode.arguments(), depth);
+        } else if (node instanceof CompoundNode compoundNode) {
+            output.writeVarInt(COMPOUND);
+            writeNodes(output, names, compoundNode.nodes(), depth);
+        } else if (node instanceof ScopeNode scopeNode) {
+            output.writeVarInt(SCOPE);
+            writeNode(output, names, scopeNode.node(), depth + 1);
+        } else if (node instanceof LoopNode loopNode) {
+            output.writeVarInt(LOOP);
+            writeNode(output, names, loopNode.iterations(), depth + 1);
+            writeNode(output, names, loopNode.body(), depth + 1);
+        } else if (node instanceof ReturnNode returnNode) {
+            output.writeVarInt(RETURN);
+            writeNode(output, names, returnNode.value(), depth + 1);
+        } else if (node instanceof BreakNode) {
+            output.writeVarInt(BREAK);
+        } else if (node instanceof ContinueNode) {
+            output.writeVarInt(CONTINUE);
+        } else {
+            throw new MolangSyntaxException("Cannot serialize " + node.getClass().getSimpleName());
+        }
+    }
+
+    private static void writeNodes(Output output, Map<String, Integer> names, Node[] nodes, int depth) throws MolangSyntaxException {
+        output.writeVarInt(nodes.length);
+        for (Node node : nodes) {
+            writeNode(output, names, node, depth + 1);
+        }
+    }
+
+    private static void writeName(Output output, Map<String, Integer> names, String name) {
+        output.writeVarInt(names.computeIfAbsent(name, unused -> names.size()));
+    }
+
+    private static Node readNode(Input input, String[] names, int depth) throws MolangSyntaxException {
+        if (depth > MAX_DEPTH) {
+            throw new MolangSyntaxException("Serialized expression is too deeply nested");
+        }
+
+        int tag = input.readVarInt();
+        return switch (tag) {
+            case CONST -> new ConstNode(Float.intBitsToFloat(input.readInt()));
+            case THIS -> new ThisNode();
+            case VARIABLE_GET -> new VariableGetNode(readName(input, names), readName(input, names));
+            case VARIABLE_SET, VARIABLE_SET_RETURN -> new VariableSetNode(readName(input, names), readName(input, names), readNode(input, names, depth + 1), tag == VARIABLE_SET_RETURN);
+            case BINARY_OPERATION -> new BinaryOperationNode(BINARY_OPERATIONS[input.readIndex(BINARY_OPERATIONS.length)], readNode(input, names, depth + 1), readNode(input, names, depth + 1));
+            case BINARY_CONDITIONAL -> new BinaryConditionalNode(readNode(input, names, depth + 1), readNode(input, names, depth + 1));
+            case TERNARY_OPERATION -> new TernaryOperationNode(readNode(input, names, depth + 1), readNode(input, names, depth + 1), readNode(input, names, depth + 1));
+            case NEGATE -> new NegateNode(readNode(input, names, depth + 1));
+            case MATH -> {
+                MathOperation function = MATH_OPERATIONS[input.readIndex(MATH_OPERATIONS.length)];
+                Node[] arguments = readNodes(input, names, depth);
+                if (arguments.length != function.getParameters()) {
+                    throw new MolangSyntaxException("Expected " + function.getParameters() + " arguments for " + function + ", got " + arguments.length);
+                }
+                yield new MathNode(function, arguments);
+            }
+            case FUNCTION -> new FunctionNode(readName(input, names), readName(input, names), readNodes(input, names, depth));
+            case COMPOUND -> new CompoundNode(readNodes(input, names, depth));
+            case SCOPE -> new ScopeNode(readNode(input, names, depth + 1));
+            case LOOP -> new LoopNode(readNode(input, names, depth + 1), readNode(input, names, depth + 1));
+            case RETURN -> new ReturnNode(readNode(input, names, depth + 1));
+            case BREAK -> new BreakNode();
+            case CONTINUE -> new ContinueNode();
+            default -> throw new MolangSyntaxException("Unknown serialized node: " + tag);
+        };
+    }
+
+    private static Node[] readNodes(Input input, String[] names, int depth) throws MolangSyntaxException {
+        Node[] nodes = new Node[input.readCount()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = readNode(input, names, depth + 1);
+        }
+        return nodes;
+    }
+
+    // Enum hash codes change between runs, but string hash codes are specified
+    private static int hashNames(Enum<?>[] values) {
+        int hash = 1;
+        for (Enum<?> value : values) {
+            hash = 31 * hash + value.name().hashCode();
+        }
+        return hash;
+    }
+
+    private static String readName(Input input, String[] names) throws MolangSyntaxException {
+        return names[input.readIndex(names.length)];
+    }
+
+    private static final class Output extends ByteArrayOutputStream {
+
+        private void writeInt(int value) {
+            this.write(value >>> 24);
+            this.write(value >>> 16);
+            this.write(value >>> 8);
+            this.write(value);
+        }
+
+        private void writeVarInt(int value) {
+            while ((value & ~0x7F) != 0) {
+                this.write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            this.write(value);
+        }
+
+        private void writeTo(Output output) {
+            output.write(this.buf, 0, this.count);
+        }
+    }
+
+    private static final class Input {
+
+        private final byte[] data;
+        private int position;
+
+        private Input(byte[] data) {
+            this.data = data;
+            this.position = 0;
+        }
+
+        private int readByte() throws MolangSyntaxException {
+            if (this.position >= this.data.length) {
+                throw new MolangSyntaxException("Unexpected end of serialized expression data");
+            }
+            return this.data[this.position++] & 0xFF;
+        }
+
+        private int readInt() throws MolangSyntaxException {
+            return this.readByte() << 24 | this.readByte() << 16 | this.readByte() << 8 | this.readByte();
+        }
+
+        private int readVarInt() throws MolangSyntaxException {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = this.readByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new MolangSyntaxException("Serialized varint is too long");
+        }
+
+        // Counts can never be larger than the remaining data, which keeps invalid data from allocating huge arrays
+        private int readCount() throws MolangSyntaxException {
+            int count = this.readVarInt();
+            if (count < 0 || count > this.data.length - this.position) {
+                throw new MolangSyntaxException("Invalid serialized count: " + count);
+            }
+            return count;
+        }
+
+        private int readIndex(int size) throws MolangSyntaxException {
+            int index = this.readVarInt();
+            if (index < 0 || index >= size) {
+                throw new MolangSyntaxException("Invalid serialized index: " + index);
+            }
+            return index;
+        }
+
+        private int skip(int length) {
+            int start = this.position;
+            this.position += length;
+            return start;
+        }
+    }
+}
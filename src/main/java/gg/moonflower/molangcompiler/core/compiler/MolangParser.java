@@ -3,30 +3,117 @@ package gg.moonflower.molangcompiler.core.compiler;
 import gg.moonflower.molangcompiler.api.exception.MolangSyntaxException;
 import gg.moonflower.molangcompiler.core.ast.*;
 import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
-import java.util.function.Predicate;
+import java.util.Map;
 
 /**
+ * <p>Converts tokens into a node tree.</p>
+ * <p>Operators are parsed with an explicit operand and operator stack instead of recursing for every operator,
+ * so the cost is linear in the number of tokens and long operator chains or deeply nested parentheses cannot overflow the stack.
+ * From lowest to highest precedence the operators are <code>?:</code>, <code>||</code>, <code>&amp;&amp;</code>,
+ * <code>==</code> and <code>!=</code>, <code>&lt;</code> <code>&lt;=</code> <code>&gt;</code> and <code>&gt;=</code>,
+ * <code>+</code> and <code>-</code>, <code>*</code> and <code>/</code>, <code>??</code>, then the prefix operators <code>-</code> and <code>!</code>.</p>
+ *
  * @author Ocelot
  */
 @ApiStatus.Internal
 public final class MolangParser {
 
+    private static final Map<String, MathOperation> MATH_OPERATIONS = new HashMap<>();
+
+    // Operators that are not binary operations use indices after all binary operations
+    private static final int NEGATE = BinaryOperation.values().length;
+    private static final int NOT = NEGATE + 1;
+    private static final int PARENTHESIS = NOT + 1;
+    private static final BinaryOperation[] BINARY_OPERATIONS = BinaryOperation.values();
+    private static final int UNARY_PRECEDENCE = 8;
+
+    static {
+        for (MathOperation operation : MathOperation.values()) {
+            MATH_OPERATIONS.put(operation.getName(), operation);
+        }
+    }
+
+    private final TokenReader reader;
+    private Node[] operands;
+    private int operandCount;
+    private int[] operators;
+    private int operatorCount;
+    private int loopDepth;
+
+    private MolangParser(TokenReader reader) {
+        this.reader = reader;
+        this.operands = new Node[8];
+        this.operandCount = 0;
+        this.operators = new int[8];
+        this.operatorCount = 0;
+        this.loopDepth = 0;
+    }
+
     public static Node parseTokens(MolangLexer.Token[] tokens) throws MolangSyntaxException {
         if (tokens.length == 0) {
             throw new MolangSyntaxException("Expected token");
         }
-        return parseTokensUntil(new TokenReader(tokens), true, token -> false);
+        return new MolangParser(new TokenReader(tokens)).parseStatements(true, null);
+    }
+
+    /**
+     * Parses the tokens of a single top level statement, without the separating semicolon.
+     *
+     * @param tokens The tokens of the statement
+     * @return The statement
+     * @throws MolangSyntaxException If the tokens are not exactly one valid statement
+     * @see #joinStatements(List)
+     */
+    public static Node parseStatement(MolangLexer.Token[] tokens) throws MolangSyntaxException {
+        if (tokens.length == 0) {
+            throw new MolangSyntaxException("Expected token");
+        }
+        TokenReader reader = new TokenReader(tokens);
+        Node node = new MolangParser(reader).parseExpression();
+        if (reader.canRead()) {
+            throw error("Trailing statement", reader);
+        }
+        return node;
     }
 
-    private static Node parseTokensUntil(TokenReader reader, boolean insertReturn, Predicate<MolangLexer.Token> filter) throws MolangSyntaxException {
-        List<Node> nodes = new ArrayList<>(2);
+    /**
+     * Combines separately parsed top level statements into the same node {@link #parseTokens(MolangLexer.Token[])} creates for all of them.
+     *
+     * @param statements The statements in order
+     * @return The node for all statements
+     */
+    public static Node joinStatements(List<Node> statements) {
+        if (statements.isEmpty()) {
+            throw new IllegalArgumentException("Expected statement");
+        }
+        Node[] nodes = statements.toArray(Node[]::new);
+        nodes[nodes.length - 1] = withReturn(nodes[nodes.length - 1]);
+        return nodes.length > 1 ? new CompoundNode(nodes) : nodes[0];
+    }
 
-        while (reader.canRead() && !filter.test(reader.peek())) {
-            Node node = parseExpression(reader);
-            nodes.add(node);
+    // Parses statements separated by semicolons until the terminator, or the end if there is no terminator
+    private Node parseStatements(boolean insertReturn, @Nullable MolangLexer.TokenType terminator) throws MolangSyntaxException {
+        TokenReader reader = this.reader;
+        Node first = null;
+        List<Node> nodes = null;
+
+        while (reader.canRead() && reader.peek().type() != terminator) {
+            Node node = this.parseExpression();
+            if (first == null) {
+                first = node;
+            } else {
+                if (nodes == null) {
+                    nodes = new ArrayList<>();
+                    nodes.add(first);
+                }
+                nodes.add(node);
+            }
 
             if (reader.canRead()) {
                 MolangLexer.Token token = reader.peek();
@@ -34,33 +121,247 @@ public final class MolangParser {
                     reader.skip();
                     continue;
                 }
-                if (filter.test(token)) {
+                if (token.type() == terminator) {
                     break;
                 }
                 throw error("Trailing statement", reader);
             }
         }
 
-        if (nodes.isEmpty()) {
+        if (first == null) {
             throw new MolangSyntaxException("Expected node");
         }
         if (insertReturn) {
-            Node node = nodes.get(nodes.size() - 1);
-            if (!(node instanceof ReturnNode)) {
-                if (node instanceof OptionalValueNode setNode) {
-                    node = setNode.withReturnValue();
+            if (nodes != null) {
+                nodes.set(nodes.size() - 1, withReturn(nodes.get(nodes.size() - 1)));
+            } else {
+                first = withReturn(first);
+            }
+        }
+        return nodes != null ? new CompoundNode(nodes.toArray(Node[]::new)) : first;
+    }
+
+    private static Node withReturn(Node node) {
+        if (node instanceof ReturnNode) {
+            return node;
+        }
+        if (node instanceof OptionalValueNode setNode) {
+            node = setNode.withReturnValue();
+        }
+        return new ReturnNode(node);
+    }
+
+    // Parses a full expression. Operators and parentheses only use the stacks, nested statements and arguments recurse
+    private Node parseExpression() throws MolangSyntaxException {
+        TokenReader reader = this.reader;
+        int operandBase = this.operandCount;
+        int operatorBase = this.operatorCount;
+        int openParentheses = 0;
+
+        while (true) {
+            // Prefix operators and opening parentheses
+            while (true) {
+                expectLength(reader, 1);
+                MolangLexer.Token token = reader.peek();
+                if (token.type() == MolangLexer.TokenType.LEFT_PARENTHESIS) {
+                    reader.skip();
+                    this.pushOperator(PARENTHESIS);
+                    openParentheses++;
+                } else if (token.type() == MolangLexer.TokenType.BINARY_OPERATION && isChar(token, '-')) {
+                    reader.skip();
+                    this.pushOperator(NEGATE);
+                } else if (token.type() == MolangLexer.TokenType.BINARY_OPERATION && isChar(token, '+')) {
+                    reader.skip();
+                } else if (token.type() == MolangLexer.TokenType.SPECIAL && isChar(token, '!')) {
+                    reader.skip();
+                    this.pushOperator(NOT);
+                } else {
+                    break;
                 }
-                nodes.set(nodes.size() - 1, new ReturnNode(node));
             }
+
+            this.pushOperand(this.parseNode());
+
+            // Postfix: closing parentheses, binary operators, and conditionals
+            while (true) {
+                if (!reader.canRead()) {
+                    return this.finishExpression(operandBase, operatorBase, openParentheses);
+                }
+
+                MolangLexer.Token token = reader.peek();
+                if (token.type() == MolangLexer.TokenType.RIGHT_PARENTHESIS && openParentheses > 0) {
+                    reader.skip();
+                    this.reduceUntilParenthesis(operatorBase);
+                    this.operatorCount--;
+                    openParentheses--;
+                    continue;
+                }
+
+                if (token.type() == MolangLexer.TokenType.SPECIAL && isChar(token, '?')) {
+                    reader.skip();
+                    // Conditionals have the lowest precedence, so everything since the last parenthesis is the condition
+                    this.reduceUntilParenthesis(operatorBase);
+                    Node condition = withValue(this.popOperand());
+                    Node left = this.parseExpression();
+                    if (reader.canRead() && reader.peek().type() == MolangLexer.TokenType.SPECIAL && isChar(reader.peek(), ':')) {
+                        reader.skip();
+                        this.pushOperand(new TernaryOperationNode(condition, left, this.parseExpression()));
+                    } else {
+                        this.pushOperand(new BinaryConditionalNode(condition, left));
+                    }
+                    continue;
+                }
+
+                BinaryOperation operation = this.parseBinaryOperation(token);
+                if (operation == null) {
+                    return this.finishExpression(operandBase, operatorBase, openParentheses);
+                }
+
+                int precedence = getPrecedence(operation.ordinal());
+                // All binary operators are left associative
+                while (this.operatorCount > operatorBase && this.operators[this.operatorCount - 1] != PARENTHESIS && getPrecedence(this.operators[this.operatorCount - 1]) >= precedence) {
+                    this.reduce();
+                }
+                this.pushOperator(operation.ordinal());
+                break;
+            }
+        }
+    }
+
+    private Node finishExpression(int operandBase, int operatorBase, int openParentheses) throws MolangSyntaxException {
+        if (openParentheses > 0) {
+            throw error("Expected " + MolangLexer.TokenType.RIGHT_PARENTHESIS, this.reader);
         }
-        if (nodes.size() == 1) {
-            return nodes.get(0);
+        while (this.operatorCount > operatorBase) {
+            this.reduce();
         }
-        return new CompoundNode(nodes.toArray(Node[]::new));
+        if (this.operandCount != operandBase + 1) {
+            throw error("Unexpected token", this.reader);
+        }
+        return this.popOperand();
+    }
+
+    // Reads the operator at the cursor and skips it, or returns null without moving if the token is not a binary operator
+    @Nullable
+    private BinaryOperation parseBinaryOperation(MolangLexer.Token token) throws MolangSyntaxException {
+        TokenReader reader = this.reader;
+        BinaryOperation operation;
+        int length = 1;
+        switch (token.type()) {
+            case BINARY_OPERATION -> operation = switch (token.value()) {
+                case "+" -> BinaryOperation.ADD;
+                case "-" -> BinaryOperation.SUBTRACT;
+                case "*" -> BinaryOperation.MULTIPLY;
+                case "/" -> BinaryOperation.DIVIDE;
+                default -> throw error("Unexpected token", reader);
+            };
+            case NULL_COALESCING -> operation = BinaryOperation.NULL_COALESCING;
+            case EQUAL -> {
+                expectLength(reader, 2);
+                if (reader.peekAfter(1).type() != MolangLexer.TokenType.EQUAL) {
+                    throw error("Expected " + MolangLexer.TokenType.EQUAL, reader);
+                }
+                operation = BinaryOperation.EQUALS;
+                length = 2;
+            }
+            case SPECIAL -> {
+                boolean equal = reader.canRead(2) && reader.peekAfter(1).type() == MolangLexer.TokenType.EQUAL;
+                if (isChar(token, '&') || isChar(token, '|')) {
+                    expectLength(reader, 2);
+                    MolangLexer.Token next = reader.peekAfter(1);
+                    if (next.type() != MolangLexer.TokenType.SPECIAL || !isChar(next, token.source().charAt(token.offset()))) {
+                        throw error("Expected " + token.value(), reader);
+                    }
+                    operation = isChar(token, '&') ? BinaryOperation.AND : BinaryOperation.OR;
+                    length = 2;
+                } else if (isChar(token, '<')) {
+                    operation = equal ? BinaryOperation.LESS_EQUALS : BinaryOperation.LESS;
+                    length = equal ? 2 : 1;
+                } else if (isChar(token, '>')) {
+                    operation = equal ? BinaryOperation.GREATER_EQUALS : BinaryOperation.GREATER;
+                    length = equal ? 2 : 1;
+                } else if (isChar(token, '!') && equal) {
+                    operation = BinaryOperation.NOT_EQUALS;
+                    length = 2;
+                } else {
+                    return null;
+                }
+            }
+            default -> {
+                return null;
+            }
+        }
+        reader.skip(length);
+        return operation;
+    }
+
+    private static int getPrecedence(int operator) {
+        if (operator == NEGATE || operator == NOT) {
+            return UNARY_PRECEDENCE;
+        }
+        return switch (BINARY_OPERATIONS[operator]) {
+            case OR -> 1;
+            case AND -> 2;
+            case EQUALS, NOT_EQUALS -> 3;
+            case LESS, LESS_EQUALS, GREATER, GREATER_EQUALS -> 4;
+            case ADD, SUBTRACT -> 5;
+            case MULTIPLY, DIVIDE -> 6;
+            // Packs rely on "v.a ?? 0 > 1" comparing the coalesced value
+            case NULL_COALESCING -> 7;
+        };
+    }
+
+    private void reduceUntilParenthesis(int operatorBase) {
+        while (this.operatorCount > operatorBase && this.operators[this.operatorCount - 1] != PARENTHESIS) {
+            this.reduce();
+        }
+    }
+
+    private void reduce() {
+        int operator = this.operators[--this.operatorCount];
+        if (operator == NEGATE) {
+            this.pushOperand(new BinaryOperationNode(BinaryOperation.MULTIPLY, new ConstNode(-1.0F), withValue(this.popOperand())));
+        } else if (operator == NOT) {
+            this.pushOperand(new NegateNode(withValue(this.popOperand())));
+        } else {
+            Node right = withValue(this.popOperand());
+            Node left = withValue(this.popOperand());
+            this.pushOperand(new BinaryOperationNode(BINARY_OPERATIONS[operator], left, right));
+        }
+    }
+
+    private void pushOperand(Node node) {
+        if (this.operandCount == this.operands.length) {
+            this.operands = Arrays.copyOf(this.operands, this.operandCount * 2);
+        }
+        this.operands[this.operandCount++] = node;
+    }
+
+    private Node popOperand() {
+        Node node = this.operands[--this.operandCount];
+        this.operands[this.operandCount] = null;
+        return node;
+    }
+
+    private void pushOperator(int operator) {
+        if (this.operatorCount == this.operators.length) {
+            this.operators = Arrays.copyOf(this.operators, this.operatorCount * 2);
+        }
+        this.operators[this.operatorCount++] = operator;
+    }
+
+    // Assignments used as operands must leave their value on the stack
+    private static Node withValue(Node node) {
+        return node instanceof OptionalValueNode setNode ? setNode.withReturnValue() : node;
+    }
+
+    private static boolean isChar(MolangLexer.Token token, char c) {
+        return token.length() == 1 && token.source().charAt(token.offset()) == c;
     }
 
-    // Parses a single token statement. Eg temp.a=4 or variable.test from variable.test * 2;
-    private static Node parseNode(TokenReader reader) throws MolangSyntaxException {
+    // Parses a single operand. Eg temp.a=4 or variable.test from variable.test * 2;
+    private Node parseNode() throws MolangSyntaxException {
+        TokenReader reader = this.reader;
         expectLength(reader, 1);
 
         MolangLexer.Token token = reader.peek();
@@ -68,7 +369,7 @@ public final class MolangParser {
             case RETURN -> {
                 reader.skip();
 
-                Node value = parseExpression(reader);
+                Node value = this.parseExpression();
                 // Skip ;
                 if (reader.canRead() && reader.peek().type().isTerminating()) {
                     reader.skip();
@@ -78,21 +379,21 @@ public final class MolangParser {
                 if (reader.canRead() && !scope) {
                     throw error("Trailing statement", reader);
                 }
-                if (value instanceof OptionalValueNode setNode) {
-                    value = setNode.withReturnValue();
-                }
-                yield new ReturnNode(value);
+                yield new ReturnNode(withValue(value));
             }
             case LOOP -> {
                 reader.skip();
                 expect(reader, MolangLexer.TokenType.LEFT_PARENTHESIS);
                 reader.skip();
 
-                Node iterations = parseTokensUntil(reader, false, t -> t.type() == MolangLexer.TokenType.COMMA);
+                Node iterations = this.parseStatements(false, MolangLexer.TokenType.COMMA);
                 expect(reader, MolangLexer.TokenType.COMMA);
                 reader.skip();
 
-                Node body = parseTokensUntil(reader, false, t -> t.type() == MolangLexer.TokenType.RIGHT_PARENTHESIS);
+                // Only the body can break or continue this loop
+                this.loopDepth++;
+                Node body = this.parseStatements(false, MolangLexer.TokenType.RIGHT_PARENTHESIS);
+                this.loopDepth--;
                 expect(reader, MolangLexer.TokenType.RIGHT_PARENTHESIS);
                 reader.skip();
 
@@ -100,10 +401,16 @@ public final class MolangParser {
                 yield new LoopNode(iterations, body instanceof ScopeNode scopeNode ? scopeNode.node() : body);
             }
             case CONTINUE -> {
+                if (this.loopDepth == 0) {
+                    throw error("Cannot continue outside of loop", reader);
+                }
                 reader.skip();
                 yield new ContinueNode();
             }
             case BREAK -> {
+                if (this.loopDepth == 0) {
+                    throw error("Cannot break outside of loop", reader);
+                }
                 reader.skip();
                 yield new BreakNode();
             }
@@ -113,15 +420,15 @@ public final class MolangParser {
                 reader.skip();
 
                 // if(condition)
-                Node condition = parseExpression(reader);
+                Node condition = this.parseExpression();
 
                 expect(reader, MolangLexer.TokenType.RIGHT_PARENTHESIS);
                 reader.skip();
 
-                Node branch = parseExpression(reader);
+                Node branch = this.parseExpression();
                 if (reader.canRead(2) && reader.peek().type().isTerminating() && reader.peekAfter(1).type() == MolangLexer.TokenType.ELSE) {
                     reader.skip(2);
-                    yield new TernaryOperationNode(condition, branch, parseExpression(reader));
+                    yield new TernaryOperationNode(condition, branch, this.parseExpression());
                 }
 
                 // value ? left
@@ -160,41 +467,14 @@ public final class MolangParser {
                     }
 
                     yield new ConstNode(value);
-                } catch (Exception e) {
-                    e.printStackTrace();
+                } catch (NumberFormatException e) {
                     throw error("Error parsing numeral", reader);
                 }
             }
-            case ALPHANUMERIC -> parseAlphanumeric(reader);
-            case BINARY_OPERATION -> {
-                switch (token.value()) {
-                    case "-" -> {
-                        if (!reader.canRead(2) || !reader.peekAfter(1).type().canNegate()) {
-                            throw error("Cannot negate " + reader.peekAfter(1), reader);
-                        }
-                        reader.skip();
-                        yield new BinaryOperationNode(BinaryOperation.MULTIPLY, new ConstNode(-1.0F), parseNode(reader));
-                    }
-                    case "+" -> {
-                        if (!reader.canRead(2) || !reader.peekAfter(1).type().canNegate()) {
-                            throw error("Cannot assign + to " + reader.peekAfter(1), reader);
-                        }
-                        reader.skip();
-                        yield parseNode(reader);
-                    }
-                    default -> throw error("Expected +num or -num", reader);
-                }
-            }
-            case LEFT_PARENTHESIS -> {
-                reader.skip();
-                Node node = parseExpression(reader);
-                expect(reader, MolangLexer.TokenType.RIGHT_PARENTHESIS);
-                reader.skip();
-                yield node;
-            }
+            case ALPHANUMERIC -> this.parseAlphanumeric();
             case LEFT_BRACE -> {
                 reader.skip();
-                Node node = parseTokensUntil(reader, false, t -> t.type() == MolangLexer.TokenType.RIGHT_BRACE);
+                Node node = this.parseStatements(false, MolangLexer.TokenType.RIGHT_BRACE);
                 expect(reader, MolangLexer.TokenType.RIGHT_BRACE);
                 reader.skip();
                 yield new ScopeNode(node);
@@ -203,121 +483,8 @@ public final class MolangParser {
         };
     }
 
-    // Parses a full expression by parsing each node inside
-    public static Node parseExpression(TokenReader reader) throws MolangSyntaxException {
-        Node result = parseNode(reader);
-        while (reader.canRead()) {
-            MolangLexer.Token token = reader.peek();
-            if (token.type() == MolangLexer.TokenType.SEMICOLON || token.type().isOutOfScope()) {
-                return result;
-            }
-
-            if (result instanceof OptionalValueNode setNode) {
-                result = setNode.withReturnValue();
-            }
-
-            switch (token.type()) {
-                case NUMERAL, ALPHANUMERIC, LEFT_PARENTHESIS, LEFT_BRACE -> {
-                    if (result != null) {
-                        throw error("Unexpected token", reader);
-                    }
-                    result = parseNode(reader);
-                }
-                case NULL_COALESCING -> {
-                    reader.skip();
-                    result = new BinaryOperationNode(BinaryOperation.NULL_COALESCING, result, parseNode(reader));
-                }
-                case EQUAL -> {
-                    reader.skip();
-                    expect(reader, MolangLexer.TokenType.EQUAL);
-                    reader.skip();
-                    result = new BinaryOperationNode(BinaryOperation.EQUALS, result, parseNode(reader));
-                }
-                case SPECIAL -> {
-                    switch (token.value()) {
-                        // obj.name&&...
-                        case "&" -> {
-                            expect(reader, MolangLexer.TokenType.SPECIAL, "&");
-                            reader.skip(2);
-                            result = new BinaryOperationNode(BinaryOperation.AND, result, parseNode(reader));
-                        }
-                        // obj.name||...
-                        case "|" -> {
-                            expect(reader, MolangLexer.TokenType.SPECIAL, "|");
-                            reader.skip(2);
-                            result = new BinaryOperationNode(BinaryOperation.OR, result, parseNode(reader));
-                        }
-                        // obj.name??... or obj.name?b...
-                        case "?" -> {
-                            reader.skip();
-
-                            // value ? left : right
-                            Node left = parseExpression(reader);
-                            if (reader.canRead() && !reader.peek().type().isTerminating()) {
-                                expect(reader, MolangLexer.TokenType.SPECIAL, ":");
-                                reader.skip();
-                                result = new TernaryOperationNode(result, left, parseExpression(reader));
-                                break;
-                            }
-
-                            // value ? left
-                            result = new BinaryConditionalNode(result, left);
-                        }
-                        case "!" -> {
-                            reader.skip();
-
-                            if (reader.peek().type() == MolangLexer.TokenType.EQUAL) {
-                                reader.skip();
-                                result = new BinaryOperationNode(BinaryOperation.NOT_EQUALS, result, parseNode(reader));
-                                break;
-                            }
-
-                            if (result != null) {
-                                throw error("Unexpected token", reader);
-                            }
-                            result = new NegateNode(parseNode(reader));
-                        }
-                        case ">" -> {
-                            reader.skip();
-
-                            if (reader.peek().type() == MolangLexer.TokenType.EQUAL) {
-                                reader.skip();
-                                result = new BinaryOperationNode(BinaryOperation.GREATER_EQUALS, result, parseNode(reader));
-                                break;
-                            }
-
-                            result = new BinaryOperationNode(BinaryOperation.GREATER, result, parseNode(reader));
-                        }
-                        case "<" -> {
-                            reader.skip();
-
-                            if (reader.peek().type() == MolangLexer.TokenType.EQUAL) {
-                                reader.skip();
-                                result = new BinaryOperationNode(BinaryOperation.LESS_EQUALS, result, parseNode(reader));
-                                break;
-                            }
-
-                            result = new BinaryOperationNode(BinaryOperation.LESS, result, parseNode(reader));
-                        }
-                        default -> {
-                            return result;
-                        }
-                    }
-                }
-                case BINARY_OPERATION -> {
-                    if (result == null) {
-                        throw error("Unexpected token", reader);
-                    }
-                    result = parseBinaryExpression(result, reader);
-                }
-                default -> throw error("Unexpected token: " + token, reader);
-            }
-        }
-
-        return result;
-    }
-
-    private static Node parseAlphanumeric(TokenReader reader) throws MolangSyntaxException {
+    private Node parseAlphanumeric() throws MolangSyntaxException {
+        TokenReader reader = this.reader;
         expectLength(reader, 2);
 
         // object.name
@@ -331,19 +498,21 @@ public final class MolangParser {
         reader.skip();
 
         expect(reader, MolangLexer.TokenType.ALPHANUMERIC);
-        StringBuilder nameBuilder = new StringBuilder(reader.peek().lowercaseValue());
+        String name = reader.peek().lowercaseValue();
         reader.skip();
-        while (reader.canRead()) {
-            MolangLexer.Token token = reader.peek();
-            if (!token.type().validVariableName()) {
-                break;
+        if (reader.canRead() && reader.peek().type().validVariableName()) {
+            StringBuilder nameBuilder = new StringBuilder(name);
+            while (reader.canRead()) {
+                MolangLexer.Token token = reader.peek();
+                if (!token.type().validVariableName()) {
+                    break;
+                }
+                nameBuilder.append(token.lowercaseValue());
+                reader.skip();
             }
-            nameBuilder.append(token.lowercaseValue());
-            reader.skip();
+            name = nameBuilder.toString();
         }
 
-        String name = nameBuilder.toString();
-
         MathOperation mathOperation = parseMathOperation(object, name, reader);
         if (mathOperation != null && mathOperation.getParameters() == 0) {
             return new MathNode(mathOperation);
@@ -362,7 +531,7 @@ public final class MolangParser {
         // obj.name=...
         if (operand.type() == MolangLexer.TokenType.EQUAL) {
             // obj.name==...
-            if (reader.canRead() && reader.peekAfter(1).type() == MolangLexer.TokenType.EQUAL) {
+            if (reader.canRead(2) && reader.peekAfter(1).type() == MolangLexer.TokenType.EQUAL) {
                 // == will be handled by the next step
                 return new VariableGetNode(object, name);
             }
@@ -371,7 +540,7 @@ public final class MolangParser {
                 throw error("Cannot set value of a math function", reader);
             }
             reader.skip();
-            return new VariableSetNode(object, name, parseExpression(reader));
+            return new VariableSetNode(object, name, this.parseExpression());
         }
         // obj.name++
         if (operand.type() == MolangLexer.TokenType.INCREMENT) {
@@ -384,42 +553,42 @@ public final class MolangParser {
             return new VariableSetNode(object, name, new BinaryOperationNode(BinaryOperation.SUBTRACT, new VariableGetNode(object, name), new ConstNode(1.0F)));
         }
         // obj.name*=, obj.name+=, obj.name-=, obj.name/=
-        if (reader.canRead(2) && operand.type() == MolangLexer.TokenType.BINARY_OPERATION) {
+        if (reader.canRead(2) && operand.type() == MolangLexer.TokenType.BINARY_OPERATION && reader.peekAfter(1).type() == MolangLexer.TokenType.EQUAL) {
             if (mathOperation != null) {
                 throw error("Cannot set value of a math function", reader);
             }
 
             VariableGetNode left = new VariableGetNode(object, name);
-            MolangLexer.Token secondOperand = reader.peekAfter(1);
-
-            // +=, -=, *=, /=
-            if (secondOperand.type() == MolangLexer.TokenType.EQUAL) {
-                reader.skip(2);
-                Node value = switch (operand.value()) {
-                    case "-" -> new BinaryOperationNode(BinaryOperation.SUBTRACT, left, parseExpression(reader));
-                    case "+" -> new BinaryOperationNode(BinaryOperation.ADD, left, parseExpression(reader));
-                    case "*" -> new BinaryOperationNode(BinaryOperation.MULTIPLY, left, parseExpression(reader));
-                    case "/" -> new BinaryOperationNode(BinaryOperation.DIVIDE, left, parseExpression(reader));
-                    default -> throw error("Unexpected token", reader);
-                };
-                return new VariableSetNode(object, name, value);
-            }
+            BinaryOperation operation = switch (operand.value()) {
+                case "-" -> BinaryOperation.SUBTRACT;
+                case "+" -> BinaryOperation.ADD;
+                case "*" -> BinaryOperation.MULTIPLY;
+                case "/" -> BinaryOperation.DIVIDE;
+                default -> throw error("Unexpected token", reader);
+            };
+            reader.skip(2);
+            return new VariableSetNode(object, name, new BinaryOperationNode(operation, left, this.parseExpression()));
         }
         // obj.func(..
         if (operand.type() == MolangLexer.TokenType.LEFT_PARENTHESIS) {
             reader.skip();
 
             // obj.func()
+            expectLength(reader, 1);
             if (reader.peek().type() == MolangLexer.TokenType.RIGHT_PARENTHESIS) {
                 reader.skip();
+                if (mathOperation != null) {
+                    throw error("Expected " + mathOperation.getParameters() + " parameters, got 0", reader);
+                }
                 return new FunctionNode(object, name);
             }
 
             // obj.func(a, b, ...)
-            List<Node> parameters = new ArrayList<>();
-            while (reader.canRead()) {
-                parameters.add(parseExpression(reader));
+            List<Node> parameters = new ArrayList<>(mathOperation != null ? mathOperation.getParameters() : 2);
+            while (true) {
+                parameters.add(withValue(this.parseExpression()));
 
+                expectLength(reader, 1);
                 if (reader.peek().type() == MolangLexer.TokenType.COMMA) {
                     reader.skip();
                     continue;
@@ -438,68 +607,25 @@ public final class MolangParser {
 
                 return new FunctionNode(object, name, parameters.toArray(Node[]::new));
             }
-            expectLength(reader, 1);
         }
 
+        if (mathOperation != null) {
+            throw error("Cannot get value of a math function", reader);
+        }
         return new VariableGetNode(object, name);
     }
 
+    @Nullable
     private static MathOperation parseMathOperation(String object, String name, TokenReader reader) throws MolangSyntaxException {
-        if (!"math".equalsIgnoreCase(object)) {
+        if (!"math".equals(object)) {
             return null;
         }
 
-        for (MathOperation operation : MathOperation.values()) {
-            if (operation.getName().equalsIgnoreCase(name)) {
-                return operation;
-            }
-        }
-        throw error("Unknown math function: " + name, reader);
-    }
-
-    private static Node parseBinaryExpression(Node left, TokenReader reader) throws MolangSyntaxException {
-        MolangLexer.Token token = reader.peek();
-        switch (token.value()) {
-            case "+" -> {
-                reader.skip();
-                return new BinaryOperationNode(BinaryOperation.ADD, left, parseTerm(reader));
-            }
-            case "-" -> {
-                reader.skip();
-                return new BinaryOperationNode(BinaryOperation.SUBTRACT, left, parseTerm(reader));
-            }
-            case "*" -> {
-                reader.skip();
-                return new BinaryOperationNode(BinaryOperation.MULTIPLY, left, parseNode(reader));
-            }
-            case "/" -> {
-                reader.skip();
-                return new BinaryOperationNode(BinaryOperation.DIVIDE, left, parseNode(reader));
-            }
-        }
-        return left;
-    }
-
-    private static Node parseTerm(TokenReader reader) throws MolangSyntaxException {
-        Node left = parseNode(reader);
-        if (!reader.canRead()) {
-            return left;
-        }
-
-        MolangLexer.Token token = reader.peek();
-        if (token.type() == MolangLexer.TokenType.BINARY_OPERATION) {
-            switch (token.value()) {
-                case "*" -> {
-                    reader.skip();
-                    return new BinaryOperationNode(BinaryOperation.MULTIPLY, left, parseNode(reader));
-                }
-                case "/" -> {
-                    reader.skip();
-                    return new BinaryOperationNode(BinaryOperation.DIVIDE, left, parseNode(reader));
-                }
-            }
+        MathOperation operation = MATH_OPERATIONS.get(name);
+        if (operation == null) {
+            throw error("Unknown math function: " + name, reader);
         }
-        return left;
+        return operation;
     }
 
     public static void expect(TokenReader reader, MolangLexer.TokenType token) throws MolangSyntaxException {
@@ -0,0 +1,146 @@
+package gg.moonflower.molangcompiler.core.ir;
+
+import org.jetbrains.annotations.ApiStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>Cleans up the control flow graph after lowering and other passes.</p>
+ * <p>Phis with only one distinct value are replaced by that value, branches on constants become jumps,
+ * blocks that only jump are skipped, and blocks are merged into their only predecessor.
+ * Edges from blocks with multiple successors are never connected directly to a block with phis.</p>
+ *
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public final class ControlFlowSimplifier implements IrPass {
+
+    @Override
+    public void apply(IrFunction function) {
+        boolean changed = true;
+        while (changed) {
+            changed = this.removeTrivialPhis(function);
+            changed |= this.foldBranches(function);
+            changed |= function.removeUnreachable();
+            changed |= this.skipEmptyBlocks(function);
+            changed |= this.mergeBlocks(function);
+        }
+    }
+
+    private boolean removeTrivialPhis(IrFunction function) {
+        boolean changed = false;
+        for (IrBlock block : function.getBlocks()) {
+            for (IrInstruction phi : block.getPhis()) {
+                IrInstruction value = null;
+                boolean trivial = true;
+                for (IrInstruction operand : phi.getOperands()) {
+                    if (operand == phi || operand == value) {
+                        continue;
+                    }
+                    if (value != null) {
+                        trivial = false;
+                        break;
+                    }
+                    value = operand;
+                }
+                if (trivial && value != null) {
+                    function.replaceUses(phi, value);
+                    block.getInstructions().remove(phi);
+                    changed = true;
+                }
+            }
+        }
+        return changed;
+    }
+
+    private boolean foldBranches(IrFunction function) {
+        boolean changed = false;
+        for (IrBlock block : function.getBlocks()) {
+            IrInstruction terminator = block.getTerminator();
+            if (terminator == null || terminator.getOpcode() != IrOpcode.BRANCH || !terminator.getOperand(0).isConstant()) {
+                continue;
+            }
+            IrBlock target = block.getSuccessors().get(terminator.getOperand(0).getValue() != 0.0F ? 0 : 1);
+            IrBlock skipped = block.getSuccessors().get(terminator.getOperand(0).getValue() != 0.0F ? 1 : 0);
+            function.removeEdge(block, skipped);
+            function.removeEdge(block, target);
+            block.getInstructions().remove(terminator);
+            block.terminate(IrInstruction.jump(), target);
+            changed = true;
+        }
+        return changed;
+    }
+
+    // Predecessors of a block that only jumps can jump to its successor directly
+    private boolean skipEmptyBlocks(IrFunction function) {
+        boolean changed = false;
+        for (IrBlock block : new ArrayList<>(function.getBlocks())) {
+            if (block == function.getEntry() || block.getInstructions().size() != 1 || block.getTerminator().getOpcode() != IrOpcode.JUMP) {
+                continue;
+            }
+            IrBlock successor = block.getSuccessors().get(0);
+            if (successor == block || !this.canSkip(block, successor)) {
+                continue;
+            }
+
+            int index = successor.getPredecessors().indexOf(block);
+            List<IrInstruction> phis = successor.getPhis();
+            for (IrBlock predecessor : new ArrayList<>(block.getPredecessors())) {
+                predecessor.getSuccessors().set(predecessor.getSuccessors().indexOf(block), successor);
+                successor.getPredecessors().add(predecessor);
+                for (IrInstruction phi : phis) {
+                    phi.getOperands().add(phi.getOperand(index));
+                }
+            }
+            block.getPredecessors().clear();
+            function.removeEdge(block, successor);
+            function.getBlocks().remove(block);
+            changed = true;
+        }
+        return changed;
+    }
+
+    private boolean canSkip(IrBlock block, IrBlock successor) {
+        for (IrBlock predecessor : block.getPredecessors()) {
+            if (successor.getPredecessors().contains(predecessor) || predecessor.getSuccessors().contains(successor)) {
+                return false;
+            }
+            // Values for phis are moved at the end of the predecessor, which is only possible if it always continues there
+            if (!successor.getPhis().isEmpty() && predecessor.getTerminator().getOpcode() != IrOpcode.JUMP) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean mergeBlocks(IrFunction function) {
+        boolean changed = false;
+        for (IrBlock block : new ArrayList<>(function.getBlocks())) {
+            IrInstruction terminator = block.getTerminator();
+            if (!function.getBlocks().contains(block) || terminator == null || terminator.getOpcode() != IrOpcode.JUMP) {
+                continue;
+            }
+            IrBlock successor = block.getSuccessors().get(0);
+            if (successor == block || successor == function.getEntry() || successor.getPredecessors().size() != 1 || !successor.getPhis().isEmpty()) {
+                continue;
+            }
+
+            block.unterminate();
+            for (IrInstruction instruction : successor.getInstructions()) {
+                instruction.block = block;
+                block.getInstructions().add(instruction);
+            }
+            for (IrBlock next : successor.getSuccessors()) {
+                next.getPredecessors().set(next.getPredecessors().indexOf(successor), block);
+                block.getSuccessors().add(next);
+            }
+            successor.getInstructions().clear();
+            successor.getSuccessors().clear();
+            successor.getPredecessors().clear();
+            function.getBlocks().remove(successor);
+            changed = true;
+        }
+        return changed;
+    }
+}
@@ -0,0 +1,39 @@
+package gg.moonflower.molangcompiler.core.ir;
+
+import org.jetbrains.annotations.ApiStatus;
+
+import java.util.*;
+
+/**
+ * Removes instructions whose values are never used. Values are live if a store, call, or terminator uses them,
+ * so values only used by each other, like a loop variable that is never read after the loop, are removed as well.
+ *
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public final class DeadValueEliminator implements IrPass {
+
+    @Override
+    public void apply(IrFunction function) {
+        Set<IrInstruction> live = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<IrInstruction> worklist = new ArrayDeque<>();
+        for (IrBlock block : function.getBlocks()) {
+            for (IrInstruction instruction : block.getInstructions()) {
+                if (!instruction.isRemovable() && live.add(instruction)) {
+                    worklist.push(instruction);
+                }
+            }
+        }
+        while (!worklist.isEmpty()) {
+            for (IrInstruction operand : worklist.pop().getOperands()) {
+                if (live.add(operand)) {
+                    worklist.push(operand);
+                }
+            }
+        }
+
+        for (IrBlock block : function.getBlocks()) {
+            block.getInstructions().removeIf(instruction -> !live.contains(instruction));
+        }
+    }
+}
@@ -0,0 +1,570 @@
+package gg.moonflower.molangcompiler.core.ir;
+
+import gg.moonflower.molangcompiler.core.ast.BinaryOperation;
+import gg.moonflower.molangcompiler.core.ast.MathNode;
+import gg.moonflower.molangcompiler.core.ast.MathOperation;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * <p>Keeps values that are proven to be integers in int locals and computes them with int arithmetic.</p>
+ * <p>The range of every integer value is computed first. Values changed in a loop are bounded by the number of times the loop can repeat,
+ * so they only have a range in loops with a bounded count. Floats represent every integer up to <code>2^24</code> exactly,
+ * so a value is only narrowed if it, its operands, and every value it is computed from in a loop stay within that range.
+ * This makes the int arithmetic result in exactly the same values. Narrowed values are converted back to floats where they are stored,
+ * returned, or passed to functions.</p>
+ *
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public final class IntegerNarrowing implements IrPass {
+
+    private static final double LIMIT = 1 << 24;
+    private static final Range INT_RANGE = new Range(Integer.MIN_VALUE, Integer.MAX_VALUE);
+
+    @Override
+    public void apply(IrFunction function) {
+        // Only comparisons that already compare ints, such as loop counters, are kept before anything is retyped
+        Set<IrInstruction> intComparisons = new HashSet<>();
+        for (IrBlock block : function.getBlocks()) {
+            for (IrInstruction instruction : block.getInstructions()) {
+                if (instruction.getOpcode() == IrOpcode.COMPARE && instruction.getOperand(0).getType() == IrType.INT) {
+                    intComparisons.add(instruction);
+                }
+            }
+        }
+
+        for (IrBlock block : function.getBlocks()) {
+            List<IrInstruction> instructions = block.getInstructions();
+            for (int i = 0; i < instructions.size(); i++) {
+                IrInstruction instruction = instructions.get(i);
+                // Functions that always result in integers are computed as ints
+                if (instruction.getOpcode() == IrOpcode.MATH && MathNode.isInteger(instruction.getFunction())) {
+                    if (instruction.getFunction() == MathOperation.TRUNC) {
+                        IrInstruction truncated = IrInstruction.toInt(instruction.getOperand(0));
+                        instructions.set(i, truncated);
+                        truncated.block = block;
+                        function.replaceUses(instruction, truncated);
+                    } else {
+                        instruction.setType(IrType.INT);
+                    }
+                }
+            }
+        }
+
+        Ranges ranges = new Ranges(function);
+        Set<IrInstruction> narrowed = new HashSet<>();
+        for (IrBlock block : function.getBlocks()) {
+            for (IrInstruction instruction : block.getInstructions()) {
+                // Ranges are computed before anything changes
+                ranges.get(instruction);
+                if (isCandidate(instruction) && ranges.isExact(instruction)) {
+                    narrowed.add(instruction);
+                }
+            }
+        }
+
+        // Values can only be narrowed if all operands are ints as well. Nothing is gained by narrowing values only computed from constants
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            Iterator<IrInstruction> iterator = narrowed.iterator();
+            while (iterator.hasNext()) {
+                IrInstruction instruction = iterator.next();
+                boolean valid = true;
+                boolean constant = true;
+                for (IrInstruction operand : instruction.getOperands()) {
+                    if (operand.isConstant()) {
+                        valid &= ranges.isExact(operand);
+                        continue;
+                    }
+                    constant = false;
+                    valid &= narrowed.contains(operand) || (operand.getType() == IrType.INT && ranges.isExact(operand));
+                }
+                if (!valid || constant) {
+                    iterator.remove();
+                    changed = true;
+                }
+            }
+        }
+
+        for (IrInstruction instruction : narrowed) {
+            if (instruction.getOpcode() != IrOpcode.MATH) {
+                instruction.setType(IrType.INT);
+            }
+        }
+
+        // Conversions of values that are already integers do nothing
+        for (IrBlock block : function.getBlocks()) {
+            List<IrInstruction> instructions = block.getInstructions();
+            for (int i = 0; i < instructions.size(); i++) {
+                IrInstruction instruction = instructions.get(i);
+                if (instruction.getOpcode() == IrOpcode.F2I && instruction.getOperand(0).isConstant()) {
+                    IrInstruction constant = IrInstruction.intConstant((int) instruction.getOperand(0).getValue());
+                    instructions.set(i, constant);
+                    constant.block = block;
+                    function.replaceUses(instruction, constant);
+                } else if (isIdentity(instruction) && instruction.getOperand(0).getType() == IrType.INT && ranges.isExact(instruction.getOperand(0))) {
+                    function.replaceUses(instruction, instruction.getOperand(0));
+                    instructions.remove(i--);
+                }
+            }
+        }
+
+        // Values are converted where the type of an operand no longer matches its user
+        Map<IrInstruction, IrInstruction> converted = new HashMap<>();
+        for (IrBlock block : function.getBlocks()) {
+            for (IrInstruction instruction : new ArrayList<>(block.getInstructions())) {
+                List<IrInstruction> operands = instruction.getOperands();
+                for (int i = 0; i < operands.size(); i++) {
+                    IrInstruction operand = operands.get(i);
+                    IrType expected = getExpectedType(instruction, i, ranges, intComparisons);
+                    if (expected != null && operand.getType() != expected && operand.getType() != IrType.OBJECT) {
+                        operands.set(i, this.convert(operand, expected, instruction, i, converted));
+                    }
+                }
+            }
+        }
+    }
+
+    private IrInstruction convert(IrInstruction value, IrType type, IrInstruction user, int index, Map<IrInstruction, IrInstruction> converted) {
+        if (value.isConstant()) {
+            IrInstruction constant = type == IrType.INT ? IrInstruction.intConstant((int) value.getValue()) : IrInstruction.constant(value.getValue());
+            if (user.getOpcode() == IrOpcode.PHI) {
+                return user.getBlock().getPredecessors().get(index).insertBeforeTerminator(constant);
+            }
+            return user.getBlock().insert(user.getBlock().getInstructions().indexOf(user), constant);
+        }
+        if (type != IrType.FLOAT) {
+            throw new IllegalStateException("Cannot convert " + value + " to " + type);
+        }
+
+        // Converted once right after the value, so the conversion is available everywhere the value is
+        return converted.computeIfAbsent(value, unused -> {
+            IrBlock block = value.getBlock();
+            int position = value.getOpcode() == IrOpcode.PHI ? block.getPhis().size() : block.getInstructions().indexOf(value) + 1;
+            return block.insert(position, IrInstruction.toFloat(value));
+        });
+    }
+
+    private static boolean isCandidate(IrInstruction instruction) {
+        if (instruction.getType() != IrType.FLOAT) {
+            return false;
+        }
+        return switch (instruction.getOpcode()) {
+            case PHI -> true;
+            case BINARY -> instruction.getOperator() == BinaryOperation.ADD || instruction.getOperator() == BinaryOperation.SUBTRACT || instruction.getOperator() == BinaryOperation.MULTIPLY;
+            case MATH -> instruction.getFunction() == MathOperation.FLOOR || instruction.getFunction() == MathOperation.CEIL;
+            default -> false;
+        };
+    }
+
+    // Instructions that result in the operand if it is an integer
+    private static boolean isIdentity(IrInstruction instruction) {
+        if (instruction.getOpcode() == IrOpcode.F2I) {
+            return true;
+        }
+        if (instruction.getOpcode() != IrOpcode.MATH) {
+            return false;
+        }
+        MathOperation function = instruction.getFunction();
+        return function == MathOperation.FLOOR || function == MathOperation.CEIL || function == MathOperation.ROUND;
+    }
+
+    @Nullable
+    private static IrType getExpectedType(IrInstruction user, int index, Ranges ranges, Set<IrInstruction> intComparisons) {
+        return switch (user.getOpcode()) {
+            case PHI, BINARY -> user.getType();
+            case COMPARE -> isIntComparison(user, ranges, intComparisons) ? IrType.INT : IrType.FLOAT;
+            case I2F -> IrType.INT;
+            case BRANCH -> null;
+            default -> IrType.FLOAT;
+        };
+    }
+
+    // Comparing ints is only the same as comparing floats if both are exactly representable as floats
+    private static boolean isIntComparison(IrInstruction comparison, Ranges ranges, Set<IrInstruction> intComparisons) {
+        if (intComparisons.contains(comparison)) {
+            return true;
+        }
+        IrInstruction left = comparison.getOperand(0);
+        IrInstruction right = comparison.getOperand(1);
+        if (left.getType() != IrType.INT && right.getType() != IrType.INT) {
+            return false;
+        }
+        return (left.getType() == IrType.INT || left.isConstant()) && (right.getType() == IrType.INT || right.isConstant()) && ranges.isExact(left) && ranges.isExact(right);
+    }
+
+    /**
+     * The smallest and largest integer a value can be.
+     */
+    private record Range(double min, double max) {
+
+        static Range of(double value) {
+            return new Range(value, value);
+        }
+
+        Range add(Range other) {
+            return new Range(this.min + other.min, this.max + other.max);
+        }
+
+        Range subtract(Range other) {
+            return new Range(this.min - other.max, this.max - other.min);
+        }
+
+        Range multiply(Range other) {
+            double a = this.min * other.min;
+            double b = this.min * other.max;
+            double c = this.max * other.min;
+            double d = this.max * other.max;
+            return new Range(Math.min(Math.min(a, b), Math.min(c, d)), Math.max(Math.max(a, b), Math.max(c, d)));
+        }
+
+        Range union(Range other) {
+            return new Range(Math.min(this.min, other.min), Math.max(this.max, other.max));
+        }
+
+        // The range after the specified number of steps
+        Range repeat(Range step, double times) {
+            return new Range(this.min + Math.min(0, step.min * times), this.max + Math.max(0, step.max * times));
+        }
+
+        Range clampToInt() {
+            return new Range(Math.max(this.min, Integer.MIN_VALUE), Math.min(this.max, Integer.MAX_VALUE));
+        }
+
+        boolean contains(double value) {
+            return this.min <= value && value <= this.max;
+        }
+
+        boolean isExact() {
+            return this.min >= -LIMIT && this.max <= LIMIT;
+        }
+    }
+
+    /**
+     * A loop with a counter that limits how many times the back edge can be taken.
+     */
+    private record Loop(IrInstruction counter, int backEdge, double repeats) {
+    }
+
+    private static final class Ranges {
+
+        private final Map<IrBlock, IrBlock> dominators;
+        private final Map<IrInstruction, Range> ranges;
+        private final Map<IrBlock, Loop> loops;
+        private final Set<IrInstruction> visiting;
+        private final Map<IrInstruction, Set<IrInstruction>> tracing;
+
+        private Ranges(IrFunction function) {
+            this.dominators = function.getDominators();
+            this.ranges = new HashMap<>();
+            this.loops = new HashMap<>();
+            this.visiting = new HashSet<>();
+            this.tracing = new HashMap<>();
+        }
+
+        boolean isExact(IrInstruction value) {
+            Range range = this.get(value);
+            return range != null && range.isExact();
+        }
+
+        @Nullable
+        Range get(IrInstruction value) {
+            if (this.ranges.containsKey(value)) {
+                return this.ranges.get(value);
+            }
+            // Values depending on themselves are only bounded through loops
+            if (!this.visiting.add(value)) {
+                return null;
+            }
+            Range range = this.compute(value);
+            // Larger floats are rounded, so the ranges would no longer be exact
+            if (range != null && value.getType() == IrType.FLOAT && !range.isExact()) {
+                range = null;
+            }
+            this.visiting.remove(value);
+            // Values computed from a value that is still being visited may have a range later
+            if (range != null || this.visiting.isEmpty()) {
+                this.ranges.put(value, range);
+            }
+            return range;
+        }
+
+        @Nullable
+        private Range compute(IrInstruction value) {
+            return switch (value.getOpcode()) {
+                case CONST -> {
+                    float constant = value.getValue();
+                    if (value.getType() == IrType.INT || (Float.isFinite(constant) && constant == Math.rint(constant) && Float.floatToRawIntBits(constant) != Float.floatToRawIntBits(-0.0F))) {
+                        yield Range.of(constant);
+                    }
+                    yield null;
+                }
+                case HAS, COMPARE, NOT -> new Range(0, 1);
+                case F2I -> {
+                    Range range = this.getTruncated(value.getOperand(0));
+                    yield range != null ? range.clampToInt() : INT_RANGE;
+                }
+                case MATH -> this.computeMath(value);
+                case BINARY -> this.computeBinary(value);
+                case PHI -> this.computePhi(value);
+                default -> null;
+            };
+        }
+
+        @Nullable
+        private Range computeMath(IrInstruction value) {
+            List<IrInstruction> operands = value.getOperands();
+            Range range = switch (value.getFunction()) {
+                case FLOOR, CEIL -> this.get(operands.get(0));
+                case ROUND -> operands.get(0).isConstant() ? Range.of(Math.round(operands.get(0).getValue())) : this.get(operands.get(0));
+                case RANDOM_INTEGER -> {
+                    Range low = this.getTruncated(operands.get(0));
+                    Range high = this.getTruncated(operands.get(1));
+                    yield low != null && high != null ? low.union(high) : null;
+                }
+                case DIE_ROLL_INTEGER -> {
+                    Range count = this.getTruncated(operands.get(0));
+                    Range low = this.getTruncated(operands.get(1));
+                    Range high = this.getTruncated(operands.get(2));
+                    yield count != null && low != null && high != null ? Range.of(0).repeat(low.union(high), Math.max(0, count.max())) : null;
+                }
+                default -> null;
+            };
+            if (value.getType() == IrType.INT) {
+                return range != null ? range.clampToInt() : INT_RANGE;
+            }
+            return range;
+        }
+
+        @Nullable
+        private Range computeBinary(IrInstruction value) {
+            Range left = this.get(value.getOperand(0));
+            Range right = this.get(value.getOperand(1));
+            Range range = null;
+            if (left != null && right != null) {
+                range = switch (value.getOperator()) {
+                    case ADD -> left.add(right);
+                    case SUBTRACT -> left.subtract(right);
+                    // Floats result in -0 when multiplying 0 with a negative value
+                    case MULTIPLY -> value.getType() == IrType.FLOAT && ((left.contains(0) && right.min() < 0) || (right.contains(0) && left.min() < 0)) ? null : left.multiply(right);
+                    default -> null;
+                };
+            }
+            if (value.getType() == IrType.INT) {
+                // Ints overflow instead of becoming larger
+                return range != null && range.equals(range.clampToInt()) ? range : INT_RANGE;
+            }
+            return range;
+        }
+
+        @Nullable
+        private Range computePhi(IrInstruction phi) {
+            Loop loop = this.getLoop(phi.getBlock());
+            if (loop == null) {
+                if (this.hasBackEdge(phi.getBlock())) {
+                    return null;
+                }
+                Range range = null;
+                for (IrInstruction operand : phi.getOperands()) {
+                    Range operandRange = this.get(operand);
+                    if (operandRange == null) {
+                        return null;
+                    }
+                    range = range == null ? operandRange : range.union(operandRange);
+                }
+                return range;
+            }
+            if (loop.counter() == phi) {
+                return new Range(0, loop.repeats());
+            }
+
+            Range start = this.get(phi.getOperand(1 - loop.backEdge()));
+            Map<IrInstruction, Range> steps = new HashMap<>();
+            Range step = this.trace(phi.getOperand(loop.backEdge()), phi, steps);
+            if (start == null || step == null) {
+                return null;
+            }
+            Range range = start.repeat(step, loop.repeats());
+            // Every value in between has to be exact for the float values to be the same
+            for (Range partial : steps.values()) {
+                if (!range.add(partial).isExact()) {
+                    return null;
+                }
+            }
+            return range;
+        }
+
+        // Finds how much a value in a loop differs from the specified loop variable
+        @Nullable
+        private Range trace(IrInstruction value, IrInstruction variable, Map<IrInstruction, Range> steps) {
+            if (value == variable) {
+                return Range.of(0);
+            }
+            // Values of inner loops are traced again for their own variable
+            Set<IrInstruction> tracing = this.tracing.computeIfAbsent(variable, unused -> new HashSet<>());
+            if (value.getType() != IrType.FLOAT || !tracing.add(value)) {
+                return null;
+            }
+            try {
+                Range step = switch (value.getOpcode()) {
+                    case BINARY -> this.traceBinary(value, variable, steps);
+                    case PHI -> this.tracePhi(value, variable, steps);
+                    default -> null;
+                };
+                if (step != null) {
+                    steps.put(value, step);
+                }
+                return step;
+            } finally {
+                tracing.remove(value);
+            }
+        }
+
+        @Nullable
+        private Range traceBinary(IrInstruction value, IrInstruction variable, Map<IrInstruction, Range> steps) {
+            IrInstruction left = value.getOperand(0);
+            IrInstruction right = value.getOperand(1);
+            if (value.getOperator() == BinaryOperation.ADD) {
+                Range step = this.trace(left, variable, steps);
+                if (step != null) {
+                    Range offset = this.get(right);
+                    return offset != null ? step.add(offset) : null;
+                }
+                step = this.trace(right, variable, steps);
+                if (step != null) {
+                    Range offset = this.get(left);
+                    return offset != null ? step.add(offset) : null;
+                }
+            } else if (value.getOperator() == BinaryOperation.SUBTRACT) {
+                Range step = this.trace(left, variable, steps);
+                if (step != null) {
+                    Range offset = this.get(right);
+                    return offset != null ? step.subtract(offset) : null;
+                }
+            }
+            return null;
+        }
+
+        @Nullable
+        private Range tracePhi(IrInstruction phi, IrInstruction variable, Map<IrInstruction, Range> steps) {
+            if (phi.getBlock() == variable.getBlock()) {
+                return null;
+            }
+
+            Loop loop = this.getLoop(phi.getBlock());
+            if (loop == null) {
+                if (this.hasBackEdge(phi.getBlock())) {
+                    return null;
+                }
+                Range step = null;
+                for (IrInstruction operand : phi.getOperands()) {
+                    Range operandStep = this.trace(operand, variable, steps);
+                    if (operandStep == null) {
+                        return null;
+                    }
+                    step = step == null ? operandStep : step.union(operandStep);
+                }
+                return step;
+            }
+
+            // A variable of an inner loop changes by its own step in every repeat of the inner loop
+            Range start = this.trace(phi.getOperand(1 - loop.backEdge()), variable, steps);
+            Map<IrInstruction, Range> innerSteps = new HashMap<>();
+            Range innerStep = this.trace(phi.getOperand(loop.backEdge()), phi, innerSteps);
+            if (start == null || innerStep == null) {
+                return null;
+            }
+            Range step = start.repeat(innerStep, loop.repeats());
+            innerSteps.forEach((value, partial) -> steps.put(value, step.add(partial)));
+            return step;
+        }
+
+        private boolean hasBackEdge(IrBlock block) {
+            for (IrBlock predecessor : block.getPredecessors()) {
+                if (this.dominates(block, predecessor)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean dominates(IrBlock dominator, IrBlock block) {
+            while (block != dominator) {
+                IrBlock next = this.dominators.get(block);
+                if (next == null || next == block) {
+                    return false;
+                }
+                block = next;
+            }
+            return true;
+        }
+
+        /**
+         * Finds the counter of loops written by the {@link IrBuilder}. The counter starts at <code>0</code>
+         * and the back edge is only taken while the incremented counter is less than the count.
+         */
+        @Nullable
+        private Loop getLoop(IrBlock header) {
+            if (this.loops.containsKey(header)) {
+                return this.loops.get(header);
+            }
+            Loop loop = this.findLoop(header);
+            this.loops.put(header, loop);
+            return loop;
+        }
+
+        @Nullable
+        private Loop findLoop(IrBlock header) {
+            List<IrBlock> predecessors = header.getPredecessors();
+            if (predecessors.size() != 2) {
+                return null;
+            }
+            int backEdge = this.dominates(header, predecessors.get(1)) ? 1 : 0;
+            IrBlock latch = predecessors.get(backEdge);
+            if (!this.dominates(header, latch) || this.dominates(header, predecessors.get(1 - backEdge)) || latch.getPredecessors().size() != 1 || latch.getInstructions().size() != 1) {
+                return null;
+            }
+            IrInstruction branch = latch.getPredecessors().get(0).getTerminator();
+            if (branch == null || branch.getOpcode() != IrOpcode.BRANCH || branch.getBlock().getSuccessors().get(0) != latch) {
+                return null;
+            }
+            IrInstruction condition = branch.getOperand(0);
+            if (condition.getOpcode() != IrOpcode.COMPARE || condition.getOperator() != BinaryOperation.LESS) {
+                return null;
+            }
+
+            for (IrInstruction phi : header.getPhis()) {
+                IrInstruction start = phi.getOperand(1 - backEdge);
+                IrInstruction increment = phi.getOperand(backEdge);
+                if (phi.getType() == IrType.INT && isIntConstant(start, 0) && increment == condition.getOperand(0) && isIncrement(increment, phi)) {
+                    Range count = this.get(condition.getOperand(1));
+                    return count != null ? new Loop(phi, backEdge, Math.max(0, count.max() - 1)) : null;
+                }
+            }
+            return null;
+        }
+
+        private static boolean isIncrement(IrInstruction value, IrInstruction counter) {
+            if (value.getOpcode() != IrOpcode.BINARY || value.getOperator() != BinaryOperation.ADD || value.getType() != IrType.INT) {
+                return false;
+            }
+            return (value.getOperand(0) == counter && isIntConstant(value.getOperand(1), 1)) || (value.getOperand(1) == counter && isIntConstant(value.getOperand(0), 1));
+        }
+
+        private static boolean isIntConstant(IrInstruction value, int constant) {
+            return value.isConstant() && value.getType() == IrType.INT && value.getValue() == constant;
+        }
+
+        @Nullable
+        private Range getTruncated(IrInstruction value) {
+            if (value.isConstant()) {
+                return Range.of((int) value.getValue());
+            }
+            return this.get(value);
+        }
+    }
+}
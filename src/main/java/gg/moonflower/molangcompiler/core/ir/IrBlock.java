@@ -0,0 +1,158 @@
+package gg.moonflower.molangcompiler.core.ir;
+
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>A straight sequence of {@link IrInstruction instructions} that ends with exactly one terminator.</p>
+ * <p>Phis are always at the start of the block and have one operand for each predecessor in the same order.</p>
+ *
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public final class IrBlock {
+
+    private final List<IrInstruction> instructions;
+    private final List<IrBlock> predecessors;
+    private final List<IrBlock> successors;
+    int id;
+
+    IrBlock(int id) {
+        this.instructions = new ArrayList<>();
+        this.predecessors = new ArrayList<>();
+        this.successors = new ArrayList<>();
+        this.id = id;
+    }
+
+    /**
+     * Adds the specified instruction to the end of this block.
+     *
+     * @param instruction The instruction to add
+     * @return The instruction
+     */
+    public IrInstruction add(IrInstruction instruction) {
+        if (this.isTerminated()) {
+            throw new IllegalStateException("Block " + this.getLabel() + " is already terminated");
+        }
+        instruction.block = this;
+        if (instruction.getOpcode() == IrOpcode.PHI) {
+            int index = 0;
+            while (index < this.instructions.size() && this.instructions.get(index).getOpcode() == IrOpcode.PHI) {
+                index++;
+            }
+            this.instructions.add(index, instruction);
+        } else {
+            this.instructions.add(instruction);
+        }
+        return instruction;
+    }
+
+    /**
+     * Inserts the specified instruction at an index of this block.
+     *
+     * @param index       The index to insert at
+     * @param instruction The instruction to insert
+     * @return The instruction
+     */
+    public IrInstruction insert(int index, IrInstruction instruction) {
+        instruction.block = this;
+        this.instructions.add(index, instruction);
+        return instruction;
+    }
+
+    /**
+     * Adds the specified instruction before the terminator of this block.
+     *
+     * @param instruction The instruction to insert
+     * @return The instruction
+     */
+    public IrInstruction insertBeforeTerminator(IrInstruction instruction) {
+        instruction.block = this;
+        this.instructions.add(this.isTerminated() ? this.instructions.size() - 1 : this.instructions.size(), instruction);
+        return instruction;
+    }
+
+    /**
+     * Ends this block with the specified terminator.
+     *
+     * @param terminator The jump, branch, switch, or return instruction
+     * @param successors The blocks control can continue in
+     */
+    public void terminate(IrInstruction terminator, IrBlock... successors) {
+        this.add(terminator);
+        for (IrBlock successor : successors) {
+            this.successors.add(successor);
+            successor.predecessors.add(this);
+        }
+    }
+
+    /**
+     * Removes the terminator and all edges to successors. The phis of the successors must be updated separately.
+     */
+    void unterminate() {
+        if (this.isTerminated()) {
+            IrInstruction terminator = this.instructions.remove(this.instructions.size() - 1);
+            terminator.block = null;
+        }
+        for (IrBlock successor : this.successors) {
+            successor.predecessors.remove(this);
+        }
+        this.successors.clear();
+    }
+
+    /**
+     * @return Whether this block already ends with a terminator
+     */
+    public boolean isTerminated() {
+        return !this.instructions.isEmpty() && this.instructions.get(this.instructions.size() - 1).getOpcode().isTerminator();
+    }
+
+    /**
+     * @return The terminator of this block or <code>null</code> if the block is not finished
+     */
+    @Nullable
+    public IrInstruction getTerminator() {
+        return this.isTerminated() ? this.instructions.get(this.instructions.size() - 1) : null;
+    }
+
+    /**
+     * @return The phis at the start of this block
+     */
+    public List<IrInstruction> getPhis() {
+        List<IrInstruction> phis = new ArrayList<>();
+        for (IrInstruction instruction : this.instructions) {
+            if (instruction.getOpcode() != IrOpcode.PHI) {
+                break;
+            }
+            phis.add(instruction);
+        }
+        return phis;
+    }
+
+    public List<IrInstruction> getInstructions() {
+        return this.instructions;
+    }
+
+    public List<IrBlock> getPredecessors() {
+        return this.predecessors;
+    }
+
+    public List<IrBlock> getSuccessors() {
+        return this.successors;
+    }
+
+    /**
+     * @return The name this block is printed with
+     */
+    public String getLabel() {
+        return "b" + this.id;
+    }
+
+    @Override
+    public String toString() {
+        return this.getLabel();
+    }
+}
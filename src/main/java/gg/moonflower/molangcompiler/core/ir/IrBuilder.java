@@ -0,0 +1,577 @@
+package gg.moonflower.molangcompiler.core.ir;
+
+import gg.moonflower.molangcompiler.api.exception.MolangException;
+import gg.moonflower.molangcompiler.api.exception.MolangSyntaxException;
+import gg.moonflower.molangcompiler.core.ast.*;
+import gg.moonflower.molangcompiler.core.compiler.MolangBytecodeEnvironment;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * <p>Lowers a node tree into an {@link IrFunction}.</p>
+ * <p>Variables follow the same rules as the locals of the generated code. Each variable is read from its object the first time it is used on a path,
+ * and assignments only change the tracked value. Modified variables are written back with explicit {@link IrOpcode#SET stores} before returning,
+ * and wherever a value can no longer be tracked because it is only known on some of the paths joining at a block.
+ * Temp variables are never stored, so a temp variable only set on some paths is <code>0</code> on the others.</p>
+ *
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public final class IrBuilder {
+
+    private static final String TEMP = "temp.";
+    private static final String THIS = "this";
+
+    private final IrFunction function;
+    private final MolangBytecodeEnvironment environment;
+    private final boolean foldConstants;
+    private final Deque<Target[]> loops;
+    private IrBlock block;
+    private State state;
+
+    private IrBuilder(MolangBytecodeEnvironment environment, boolean foldConstants) {
+        this.function = new IrFunction();
+        this.environment = environment;
+        this.foldConstants = foldConstants;
+        this.loops = new ArrayDeque<>();
+        this.block = this.function.createBlock();
+        this.state = new State(new LinkedHashMap<>(), new LinkedHashSet<>());
+    }
+
+    /**
+     * Lowers the specified node.
+     *
+     * @param node        The node to lower
+     * @param environment The environment to evaluate constants in
+     * @return A new function computing the same value as the node
+     * @throws MolangException If the node contains anything that cannot be represented
+     */
+    public static IrFunction lower(Node node, MolangBytecodeEnvironment environment) throws MolangException {
+        return lower(node, environment, true);
+    }
+
+    /**
+     * Lowers the specified node.
+     *
+     * @param node          The node to lower
+     * @param environment   The environment to evaluate constants in
+     * @param foldConstants Whether constant subtrees are evaluated while lowering. They are evaluated as floats, so otherwise only literals are constants
+     * @return A new function computing the same value as the node
+     * @throws MolangException If the node contains anything that cannot be represented
+     */
+    public static IrFunction lower(Node node, MolangBytecodeEnvironment environment, boolean foldConstants) throws MolangException {
+        IrBuilder builder = new IrBuilder(environment, foldConstants);
+        IrInstruction value = builder.lowerNode(node);
+        if (builder.block != null) {
+            builder.ret(value != null ? value : builder.constant(0.0F));
+        }
+        return builder.function;
+    }
+
+    @Nullable
+    private IrInstruction lowerNode(Node node) throws MolangException {
+        if (this.block == null) {
+            return null;
+        }
+        if (this.isFolded(node) && !leavesBlock(node)) {
+            return node.hasValue() ? this.constant(node.evaluate(this.environment)) : null;
+        }
+
+        if (node instanceof ConstantSlotNode slot) {
+            return this.add(IrInstruction.constantSlot(slot.index()));
+        }
+        if (node instanceof ThisNode) {
+            IrInstruction value = this.state.values.get(THIS);
+            if (value == null) {
+                value = this.add(IrInstruction.getThis());
+                this.state.values.put(THIS, value);
+            }
+            return value;
+        }
+        if (node instanceof VariableGetNode get) {
+            return this.get(get.object(), get.name());
+        }
+        if (node instanceof VariableSetNode set) {
+            if (!"temp".equals(set.object())) {
+                // Loaded before the value, the same as the generated code
+                this.object(set.object());
+            }
+            IrInstruction value = this.value(set.value());
+            if (this.block == null) {
+                return null;
+            }
+            String key = set.object() + "." + set.name();
+            this.state.values.put(key, value);
+            if (!key.startsWith(TEMP)) {
+                this.state.dirty.add(key);
+            }
+            return set.returnValue() ? value : null;
+        }
+        if (node instanceof FunctionNode call) {
+            IrInstruction object = this.object(call.object());
+            IrInstruction[] arguments = new IrInstruction[call.arguments().length];
+            for (int i = 0; i < arguments.length; i++) {
+                arguments[i] = this.value(call.arguments()[i]);
+            }
+            return this.block != null ? this.add(IrInstruction.call(object, call.function(), arguments)) : null;
+        }
+        if (node instanceof MathNode math) {
+            IrInstruction[] arguments = new IrInstruction[math.arguments().length];
+            for (int i = 0; i < arguments.length; i++) {
+                arguments[i] = this.value(math.arguments()[i]);
+            }
+            return this.block != null ? this.add(IrInstruction.math(math.function(), arguments)) : null;
+        }
+        if (node instanceof NegateNode) {
+            return this.lowerBoolean(node);
+        }
+        if (node instanceof BinaryOperationNode operation) {
+            return switch (operation.operator()) {
+                case AND, OR -> this.lowerBoolean(node);
+                case NULL_COALESCING -> this.lowerNullCoalescing(operation);
+                default -> {
+                    IrInstruction left = this.value(operation.left());
+                    IrInstruction right = this.value(operation.right());
+                    yield this.block != null ? this.add(IrInstruction.binary(operation.operator(), left, right)) : null;
+                }
+            };
+        }
+        if (node instanceof TernaryOperationNode ternary) {
+            Target left = new Target();
+            Target right = new Target();
+            Target end = new Target();
+            this.lowerCondition(ternary.value(), left, right);
+            this.enter(left);
+            this.jump(end, this.lowerNode(ternary.left()));
+            this.enter(right);
+            this.jump(end, this.lowerNode(ternary.right()));
+            IrInstruction value = this.enter(end);
+            return ternary.hasValue() ? value : null;
+        }
+        if (node instanceof BinaryConditionalNode conditional) {
+            Target branch = new Target();
+            Target end = new Target();
+            this.lowerCondition(conditional.value(), branch, end);
+            this.enter(branch);
+            this.lowerNode(conditional.branch());
+            this.jump(end, null);
+            this.enter(end);
+            return null;
+        }
+        if (node instanceof CompoundNode compound) {
+            IrInstruction value = null;
+            for (Node child : compound.nodes()) {
+                value = this.lowerNode(child);
+            }
+            return compound.hasValue() ? value : null;
+        }
+        if (node instanceof ScopeNode scope) {
+            Set<String> known = new HashSet<>(this.state.values.keySet());
+            IrInstruction value = this.lowerNode(scope.node());
+            if (this.block != null) {
+                // Values first read in the scope are read again after it
+                this.forgetAllExcept(this.block, this.state, known);
+            }
+            return value;
+        }
+        if (node instanceof LoopNode loop) {
+            this.lowerLoop(loop);
+            return null;
+        }
+        if (node instanceof BreakNode || node instanceof ContinueNode) {
+            Target[] targets = this.loops.peek();
+            if (targets == null) {
+                throw new MolangSyntaxException("Cannot " + (node instanceof BreakNode ? "break" : "continue") + " outside of loop");
+            }
+            this.jump(targets[node instanceof BreakNode ? 0 : 1], null);
+            return null;
+        }
+        if (node instanceof ReturnNode ret) {
+            IrInstruction value = this.value(ret.value());
+            if (this.block != null) {
+                this.ret(value);
+            }
+            return null;
+        }
+        throw new MolangException("Cannot lower " + node.getClass().getSimpleName());
+    }
+
+    // Constant nodes can still return or leave a loop
+    private static boolean leavesBlock(Node node) throws MolangException {
+        if (node instanceof ReturnNode || node instanceof BreakNode || node instanceof ContinueNode) {
+            return true;
+        }
+        boolean[] leaves = new boolean[1];
+        node.transformChildren(child -> {
+            leaves[0] |= leavesBlock(child);
+            return child;
+        });
+        return leaves[0];
+    }
+
+    // Nodes used as values without one, like an assignment, result in 0
+    private IrInstruction value(Node node) throws MolangException {
+        IrInstruction value = this.lowerNode(node);
+        return value != null || this.block == null ? value : this.constant(0.0F);
+    }
+
+    private IrInstruction lowerBoolean(Node node) throws MolangException {
+        if (node instanceof NegateNode negate && !(negate.value() instanceof BinaryOperationNode operation && (operation.operator() == BinaryOperation.AND || operation.operator() == BinaryOperation.OR))) {
+            IrInstruction value = this.value(negate.value());
+            return this.block != null ? this.add(IrInstruction.not(value)) : null;
+        }
+
+        Target isTrue = new Target();
+        Target isFalse = new Target();
+        Target end = new Target();
+        this.lowerCondition(node, isTrue, isFalse);
+        this.enter(isTrue);
+        this.jump(end, this.block != null ? this.constant(1.0F) : null);
+        this.enter(isFalse);
+        this.jump(end, this.block != null ? this.constant(0.0F) : null);
+        return this.enter(end);
+    }
+
+    private IrInstruction lowerNullCoalescing(BinaryOperationNode operation) throws MolangException {
+        if (!(operation.left() instanceof VariableGetNode lookup)) {
+            throw new MolangSyntaxException("Expected variable lookup, got " + operation.left());
+        }
+        // Temp variables are known while compiling
+        if ("temp".equals(lookup.object())) {
+            return this.value(this.state.values.containsKey(TEMP + lookup.name()) ? operation.left() : operation.right());
+        }
+
+        IrInstruction has = this.add(IrInstruction.has(this.object(lookup.object()), lookup.name()));
+        IrBlock[] edges = this.branch(has);
+        Target end = new Target();
+        State state = this.state;
+        this.block = edges[0];
+        this.state = state.copy();
+        this.jump(end, this.value(operation.left()));
+        this.block = edges[1];
+        this.state = state.copy();
+        this.jump(end, this.value(operation.right()));
+        return this.enter(end);
+    }
+
+    private boolean isFolded(Node node) {
+        return this.foldConstants ? node.isConstant() : node instanceof ConstNode;
+    }
+
+    // Ends the current block by continuing at either target
+    private void lowerCondition(Node node, Target isTrue, Target isFalse) throws MolangException {
+        if (this.block == null) {
+            return;
+        }
+        if (this.isFolded(node)) {
+            this.jump(node.evaluate(this.environment) != 0.0F ? isTrue : isFalse, null);
+            return;
+        }
+        if (node instanceof NegateNode negate) {
+            this.lowerCondition(negate.value(), isFalse, isTrue);
+            return;
+        }
+        if (node instanceof BinaryOperationNode operation && (operation.operator() == BinaryOperation.AND || operation.operator() == BinaryOperation.OR)) {
+            Target right = new Target();
+            if (operation.operator() == BinaryOperation.AND) {
+                this.lowerCondition(operation.left(), right, isFalse);
+            } else {
+                this.lowerCondition(operation.left(), isTrue, right);
+            }
+            this.enter(right);
+            this.lowerCondition(operation.right(), isTrue, isFalse);
+            return;
+        }
+
+        IrInstruction value = this.value(node);
+        if (this.block == null) {
+            return;
+        }
+        IrBlock[] edges = this.branch(value);
+        State state = this.state;
+        this.block = edges[0];
+        this.state = state.copy();
+        this.jump(isTrue, null);
+        this.block = edges[1];
+        this.state = state.copy();
+        this.jump(isFalse, null);
+    }
+
+    private void lowerLoop(LoopNode loop) throws MolangException {
+        IrInstruction iterations = this.value(loop.iterations());
+        if (this.block == null) {
+            return;
+        }
+        IrInstruction count = this.add(IrInstruction.toInt(iterations));
+        IrInstruction start = this.add(IrInstruction.intConstant(0));
+
+        // Variables set in the body change between iterations, so they need a phi in the header
+        Set<String> writes = new LinkedHashSet<>();
+        collectWrites(loop.body(), writes);
+        List<String> keys = new ArrayList<>();
+        for (String key : writes) {
+            if (this.state.values.containsKey(key) || key.startsWith(TEMP)) {
+                keys.add(key);
+            }
+        }
+
+        IrBlock entry = this.block;
+        State entryState = this.state;
+        IrBlock header = this.function.createBlock();
+        IrInstruction counter = header.add(IrInstruction.phi(IrType.INT));
+        counter.getOperands().add(start);
+        State headerState = entryState.copy();
+        List<IrInstruction> phis = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            IrInstruction initial = entryState.values.get(key);
+            if (initial == null) {
+                initial = entry.add(IrInstruction.constant(0.0F));
+            }
+            IrInstruction phi = header.add(IrInstruction.phi(IrType.FLOAT));
+            phi.getOperands().add(initial);
+            phis.add(phi);
+            headerState.values.put(key, phi);
+            if (!key.startsWith(TEMP)) {
+                headerState.dirty.add(key);
+            }
+        }
+        entry.terminate(IrInstruction.jump(), header);
+        Set<String> tracked = new HashSet<>(headerState.values.keySet());
+
+        Target end = new Target();
+        Target next = new Target();
+        this.block = header;
+        this.state = headerState;
+        this.loops.push(new Target[]{end, next});
+        try {
+            this.lowerNode(loop.body());
+            this.jump(next, null);
+        } finally {
+            this.loops.pop();
+        }
+
+        this.enter(next);
+        if (this.block != null) {
+            // Anything else read in the body is read again in the next iteration
+            this.forgetAllExcept(this.block, this.state, tracked);
+            for (String key : tracked) {
+                if (!this.state.values.containsKey(key)) {
+                    throw new MolangException("Loop lost track of " + key);
+                }
+            }
+
+            IrInstruction increment = this.add(IrInstruction.binary(BinaryOperation.ADD, counter, this.add(IrInstruction.intConstant(1))));
+            IrInstruction condition = this.add(IrInstruction.binary(BinaryOperation.LESS, increment, count));
+            IrBlock[] edges = this.branch(condition);
+            edges[0].terminate(IrInstruction.jump(), header);
+            counter.getOperands().add(increment);
+            for (int i = 0; i < keys.size(); i++) {
+                phis.get(i).getOperands().add(this.state.values.get(keys.get(i)));
+            }
+            this.block = edges[1];
+            this.state = this.state.copy();
+            this.jump(end, null);
+        }
+        this.enter(end);
+    }
+
+    private IrInstruction get(String object, String name) {
+        String key = object + "." + name;
+        IrInstruction value = this.state.values.get(key);
+        if (value == null) {
+            value = this.add(IrInstruction.get(this.object(object), name));
+            this.state.values.put(key, value);
+        }
+        return value;
+    }
+
+    private IrInstruction object(String object) {
+        return this.object(this.block, this.state, object);
+    }
+
+    private IrInstruction object(IrBlock block, State state, String object) {
+        IrInstruction value = state.values.get(object);
+        if (value == null) {
+            value = block.add(IrInstruction.object(object));
+            state.values.put(object, value);
+        }
+        return value;
+    }
+
+    private IrInstruction constant(float value) {
+        return this.add(IrInstruction.constant(value));
+    }
+
+    private IrInstruction add(IrInstruction instruction) {
+        return this.block.add(instruction);
+    }
+
+    private IrBlock[] branch(IrInstruction condition) {
+        IrBlock isTrue = this.function.createBlock();
+        IrBlock isFalse = this.function.createBlock();
+        this.block.terminate(IrInstruction.branch(condition), isTrue, isFalse);
+        return new IrBlock[]{isTrue, isFalse};
+    }
+
+    private void ret(IrInstruction value) {
+        this.flush(this.block, this.state);
+        this.block.terminate(IrInstruction.ret(value));
+        this.block = null;
+        this.state = null;
+    }
+
+    // Writes back all modified variables
+    private void flush(IrBlock block, State state) {
+        for (String key : state.dirty) {
+            this.store(block, state, key);
+        }
+        state.dirty.clear();
+    }
+
+    private void store(IrBlock block, State state, String key) {
+        int split = key.indexOf('.');
+        IrInstruction object = this.object(block, state, key.substring(0, split));
+        block.add(IrInstruction.set(object, key.substring(split + 1), state.values.get(key)));
+    }
+
+    // Stops tracking a value, writing it back first if it was modified
+    private void forget(IrBlock block, State state, String key) {
+        if (state.dirty.remove(key)) {
+            this.store(block, state, key);
+        }
+        state.values.remove(key);
+    }
+
+    // Stops tracking all other values
+    private void forgetAllExcept(IrBlock block, State state, Set<String> kept) {
+        for (String key : variablesFirst(state.values.keySet())) {
+            if (!kept.contains(key)) {
+                this.forget(block, state, key);
+            }
+        }
+    }
+
+    // Objects are forgotten last so writing back their variables can still use them
+    private static List<String> variablesFirst(Collection<String> keys) {
+        List<String> sorted = new ArrayList<>(keys);
+        sorted.sort(Comparator.comparing(key -> key.indexOf('.') < 0));
+        return sorted;
+    }
+
+    // Leaves the current block for the target
+    private void jump(Target target, @Nullable IrInstruction value) {
+        if (this.block == null) {
+            return;
+        }
+        target.blocks.add(this.block);
+        target.states.add(this.state);
+        target.values.add(value);
+        this.block = null;
+        this.state = null;
+    }
+
+    // Continues at the target, joining the values of all blocks jumping to it
+    @Nullable
+    private IrInstruction enter(Target target) {
+        List<IrBlock> blocks = target.blocks;
+        if (blocks.isEmpty()) {
+            this.block = null;
+            this.state = null;
+            return null;
+        }
+        if (blocks.size() == 1) {
+            this.block = blocks.get(0);
+            this.state = target.states.get(0);
+            return target.values.get(0);
+        }
+
+        IrBlock merge = this.function.createBlock();
+        State merged = new State(new LinkedHashMap<>(), new LinkedHashSet<>());
+        Set<String> keys = new LinkedHashSet<>();
+        for (State state : target.states) {
+            keys.addAll(state.values.keySet());
+        }
+        for (String key : variablesFirst(keys)) {
+            boolean known = true;
+            for (State state : target.states) {
+                known &= state.values.containsKey(key);
+            }
+            if (!known && !key.startsWith(TEMP)) {
+                for (int i = 0; i < blocks.size(); i++) {
+                    this.forget(blocks.get(i), target.states.get(i), key);
+                }
+                continue;
+            }
+
+            IrInstruction[] values = new IrInstruction[blocks.size()];
+            boolean dirty = false;
+            for (int i = 0; i < blocks.size(); i++) {
+                State state = target.states.get(i);
+                values[i] = state.values.get(key);
+                if (values[i] == null) {
+                    values[i] = blocks.get(i).add(IrInstruction.constant(0.0F));
+                }
+                dirty |= state.dirty.contains(key);
+            }
+            merged.values.put(key, this.join(merge, values));
+            if (dirty) {
+                merged.dirty.add(key);
+            }
+        }
+
+        IrInstruction value = null;
+        if (target.values.stream().allMatch(Objects::nonNull)) {
+            value = this.join(merge, target.values.toArray(IrInstruction[]::new));
+        }
+        for (IrBlock block : blocks) {
+            block.terminate(IrInstruction.jump(), merge);
+        }
+        this.block = merge;
+        this.state = merged;
+        return value;
+    }
+
+    private IrInstruction join(IrBlock merge, IrInstruction[] values) {
+        for (IrInstruction value : values) {
+            if (value != values[0]) {
+                IrInstruction phi = merge.add(IrInstruction.phi(values[0].getType()));
+                Collections.addAll(phi.getOperands(), values);
+                return phi;
+            }
+        }
+        return values[0];
+    }
+
+    private static void collectWrites(Node node, Set<String> writes) throws MolangException {
+        if (node instanceof VariableSetNode set) {
+            writes.add(set.object() + "." + set.name());
+        }
+        node.transformChildren(child -> {
+            collectWrites(child, writes);
+            return child;
+        });
+    }
+
+    /**
+     * The tracked values of a single path through the function.
+     *
+     * @param values The current value of each variable, object, and <code>this</code>
+     * @param dirty  The variables that have to be written back
+     */
+    private record State(Map<String, IrInstruction> values, Set<String> dirty) {
+
+        State copy() {
+            return new State(new LinkedHashMap<>(this.values), new LinkedHashSet<>(this.dirty));
+        }
+    }
+
+    // All unfinished blocks that continue at the same place
+    private static final class Target {
+
+        private final List<IrBlock> blocks = new ArrayList<>();
+        private final List<State> states = new ArrayList<>();
+        private final List<IrInstruction> values = new ArrayList<>();
+    }
+}
@@ -0,0 +1,511 @@
+package gg.moonflower.molangcompiler.core.ir;
+
+import gg.moonflower.molangcompiler.api.exception.MolangException;
+import gg.moonflower.molangcompiler.core.ast.BinaryOperation;
+import gg.moonflower.molangcompiler.core.ast.BinaryOperationNode;
+import gg.moonflower.molangcompiler.core.ast.MathNode;
+import gg.moonflower.molangcompiler.core.ast.Node;
+import gg.moonflower.molangcompiler.core.ast.TernaryOperationNode;
+import gg.moonflower.molangcompiler.core.compiler.BytecodeCompiler;
+import gg.moonflower.molangcompiler.core.compiler.MolangBytecodeEnvironment;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.MethodNode;
+import ru.timeconqueror.molang.CompilerUtils;
+
+import java.util.*;
+
+/**
+ * <p>Writes an {@link IrFunction} as the body of a get method.</p>
+ * <p>Blocks are written in reverse post order. Constants are pushed again at every use, and pure values used once in the same block
+ * are computed where they are used instead of being stored. Every other value is kept in its own local.
+ * Phis are assigned at the end of each predecessor, which is always a jump.</p>
+ * <p>With double precision, float values are kept as doubles and only converted when reading from or writing to the environment.</p>
+ *
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public final class IrEmitter {
+
+    private final MethodNode method;
+    private final MolangBytecodeEnvironment environment;
+    private final boolean doublePrecision;
+    private final Map<IrInstruction, List<IrInstruction>> uses;
+    private final Map<IrInstruction, Integer> locals;
+    private final Set<IrInstruction> inlined;
+    private final Map<IrBlock, Label> labels;
+
+    private IrEmitter(IrFunction function, MethodNode method, MolangBytecodeEnvironment environment, boolean doublePrecision) {
+        this.method = method;
+        this.environment = environment;
+        this.doublePrecision = doublePrecision;
+        this.uses = function.computeUses();
+        this.locals = new HashMap<>();
+        this.inlined = new HashSet<>();
+        this.labels = new HashMap<>();
+    }
+
+    /**
+     * Writes the specified function into a method.
+     *
+     * @param function    The function to write
+     * @param method      The method to write into
+     * @param environment The environment holding the locals already used by the method
+     * @throws MolangException If any instruction cannot be written
+     */
+    public static void emit(IrFunction function, MethodNode method, MolangBytecodeEnvironment environment) throws MolangException {
+        emit(function, method, environment, false);
+    }
+
+    /**
+     * Writes the specified function into a method.
+     *
+     * @param function        The function to write
+     * @param method          The method to write into
+     * @param environment     The environment holding the locals already used by the method
+     * @param doublePrecision Whether to compute float values as doubles and return a double
+     * @throws MolangException If any instruction cannot be written
+     */
+    public static void emit(IrFunction function, MethodNode method, MolangBytecodeEnvironment environment, boolean doublePrecision) throws MolangException {
+        new IrEmitter(function, method, environment, doublePrecision).emit(function);
+    }
+
+    private void emit(IrFunction function) throws MolangException {
+        List<IrBlock> order = function.getReversePostOrder();
+        int next = BytecodeCompiler.VARIABLE_START;
+        for (int index : this.environment.variables().values()) {
+            next = Math.max(next, index + 1);
+        }
+        for (IrBlock block : order) {
+            this.labels.put(block, new Label());
+            for (IrInstruction instruction : block.getInstructions()) {
+                if (instruction.getType() == IrType.VOID || instruction.getOpcode() == IrOpcode.CONST || instruction.getOpcode() == IrOpcode.CONST_SLOT) {
+                    continue;
+                }
+                if (this.canInline(instruction)) {
+                    this.inlined.add(instruction);
+                } else if (this.uses.containsKey(instruction)) {
+                    this.locals.put(instruction, next);
+                    next += this.isDouble(instruction) ? 2 : 1;
+                }
+            }
+        }
+
+        for (int i = 0; i < order.size(); i++) {
+            IrBlock block = order.get(i);
+            this.method.visitLabel(this.labels.get(block));
+            for (IrInstruction instruction : block.getInstructions()) {
+                if (instruction.getOpcode().isTerminator()) {
+                    this.writeTerminator(block, instruction, i + 1 < order.size() ? order.get(i + 1) : null);
+                } else if (instruction.getOpcode() != IrOpcode.PHI && instruction.getOpcode() != IrOpcode.CONST && instruction.getOpcode() != IrOpcode.CONST_SLOT && !this.inlined.contains(instruction)) {
+                    this.writeValue(instruction);
+                    Integer local = this.locals.get(instruction);
+                    if (local != null) {
+                        this.method.visitVarInsn(this.getStoreInsn(instruction.getType()), local);
+                    } else if (instruction.getType() != IrType.VOID) {
+                        this.method.visitInsn(this.isDouble(instruction) ? Opcodes.POP2 : Opcodes.POP);
+                    }
+                }
+            }
+        }
+    }
+
+    // Pure values can be computed later without changing the result
+    private boolean canInline(IrInstruction instruction) {
+        List<IrInstruction> users = this.uses.get(instruction);
+        if (!instruction.isPure() || users == null || users.size() != 1) {
+            return false;
+        }
+        IrInstruction user = users.get(0);
+        return user.getBlock() == instruction.getBlock() && user.getOpcode() != IrOpcode.PHI;
+    }
+
+    // Pushes the value of an operand
+    private void load(IrInstruction value) throws MolangException {
+        switch (value.getOpcode()) {
+            case CONST -> {
+                if (value.getType() == IrType.INT) {
+                    BytecodeCompiler.writeIntConst(this.method, (int) value.getValue());
+                } else if (this.doublePrecision) {
+                    // The same conversion as MolangUtil#widenConstants, so shared constants have the same value
+                    BytecodeCompiler.writeDoubleConst(this.method, Double.parseDouble(Float.toString(value.getValue())));
+                } else {
+                    BytecodeCompiler.writeFloatConst(this.method, value.getValue());
+                }
+            }
+            case CONST_SLOT -> {
+                this.method.visitVarInsn(Opcodes.ALOAD, this.environment.getConstantsIndex());
+                BytecodeCompiler.writeIntConst(this.method, (int) value.getValue());
+                // Double precision expressions have an array of widened constants
+                this.method.visitInsn(this.doublePrecision ? Opcodes.DALOAD : Opcodes.FALOAD);
+            }
+            default -> {
+                if (this.inlined.contains(value)) {
+                    this.writeValue(value);
+                    return;
+                }
+                Integer local = this.locals.get(value);
+                if (local == null) {
+                    throw new MolangException("Value " + value + " is not available");
+                }
+                this.method.visitVarInsn(this.getLoadInsn(value.getType()), local);
+            }
+        }
+    }
+
+    private void writeValue(IrInstruction instruction) throws MolangException {
+        switch (instruction.getOpcode()) {
+            case THIS -> {
+                this.method.visitVarInsn(Opcodes.ALOAD, BytecodeCompiler.RUNTIME_INDEX);
+                this.method.visitMethodInsn(
+                        Opcodes.INVOKEINTERFACE,
+                        "gg/moonflower/molangcompiler/api/MolangEnvironment",
+                        "getThis",
+                        "()F",
+                        true
+                );
+                this.widen();
+            }
+            case OBJECT -> {
+                this.method.visitVarInsn(Opcodes.ALOAD, BytecodeCompiler.RUNTIME_INDEX);
+                this.method.visitLdcInsn(instruction.getName());
+                this.method.visitMethodInsn(
+                        Opcodes.INVOKEINTERFACE,
+                        "gg/moonflower/molangcompiler/api/MolangEnvironment",
+                        "get",
+                        CompilerUtils.compilerOptimizationHack("(Ljava/lang/String;)L", "gg/moonflower/molangcompiler/api/object/MolangObject", ";"),
+                        true
+                );
+            }
+            case GET -> {
+                this.load(instruction.getOperand(0));
+                this.method.visitLdcInsn(instruction.getName());
+                this.method.visitMethodInsn(
+                        Opcodes.INVOKEINTERFACE,
+                        "gg/moonflower/molangcompiler/api/object/MolangObject",
+                        "get",
+                        CompilerUtils.compilerOptimizationHack("(Ljava/lang/String;)L", "gg/moonflower/molangcompiler/api/MolangExpression", ";"),
+                        true
+                );
+                this.method.visitVarInsn(Opcodes.ALOAD, BytecodeCompiler.RUNTIME_INDEX);
+                this.method.visitMethodInsn(
+                        Opcodes.INVOKEINTERFACE,
+                        "gg/moonflower/molangcompiler/api/MolangExpression",
+                        "resolve",
+                        CompilerUtils.compilerOptimizationHack("(L", "gg/moonflower/molangcompiler/api/MolangEnvironment", ";)F"),
+                        true
+                );
+                this.widen();
+            }
+            case HAS -> {
+                this.load(instruction.getOperand(0));
+                this.method.visitLdcInsn(instruction.getName());
+                this.method.visitMethodInsn(
+                        Opcodes.INVOKEINTERFACE,
+                        "gg/moonflower/molangcompiler/api/object/MolangObject",
+                        "has",
+                        "(Ljava/lang/String;)Z",
+                        true
+                );
+            }
+            case SET -> {
+                this.load(instruction.getOperand(0));
+                this.method.visitLdcInsn(instruction.getName());
+                this.load(instruction.getOperand(1));
+                this.narrow(instruction.getOperand(1));
+                this.method.visitMethodInsn(
+                        Opcodes.INVOKESTATIC,
+                        "gg/moonflower/molangcompiler/core/MolangUtil",
+                        "setValue",
+                        CompilerUtils.compilerOptimizationHack("(L", "gg/moonflower/molangcompiler/api/object/MolangObject", ";Ljava/lang/String;F)V"),
+                        false
+                );
+            }
+            case CALL -> this.writeCall(instruction);
+            case MATH -> {
+                Node[] arguments = new Node[instruction.getOperands().size()];
+                for (int i = 0; i < arguments.length; i++) {
+                    arguments[i] = new OperandNode(this, instruction.getOperand(i));
+                }
+                MathNode math = new MathNode(instruction.getFunction(), arguments);
+                if (instruction.getType() == IrType.INT) {
+                    math.writeIntBytecode(this.method, this.environment, null, null, this.doublePrecision);
+                } else if (this.doublePrecision) {
+                    math.writeDoubleBytecode(this.method, this.environment, null, null);
+                } else {
+                    math.writeBytecode(this.method, this.environment, null, null);
+                }
+            }
+            case BINARY -> {
+                this.load(instruction.getOperand(0));
+                this.load(instruction.getOperand(1));
+                Type type = instruction.getType() == IrType.INT ? Type.INT_TYPE : this.doublePrecision ? Type.DOUBLE_TYPE : Type.FLOAT_TYPE;
+                this.method.visitInsn(type.getOpcode(switch (instruction.getOperator()) {
+                    case ADD -> Opcodes.IADD;
+                    case SUBTRACT -> Opcodes.ISUB;
+                    case MULTIPLY -> Opcodes.IMUL;
+                    case DIVIDE -> Opcodes.IDIV;
+                    default -> throw new MolangException("Unsupported operator " + instruction.getOperator());
+                }));
+            }
+            case COMPARE -> {
+                if (instruction.getOperand(0).getType() == IrType.INT) {
+                    Label label_false = new Label();
+                    Label label_end = new Label();
+                    this.writeComparison(instruction, false, label_false);
+                    this.method.visitInsn(this.doublePrecision ? Opcodes.DCONST_1 : Opcodes.FCONST_1);
+                    this.method.visitJumpInsn(Opcodes.GOTO, label_end);
+                    this.method.visitLabel(label_false);
+                    this.method.visitInsn(this.doublePrecision ? Opcodes.DCONST_0 : Opcodes.FCONST_0);
+                    this.method.visitLabel(label_end);
+                    return;
+                }
+                this.load(instruction.getOperand(0));
+                this.load(instruction.getOperand(1));
+                BinaryOperationNode.writeBranchlessComparison(this.method, instruction.getOperator(), this.doublePrecision);
+            }
+            case NOT -> {
+                // (compare(value, 0) & 1) ^ 1
+                this.load(instruction.getOperand(0));
+                this.writeCompareZero();
+                this.method.visitInsn(Opcodes.ICONST_1);
+                this.method.visitInsn(Opcodes.IAND);
+                this.method.visitInsn(Opcodes.ICONST_1);
+                this.method.visitInsn(Opcodes.IXOR);
+                this.method.visitInsn(this.doublePrecision ? Opcodes.I2D : Opcodes.I2F);
+            }
+            case F2I -> {
+                this.load(instruction.getOperand(0));
+                this.method.visitInsn(this.doublePrecision ? Opcodes.D2I : Opcodes.F2I);
+            }
+            case I2F -> {
+                this.load(instruction.getOperand(0));
+                this.method.visitInsn(this.doublePrecision ? Opcodes.I2D : Opcodes.I2F);
+            }
+            default -> throw new MolangException("Cannot write " + instruction);
+        }
+    }
+
+    private void writeCall(IrInstruction instruction) throws MolangException {
+        int arguments = instruction.getOperands().size() - 1;
+        this.load(instruction.getOperand(0));
+        this.method.visitLdcInsn(instruction.getName());
+        this.method.visitLdcInsn(instruction.getName() + "$" + arguments);
+        this.method.visitMethodInsn(
+                Opcodes.INVOKESTATIC,
+                "gg/moonflower/molangcompiler/core/MolangUtil",
+                "getFunction",
+                "(Lgg/moonflower/molangcompiler/api/object/MolangObject;Ljava/lang/String;Ljava/lang/String;)Lgg/moonflower/molangcompiler/api/MolangExpression;",
+                false
+        );
+
+        // The function stays on the stack while parameters are loaded
+        for (int i = 1; i <= arguments; i++) {
+            this.method.visitVarInsn(Opcodes.ALOAD, BytecodeCompiler.RUNTIME_INDEX);
+            this.load(instruction.getOperand(i));
+            this.narrow(instruction.getOperand(i));
+            this.method.visitMethodInsn(
+                    Opcodes.INVOKEINTERFACE,
+                    "gg/moonflower/molangcompiler/api/MolangEnvironment",
+                    "loadParameter",
+                    "(F)V",
+                    true
+            );
+        }
+
+        this.method.visitVarInsn(Opcodes.ALOAD, BytecodeCompiler.RUNTIME_INDEX);
+        this.method.visitMethodInsn(
+                Opcodes.INVOKEINTERFACE,
+                "gg/moonflower/molangcompiler/api/MolangExpression",
+                "resolve",
+                "(Lgg/moonflower/molangcompiler/api/MolangEnvironment;)F",
+                true
+        );
+        this.method.visitVarInsn(Opcodes.ALOAD, BytecodeCompiler.RUNTIME_INDEX);
+        this.method.visitMethodInsn(
+                Opcodes.INVOKEINTERFACE,
+                "gg/moonflower/molangcompiler/api/MolangEnvironment",
+                "clearParameters",
+                "()V",
+                true
+        );
+        this.widen();
+    }
+
+    private void writeTerminator(IrBlock block, IrInstruction terminator, @Nullable IrBlock next) throws MolangException {
+        List<IrBlock> successors = block.getSuccessors();
+        switch (terminator.getOpcode()) {
+            case JUMP -> {
+                IrBlock successor = successors.get(0);
+                this.writePhiMoves(block, successor);
+                if (successor != next) {
+                    this.method.visitJumpInsn(Opcodes.GOTO, this.labels.get(successor));
+                }
+            }
+            case BRANCH -> {
+                IrBlock isTrue = successors.get(0);
+                IrBlock isFalse = successors.get(1);
+                if (isTrue == next) {
+                    this.writeJump(terminator.getOperand(0), false, this.labels.get(isFalse));
+                } else {
+                    this.writeJump(terminator.getOperand(0), true, this.labels.get(isTrue));
+                    if (isFalse != next) {
+                        this.method.visitJumpInsn(Opcodes.GOTO, this.labels.get(isFalse));
+                    }
+                }
+            }
+            case SWITCH -> {
+                int[] keys = terminator.getKeys();
+                SortedMap<Integer, Label> cases = new TreeMap<>();
+                for (int i = 0; i < keys.length; i++) {
+                    cases.put(keys[i], this.labels.get(successors.get(i)));
+                }
+                Label label_fraction = new Label();
+                Label label_default = this.labels.get(successors.get(successors.size() - 1));
+
+                this.load(terminator.getOperand(0));
+                TernaryOperationNode.writeSwitch(this.method, cases.keySet().stream().mapToInt(Integer::intValue).toArray(), cases.values().toArray(Label[]::new), label_default, label_fraction, this.doublePrecision);
+                this.method.visitLabel(label_fraction);
+                this.method.visitInsn(Opcodes.POP);
+                this.method.visitJumpInsn(Opcodes.GOTO, label_default);
+            }
+            case RETURN -> {
+                this.load(terminator.getOperand(0));
+                this.method.visitInsn(this.doublePrecision ? Opcodes.DRETURN : Opcodes.FRETURN);
+            }
+            default -> throw new MolangException("Not a terminator: " + terminator);
+        }
+    }
+
+    // Jumps to the target if the value is or is not zero, comparing directly where possible
+    private void writeJump(IrInstruction condition, boolean jumpIf, Label target) throws MolangException {
+        if (this.inlined.contains(condition)) {
+            if (condition.getOpcode() == IrOpcode.NOT) {
+                this.writeJump(condition.getOperand(0), !jumpIf, target);
+                return;
+            }
+            if (condition.getOpcode() == IrOpcode.COMPARE) {
+                this.writeComparison(condition, jumpIf, target);
+                return;
+            }
+        }
+
+        this.load(condition);
+        if (condition.getType() == IrType.FLOAT) {
+            this.writeCompareZero();
+        }
+        this.method.visitJumpInsn(jumpIf ? Opcodes.IFNE : Opcodes.IFEQ, target);
+    }
+
+    private void writeComparison(IrInstruction comparison, boolean jumpIf, Label target) throws MolangException {
+        this.load(comparison.getOperand(0));
+        this.load(comparison.getOperand(1));
+        if (comparison.getOperand(0).getType() == IrType.INT) {
+            this.method.visitJumpInsn(getIntJumpInsn(comparison.getOperator(), jumpIf), target);
+        } else {
+            this.method.visitInsn(BinaryOperationNode.getCompareInsn(comparison.getOperator(), this.doublePrecision));
+            this.method.visitJumpInsn(BinaryOperationNode.getJumpInsn(comparison.getOperator(), jumpIf), target);
+        }
+    }
+
+    // All values are pushed before any phi is assigned, so phis can use each other
+    private void writePhiMoves(IrBlock block, IrBlock successor) throws MolangException {
+        List<IrInstruction> phis = successor.getPhis();
+        int index = successor.getPredecessors().indexOf(block);
+        List<IrInstruction> moved = new ArrayList<>(phis.size());
+        for (IrInstruction phi : phis) {
+            IrInstruction value = phi.getOperand(index);
+            if (this.locals.containsKey(phi) && value != phi) {
+                this.load(value);
+                moved.add(phi);
+            }
+        }
+        for (int i = moved.size() - 1; i >= 0; i--) {
+            IrInstruction phi = moved.get(i);
+            this.method.visitVarInsn(this.getStoreInsn(phi.getType()), this.locals.get(phi));
+        }
+    }
+
+    private static int getIntJumpInsn(BinaryOperation operator, boolean jumpIf) {
+        return switch (operator) {
+            case EQUALS -> jumpIf ? Opcodes.IF_ICMPEQ : Opcodes.IF_ICMPNE;
+            case NOT_EQUALS -> jumpIf ? Opcodes.IF_ICMPNE : Opcodes.IF_ICMPEQ;
+            case LESS_EQUALS -> jumpIf ? Opcodes.IF_ICMPLE : Opcodes.IF_ICMPGT;
+            case LESS -> jumpIf ? Opcodes.IF_ICMPLT : Opcodes.IF_ICMPGE;
+            case GREATER_EQUALS -> jumpIf ? Opcodes.IF_ICMPGE : Opcodes.IF_ICMPLT;
+            case GREATER -> jumpIf ? Opcodes.IF_ICMPGT : Opcodes.IF_ICMPLE;
+            default -> throw new IllegalArgumentException("Not a comparison: " + operator);
+        };
+    }
+
+    private void writeCompareZero() {
+        if (this.doublePrecision) {
+            this.method.visitInsn(Opcodes.DCONST_0);
+            this.method.visitInsn(Opcodes.DCMPL);
+        } else {
+            this.method.visitInsn(Opcodes.FCONST_0);
+            this.method.visitInsn(Opcodes.FCMPL);
+        }
+    }
+
+    // Converts a float read from the environment into the type of float values
+    private void widen() {
+        if (this.doublePrecision) {
+            this.method.visitInsn(Opcodes.F2D);
+        }
+    }
+
+    // Converts a float value into the float expected by the environment
+    private void narrow(IrInstruction value) {
+        if (this.isDouble(value)) {
+            this.method.visitInsn(Opcodes.D2F);
+        }
+    }
+
+    private boolean isDouble(IrInstruction value) {
+        return this.doublePrecision && value.getType() == IrType.FLOAT;
+    }
+
+    private int getLoadInsn(IrType type) {
+        return switch (type) {
+            case INT -> Opcodes.ILOAD;
+            case OBJECT -> Opcodes.ALOAD;
+            default -> this.doublePrecision ? Opcodes.DLOAD : Opcodes.FLOAD;
+        };
+    }
+
+    private int getStoreInsn(IrType type) {
+        return switch (type) {
+            case INT -> Opcodes.ISTORE;
+            case OBJECT -> Opcodes.ASTORE;
+            default -> this.doublePrecision ? Opcodes.DSTORE : Opcodes.FSTORE;
+        };
+    }
+
+    // Lets math functions reuse the bytecode of math nodes
+    private record OperandNode(IrEmitter emitter, IrInstruction value) implements Node {
+
+        @Override
+        public String toString() {
+            return this.value.getLabel();
+        }
+
+        @Override
+        public boolean isConstant() {
+            return false;
+        }
+
+        @Override
+        public boolean hasValue() {
+            return true;
+        }
+
+        @Override
+        public void writeBytecode(MethodNode method, MolangBytecodeEnvironment environment, @Nullable Label breakLabel, @Nullable Label continueLabel) throws MolangException {
+            this.emitter.load(this.value);
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package gg.moonflower.molangcompiler.core.ir;
+
+import org.jetbrains.annotations.ApiStatus;
+
+import java.util.*;
+
+/**
+ * <p>The control flow graph of a single expression in static single assignment form.</p>
+ * <p>Edges that leave a block with multiple successors never lead directly into a block with phis,
+ * so values for phis can always be moved at the end of the predecessor.</p>
+ *
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public final class IrFunction {
+
+    private final List<IrBlock> blocks;
+    private int nextBlock;
+
+    public IrFunction() {
+        this.blocks = new ArrayList<>();
+        this.nextBlock = 0;
+    }
+
+    /**
+     * @return A new empty block at the end of this function
+     */
+    public IrBlock createBlock() {
+        IrBlock block = new IrBlock(this.nextBlock++);
+        this.blocks.add(block);
+        return block;
+    }
+
+    /**
+     * @return The block execution starts in
+     */
+    public IrBlock getEntry() {
+        return this.blocks.get(0);
+    }
+
+    public List<IrBlock> getBlocks() {
+        return this.blocks;
+    }
+
+    /**
+     * @return All reachable blocks ordered so every block comes after its predecessors, except along loop back edges
+     */
+    public List<IrBlock> getReversePostOrder() {
+        List<IrBlock> order = new ArrayList<>(this.blocks.size());
+        Set<IrBlock> visited = new HashSet<>();
+        Deque<Iterator<IrBlock>> stack = new ArrayDeque<>();
+        Deque<IrBlock> path = new ArrayDeque<>();
+        visited.add(this.getEntry());
+        stack.push(this.getEntry().getSuccessors().iterator());
+        path.push(this.getEntry());
+        while (!stack.isEmpty()) {
+            Iterator<IrBlock> iterator = stack.peek();
+            if (iterator.hasNext()) {
+                IrBlock next = iterator.next();
+                if (visited.add(next)) {
+                    stack.push(next.getSuccessors().iterator());
+                    path.push(next);
+                }
+            } else {
+                stack.pop();
+                order.add(path.pop());
+            }
+        }
+        Collections.reverse(order);
+        return order;
+    }
+
+    /**
+     * Computes the immediate dominator of every reachable block.
+     *
+     * @return A map from each block to its immediate dominator. The entry block maps to itself
+     */
+    public Map<IrBlock, IrBlock> getDominators() {
+        List<IrBlock> order = this.getReversePostOrder();
+        Map<IrBlock, Integer> index = new HashMap<>();
+        for (int i = 0; i < order.size(); i++) {
+            index.put(order.get(i), i);
+        }
+
+        Map<IrBlock, IrBlock> dominators = new HashMap<>();
+        dominators.put(this.getEntry(), this.getEntry());
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (IrBlock block : order) {
+                if (block == this.getEntry()) {
+                    continue;
+                }
+                IrBlock dominator = null;
+                for (IrBlock predecessor : block.getPredecessors()) {
+                    if (!dominators.containsKey(predecessor)) {
+                        continue;
+                    }
+                    dominator = dominator == null ? predecessor : intersect(dominator, predecessor, dominators, index);
+                }
+                if (dominator != null && dominators.put(block, dominator) != dominator) {
+                    changed = true;
+                }
+            }
+        }
+        return dominators;
+    }
+
+    private static IrBlock intersect(IrBlock a, IrBlock b, Map<IrBlock, IrBlock> dominators, Map<IrBlock, Integer> index) {
+        while (a != b) {
+            while (index.get(a) > index.get(b)) {
+                a = dominators.get(a);
+            }
+            while (index.get(b) > index.get(a)) {
+                b = dominators.get(b);
+            }
+        }
+        return a;
+    }
+
+    /**
+     * @return A map from each value to the instructions using it
+     */
+    public Map<IrInstruction, List<IrInstruction>> computeUses() {
+        Map<IrInstruction, List<IrInstruction>> uses = new HashMap<>();
+        for (IrBlock block : this.blocks) {
+            for (IrInstruction instruction : block.getInstructions()) {
+                for (IrInstruction operand : instruction.getOperands()) {
+                    uses.computeIfAbsent(operand, unused -> new ArrayList<>()).add(instruction);
+                }
+            }
+        }
+        return uses;
+    }
+
+    /**
+     * Replaces every use of a value with another value.
+     *
+     * @param value       The value to replace
+     * @param replacement The value to use instead
+     */
+    public void replaceUses(IrInstruction value, IrInstruction replacement) {
+        for (IrBlock block : this.blocks) {
+            for (IrInstruction instruction : block.getInstructions()) {
+                List<IrInstruction> operands = instruction.getOperands();
+                for (int i = 0; i < operands.size(); i++) {
+                    if (operands.get(i) == value) {
+                        operands.set(i, replacement);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the edge from one block to its successor, including the operands of phis in the successor.
+     *
+     * @param block     The block the edge starts in
+     * @param successor The block the edge leads to
+     */
+    public void removeEdge(IrBlock block, IrBlock successor) {
+        int index = successor.getPredecessors().indexOf(block);
+        for (IrInstruction phi : successor.getPhis()) {
+            phi.getOperands().remove(index);
+        }
+        successor.getPredecessors().remove(index);
+        block.getSuccessors().remove(successor);
+    }
+
+    /**
+     * Removes all blocks that can no longer be reached from the entry.
+     *
+     * @return Whether any block was removed
+     */
+    public boolean removeUnreachable() {
+        Set<IrBlock> reachable = new HashSet<>(this.getReversePostOrder());
+        if (reachable.size() == this.blocks.size()) {
+            return false;
+        }
+        for (IrBlock block : this.blocks) {
+            if (!reachable.contains(block)) {
+                for (IrBlock successor : new ArrayList<>(block.getSuccessors())) {
+                    this.removeEdge(block, successor);
+                }
+            }
+        }
+        this.blocks.removeIf(block -> !reachable.contains(block));
+        return true;
+    }
+
+    /**
+     * Assigns sequential ids to all blocks and values in order.
+     */
+    public void renumber() {
+        int blockId = 0;
+        int valueId = 0;
+        for (IrBlock block : this.blocks) {
+            block.id = blockId++;
+            for (IrInstruction instruction : block.getInstructions()) {
+                instruction.id = instruction.getType() != IrType.VOID ? valueId++ : -1;
+            }
+        }
+        this.nextBlock = blockId;
+    }
+
+    @Override
+    public String toString() {
+        this.renumber();
+        StringBuilder builder = new StringBuilder();
+        for (IrBlock block : this.blocks) {
+            builder.append(block.getLabel()).append(':');
+            if (!block.getPredecessors().isEmpty()) {
+                builder.append(" ; preds ");
+                StringJoiner joiner = new StringJoiner(", ");
+                block.getPredecessors().forEach(predecessor -> joiner.add(predecessor.getLabel()));
+                builder.append(joiner);
+            }
+            builder.append('\n');
+            for (IrInstruction instruction : block.getInstructions()) {
+                builder.append("  ").append(instruction);
+                if (instruction.getOpcode().isTerminator() && !block.getSuccessors().isEmpty()) {
+                    StringJoiner joiner = new StringJoiner(", ");
+                    block.getSuccessors().forEach(successor -> joiner.add(successor.getLabel()));
+                    builder.append(instruction.getOperands().isEmpty() ? " " : " -> ").append(joiner);
+                }
+                builder.append('\n');
+            }
+        }
+        return builder.toString();
+    }
+}
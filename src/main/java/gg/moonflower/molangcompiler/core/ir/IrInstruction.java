@@ -0,0 +1,242 @@
+package gg.moonflower.molangcompiler.core.ir;
+
+import gg.moonflower.molangcompiler.core.ast.BinaryOperation;
+import gg.moonflower.molangcompiler.core.ast.MathOperation;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * <p>A single operation in an {@link IrBlock}. Every instruction that produces a value is assigned exactly once,
+ * so the instruction itself is used as the value by its users.</p>
+ * <p>Instructions are mutable so passes can replace operands in place.</p>
+ *
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public final class IrInstruction {
+
+    private final IrOpcode opcode;
+    private IrType type;
+    private final List<IrInstruction> operands;
+    private final float value;
+    private final String name;
+    private final MathOperation function;
+    private final BinaryOperation operator;
+    private int[] keys;
+    IrBlock block;
+    int id;
+
+    private IrInstruction(IrOpcode opcode, IrType type, float value, @Nullable String name, @Nullable MathOperation function, @Nullable BinaryOperation operator, IrInstruction... operands) {
+        this.opcode = opcode;
+        this.type = type;
+        this.operands = new ArrayList<>(Arrays.asList(operands));
+        this.value = value;
+        this.name = name;
+        this.function = function;
+        this.operator = operator;
+        this.keys = null;
+        this.id = -1;
+    }
+
+    public static IrInstruction constant(float value) {
+        return new IrInstruction(IrOpcode.CONST, IrType.FLOAT, value, null, null, null);
+    }
+
+    public static IrInstruction intConstant(int value) {
+        return new IrInstruction(IrOpcode.CONST, IrType.INT, value, null, null, null);
+    }
+
+    public static IrInstruction constantSlot(int index) {
+        return new IrInstruction(IrOpcode.CONST_SLOT, IrType.FLOAT, index, null, null, null);
+    }
+
+    public static IrInstruction getThis() {
+        return new IrInstruction(IrOpcode.THIS, IrType.FLOAT, 0, null, null, null);
+    }
+
+    public static IrInstruction object(String object) {
+        return new IrInstruction(IrOpcode.OBJECT, IrType.OBJECT, 0, object, null, null);
+    }
+
+    public static IrInstruction get(IrInstruction object, String name) {
+        return new IrInstruction(IrOpcode.GET, IrType.FLOAT, 0, name, null, null, object);
+    }
+
+    public static IrInstruction has(IrInstruction object, String name) {
+        return new IrInstruction(IrOpcode.HAS, IrType.INT, 0, name, null, null, object);
+    }
+
+    public static IrInstruction set(IrInstruction object, String name, IrInstruction value) {
+        return new IrInstruction(IrOpcode.SET, IrType.VOID, 0, name, null, null, object, value);
+    }
+
+    public static IrInstruction call(IrInstruction object, String function, IrInstruction... arguments) {
+        IrInstruction[] operands = new IrInstruction[arguments.length + 1];
+        operands[0] = object;
+        System.arraycopy(arguments, 0, operands, 1, arguments.length);
+        return new IrInstruction(IrOpcode.CALL, IrType.FLOAT, 0, function, null, null, operands);
+    }
+
+    public static IrInstruction math(MathOperation function, IrInstruction... arguments) {
+        return new IrInstruction(IrOpcode.MATH, IrType.FLOAT, 0, null, function, null, arguments);
+    }
+
+    public static IrInstruction binary(BinaryOperation operator, IrInstruction left, IrInstruction right) {
+        return new IrInstruction(operator.isComparison() ? IrOpcode.COMPARE : IrOpcode.BINARY, operator.isComparison() ? IrType.FLOAT : left.type, 0, null, null, operator, left, right);
+    }
+
+    public static IrInstruction not(IrInstruction value) {
+        return new IrInstruction(IrOpcode.NOT, IrType.FLOAT, 0, null, null, null, value);
+    }
+
+    public static IrInstruction toInt(IrInstruction value) {
+        return new IrInstruction(IrOpcode.F2I, IrType.INT, 0, null, null, null, value);
+    }
+
+    public static IrInstruction toFloat(IrInstruction value) {
+        return new IrInstruction(IrOpcode.I2F, IrType.FLOAT, 0, null, null, null, value);
+    }
+
+    public static IrInstruction phi(IrType type) {
+        return new IrInstruction(IrOpcode.PHI, type, 0, null, null, null);
+    }
+
+    public static IrInstruction jump() {
+        return new IrInstruction(IrOpcode.JUMP, IrType.VOID, 0, null, null, null);
+    }
+
+    public static IrInstruction branch(IrInstruction condition) {
+        return new IrInstruction(IrOpcode.BRANCH, IrType.VOID, 0, null, null, null, condition);
+    }
+
+    public static IrInstruction tableSwitch(IrInstruction value, int[] keys) {
+        IrInstruction instruction = new IrInstruction(IrOpcode.SWITCH, IrType.VOID, 0, null, null, null, value);
+        instruction.keys = keys.clone();
+        return instruction;
+    }
+
+    public static IrInstruction ret(IrInstruction value) {
+        return new IrInstruction(IrOpcode.RETURN, IrType.VOID, 0, null, null, null, value);
+    }
+
+    /**
+     * @return Whether this instruction always results in the same value for the same operands and has no side effects.
+     * Pure instructions can be computed once and reused
+     */
+    public boolean isPure() {
+        return switch (this.opcode) {
+            case CONST, CONST_SLOT, THIS, BINARY, COMPARE, NOT, F2I, I2F -> true;
+            case MATH -> this.function.isDeterministic();
+            default -> false;
+        };
+    }
+
+    /**
+     * @return Whether this instruction can be removed if its value is not used
+     */
+    public boolean isRemovable() {
+        return this.isPure() || this.opcode == IrOpcode.OBJECT || this.opcode == IrOpcode.GET || this.opcode == IrOpcode.HAS || this.opcode == IrOpcode.PHI;
+    }
+
+    /**
+     * @return Whether this is a float or int literal
+     */
+    public boolean isConstant() {
+        return this.opcode == IrOpcode.CONST;
+    }
+
+    public IrOpcode getOpcode() {
+        return this.opcode;
+    }
+
+    public IrType getType() {
+        return this.type;
+    }
+
+    /**
+     * Changes the type of this value. The operands and users must be updated to match.
+     *
+     * @param type The new type
+     */
+    void setType(IrType type) {
+        this.type = type;
+    }
+
+    public List<IrInstruction> getOperands() {
+        return this.operands;
+    }
+
+    public IrInstruction getOperand(int index) {
+        return this.operands.get(index);
+    }
+
+    /**
+     * @return The value of constants or the index of constant slots
+     */
+    public float getValue() {
+        return this.value;
+    }
+
+    /**
+     * @return The name of the object, variable, or function
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    public MathOperation getFunction() {
+        return this.function;
+    }
+
+    public BinaryOperation getOperator() {
+        return this.operator;
+    }
+
+    /**
+     * @return The keys of a switch in the same order as the successors of its block
+     */
+    public int[] getKeys() {
+        return this.keys;
+    }
+
+    /**
+     * @return The block this instruction is in or <code>null</code> if it was not added to a block
+     */
+    @Nullable
+    public IrBlock getBlock() {
+        return this.block;
+    }
+
+    /**
+     * @return The name this value is printed with
+     */
+    public String getLabel() {
+        return "%" + this.id;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        if (this.type != IrType.VOID) {
+            builder.append(this.getLabel()).append(" = ");
+        }
+        builder.append(this.opcode);
+        switch (this.opcode) {
+            case CONST -> builder.append(' ').append(this.type == IrType.INT ? Integer.toString((int) this.value) : Float.toString(this.value));
+            case CONST_SLOT -> builder.append(' ').append((int) this.value);
+            case OBJECT, GET, HAS, SET, CALL -> builder.append(' ').append(this.name);
+            case MATH -> builder.append(' ').append(this.function);
+            case BINARY, COMPARE -> builder.append(' ').append(this.operator);
+            case SWITCH -> builder.append(' ').append(Arrays.toString(this.keys));
+        }
+        if (!this.operands.isEmpty()) {
+            builder.append(' ').append(this.operands.stream().map(IrInstruction::getLabel).collect(Collectors.joining(", ")));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,108 @@
+package gg.moonflower.molangcompiler.core.ir;
+
+import org.jetbrains.annotations.ApiStatus;
+
+import java.util.Locale;
+
+/**
+ * All operations of the intermediate representation.
+ *
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public enum IrOpcode {
+    /**
+     * A literal float or int.
+     */
+    CONST,
+    /**
+     * A literal read from the constant array of a shared expression.
+     */
+    CONST_SLOT,
+    /**
+     * The value of <code>this</code> in the environment.
+     */
+    THIS,
+    /**
+     * Looks up an object from the environment.
+     */
+    OBJECT,
+    /**
+     * Reads and resolves a variable of an object.
+     */
+    GET,
+    /**
+     * Checks whether an object has a variable. The result is an int.
+     */
+    HAS,
+    /**
+     * Writes a variable to an object.
+     */
+    SET,
+    /**
+     * Calls a java function of an object with float parameters.
+     */
+    CALL,
+    /**
+     * Applies a math function.
+     */
+    MATH,
+    /**
+     * Adds, subtracts, multiplies, or divides two values.
+     */
+    BINARY,
+    /**
+     * Compares two values, resulting in <code>1</code> or <code>0</code>.
+     */
+    COMPARE,
+    /**
+     * Results in <code>1</code> if the value is zero and <code>0</code> otherwise.
+     */
+    NOT,
+    /**
+     * Truncates a float to an int.
+     */
+    F2I,
+    /**
+     * Converts an int to a float.
+     */
+    I2F,
+    /**
+     * Selects the value of the predecessor control came from.
+     */
+    PHI,
+    /**
+     * Continues with the only successor.
+     */
+    JUMP,
+    /**
+     * Continues with the first successor if the value is not zero and the second otherwise.
+     */
+    BRANCH,
+    /**
+     * Continues with the successor of the matching key or the last successor if no key matches.
+     */
+    SWITCH,
+    /**
+     * Returns the value from the expression.
+     */
+    RETURN;
+
+    private final String name;
+
+    IrOpcode() {
+        this.name = this.name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @return Whether this opcode ends a block
+     */
+    public boolean isTerminator() {
+        return this == JUMP || this == BRANCH || this == SWITCH || this == RETURN;
+    }
+
+    @Override
+    public String toString() {
+        return this.name;
+    }
+}
@@ -0,0 +1,20 @@
+package gg.moonflower.molangcompiler.core.ir;
+
+import org.jetbrains.annotations.ApiStatus;
+
+/**
+ * A transformation of an {@link IrFunction} that keeps the same result.
+ *
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+@FunctionalInterface
+public interface IrPass {
+
+    /**
+     * Transforms the function in place.
+     *
+     * @param function The function to transform
+     */
+    void apply(IrFunction function);
+}
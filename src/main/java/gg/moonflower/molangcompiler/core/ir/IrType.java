@@ -0,0 +1,28 @@
+package gg.moonflower.molangcompiler.core.ir;
+
+import org.jetbrains.annotations.ApiStatus;
+
+/**
+ * The type of value an {@link IrInstruction} produces.
+ *
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public enum IrType {
+    /**
+     * No value, used for stores and terminators.
+     */
+    VOID,
+    /**
+     * A MoLang number.
+     */
+    FLOAT,
+    /**
+     * A java int, used for loop counters and conditions.
+     */
+    INT,
+    /**
+     * A {@link gg.moonflower.molangcompiler.api.object.MolangObject} from the environment.
+     */
+    OBJECT
+}
@@ -0,0 +1,127 @@
+package gg.moonflower.molangcompiler.core.ir;
+
+import gg.moonflower.molangcompiler.core.ast.BinaryOperation;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * <p>Replaces chains of branches comparing the same value to different integer constants with a single {@link IrOpcode#SWITCH switch}.</p>
+ * <p>Each block after the first in a chain may only contain constants and its comparison, so nothing is skipped by jumping straight to the matching case.</p>
+ *
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public final class SwitchFormation implements IrPass {
+
+    private static final int MIN_SWITCH_CASES = 3;
+
+    @Override
+    public void apply(IrFunction function) {
+        Set<IrBlock> removed = new HashSet<>();
+        for (IrBlock head : function.getReversePostOrder()) {
+            if (!removed.contains(head)) {
+                this.tryFormSwitch(function, head, removed);
+            }
+        }
+        function.getBlocks().removeAll(removed);
+    }
+
+    private void tryFormSwitch(IrFunction function, IrBlock head, Set<IrBlock> removed) {
+        IrInstruction value = getSwitchValue(head);
+        if (value == null) {
+            return;
+        }
+
+        Map<IrInstruction, List<IrInstruction>> uses = function.computeUses();
+        List<IrBlock> chain = new ArrayList<>();
+        Set<Integer> keys = new HashSet<>();
+        List<Integer> caseKeys = new ArrayList<>();
+        List<IrBlock> cases = new ArrayList<>();
+        IrBlock block = head;
+        while (true) {
+            IrInstruction compare = block.getTerminator().getOperand(0);
+            int key = getKey(compare, value);
+            IrBlock isTrue = block.getSuccessors().get(0);
+            // The first matching comparison wins, so the chain ends before a duplicate key
+            if (!keys.add(key) || isTrue.getPredecessors().size() != 1) {
+                break;
+            }
+            chain.add(block);
+            caseKeys.add(key);
+            cases.add(isTrue);
+
+            IrBlock isFalse = block.getSuccessors().get(1);
+            if (isFalse.getPredecessors().size() != 1 || value != getSwitchValue(isFalse) || !isOnlyComparison(isFalse, uses)) {
+                break;
+            }
+            block = isFalse;
+        }
+        if (chain.size() < MIN_SWITCH_CASES) {
+            return;
+        }
+
+        IrBlock last = chain.get(chain.size() - 1);
+        IrBlock fallback = last.getSuccessors().get(1);
+        for (int i = 1; i < chain.size(); i++) {
+            IrBlock continued = chain.get(i);
+            // Constants used by later cases must still be available
+            for (IrInstruction instruction : continued.getInstructions()) {
+                if (instruction.getOpcode() == IrOpcode.CONST) {
+                    head.insertBeforeTerminator(instruction);
+                }
+            }
+            continued.unterminate();
+            continued.getInstructions().clear();
+            removed.add(continued);
+        }
+        head.unterminate();
+
+        cases.add(fallback);
+        head.terminate(IrInstruction.tableSwitch(value, caseKeys.stream().mapToInt(Integer::intValue).toArray()), cases.toArray(IrBlock[]::new));
+    }
+
+    // The value a block compares to an integer constant before branching
+    @Nullable
+    private static IrInstruction getSwitchValue(IrBlock block) {
+        IrInstruction terminator = block.getTerminator();
+        if (terminator == null || terminator.getOpcode() != IrOpcode.BRANCH) {
+            return null;
+        }
+        IrInstruction compare = terminator.getOperand(0);
+        if (compare.getOpcode() != IrOpcode.COMPARE || compare.getOperator() != BinaryOperation.EQUALS || compare.getOperand(0).getType() != IrType.FLOAT) {
+            return null;
+        }
+        IrInstruction left = compare.getOperand(0);
+        IrInstruction right = compare.getOperand(1);
+        if (isKey(right) && !left.isConstant()) {
+            return left;
+        }
+        if (isKey(left) && !right.isConstant()) {
+            return right;
+        }
+        return null;
+    }
+
+    private static int getKey(IrInstruction compare, IrInstruction value) {
+        return (int) compare.getOperand(compare.getOperand(0) == value ? 1 : 0).getValue();
+    }
+
+    private static boolean isKey(IrInstruction instruction) {
+        return instruction.isConstant() && (float) (int) instruction.getValue() == instruction.getValue();
+    }
+
+    private static boolean isOnlyComparison(IrBlock block, Map<IrInstruction, List<IrInstruction>> uses) {
+        IrInstruction compare = block.getTerminator().getOperand(0);
+        for (IrInstruction instruction : block.getInstructions()) {
+            if (instruction.getOpcode() == IrOpcode.CONST || instruction.getOpcode().isTerminator()) {
+                continue;
+            }
+            if (instruction != compare || compare.getBlock() != block || uses.get(compare).size() != 1) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,99 @@
+package gg.moonflower.molangcompiler.core.ir;
+
+import gg.moonflower.molangcompiler.core.ast.BinaryOperation;
+import gg.moonflower.molangcompiler.core.ast.MathOperation;
+import org.jetbrains.annotations.ApiStatus;
+
+import java.util.*;
+
+/**
+ * <p>Replaces values that are computed again with the earlier value, if the earlier value is always computed first.</p>
+ * <p>Blocks are visited in dominator tree order so only values of blocks that dominate the current block are available.
+ * Pure instructions and object lookups are numbered, and operands of commutative operations are ordered before comparing.</p>
+ *
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public final class ValueNumbering implements IrPass {
+
+    @Override
+    public void apply(IrFunction function) {
+        Map<IrBlock, IrBlock> dominators = function.getDominators();
+        Map<IrBlock, List<IrBlock>> children = new HashMap<>();
+        for (IrBlock block : function.getReversePostOrder()) {
+            IrBlock dominator = dominators.get(block);
+            if (dominator != block) {
+                children.computeIfAbsent(dominator, unused -> new ArrayList<>()).add(block);
+            }
+        }
+
+        Map<IrInstruction, IrInstruction> replacements = new HashMap<>();
+        this.visit(function.getEntry(), children, new HashMap<>(), replacements);
+        if (replacements.isEmpty()) {
+            return;
+        }
+        for (IrBlock block : function.getBlocks()) {
+            for (IrInstruction instruction : block.getInstructions()) {
+                instruction.getOperands().replaceAll(operand -> replacements.getOrDefault(operand, operand));
+            }
+        }
+    }
+
+    private void visit(IrBlock root, Map<IrBlock, List<IrBlock>> children, Map<Key, IrInstruction> available, Map<IrInstruction, IrInstruction> replacements) {
+        // Dominator trees of long chains are deep, so the tree is walked without recursion
+        Deque<Object> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            Object next = stack.pop();
+            if (next instanceof Key[] added) {
+                for (Key key : added) {
+                    available.remove(key);
+                }
+                continue;
+            }
+
+            IrBlock block = (IrBlock) next;
+            List<Key> added = new ArrayList<>();
+            Iterator<IrInstruction> iterator = block.getInstructions().iterator();
+            while (iterator.hasNext()) {
+                IrInstruction instruction = iterator.next();
+                instruction.getOperands().replaceAll(operand -> replacements.getOrDefault(operand, operand));
+                if (!instruction.isPure() && instruction.getOpcode() != IrOpcode.OBJECT) {
+                    continue;
+                }
+
+                Key key = Key.of(instruction);
+                IrInstruction existing = available.get(key);
+                if (existing != null) {
+                    replacements.put(instruction, existing);
+                    iterator.remove();
+                } else {
+                    available.put(key, instruction);
+                    added.add(key);
+                }
+            }
+
+            stack.push(added.toArray(Key[]::new));
+            List<IrBlock> dominated = children.getOrDefault(block, Collections.emptyList());
+            for (int i = dominated.size() - 1; i >= 0; i--) {
+                stack.push(dominated.get(i));
+            }
+        }
+    }
+
+    private record Key(IrOpcode opcode, IrType type, int value, String name, MathOperation function,
+                       BinaryOperation operator, List<IrInstruction> operands) {
+
+        static Key of(IrInstruction instruction) {
+            List<IrInstruction> operands = new ArrayList<>(instruction.getOperands());
+            if (isCommutative(instruction.getOperator()) && System.identityHashCode(operands.get(0)) > System.identityHashCode(operands.get(1))) {
+                Collections.swap(operands, 0, 1);
+            }
+            return new Key(instruction.getOpcode(), instruction.getType(), Float.floatToRawIntBits(instruction.getValue()), instruction.getName(), instruction.getFunction(), instruction.getOperator(), operands);
+        }
+
+        private static boolean isCommutative(BinaryOperation operator) {
+            return operator == BinaryOperation.ADD || operator == BinaryOperation.MULTIPLY || operator == BinaryOperation.EQUALS || operator == BinaryOperation.NOT_EQUALS;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package gg.moonflower.molangcompiler.core.node;
+
+import gg.moonflower.molangcompiler.api.MolangEnvironment;
+import gg.moonflower.molangcompiler.api.MolangExpression;
+import gg.moonflower.molangcompiler.api.exception.MolangRuntimeException;
+import gg.moonflower.molangcompiler.core.compiler.MolangExpressionModule;
+import org.jetbrains.annotations.ApiStatus;
+
+/**
+ * A handle to a single expression in a packed module.
+ *
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public record MolangModuleNode(MolangExpressionModule module, int index, String source) implements MolangExpression {
+
+    @Override
+    public float get(MolangEnvironment environment) throws MolangRuntimeException {
+        return this.module.get(this.index, environment);
+    }
+
+    // Same as generated expressions, equal to any expression with the same source
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof MolangExpression && this.source.equals(obj.toString());
+    }
+
+    @Override
+    public int hashCode() {
+        return this.source.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return this.source;
+    }
+}
@@ -0,0 +1,31 @@
+package gg.moonflower.molangcompiler.core.node;
+
+import gg.moonflower.molangcompiler.api.MolangEnvironment;
+import gg.moonflower.molangcompiler.api.MolangExpression;
+import gg.moonflower.molangcompiler.api.MolangExpressionRegistry;
+import gg.moonflower.molangcompiler.api.exception.MolangRuntimeException;
+import org.jetbrains.annotations.ApiStatus;
+
+/**
+ * Evaluates the current version of an expression in a registry.
+ *
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public record MolangReferenceNode(MolangExpressionRegistry registry, int handle) implements MolangExpression {
+
+    @Override
+    public float get(MolangEnvironment environment) throws MolangRuntimeException {
+        return this.registry.get(this.handle).get(environment);
+    }
+
+    @Override
+    public double getDouble(MolangEnvironment environment) throws MolangRuntimeException {
+        return this.registry.get(this.handle).getDouble(environment);
+    }
+
+    @Override
+    public String toString() {
+        return this.registry.get(this.handle).toString();
+    }
+}
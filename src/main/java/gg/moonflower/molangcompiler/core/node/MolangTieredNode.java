@@ -0,0 +1,129 @@
+package gg.moonflower.molangcompiler.core.node;
+
+import gg.moonflower.molangcompiler.api.MolangEnvironment;
+import gg.moonflower.molangcompiler.api.MolangExpression;
+import gg.moonflower.molangcompiler.api.exception.MolangException;
+import gg.moonflower.molangcompiler.api.exception.MolangRuntimeException;
+import gg.moonflower.molangcompiler.api.exception.MolangSyntaxException;
+import gg.moonflower.molangcompiler.core.MolangExpressionCache;
+import gg.moonflower.molangcompiler.core.ast.Node;
+import gg.moonflower.molangcompiler.core.compiler.MolangInterpreterContext;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Interprets an expression until it has been evaluated enough times, then generates bytecode in the background.</p>
+ * <p>Evaluation keeps using the interpreter until the compiled expression is ready, so no caller ever waits for compilation.</p>
+ *
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public final class MolangTieredNode implements MolangExpression {
+
+    private final Node node;
+    private final Node interpreted;
+    private final Map<Node, Set<String>> temps;
+    private final String source;
+    private final int threshold;
+    private final Executor executor;
+    private final MolangExpressionCache.Factory compiler;
+    private final AtomicInteger invocations;
+    private volatile MolangExpression compiled;
+    private volatile MolangSyntaxException failure;
+
+    /**
+     * @param node        The node to generate bytecode for
+     * @param interpreted The node to interpret until bytecode is available. This is usually the folded version of the node
+     * @param temps       The temps of the interpreted node, created with {@link MolangInterpreterContext#findTemps(Node)}
+     * @param threshold   The number of evaluations before bytecode is generated
+     * @param executor    The executor to generate bytecode on
+     * @param compiler    The factory that generates bytecode
+     */
+    public MolangTieredNode(Node node, Node interpreted, Map<Node, Set<String>> temps, int threshold, Executor executor, MolangExpressionCache.Factory compiler) {
+        this.node = node;
+        this.interpreted = interpreted;
+        this.temps = temps;
+        this.source = node.toString();
+        this.threshold = threshold;
+        this.executor = executor;
+        this.compiler = compiler;
+        this.invocations = new AtomicInteger();
+        this.compiled = null;
+        this.failure = null;
+    }
+
+    @Override
+    public float get(MolangEnvironment environment) throws MolangRuntimeException {
+        MolangExpression compiled = this.compiled;
+        if (compiled != null) {
+            return compiled.get(environment);
+        }
+
+        if (this.invocations.incrementAndGet() == this.threshold) {
+            this.executor.execute(this::compile);
+        }
+
+        MolangInterpreterContext context = new MolangInterpreterContext(environment, this.temps);
+        try {
+            float value = this.interpreted.interpret(context);
+            return context.getSignal() == MolangInterpreterContext.Signal.RETURN ? context.getReturnValue() : value;
+        } catch (MolangRuntimeException e) {
+            throw e;
+        } catch (MolangException e) {
+            throw new MolangRuntimeException(e);
+        }
+    }
+
+    @Override
+    public double getDouble(MolangEnvironment environment) throws MolangRuntimeException {
+        MolangExpression compiled = this.compiled;
+        return compiled != null ? compiled.getDouble(environment) : this.get(environment);
+    }
+
+    private void compile() {
+        try {
+            this.compiled = this.compiler.create(this.node);
+        } catch (MolangSyntaxException e) {
+            // The node was already written once when this expression was created, so this should never happen.
+            // The interpreter produces the same results, so keep using it
+            this.failure = e;
+        }
+    }
+
+    /**
+     * @return The generated expression or <code>null</code> if the expression is still interpreted
+     */
+    @Nullable
+    public MolangExpression getCompiled() {
+        return this.compiled;
+    }
+
+    /**
+     * @return The error generating bytecode or <code>null</code> if it has not failed. Failed expressions stay interpreted
+     */
+    @Nullable
+    public MolangSyntaxException getFailure() {
+        return this.failure;
+    }
+
+    // Same as generated expressions, equal to any expression with the same source
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof MolangExpression && this.source.equals(obj.toString());
+    }
+
+    @Override
+    public int hashCode() {
+        return this.source.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return this.source;
+    }
+}
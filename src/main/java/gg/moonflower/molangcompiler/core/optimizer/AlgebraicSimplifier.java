@@ -0,0 +1,176 @@
+package gg.moonflower.molangcompiler.core.optimizer;
+
+import gg.moonflower.molangcompiler.api.exception.MolangException;
+import gg.moonflower.molangcompiler.core.ast.*;
+import org.jetbrains.annotations.ApiStatus;
+
+/**
+ * <p>Rewrites arithmetic into cheaper equivalent forms. This expects constant subtrees to already be {@linkplain ConstantFolder folded}.</p>
+ * <p>By default only rewrites that produce the same result for every value are made. Division by a power of two becomes a multiplication,
+ * <code>math.pow(x, 2)</code> becomes <code>x * x</code> if <code>x</code> is pure, and operations that return their operand unchanged, such as <code>x * 1</code> and <code>x - 0</code>, are removed.</p>
+ * <p>With {@linkplain gg.moonflower.molangcompiler.api.MolangCompiler#FAST_MATH_FLAG fast math} constants in chains of additions and multiplications are also combined into one operation,
+ * so <code>2 * q.a * 3</code> becomes <code>q.a * 6</code> and <code>(q.a + 4) - 4</code> becomes <code>q.a</code>. This can change the last bits of the result.
+ * Operands that are not constant keep their order, so side effects still happen in the same order.</p>
+ *
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public final class AlgebraicSimplifier {
+
+    private final boolean reassociate;
+
+    private AlgebraicSimplifier(boolean reassociate) {
+        this.reassociate = reassociate;
+    }
+
+    /**
+     * Simplifies all arithmetic in the specified node.
+     *
+     * @param node        The node to simplify
+     * @param reassociate Whether constants may be combined even if it changes the result
+     * @return The simplified node or the same node if nothing could be simplified
+     * @throws MolangException If the tree cannot be transformed
+     */
+    public static Node simplify(Node node, boolean reassociate) throws MolangException {
+        return new AlgebraicSimplifier(reassociate).simplify(node);
+    }
+
+    private Node simplify(Node node) throws MolangException {
+        Node result = node.transformChildren(this::simplify);
+        if (result instanceof BinaryOperationNode operation) {
+            return switch (operation.operator()) {
+                case ADD, SUBTRACT -> this.simplifySum(operation);
+                case MULTIPLY, DIVIDE -> this.simplifyProduct(operation);
+                default -> operation;
+            };
+        }
+        if (result instanceof MathNode math && math.function() == MathOperation.POW && math.arguments()[1] instanceof ConstNode exponent) {
+            Node base = math.arguments()[0];
+            // Squaring a float as a double is exact, so rounding once gives the same result as a float multiplication
+            if (exponent.value() == 1.0F) {
+                return base;
+            }
+            if (exponent.value() == 2.0F && CommonSubexpressionEliminator.isPure(base)) {
+                return new BinaryOperationNode(BinaryOperation.MULTIPLY, base, base);
+            }
+        }
+        return result;
+    }
+
+    private Node simplifySum(BinaryOperationNode operation) {
+        Node left = operation.left();
+        Node right = operation.right();
+        boolean subtract = operation.operator() == BinaryOperation.SUBTRACT;
+
+        if (right instanceof ConstNode constant) {
+            // x - 0 and x + -0 are exact for every x, but x + 0 turns -0 into 0
+            if (Float.floatToRawIntBits(constant.value()) == Float.floatToRawIntBits(subtract ? 0.0F : -0.0F)) {
+                return left;
+            }
+            if (this.reassociate && left instanceof BinaryOperationNode sum && sumConstant(sum) != null) {
+                return offset(sum.left(), sumConstant(sum) + (subtract ? -constant.value() : constant.value()));
+            }
+            return operation;
+        }
+        if (left instanceof ConstNode && !subtract) {
+            return this.simplifySum(new BinaryOperationNode(BinaryOperation.ADD, right, left));
+        }
+        if (!this.reassociate) {
+            return operation;
+        }
+
+        // Move constants to the end of the chain so they can be combined
+        if (left instanceof BinaryOperationNode sum && sumConstant(sum) != null) {
+            return offset(this.simplifySum(new BinaryOperationNode(operation.operator(), sum.left(), right)), sumConstant(sum));
+        }
+        if (right instanceof BinaryOperationNode sum && sumConstant(sum) != null) {
+            float constant = sumConstant(sum);
+            return offset(this.simplifySum(new BinaryOperationNode(operation.operator(), left, sum.left())), subtract ? -constant : constant);
+        }
+        return operation;
+    }
+
+    // Retrieves c for x + c and -c for x - c
+    private static Float sumConstant(BinaryOperationNode operation) {
+        if (operation.right() instanceof ConstNode constant) {
+            if (operation.operator() == BinaryOperation.ADD) {
+                return constant.value();
+            }
+            if (operation.operator() == BinaryOperation.SUBTRACT) {
+                return -constant.value();
+            }
+        }
+        return null;
+    }
+
+    private static Node offset(Node node, float constant) {
+        if (node instanceof BinaryOperationNode sum && sumConstant(sum) != null) {
+            return offset(sum.left(), sumConstant(sum) + constant);
+        }
+        if (constant == 0.0F) {
+            return node;
+        }
+        return constant < 0 ? new BinaryOperationNode(BinaryOperation.SUBTRACT, node, new ConstNode(-constant)) : new BinaryOperationNode(BinaryOperation.ADD, node, new ConstNode(constant));
+    }
+
+    private Node simplifyProduct(BinaryOperationNode operation) {
+        Node left = operation.left();
+        Node right = operation.right();
+
+        if (right instanceof ConstNode constant) {
+            if (constant.value() == 1.0F) {
+                return left;
+            }
+            if (operation.operator() == BinaryOperation.DIVIDE) {
+                float reciprocal = exactReciprocal(constant.value());
+                if (reciprocal == 0.0F) {
+                    return operation;
+                }
+                return this.simplifyProduct(new BinaryOperationNode(BinaryOperation.MULTIPLY, left, new ConstNode(reciprocal)));
+            }
+            if (this.reassociate && left instanceof BinaryOperationNode product && productConstant(product) != null) {
+                return scale(product.left(), productConstant(product) * constant.value());
+            }
+            return operation;
+        }
+        if (operation.operator() != BinaryOperation.MULTIPLY) {
+            return operation;
+        }
+        if (left instanceof ConstNode) {
+            return this.simplifyProduct(new BinaryOperationNode(BinaryOperation.MULTIPLY, right, left));
+        }
+        if (!this.reassociate) {
+            return operation;
+        }
+
+        // Move constants to the end of the chain so they can be combined
+        if (left instanceof BinaryOperationNode product && productConstant(product) != null) {
+            return scale(this.simplifyProduct(new BinaryOperationNode(BinaryOperation.MULTIPLY, product.left(), right)), productConstant(product));
+        }
+        if (right instanceof BinaryOperationNode product && productConstant(product) != null) {
+            return scale(this.simplifyProduct(new BinaryOperationNode(BinaryOperation.MULTIPLY, left, product.left())), productConstant(product));
+        }
+        return operation;
+    }
+
+    // Retrieves c for x * c
+    private static Float productConstant(BinaryOperationNode operation) {
+        return operation.operator() == BinaryOperation.MULTIPLY && operation.right() instanceof ConstNode constant ? constant.value() : null;
+    }
+
+    private static Node scale(Node node, float constant) {
+        if (node instanceof BinaryOperationNode product && productConstant(product) != null) {
+            return scale(product.left(), productConstant(product) * constant);
+        }
+        return constant == 1.0F ? node : new BinaryOperationNode(BinaryOperation.MULTIPLY, node, new ConstNode(constant));
+    }
+
+    // Multiplying by the reciprocal of a power of two rounds exactly like dividing, as long as both are normal numbers
+    private static float exactReciprocal(float value) {
+        if (!Float.isFinite(value) || Math.abs(value) < Float.MIN_NORMAL || (Float.floatToRawIntBits(value) & 0x7FFFFF) != 0) {
+            return 0.0F;
+        }
+        float reciprocal = 1.0F / value;
+        return Math.abs(reciprocal) >= Float.MIN_NORMAL && Float.isFinite(reciprocal) ? reciprocal : 0.0F;
+    }
+}
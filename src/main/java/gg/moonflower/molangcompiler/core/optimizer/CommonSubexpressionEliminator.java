@@ -0,0 +1,202 @@
+package gg.moonflower.molangcompiler.core.optimizer;
+
+import gg.moonflower.molangcompiler.api.exception.MolangException;
+import gg.moonflower.molangcompiler.core.ast.*;
+import org.jetbrains.annotations.ApiStatus;
+
+import java.util.*;
+
+/**
+ * <p>Computes repeated pure subtrees only once.</p>
+ * <p>Math functions that are {@linkplain MathOperation#isDeterministic() deterministic} and binary operations are pure if all their operands are pure.
+ * The first occurrence of a repeated subtree stores its value in a temp variable and every later occurrence loads it instead.
+ * A value can only be reused where it was certainly computed before, so values computed in a branch, loop body, or scope are only reused inside it.
+ * Setting a variable invalidates every value that read it.</p>
+ *
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public final class CommonSubexpressionEliminator {
+
+    /**
+     * The prefix of temp variables created by this pass. Names can never contain <code>$</code>, so these never conflict with variables of the expression.
+     */
+    public static final String PREFIX = "$cse";
+
+    private final Map<Node, Integer> available;
+    private final Map<Integer, Set<String>> reads;
+    private final List<Node> added;
+    private final List<Integer> decisions;
+    private int slots;
+    private int visited;
+
+    private CommonSubexpressionEliminator() {
+        this.available = new HashMap<>();
+        this.reads = new HashMap<>();
+        this.added = new ArrayList<>();
+        this.decisions = new ArrayList<>();
+        this.slots = 0;
+        this.visited = 0;
+    }
+
+    /**
+     * Replaces repeated pure subtrees in the specified node.
+     *
+     * @param node The node to optimize
+     * @return The node with repeated subtrees replaced or the same node if nothing is repeated
+     * @throws MolangException If the tree cannot be transformed
+     */
+    public static Node eliminate(Node node) throws MolangException {
+        CommonSubexpressionEliminator eliminator = new CommonSubexpressionEliminator();
+        eliminator.analyze(node);
+        if (eliminator.slots == 0) {
+            return node;
+        }
+        eliminator.visited = 0;
+        return eliminator.rewrite(node);
+    }
+
+    // Finds which candidates can reuse an earlier occurrence. Each visited candidate records a decision in visiting order
+    private void analyze(Node node) throws MolangException {
+        if (isCandidate(node)) {
+            Integer previous = this.available.get(node);
+            int index = this.decisions.size();
+            if (previous != null) {
+                int slot = this.decisions.get(previous);
+                if (slot < 0) {
+                    slot = this.slots++;
+                    this.decisions.set(previous, slot);
+                }
+                // Loads are stored as negative values
+                this.decisions.add(-slot - 2);
+                return;
+            }
+
+            this.decisions.add(-1);
+            this.analyzeChildren(node);
+            Set<String> reads = new HashSet<>();
+            collectReads(node, reads);
+            this.available.put(node, index);
+            this.reads.put(index, reads);
+            this.added.add(node);
+            return;
+        }
+
+        this.analyzeChildren(node);
+    }
+
+    private void analyzeChildren(Node node) throws MolangException {
+        if (node instanceof TernaryOperationNode ternary) {
+            this.analyze(ternary.value());
+            this.analyzeRegion(ternary.left());
+            this.analyzeRegion(ternary.right());
+        } else if (node instanceof BinaryConditionalNode conditional) {
+            this.analyze(conditional.value());
+            this.analyzeRegion(conditional.branch());
+        } else if (node instanceof BinaryOperationNode operation && (operation.operator() == BinaryOperation.AND || operation.operator() == BinaryOperation.OR || operation.operator() == BinaryOperation.NULL_COALESCING)) {
+            // The right side is only evaluated depending on the left side
+            this.analyze(operation.left());
+            this.analyzeRegion(operation.right());
+        } else if (node instanceof LoopNode loop) {
+            this.analyze(loop.iterations());
+            // Values read in the loop may change in a previous iteration
+            Set<String> writes = new HashSet<>();
+            collectWrites(loop.body(), writes);
+            for (String write : writes) {
+                this.kill(write);
+            }
+            this.analyzeRegion(loop.body());
+        } else if (node instanceof ScopeNode scope) {
+            // Locals created in a scope are not visible after it
+            this.analyzeRegion(scope.node());
+        } else if (node instanceof VariableSetNode set) {
+            this.analyze(set.value());
+            this.kill(set.object() + "." + set.name());
+        } else {
+            node.transformChildren(child -> {
+                this.analyze(child);
+                return child;
+            });
+        }
+    }
+
+    private void analyzeRegion(Node node) throws MolangException {
+        int start = this.added.size();
+        this.analyze(node);
+        for (int i = this.added.size() - 1; i >= start; i--) {
+            Node added = this.added.remove(i);
+            Integer index = this.available.remove(added);
+            if (index != null) {
+                this.reads.remove(index);
+            }
+        }
+    }
+
+    private void kill(String variable) {
+        Iterator<Map.Entry<Node, Integer>> iterator = this.available.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Node, Integer> entry = iterator.next();
+            if (this.reads.get(entry.getValue()).contains(variable)) {
+                this.reads.remove(entry.getValue());
+                iterator.remove();
+            }
+        }
+    }
+
+    // Visits candidates in the same order as the analysis and applies the decision made for each
+    private Node rewrite(Node node) throws MolangException {
+        if (isCandidate(node)) {
+            int decision = this.decisions.get(this.visited++);
+            if (decision <= -2) {
+                return new VariableGetNode("temp", PREFIX + (-decision - 2));
+            }
+
+            Node result = node.transformChildren(this::rewrite);
+            return decision >= 0 ? new VariableSetNode("temp", PREFIX + decision, result, true) : result;
+        }
+        return node.transformChildren(this::rewrite);
+    }
+
+    private static boolean isCandidate(Node node) {
+        return (node instanceof MathNode || node instanceof BinaryOperationNode) && !node.isConstant() && isPure(node);
+    }
+
+    // Pure nodes have no side effects and always produce the same value, so they can be evaluated any number of times
+    static boolean isPure(Node node) {
+        if (node instanceof ConstNode || node instanceof ConstantSlotNode || node instanceof VariableGetNode) {
+            return true;
+        }
+        if (node instanceof MathNode math) {
+            if (!math.function().isDeterministic()) {
+                return false;
+            }
+            for (Node argument : math.arguments()) {
+                if (!isPure(argument)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return node instanceof BinaryOperationNode operation && operation.operator() != BinaryOperation.NULL_COALESCING && isPure(operation.left()) && isPure(operation.right());
+    }
+
+    private static void collectReads(Node node, Set<String> reads) throws MolangException {
+        if (node instanceof VariableGetNode get) {
+            reads.add(get.object() + "." + get.name());
+        }
+        node.transformChildren(child -> {
+            collectReads(child, reads);
+            return child;
+        });
+    }
+
+    private static void collectWrites(Node node, Set<String> writes) throws MolangException {
+        if (node instanceof VariableSetNode set) {
+            writes.add(set.object() + "." + set.name());
+        }
+        node.transformChildren(child -> {
+            collectWrites(child, writes);
+            return child;
+        });
+    }
+}
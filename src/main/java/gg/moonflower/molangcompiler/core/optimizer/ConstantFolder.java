@@ -0,0 +1,34 @@
+package gg.moonflower.molangcompiler.core.optimizer;
+
+import gg.moonflower.molangcompiler.api.exception.MolangException;
+import gg.moonflower.molangcompiler.core.ast.ConstNode;
+import gg.moonflower.molangcompiler.core.ast.Node;
+import gg.moonflower.molangcompiler.core.compiler.MolangBytecodeEnvironment;
+import org.jetbrains.annotations.ApiStatus;
+
+/**
+ * Replaces every constant subtree that pushes a value with a single {@link ConstNode}.
+ * This is the same reduction {@link Node#writeBytecode} performs with optimization enabled, done ahead of time so later passes see the result.
+ *
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public final class ConstantFolder {
+
+    private ConstantFolder() {
+    }
+
+    public static Node fold(Node node, MolangBytecodeEnvironment environment) throws MolangException {
+        if (node instanceof ConstNode) {
+            return node;
+        }
+        if (node.hasValue() && node.isConstant()) {
+            try {
+                return new ConstNode(node.evaluate(environment));
+            } catch (MolangException ignored) {
+                // Some nodes only have a constant condition, so fold the children instead
+            }
+        }
+        return node.transformChildren(child -> fold(child, environment));
+    }
+}
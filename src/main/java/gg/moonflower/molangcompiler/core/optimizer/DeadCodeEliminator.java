@@ -0,0 +1,140 @@
+package gg.moonflower.molangcompiler.core.optimizer;
+
+import gg.moonflower.molangcompiler.api.exception.MolangException;
+import gg.moonflower.molangcompiler.core.ast.*;
+import org.jetbrains.annotations.ApiStatus;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * <p>Removes code that can never run or has no effect. This expects constant subtrees to already be {@linkplain ConstantFolder folded}.</p>
+ * <p>Conditions that are constant are replaced by the branch they select, statements after a <code>return</code>, <code>break</code>, or <code>continue</code> are removed,
+ * and statements that only compute a pure value are dropped. Stores to temp variables that are never read are removed as well,
+ * which can make other stores dead, so this repeats until nothing changes.</p>
+ *
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public final class DeadCodeEliminator {
+
+    private final Set<String> reads;
+
+    private DeadCodeEliminator(Set<String> reads) {
+        this.reads = reads;
+    }
+
+    /**
+     * Removes all dead code from the specified node.
+     *
+     * @param node The node to optimize
+     * @return The node without dead code or the same node if nothing could be removed
+     * @throws MolangException If the tree cannot be transformed
+     */
+    public static Node eliminate(Node node) throws MolangException {
+        while (true) {
+            Set<String> reads = new HashSet<>();
+            collectTempReads(node, reads);
+            Node result = new DeadCodeEliminator(reads).prune(node);
+            if (result == node) {
+                return node;
+            }
+            node = result;
+        }
+    }
+
+    private Node prune(Node node) throws MolangException {
+        Node result = node.transformChildren(this::prune);
+        if (result instanceof TernaryOperationNode ternary && ternary.value() instanceof ConstNode value) {
+            Node branch = value.value() != 0.0F ? ternary.left() : ternary.right();
+            // A branch with a value would leave it on the stack if the ternary doesn't have one
+            return branch.hasValue() == ternary.hasValue() ? branch : ternary;
+        }
+        if (result instanceof BinaryConditionalNode conditional && conditional.value() instanceof ConstNode value && value.value() != 0.0F && !conditional.branch().hasValue()) {
+            return conditional.branch();
+        }
+        if (result instanceof BinaryOperationNode operation && operation.left() instanceof ConstNode left) {
+            // The right side is never evaluated
+            if (operation.operator() == BinaryOperation.AND && left.value() == 0.0F) {
+                return new ConstNode(0.0F);
+            }
+            if (operation.operator() == BinaryOperation.OR && left.value() != 0.0F) {
+                return new ConstNode(1.0F);
+            }
+        }
+        if (result instanceof VariableSetNode set && set.returnValue() && this.isDeadStore(set)) {
+            return set.value();
+        }
+        if (result instanceof CompoundNode compound) {
+            return this.pruneStatements(compound);
+        }
+        return result;
+    }
+
+    private Node pruneStatements(CompoundNode compound) {
+        Node[] nodes = compound.nodes();
+        List<Node> statements = new ArrayList<>(nodes.length);
+        for (int i = 0; i < nodes.length; i++) {
+            Node node = nodes[i];
+            boolean last = i == nodes.length - 1;
+            if (last || !this.isDead(node)) {
+                statements.add(node);
+            }
+            if (!last && isTerminal(node)) {
+                break;
+            }
+        }
+
+        if (statements.size() == nodes.length) {
+            return compound;
+        }
+        // Removing unreachable statements must not change whether the compound has a value
+        Node result = statements.size() == 1 ? statements.get(0) : new CompoundNode(statements.toArray(Node[]::new));
+        return result.hasValue() == compound.hasValue() ? result : compound;
+    }
+
+    // Statements that don't change anything can be removed
+    private boolean isDead(Node node) {
+        if (node instanceof BinaryConditionalNode conditional && conditional.value() instanceof ConstNode value && value.value() == 0.0F) {
+            return true;
+        }
+        if (node instanceof VariableSetNode set && this.isDeadStore(set)) {
+            return isPure(set.value());
+        }
+        return node.hasValue() && isPure(node);
+    }
+
+    private boolean isDeadStore(VariableSetNode set) {
+        return "temp".equals(set.object()) && !this.reads.contains(set.name());
+    }
+
+    private static boolean isPure(Node node) {
+        return node instanceof ConstNode || CommonSubexpressionEliminator.isPure(node);
+    }
+
+    // Whether nothing after the node is run
+    private static boolean isTerminal(Node node) {
+        if (node instanceof ReturnNode || node instanceof BreakNode || node instanceof ContinueNode) {
+            return true;
+        }
+        if (node instanceof ScopeNode scope) {
+            return isTerminal(scope.node());
+        }
+        if (node instanceof CompoundNode compound) {
+            return compound.nodes().length > 0 && isTerminal(compound.nodes()[compound.nodes().length - 1]);
+        }
+        return false;
+    }
+
+    private static void collectTempReads(Node node, Set<String> reads) throws MolangException {
+        if (node instanceof VariableGetNode get && "temp".equals(get.object())) {
+            reads.add(get.name());
+        }
+        node.transformChildren(child -> {
+            collectTempReads(child, reads);
+            return child;
+        });
+    }
+}
@@ -0,0 +1,165 @@
+package gg.moonflower.molangcompiler.core.optimizer;
+
+import gg.moonflower.molangcompiler.api.exception.MolangException;
+import gg.moonflower.molangcompiler.core.ast.*;
+import org.jetbrains.annotations.ApiStatus;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * <p>Computes pure subtrees of loop bodies that are the same in every iteration once before the loop.</p>
+ * <p>A subtree is invariant if no variable it reads is set anywhere in the loop. Functions can change any variable outside of temp,
+ * so bodies calling functions only move subtrees that read temp variables. Only subtrees that are evaluated every time the body runs are moved,
+ * so nothing is computed that the loop would have skipped.</p>
+ *
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public final class LoopInvariantCodeMotion {
+
+    /**
+     * The prefix of temp variables created by this pass. Names can never contain <code>$</code>, so these never conflict with variables of the expression.
+     */
+    public static final String PREFIX = "$licm";
+
+    private int slots;
+
+    private LoopInvariantCodeMotion() {
+        this.slots = 0;
+    }
+
+    /**
+     * Moves invariant subtrees out of all loops in the specified node.
+     *
+     * @param node The node to optimize
+     * @return The node with invariant subtrees moved or the same node if nothing could be moved
+     * @throws MolangException If the tree cannot be transformed
+     */
+    public static Node hoist(Node node) throws MolangException {
+        return new LoopInvariantCodeMotion().transform(node);
+    }
+
+    // Outer loops are handled first so values are moved as far out as possible
+    private Node transform(Node node) throws MolangException {
+        if (node instanceof LoopNode loop) {
+            Node hoisted = this.hoistLoop(loop);
+            if (hoisted != loop) {
+                return hoisted.transformChildren(this::transform);
+            }
+        }
+        Node result = node.transformChildren(this::transform);
+        if (result instanceof CompoundNode compound && result != node) {
+            return LoopOptimizer.flatten(compound);
+        }
+        return result;
+    }
+
+    private Node hoistLoop(LoopNode loop) throws MolangException {
+        Set<String> writes = new HashSet<>();
+        boolean[] calls = {false};
+        collectWrites(loop, writes, calls);
+
+        Map<Node, String> hoisted = new LinkedHashMap<>();
+        Node body = this.replace(loop.body(), writes, calls[0], hoisted);
+        if (hoisted.isEmpty()) {
+            return loop;
+        }
+
+        List<Node> statements = new ArrayList<>(hoisted.size() + 1);
+        hoisted.forEach((value, name) -> statements.add(new VariableSetNode("temp", name, value, false)));
+        statements.add(new LoopNode(loop.iterations(), body));
+        return new CompoundNode(statements.toArray(Node[]::new));
+    }
+
+    // Replaces invariant subtrees that are evaluated every time the node runs
+    private Node replace(Node node, Set<String> writes, boolean calls, Map<Node, String> hoisted) throws MolangException {
+        if (isCandidate(node) && isInvariant(node, writes, calls)) {
+            String name = hoisted.get(node);
+            if (name == null) {
+                name = PREFIX + this.slots++;
+                hoisted.put(node, name);
+            }
+            return new VariableGetNode("temp", name);
+        }
+
+        if (node instanceof CompoundNode compound) {
+            Node[] nodes = compound.nodes();
+            Node[] replaced = Arrays.copyOf(nodes, nodes.length);
+            boolean changed = false;
+            for (int i = 0; i < nodes.length; i++) {
+                replaced[i] = this.replace(nodes[i], writes, calls, hoisted);
+                changed |= replaced[i] != nodes[i];
+                // Statements after a jump might not run
+                if (hasJump(nodes[i])) {
+                    break;
+                }
+            }
+            return changed ? new CompoundNode(replaced) : compound;
+        }
+        if (node instanceof TernaryOperationNode ternary) {
+            Node value = this.replace(ternary.value(), writes, calls, hoisted);
+            return value == ternary.value() ? ternary : new TernaryOperationNode(value, ternary.left(), ternary.right());
+        }
+        if (node instanceof BinaryConditionalNode conditional) {
+            Node value = this.replace(conditional.value(), writes, calls, hoisted);
+            return value == conditional.value() ? conditional : new BinaryConditionalNode(value, conditional.branch());
+        }
+        if (node instanceof BinaryOperationNode operation && (operation.operator() == BinaryOperation.AND || operation.operator() == BinaryOperation.OR || operation.operator() == BinaryOperation.NULL_COALESCING)) {
+            Node left = this.replace(operation.left(), writes, calls, hoisted);
+            return left == operation.left() ? operation : new BinaryOperationNode(operation.operator(), left, operation.right());
+        }
+        if (hasJump(node)) {
+            return node;
+        }
+        return node.transformChildren(child -> this.replace(child, writes, calls, hoisted));
+    }
+
+    private static boolean isCandidate(Node node) {
+        return (node instanceof MathNode || node instanceof BinaryOperationNode) && !node.isConstant() && CommonSubexpressionEliminator.isPure(node);
+    }
+
+    private static boolean isInvariant(Node node, Set<String> writes, boolean calls) throws MolangException {
+        boolean[] invariant = {true};
+        visitReads(node, get -> {
+            if (writes.contains(get.object() + "." + get.name()) || (calls && !"temp".equals(get.object()))) {
+                invariant[0] = false;
+            }
+        });
+        return invariant[0];
+    }
+
+    private static boolean hasJump(Node node) throws MolangException {
+        if (node instanceof BreakNode || node instanceof ContinueNode || node instanceof ReturnNode) {
+            return true;
+        }
+        boolean[] jump = {false};
+        node.transformChildren(child -> {
+            jump[0] |= hasJump(child);
+            return child;
+        });
+        return jump[0];
+    }
+
+    private static void collectWrites(Node node, Set<String> writes, boolean[] calls) throws MolangException {
+        if (node instanceof VariableSetNode set) {
+            writes.add(set.object() + "." + set.name());
+        } else if (node instanceof FunctionNode) {
+            calls[0] = true;
+        }
+        node.transformChildren(child -> {
+            collectWrites(child, writes, calls);
+            return child;
+        });
+    }
+
+    private static void visitReads(Node node, Consumer<VariableGetNode> visitor) throws MolangException {
+        if (node instanceof VariableGetNode get) {
+            visitor.accept(get);
+        }
+        node.transformChildren(child -> {
+            visitReads(child, visitor);
+            return child;
+        });
+    }
+}
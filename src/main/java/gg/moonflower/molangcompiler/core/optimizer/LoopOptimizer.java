@@ -0,0 +1,202 @@
+package gg.moonflower.molangcompiler.core.optimizer;
+
+import gg.moonflower.molangcompiler.api.exception.MolangException;
+import gg.moonflower.molangcompiler.core.ast.*;
+import gg.moonflower.molangcompiler.core.compiler.MolangBytecodeEnvironment;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * <p>Replaces loops with a constant number of iterations by straight-line code. This expects constant subtrees to already be {@linkplain ConstantFolder folded}.</p>
+ * <p>A loop that only updates one variable from itself, such as <code>v.x = 20; loop(30, {v.x = v.x + 1;})</code>, is evaluated while compiling if the value before the loop is a constant.
+ * With {@linkplain gg.moonflower.molangcompiler.api.MolangCompiler#FAST_MATH_FLAG fast math} adding or subtracting a constant is reduced to a single operation for any starting value.</p>
+ * <p>Otherwise small loops without <code>break</code> or <code>continue</code> are fully unrolled and larger ones are unrolled {@value UNROLL_FACTOR} times,
+ * as long as the generated code stays below {@value MAX_UNROLLED_SIZE} nodes.</p>
+ *
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public final class LoopOptimizer {
+
+    private static final int FULL_UNROLL_ITERATIONS = 8;
+    private static final int UNROLL_FACTOR = 4;
+    private static final int MAX_UNROLLED_SIZE = 64;
+    private static final int MAX_EVALUATED_ITERATIONS = 65536;
+
+    private final MolangBytecodeEnvironment environment;
+    private final boolean fastMath;
+
+    private LoopOptimizer(MolangBytecodeEnvironment environment, boolean fastMath) {
+        this.environment = environment;
+        this.fastMath = fastMath;
+    }
+
+    /**
+     * Optimizes all loops in the specified node.
+     *
+     * @param node        The node to optimize
+     * @param environment The environment to evaluate constants in
+     * @param fastMath    Whether loops may be reduced even if it changes the result
+     * @return The optimized node or the same node if no loop could be optimized
+     * @throws MolangException If the tree cannot be transformed
+     */
+    public static Node optimize(Node node, MolangBytecodeEnvironment environment, boolean fastMath) throws MolangException {
+        return new LoopOptimizer(environment, fastMath).transform(node);
+    }
+
+    private Node transform(Node node) throws MolangException {
+        // Loops must be evaluated before their body is changed by unrolling
+        if (node instanceof CompoundNode compound) {
+            node = this.evaluateLoops(compound);
+        }
+        Node result = node.transformChildren(this::transform);
+        if (result instanceof LoopNode loop) {
+            return this.unroll(loop);
+        }
+        if (result instanceof CompoundNode compound && result != node) {
+            return flatten(compound);
+        }
+        return result;
+    }
+
+    // Statements generated in place of a loop are spliced into the statements around them
+    static Node flatten(CompoundNode compound) {
+        List<Node> statements = new ArrayList<>(compound.nodes().length);
+        for (Node node : compound.nodes()) {
+            if (node instanceof CompoundNode nested && !nested.hasValue()) {
+                Collections.addAll(statements, nested.nodes());
+            } else {
+                statements.add(node);
+            }
+        }
+        return statements.size() == compound.nodes().length ? compound : new CompoundNode(statements.toArray(Node[]::new));
+    }
+
+    // Loops directly after setting their variable to a constant can be run now
+    private Node evaluateLoops(CompoundNode compound) throws MolangException {
+        Node[] nodes = compound.nodes();
+        List<Node> statements = new ArrayList<>(nodes.length);
+        boolean changed = false;
+        for (Node node : nodes) {
+            if (!statements.isEmpty() && statements.get(statements.size() - 1) instanceof VariableSetNode initial && !initial.returnValue() && initial.value() instanceof ConstNode start) {
+                Node evaluated = this.evaluateLoop(node, initial, start.value());
+                if (evaluated != null) {
+                    statements.set(statements.size() - 1, evaluated);
+                    changed = true;
+                    continue;
+                }
+            }
+            statements.add(node);
+        }
+
+        if (!changed) {
+            return compound;
+        }
+        return statements.size() == 1 ? statements.get(0) : new CompoundNode(statements.toArray(Node[]::new));
+    }
+
+    @Nullable
+    private Node evaluateLoop(Node node, VariableSetNode initial, float value) throws MolangException {
+        if (!(node instanceof LoopNode loop)) {
+            return null;
+        }
+        VariableSetNode set = getAccumulator(loop);
+        if (set == null || !set.object().equals(initial.object()) || !set.name().equals(initial.name())) {
+            return null;
+        }
+        int iterations = getIterations(loop);
+        if (iterations < 0 || iterations > MAX_EVALUATED_ITERATIONS) {
+            return null;
+        }
+
+        for (int i = 0; i < iterations; i++) {
+            value = substitute(set.value(), set.object(), set.name(), value).evaluate(this.environment);
+        }
+        return new VariableSetNode(set.object(), set.name(), new ConstNode(value), false);
+    }
+
+    private Node unroll(LoopNode loop) throws MolangException {
+        int iterations = getIterations(loop);
+        if (iterations < 0 || loop.body().hasValue() || LoopNode.hasJump(loop.body())) {
+            return loop;
+        }
+
+        VariableSetNode set = this.fastMath ? getAccumulator(loop) : null;
+        if (set != null && set.value() instanceof BinaryOperationNode operation &&
+                (operation.operator() == BinaryOperation.ADD || operation.operator() == BinaryOperation.SUBTRACT) &&
+                operation.left() instanceof VariableGetNode get && get.object().equals(set.object()) && get.name().equals(set.name()) && operation.right() instanceof ConstNode step) {
+            return new VariableSetNode(set.object(), set.name(), new BinaryOperationNode(operation.operator(), get, new ConstNode(step.value() * iterations)), false);
+        }
+
+        int size = size(loop.body());
+        if (iterations <= FULL_UNROLL_ITERATIONS && size * iterations <= MAX_UNROLLED_SIZE) {
+            return repeat(loop.body(), iterations);
+        }
+        if (iterations > UNROLL_FACTOR && size * UNROLL_FACTOR <= MAX_UNROLLED_SIZE) {
+            Node unrolled = new LoopNode(new ConstNode(iterations / UNROLL_FACTOR), repeat(loop.body(), UNROLL_FACTOR));
+            int remainder = iterations % UNROLL_FACTOR;
+            return remainder == 0 ? unrolled : new CompoundNode(unrolled, repeat(loop.body(), remainder));
+        }
+        return loop;
+    }
+
+    // The body always runs at least once
+    private static int getIterations(LoopNode loop) {
+        return loop.iterations() instanceof ConstNode iterations ? Math.max(1, (int) iterations.value()) : -1;
+    }
+
+    // Finds a loop body that only sets a variable to a pure value of itself
+    @Nullable
+    private static VariableSetNode getAccumulator(LoopNode loop) throws MolangException {
+        Node body = loop.body();
+        if (body instanceof CompoundNode compound && compound.nodes().length == 1) {
+            body = compound.nodes()[0];
+        }
+        if (!(body instanceof VariableSetNode set) || set.returnValue() || !CommonSubexpressionEliminator.isPure(set.value())) {
+            return null;
+        }
+
+        boolean[] valid = {true};
+        visit(set.value(), node -> {
+            if (node instanceof VariableGetNode get && (!get.object().equals(set.object()) || !get.name().equals(set.name()))) {
+                valid[0] = false;
+            }
+        });
+        return valid[0] ? set : null;
+    }
+
+    private static Node substitute(Node node, String object, String name, float value) throws MolangException {
+        if (node instanceof VariableGetNode get && get.object().equals(object) && get.name().equals(name)) {
+            return new ConstNode(value);
+        }
+        return node.transformChildren(child -> substitute(child, object, name, value));
+    }
+
+    private static Node repeat(Node body, int count) {
+        Node[] statements = body instanceof CompoundNode compound ? compound.nodes() : new Node[]{body};
+        List<Node> nodes = new ArrayList<>(statements.length * count);
+        for (int i = 0; i < count; i++) {
+            Collections.addAll(nodes, statements);
+        }
+        return nodes.size() == 1 ? nodes.get(0) : new CompoundNode(nodes.toArray(Node[]::new));
+    }
+
+    private static int size(Node node) throws MolangException {
+        int[] size = {0};
+        visit(node, child -> size[0]++);
+        return size[0];
+    }
+
+    private static void visit(Node node, Consumer<Node> visitor) throws MolangException {
+        visitor.accept(node);
+        node.transformChildren(child -> {
+            visit(child, visitor);
+            return child;
+        });
+    }
+}
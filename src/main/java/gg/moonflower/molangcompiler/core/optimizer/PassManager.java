@@ -0,0 +1,185 @@
+package gg.moonflower.molangcompiler.core.optimizer;
+
+import gg.moonflower.molangcompiler.api.MolangCompiler;
+import gg.moonflower.molangcompiler.api.exception.MolangException;
+import gg.moonflower.molangcompiler.core.ast.Node;
+import gg.moonflower.molangcompiler.core.compiler.MolangBytecodeEnvironment;
+import gg.moonflower.molangcompiler.core.ir.*;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.List;
+
+/**
+ * <p>Runs the optimization passes of an {@link Level optimization level} in order.</p>
+ * <p>Passes over the node tree run first. At {@link Level#O2} the optimized tree is then lowered into an {@link IrFunction},
+ * which is transformed by the IR passes and written as bytecode. Trees that cannot be lowered are written directly instead.</p>
+ *
+ * @author Ocelot
+ */
+@ApiStatus.Internal
+public final class PassManager {
+
+    private final Level level;
+    private final List<TreePass> treePasses;
+    private final List<IrPass> irPasses;
+    private final boolean foldConstants;
+
+    public PassManager(Level level, List<TreePass> treePasses, List<IrPass> irPasses) {
+        this(level, treePasses, irPasses, true);
+    }
+
+    public PassManager(Level level, List<TreePass> treePasses, List<IrPass> irPasses, boolean foldConstants) {
+        this.level = level;
+        this.treePasses = treePasses;
+        this.irPasses = irPasses;
+        this.foldConstants = foldConstants;
+    }
+
+    /**
+     * Creates the passes for the level selected by the specified compiler flags.
+     *
+     * @param flags The compiler flags
+     * @return A new pass manager
+     */
+    public static PassManager create(int flags) {
+        boolean fastMath = (flags & MolangCompiler.FAST_MATH_FLAG) > 0;
+        TreePass fold = ConstantFolder::fold;
+        TreePass eliminate = (node, environment) -> DeadCodeEliminator.eliminate(node);
+        TreePass simplify = (node, environment) -> AlgebraicSimplifier.simplify(node, fastMath);
+        return switch (Level.of(flags)) {
+            case O0 -> new PassManager(Level.O0, List.of(), List.of());
+            case O1 -> new PassManager(Level.O1, List.of(fold, eliminate, simplify), List.of());
+            // Folding, evaluating loops, and combining constants compute in float, so with double precision only the generated code computes values
+            case O2 -> (flags & MolangCompiler.DOUBLE_PRECISION_FLAG) > 0 ? new PassManager(Level.O2, List.of(
+                    eliminate,
+                    (node, environment) -> LoopInvariantCodeMotion.hoist(node),
+                    (node, environment) -> CommonSubexpressionEliminator.eliminate(node)
+            ), irPasses(), false) : new PassManager(Level.O2, List.of(
+                    fold,
+                    (node, environment) -> LoopOptimizer.optimize(node, environment, fastMath),
+                    eliminate,
+                    simplify,
+                    // Temp variables are cheap locals in bytecode but map lookups when interpreting, so only compiled nodes store moved or repeated values in them
+                    (node, environment) -> LoopInvariantCodeMotion.hoist(node),
+                    (node, environment) -> CommonSubexpressionEliminator.eliminate(node)
+            ), irPasses());
+        };
+    }
+
+    private static List<IrPass> irPasses() {
+        return List.of(
+                new ValueNumbering(),
+                new SwitchFormation(),
+                new IntegerNarrowing(),
+                new DeadValueEliminator(),
+                new ControlFlowSimplifier()
+        );
+    }
+
+    /**
+     * Runs all tree passes.
+     *
+     * @param node        The node to optimize
+     * @param environment The environment to evaluate constants in
+     * @return The optimized node
+     * @throws MolangException If any pass fails
+     */
+    public Node optimize(Node node, MolangBytecodeEnvironment environment) throws MolangException {
+        for (TreePass pass : this.treePasses) {
+            node = pass.apply(node, environment);
+        }
+        return node;
+    }
+
+    /**
+     * Lowers the node and runs all IR passes.
+     *
+     * @param node        The node to lower
+     * @param environment The environment to evaluate constants in
+     * @return The optimized function or <code>null</code> if this level does not use the IR or the node cannot be lowered
+     */
+    @Nullable
+    public IrFunction lower(Node node, MolangBytecodeEnvironment environment) {
+        if (this.level != Level.O2) {
+            return null;
+        }
+
+        IrFunction function;
+        try {
+            function = IrBuilder.lower(node, environment, this.foldConstants);
+        } catch (MolangException e) {
+            return null;
+        }
+        for (IrPass pass : this.irPasses) {
+            pass.apply(function);
+        }
+        return function;
+    }
+
+    /**
+     * Writes the bytecode of an already optimized node.
+     *
+     * @param node        The node to write
+     * @param method      The method to write into
+     * @param environment The bytecode compilation environment
+     * @throws MolangException If the node could not be converted to bytecode
+     */
+    public void writeBytecode(Node node, MethodNode method, MolangBytecodeEnvironment environment) throws MolangException {
+        IrFunction function = this.lower(node, environment);
+        if (function != null) {
+            IrEmitter.emit(function, method, environment);
+        } else {
+            node.writeBytecode(method, environment, null, null);
+        }
+    }
+
+    public Level getLevel() {
+        return this.level;
+    }
+
+    /**
+     * How much time is spent on optimizing expressions.
+     */
+    public enum Level {
+        /**
+         * Code is generated directly from the parsed tree.
+         */
+        O0,
+        /**
+         * Constants are folded, unused code is removed, and algebra is simplified.
+         */
+        O1,
+        /**
+         * All tree passes run and code is generated from the optimized IR.
+         */
+        O2;
+
+        /**
+         * @param flags The compiler flags
+         * @return The level selected by the flags
+         */
+        public static Level of(int flags) {
+            if ((flags & MolangCompiler.OPTIMIZE_FLAG) == 0) {
+                return O0;
+            }
+            return (flags & MolangCompiler.BASIC_OPTIMIZE_FLAG) > 0 ? O1 : O2;
+        }
+    }
+
+    /**
+     * A transformation of a node tree that keeps the same result.
+     */
+    @FunctionalInterface
+    public interface TreePass {
+
+        /**
+         * @param node        The node to transform
+         * @param environment The environment to evaluate constants in
+         * @return The transformed node or the same node if nothing changed
+         * @throws MolangException If the tree cannot be transformed
+         */
+        Node apply(Node node, MolangBytecodeEnvironment environment) throws MolangException;
+    }
+}
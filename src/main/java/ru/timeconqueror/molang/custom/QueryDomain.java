@@ -4,6 +4,7 @@ import org.jetbrains.annotations.Nullable;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Properties;
 
 public class QueryDomain {
@@ -19,4 +20,15 @@ public class QueryDomain {
     public static String getDomain(String property) {
         return DOMAINS.get(Aliases.resolve(property));
     }
+
+    public static String resolveObject(String object, String property) {
+        object = Aliases.resolve(object);
+        if (Objects.equals(object, "query")) {
+            String domain = getDomain(property);
+            if (domain != null) {
+                return domain;
+            }
+        }
+        return object;
+    }
 }
@@ -0,0 +1,45 @@
+import gg.moonflower.molangcompiler.api.MolangCompiler;
+import gg.moonflower.molangcompiler.api.MolangEnvironment;
+import gg.moonflower.molangcompiler.api.MolangRuntime;
+import gg.moonflower.molangcompiler.api.exception.MolangException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+public class MolangBulkCompileTest {
+
+    @Test
+    void testCompileAll() throws MolangException {
+        MolangCompiler compiler = MolangCompiler.create();
+        MolangEnvironment environment = MolangRuntime.runtime().setQuery("anim_time", 2).create();
+
+        List<String> inputs = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            inputs.add(i % 50 == 0 ? "q.anim_time * (" + i : "v.a = q.anim_time * " + i + "; return v.a;");
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            List<MolangCompiler.CompileResult> results = compiler.compileAll(inputs, pool);
+            Assertions.assertEquals(inputs.size(), results.size());
+            for (int i = 0; i < results.size(); i++) {
+                MolangCompiler.CompileResult result = results.get(i);
+                Assertions.assertSame(inputs.get(i), result.input());
+                if (i % 50 == 0) {
+                    Assertions.assertFalse(result.isSuccess());
+                    Assertions.assertNotNull(result.error());
+                } else {
+                    Assertions.assertTrue(result.isSuccess());
+                    Assertions.assertEquals(2 * i, environment.resolve(result.expression()));
+                }
+            }
+            // Compiled on the specified pool
+            Assertions.assertTrue(pool.getPoolSize() > 0);
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
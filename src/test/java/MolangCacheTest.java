@@ -0,0 +1,91 @@
+import gg.moonflower.molangcompiler.api.MolangCompiler;
+import gg.moonflower.molangcompiler.api.MolangExpression;
+import gg.moonflower.molangcompiler.api.exception.MolangSyntaxException;
+import gg.moonflower.molangcompiler.core.MolangExpressionCache;
+import gg.moonflower.molangcompiler.core.compiler.MolangLexer;
+import gg.moonflower.molangcompiler.core.compiler.MolangParser;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class MolangCacheTest {
+
+    @Test
+    void testNormalizedHit() throws MolangSyntaxException {
+        MolangCompiler compiler = MolangCompiler.builder().cache(16).build();
+        MolangExpression expression = compiler.compile("math.sin(query.anim_time * 120) * 4.5");
+
+        Assertions.assertSame(expression, compiler.compile("math.sin(q.anim_time*120)*4.5"));
+        Assertions.assertSame(expression, compiler.compile("(math.sin(((q.anim_time) * 120)) * 4.5)"));
+        Assertions.assertNotSame(expression, compiler.compile("math.sin(q.anim_time * 120) * 4.4"));
+
+        MolangCompiler.CacheStats stats = compiler.getCacheStats();
+        Assertions.assertEquals(2, stats.hits());
+        Assertions.assertEquals(2, stats.misses());
+        Assertions.assertEquals(2, stats.size());
+    }
+
+    @Test
+    void testSourceHit() throws MolangSyntaxException {
+        MolangExpressionCache cache = MolangExpressionCache.bounded(16);
+        AtomicInteger parses = new AtomicInteger();
+        MolangExpressionCache.Parser parser = source -> {
+            parses.incrementAndGet();
+            return MolangParser.parseTokens(MolangLexer.createTokens(source));
+        };
+        MolangExpression expression = cache.get("q.a * 2", parser, node -> MolangExpression.of(2));
+
+        // Only sources that normalize differently are parsed again
+        Assertions.assertSame(expression, cache.get("  q.a  *  2 ", parser, node -> MolangExpression.of(3)));
+        Assertions.assertEquals(1, parses.get());
+        Assertions.assertSame(expression, cache.get("q.a*2", parser, node -> MolangExpression.of(3)));
+        Assertions.assertEquals(2, parses.get());
+        Assertions.assertEquals(new MolangCompiler.CacheStats(2, 1, 0, 1), cache.getStats());
+    }
+
+    @Test
+    void testEviction() throws MolangSyntaxException {
+        MolangCompiler compiler = MolangCompiler.builder().cache(2).build();
+        compiler.compile("q.a");
+        compiler.compile("q.b");
+        compiler.compile("q.a");
+        compiler.compile("q.c");
+
+        MolangCompiler.CacheStats stats = compiler.getCacheStats();
+        Assertions.assertEquals(1, stats.evictions());
+        Assertions.assertEquals(2, stats.size());
+
+        // q.b was the least recently used
+        compiler.compile("q.a");
+        compiler.compile("q.b");
+        Assertions.assertEquals(2, compiler.getCacheStats().hits());
+    }
+
+    @Test
+    void testConcurrentCompile() throws Exception {
+        MolangCompiler compiler = MolangCompiler.builder().weakCache().build();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<MolangExpression>> futures = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                futures.add(executor.submit(() -> compiler.compile("v.x = q.a * 2; return v.x + q.b;")));
+            }
+
+            MolangExpression expression = futures.get(0).get();
+            for (Future<MolangExpression> future : futures) {
+                Assertions.assertSame(expression, future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        Assertions.assertEquals(1, compiler.getCacheStats().misses());
+        Assertions.assertEquals(63, compiler.getCacheStats().hits());
+    }
+}
@@ -0,0 +1,151 @@
+import gg.moonflower.molangcompiler.api.MolangCompiler;
+import gg.moonflower.molangcompiler.api.MolangEnvironment;
+import gg.moonflower.molangcompiler.api.MolangExpression;
+import gg.moonflower.molangcompiler.api.MolangRuntime;
+import gg.moonflower.molangcompiler.api.exception.MolangException;
+import gg.moonflower.molangcompiler.api.exception.MolangRuntimeException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+public class MolangConditionTest {
+
+    private static final float[] VALUES = {-1.0F, 0.0F, -0.0F, 1.0F, Float.NaN};
+    private static final String[] OPERATORS = {"==", "!=", "<", "<=", ">", ">="};
+
+    @Test
+    public void testComparisons() throws MolangException {
+        MolangCompiler optimized = MolangCompiler.create(MolangCompiler.OPTIMIZE_FLAG);
+        List<Supplier<MolangEnvironment>> environments = new ArrayList<>();
+        for (float a : VALUES) {
+            for (float b : VALUES) {
+                environments.add(() -> MolangRuntime.runtime()
+                        .setQuery("a", a)
+                        .setQuery("b", b)
+                        .create());
+            }
+        }
+        for (String operator : OPERATORS) {
+            String[] inputs = {
+                    "q.a " + operator + " q.b",
+                    "q.a " + operator + " q.b ? 4 : 7",
+                    "!(q.a " + operator + " q.b)",
+                    "t.x = 2; q.a " + operator + " q.b ? {t.x = 3;}; return t.x;",
+                    "q.a " + operator + " q.b && q.b " + operator + " q.a",
+                    "q.a " + operator + " q.b || !(q.b " + operator + " 0) ? 4 : 7",
+                    "q.a " + operator + " 0 && (q.b || q.a) ? 4 : 7",
+            };
+            for (float a : VALUES) {
+                for (float b : VALUES) {
+                    MolangEnvironment environment = MolangRuntime.runtime()
+                            .setQuery("a", a)
+                            .setQuery("b", b)
+                            .create();
+                    Assertions.assertEquals(compare(operator, a, b) ? 1.0F : 0.0F, environment.resolve(optimized.compile(inputs[0])), a + inputs[0] + b);
+                }
+            }
+            MolangEquivalence.assertEquivalent(environments, inputs);
+        }
+    }
+
+    @Test
+    public void testSideEffects() throws MolangException {
+        String[] inputs = {
+                "v.x = 0; q.a > 0 && (v.x = 2) ? {v.y = 1;}; return v.x;",
+                "v.x = 0; q.a < 0 || (v.x = 2) ? {v.y = 1;}; return v.x;",
+                "v.x = 0; q.a > 0 && (v.x = 0) ? {v.y = 1;}; return v.x + v.y;",
+                "v.x = 0; loop(5, {v.x = v.x + 1; v.x > 2 && q.a > 0 ? break;}); return v.x;",
+                // Temps that are only assigned on some paths or in a scope
+                "q.a > 5 ? (t.a = 1) : 2; return t.a;",
+                "!q.a && (t.a = 3); return t.a;",
+                "t.c = 0; loop(q.a, {q.a ? continue; t.b = 1;}); return t.b;",
+                "q.a < 5 ? {t.b = 2;}; return t.b;",
+                "{t.b = 2;}; return t.b;",
+        };
+
+        MolangEquivalence.assertEquivalent(MolangConditionTest::createEnvironment, inputs);
+    }
+
+    @Test
+    public void testPartialTemps() throws MolangException {
+        // Temps only assigned on some paths are 0 on the others
+        String[] inputs = {
+                "q.a > 5 ? (t.a = 1) : 2; return t.a;",
+                "q.a < 5 ? (t.a = 1) : 2; return t.a;",
+                "q.a ? t.a = 1 : t.b = 2; return t.a + t.b;",
+                "!q.a && (t.a = 3); return t.a;",
+                "v.z ?? (t.a = 2); return t.a;",
+                "t.c = 0; loop(q.a, {q.a ? continue; t.b = 1;}); return t.b;",
+                "t.c = 0; loop(q.a, {q.a ? continue; t.b = v.y + 1;}); return v.x + t.b;",
+        };
+
+        float[] expected = {0.0F, 1.0F, 1.0F, 0.0F, 2.0F, 0.0F, 0.0F};
+        for (int flags : new int[]{0, MolangCompiler.OPTIMIZE_FLAG | MolangCompiler.BASIC_OPTIMIZE_FLAG, MolangCompiler.OPTIMIZE_FLAG}) {
+            MolangCompiler compiler = MolangCompiler.create(flags);
+            for (int i = 0; i < inputs.length; i++) {
+                Assertions.assertEquals(expected[i], createEnvironment().resolve(compiler.compile(inputs[i])), flags + ": " + inputs[i]);
+            }
+        }
+
+        // Interpreted the same as once compiled
+        MolangCompiler tiered = MolangCompiler.builder().tiered(2, Runnable::run).build();
+        for (int i = 0; i < inputs.length; i++) {
+            MolangExpression expression = tiered.compile(inputs[i]);
+            for (int j = 0; j < 3; j++) {
+                Assertions.assertEquals(expected[i], createEnvironment().resolve(expression), j + ": " + inputs[i]);
+            }
+        }
+    }
+
+    @Test
+    public void testScopedTemps() throws MolangException {
+        // Temps assigned in a scope don't exist after it
+        String[] scoped = {
+                "q.a < 5 ? {t.b = 2;}; return t.b;",
+                "{t.b = 2;}; return t.b;",
+        };
+        String input = "t.b = 1; q.a < 5 ? {t.b = 2;}; return t.b;";
+
+        MolangCompiler tiered = MolangCompiler.builder().tiered(2, Runnable::run).build();
+        for (int flags : new int[]{0, MolangCompiler.OPTIMIZE_FLAG | MolangCompiler.BASIC_OPTIMIZE_FLAG, MolangCompiler.OPTIMIZE_FLAG}) {
+            MolangCompiler compiler = MolangCompiler.create(flags);
+            for (String scope : scoped) {
+                Assertions.assertThrows(MolangRuntimeException.class, () -> createEnvironment().resolve(compiler.compile(scope)), flags + ": " + scope);
+            }
+            Assertions.assertEquals(2.0F, createEnvironment().resolve(compiler.compile(input)), flags + ": " + input);
+        }
+        for (String scope : scoped) {
+            MolangExpression expression = tiered.compile(scope);
+            for (int i = 0; i < 3; i++) {
+                Assertions.assertThrows(MolangRuntimeException.class, () -> createEnvironment().resolve(expression), i + ": " + scope);
+            }
+        }
+        MolangExpression expression = tiered.compile(input);
+        for (int i = 0; i < 3; i++) {
+            Assertions.assertEquals(2.0F, createEnvironment().resolve(expression), i + ": " + input);
+        }
+    }
+
+    private static boolean compare(String operator, float a, float b) {
+        return switch (operator) {
+            case "==" -> a == b;
+            case "!=" -> a != b;
+            case "<" -> a < b;
+            case "<=" -> a <= b;
+            case ">" -> a > b;
+            case ">=" -> a >= b;
+            default -> throw new IllegalArgumentException(operator);
+        };
+    }
+
+    private static MolangEnvironment createEnvironment() {
+        return MolangRuntime.runtime()
+                .setQuery("a", 1.5F)
+                .setVariable("x", 0)
+                .setVariable("y", 0)
+                .create();
+    }
+}
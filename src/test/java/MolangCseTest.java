@@ -0,0 +1,89 @@
+import gg.moonflower.molangcompiler.api.MolangCompiler;
+import gg.moonflower.molangcompiler.api.MolangEnvironment;
+import gg.moonflower.molangcompiler.api.MolangRuntime;
+import gg.moonflower.molangcompiler.api.exception.MolangException;
+import gg.moonflower.molangcompiler.core.ast.Node;
+import gg.moonflower.molangcompiler.core.compiler.MolangInterpreterContext;
+import gg.moonflower.molangcompiler.core.compiler.MolangLexer;
+import gg.moonflower.molangcompiler.core.compiler.MolangParser;
+import gg.moonflower.molangcompiler.core.optimizer.CommonSubexpressionEliminator;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class MolangCseTest {
+
+    @Test
+    public void testRepeated() throws MolangException {
+        String eliminated = eliminate("math.sin(q.anim_time * 90) * 3 + math.sin(q.anim_time * 90)");
+        Assertions.assertEquals(2, count(eliminated, "temp.$cse0"), eliminated);
+        Assertions.assertEquals(1, count(eliminated, "math.sin"), eliminated);
+    }
+
+    @Test
+    public void testNotMerged() throws MolangException {
+        // Random values must be generated every time
+        Assertions.assertFalse(eliminate("math.random(0, q.x) + math.random(0, q.x)").contains("$cse"));
+        Assertions.assertFalse(eliminate("math.die_roll(2, 1, q.x) * math.die_roll(2, 1, q.x)").contains("$cse"));
+
+        // The variable changed in between
+        Assertions.assertFalse(eliminate("t.a = v.x * 2; v.x = 4; return t.a + v.x * 2;").contains("$cse"));
+
+        // Values computed in a branch are not available after it
+        Assertions.assertFalse(eliminate("q.x > 1 ? q.y * 2 : 0; return q.y * 2;").contains("$cse"));
+        Assertions.assertFalse(eliminate("loop(3, {t.a = q.y * 2;}); return q.y * 2;").contains("$cse"));
+    }
+
+    @Test
+    public void testEquivalent() throws MolangException {
+        String[] inputs = {
+                "math.sin(q.x * 90) * 3 + math.sin(q.x * 90)",
+                "(q.x + q.y) * (q.x + q.y) - (q.x + q.y)",
+                "t.a = q.x * q.y; t.b = q.x * q.y + 1; return t.a + t.b;",
+                "v.a = q.x * 2; v.x = v.x + 1; return v.x * 2 + v.x * 2 + v.a;",
+                "q.x * 2 > 1 ? q.x * 2 + 1 : q.x * 2 - 1",
+                "t.i = 0; loop(4, {t.i = t.i + q.x * 2; t.s = t.i * t.i + t.i * t.i;}); return t.s + q.x * 2;",
+                "q.x * q.y > 2 && q.x > 1 || q.x * q.y < 0",
+                "{t.a = q.x * 3;}; return q.x * 3 + q.x * 3;",
+        };
+
+        MolangEquivalence.assertEquivalent(MolangCseTest::createEnvironment, inputs);
+        MolangCompiler unoptimized = MolangCompiler.create(0);
+        for (String input : inputs) {
+            Assertions.assertEquals(evaluate(unoptimized, input), interpret(eliminateNode(input)), input);
+        }
+    }
+
+    private static float evaluate(MolangCompiler compiler, String input) throws MolangException {
+        return createEnvironment().resolve(compiler.compile(input));
+    }
+
+    private static float interpret(Node node) throws MolangException {
+        MolangInterpreterContext context = new MolangInterpreterContext(createEnvironment());
+        float value = node.interpret(context);
+        return context.getSignal() == MolangInterpreterContext.Signal.RETURN ? context.getReturnValue() : value;
+    }
+
+    private static MolangEnvironment createEnvironment() {
+        return MolangRuntime.runtime()
+                .setQuery("x", 1.5F)
+                .setQuery("y", 3)
+                .setVariable("x", 2)
+                .create();
+    }
+
+    private static Node eliminateNode(String input) throws MolangException {
+        return CommonSubexpressionEliminator.eliminate(MolangParser.parseTokens(MolangLexer.createTokens(input)));
+    }
+
+    private static String eliminate(String input) throws MolangException {
+        return eliminateNode(input).toString();
+    }
+
+    private static int count(String value, String search) {
+        int count = 0;
+        for (int i = value.indexOf(search); i >= 0; i = value.indexOf(search, i + 1)) {
+            count++;
+        }
+        return count;
+    }
+}
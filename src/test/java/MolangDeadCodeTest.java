@@ -0,0 +1,64 @@
+import gg.moonflower.molangcompiler.api.MolangCompiler;
+import gg.moonflower.molangcompiler.api.MolangEnvironment;
+import gg.moonflower.molangcompiler.api.MolangRuntime;
+import gg.moonflower.molangcompiler.api.exception.MolangException;
+import gg.moonflower.molangcompiler.core.compiler.MolangBytecodeEnvironment;
+import gg.moonflower.molangcompiler.core.compiler.MolangLexer;
+import gg.moonflower.molangcompiler.core.compiler.MolangParser;
+import gg.moonflower.molangcompiler.core.optimizer.ConstantFolder;
+import gg.moonflower.molangcompiler.core.optimizer.DeadCodeEliminator;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class MolangDeadCodeTest {
+
+    @Test
+    public void testBranches() throws MolangException {
+        Assertions.assertEquals("return query.a", eliminate("1 ? q.a : q.b"));
+        Assertions.assertEquals("return query.b", eliminate("0 ? q.a : q.b"));
+        Assertions.assertEquals("return 0.0", eliminate("0 && q.a"));
+        Assertions.assertEquals("return 1.0", eliminate("1 || q.a"));
+        Assertions.assertEquals("variable.a = 1.0;\nreturn variable.a;\n", eliminate("if (1) v.a = 1; 0 ? v.b = 2; return v.a;"));
+    }
+
+    @Test
+    public void testUnreachable() throws MolangException {
+        Assertions.assertEquals("loop(3.0, {variable.a = 1.0;\nbreak;\n});\nreturn variable.a;\n", eliminate("loop(3, {v.a = 1; break; v.a = 2;}); return v.a;"));
+        Assertions.assertEquals("loop(3.0, {variable.a = 1.0;\ncontinue;\n});\nreturn variable.a;\n", eliminate("loop(3, {v.a = 1; continue; v.a = 2; v.b = 3;}); return v.a;"));
+    }
+
+    @Test
+    public void testDeadStores() throws MolangException {
+        Assertions.assertEquals("return query.a", eliminate("t.a = q.b * 2; t.b = t.a + 1; q.c; return q.a;"));
+        Assertions.assertEquals("temp.a = query.b;\nreturn temp.a;\n", eliminate("t.a = q.b; t.c = 4; return t.a;"));
+
+        // Variables outside of temp can be read after the expression
+        Assertions.assertEquals("variable.a = 1.0;\nreturn query.a;\n", eliminate("v.a = 1; return q.a;"));
+    }
+
+    @Test
+    public void testEquivalent() throws MolangException {
+        String[] inputs = {
+                "if (q.x > 1) t.a = 1; else t.a = 2; return t.a;",
+                "q.x < 1 ? 0 : q.y; return q.y;",
+                "q.x > 1 && q.y > 2; return q.y;",
+                "t.a = q.x; t.b = t.a * 2; loop(4, {t.c = t.b; t.b = t.b + 1; t.b > 6 ? break;}); return t.b;",
+                "v.a = 0; loop(3, {v.a = v.a + 1; continue; v.a = 10;}); return v.a;",
+                "1 ? q.x : q.y",
+        };
+
+        MolangEquivalence.assertEquivalent(MolangDeadCodeTest::createEnvironment, inputs);
+    }
+
+    private static MolangEnvironment createEnvironment() {
+        return MolangRuntime.runtime()
+                .setQuery("x", 1.5F)
+                .setQuery("y", 3)
+                .create();
+    }
+
+    private static String eliminate(String input) throws MolangException {
+        MolangBytecodeEnvironment environment = new MolangBytecodeEnvironment(MolangCompiler.OPTIMIZE_FLAG);
+        return DeadCodeEliminator.eliminate(ConstantFolder.fold(MolangParser.parseTokens(MolangLexer.createTokens(input)), environment)).toString();
+    }
+}
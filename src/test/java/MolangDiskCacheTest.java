@@ -0,0 +1,89 @@
+import gg.moonflower.molangcompiler.api.MolangCompiler;
+import gg.moonflower.molangcompiler.api.MolangEnvironment;
+import gg.moonflower.molangcompiler.api.MolangExpression;
+import gg.moonflower.molangcompiler.api.MolangRuntime;
+import gg.moonflower.molangcompiler.api.exception.MolangException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.timeconqueror.molang.custom.QueryDomain;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class MolangDiskCacheTest {
+
+    @Test
+    void testStoredAcrossCompilers(@TempDir Path directory) throws MolangException {
+        MolangEnvironment environment = MolangRuntime.runtime().setQuery("anim_time", 2).create();
+
+        MolangExpression first = MolangCompiler.builder().diskCache(directory).build().compile("v.a = q.anim_time * 3; return v.a + 1;");
+        MolangExpression second = MolangCompiler.builder().diskCache(directory).build().compile(" v.a = q.anim_time * 3;   return v.a + 1; ");
+
+        // The second compiler defines the stored class instead of generating a new one
+        Assertions.assertEquals(first.getClass().getName(), second.getClass().getName());
+        Assertions.assertNotSame(first.getClass(), second.getClass());
+        Assertions.assertEquals(7, environment.resolve(second));
+        Assertions.assertEquals(first, second);
+
+        MolangExpression constant = MolangCompiler.builder().diskCache(directory).build().compile("4 * 4 + 2");
+        Assertions.assertEquals(constant, MolangCompiler.builder().diskCache(directory).build().compile("4 * 4 + 2"));
+        Assertions.assertEquals(18, environment.resolve(constant));
+    }
+
+    @Test
+    void testFlagsAreSeparate(@TempDir Path directory) throws MolangException, IOException {
+        MolangCompiler.builder().diskCache(directory).build().compile("q.anim_time * 2");
+        MolangCompiler.builder().flags(0).diskCache(directory).build().compile("q.anim_time * 2");
+        Assertions.assertEquals(2, listEntries(directory).size());
+    }
+
+    @Test
+    void testCorruptedEntry(@TempDir Path directory) throws MolangException, IOException {
+        MolangEnvironment environment = MolangRuntime.runtime().setQuery("anim_time", 2).create();
+        MolangCompiler.builder().diskCache(directory).build().compile("q.anim_time * 5");
+
+        List<Path> entries = listEntries(directory);
+        Assertions.assertEquals(1, entries.size());
+        byte[] data = Files.readAllBytes(entries.get(0));
+        data[data.length / 2] ^= 0x5A;
+        Files.write(entries.get(0), data);
+
+        MolangExpression expression = MolangCompiler.builder().diskCache(directory).build().compile("q.anim_time * 5");
+        Assertions.assertEquals(10, environment.resolve(expression));
+
+        // The corrupted entry is replaced by the newly compiled class
+        Files.write(entries.get(0), new byte[3]);
+        Assertions.assertEquals(10, environment.resolve(MolangCompiler.builder().diskCache(directory).build().compile("q.anim_time * 5")));
+        Assertions.assertTrue(Files.size(entries.get(0)) > 3);
+    }
+
+    @Test
+    void testMemoryCacheFirst(@TempDir Path directory) throws MolangException {
+        MolangCompiler compiler = MolangCompiler.builder().cache(16).diskCache(directory).build();
+        MolangExpression first = compiler.compile("q.anim_time * 4");
+        Assertions.assertSame(first, compiler.compile("q.anim_time * 4"));
+        Assertions.assertEquals(new MolangCompiler.CacheStats(1, 1, 0, 1), compiler.getCacheStats());
+    }
+
+    @Test
+    void testDomainsAreSeparate(@TempDir Path directory) throws MolangException, IOException {
+        MolangCompiler.builder().diskCache(directory).build().compile("q.disk_cache_test * 2");
+        QueryDomain.register("disk_cache_test", "context");
+        try {
+            MolangCompiler.builder().diskCache(directory).build().compile("q.disk_cache_test * 2");
+        } finally {
+            QueryDomain.DOMAINS.remove("disk_cache_test");
+        }
+        Assertions.assertEquals(2, listEntries(directory).size());
+    }
+
+    private static List<Path> listEntries(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.toList();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+import gg.moonflower.molangcompiler.api.MolangCompiler;
+import gg.moonflower.molangcompiler.api.MolangEnvironment;
+import gg.moonflower.molangcompiler.api.MolangExpression;
+import gg.moonflower.molangcompiler.api.MolangRuntime;
+import gg.moonflower.molangcompiler.api.exception.MolangException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class MolangDoubleTest {
+
+    @Test
+    public void testPrecision() throws MolangException {
+        MolangExpression expression = MolangCompiler.create(MolangCompiler.OPTIMIZE_FLAG | MolangCompiler.DOUBLE_PRECISION_FLAG)
+                .compile("t.x = 0; loop(q.n, {t.x = t.x + 0.1;}); return t.x;");
+        Assertions.assertEquals(10000.0, expression.getDouble(createEnvironment()), 1.0E-6);
+        Assertions.assertEquals(10000.0F, createEnvironment().resolve(expression));
+
+        // Constants are not folded as floats first
+        MolangCompiler compiler = MolangCompiler.create(MolangCompiler.OPTIMIZE_FLAG | MolangCompiler.DOUBLE_PRECISION_FLAG);
+        Assertions.assertEquals(0.1 + 0.2, compiler.compile("return 0.1 + 0.2;").getDouble(createEnvironment()));
+        Assertions.assertEquals(100.0, compiler.compile("t.s = 0; loop(1000, {t.s = t.s + 0.1;}); return t.s;").getDouble(createEnvironment()), 1.0E-9);
+
+        float single = createEnvironment().resolve(MolangCompiler.create(MolangCompiler.OPTIMIZE_FLAG).compile("t.x = 0; loop(q.n, {t.x = t.x + 0.1;}); return t.x;"));
+        Assertions.assertNotEquals(10000.0F, single);
+    }
+
+    @Test
+    public void testEquivalent() throws MolangException {
+        String[] inputs = {
+                "return q.a * 0.1 + q.b;",
+                "return math.sin(q.a * 30) + math.cos(q.b) + math.pow(q.a, q.b) + math.exp(q.a) + math.ln(q.b) + math.sqrt(q.b);",
+                "return math.asin(0.2 * q.a) + math.acos(0.2 * q.a) + math.atan(q.a) + math.atan2(q.a, q.b);",
+                "return math.abs(-q.a) + math.ceil(q.a) + math.floor(q.a) + math.round(q.a) + math.trunc(-q.a) + math.mod(q.b, q.a) + math.pi * q.a;",
+                "return math.clamp(q.a, 0, 1) + math.lerp(q.a, q.b, 0.25) + math.lerprotate(q.a, 350, 0.5) + math.min_angle(q.a * 300) + math.hermite_blend(q.a / 2);",
+                "return math.sign(-q.a) + math.triangle_wave(q.a, 4) + math.min(q.a, q.b) + math.max(q.a, q.b);",
+                "return q.a > 1 && q.b < 2 || !q.a;",
+                "return q.b == 0 ? 10 : q.b == 1 ? 11 : q.b == 3 ? 12 : 13;",
+                "return q.a == 0 ? 10 : q.a == 1 ? 11 : q.a == 3 ? 12 : 13;",
+                "v.x = q.a * 3; return v.x + v.y;",
+                "return q.add(q.a, q.b) * 0.3;",
+                "t.x = 0; t.y = 0; loop(1000, {t.x = t.x + 2; t.x > 900 ? break; t.y = t.y + t.x * 3;}); return t.y;",
+                "t.x = 0; loop(q.b, {t.x = t.x + 1; t.x > 1 ? continue; t.x = t.x + q.a;}); return t.x;",
+                "return !(math.sqrt(-q.a) < 1) ? 1 : 2;",
+                "return 1 / ((q.a - 1.5) * -1);",
+                "return v.z ?? 7;",
+        };
+
+        MolangEquivalence.assertEquivalent(MolangDoubleTest::createEnvironment, inputs);
+
+        MolangCompiler single = MolangCompiler.create(MolangCompiler.OPTIMIZE_FLAG);
+        MolangCompiler precise = MolangCompiler.create(MolangCompiler.OPTIMIZE_FLAG | MolangCompiler.DOUBLE_PRECISION_FLAG);
+        MolangCompiler shared = MolangCompiler.create(MolangCompiler.OPTIMIZE_FLAG | MolangCompiler.DOUBLE_PRECISION_FLAG | MolangCompiler.SHARED_CONSTANTS_FLAG);
+        for (String input : inputs) {
+            float expected = createEnvironment().resolve(single.compile(input));
+            MolangExpression expression = precise.compile(input);
+            double value = expression.getDouble(createEnvironment());
+            Assertions.assertEquals(expected, value, 1.0E-4 * Math.max(1, Math.abs(expected)), input);
+            Assertions.assertEquals((float) value, createEnvironment().resolve(expression), input);
+            Assertions.assertEquals(value, shared.compile(input).getDouble(createEnvironment()), input);
+        }
+    }
+
+    @Test
+    public void testFloatExpressions() throws MolangException {
+        // Without code generated from the control flow graph the float value is returned
+        MolangExpression basic = MolangCompiler.create(MolangCompiler.OPTIMIZE_FLAG | MolangCompiler.BASIC_OPTIMIZE_FLAG | MolangCompiler.DOUBLE_PRECISION_FLAG).compile("q.a * 0.1");
+        Assertions.assertEquals(createEnvironment().resolve(basic), basic.getDouble(createEnvironment()));
+
+        MolangExpression single = MolangCompiler.create(MolangCompiler.OPTIMIZE_FLAG).compile("q.a * 0.1");
+        Assertions.assertEquals(createEnvironment().resolve(single), single.getDouble(createEnvironment()));
+        Assertions.assertEquals(2.5, MolangExpression.of(2.5F).getDouble(createEnvironment()));
+    }
+
+    private static MolangEnvironment createEnvironment() {
+        return MolangRuntime.runtime()
+                .setQuery("a", 1.5F)
+                .setQuery("b", 3)
+                .setQuery("n", 100000)
+                .setQuery("add", 2, context -> context.get(0) + context.get(1))
+                .setVariable("x", 0)
+                .setVariable("y", 2)
+                .create();
+    }
+}
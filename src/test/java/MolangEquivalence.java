@@ -0,0 +1,78 @@
+import gg.moonflower.molangcompiler.api.MolangCompiler;
+import gg.moonflower.molangcompiler.api.MolangEnvironment;
+import gg.moonflower.molangcompiler.api.MolangExpression;
+import gg.moonflower.molangcompiler.api.MolangValidator;
+import gg.moonflower.molangcompiler.api.exception.MolangException;
+import gg.moonflower.molangcompiler.api.exception.MolangRuntimeException;
+import gg.moonflower.molangcompiler.api.object.MolangObject;
+import org.junit.jupiter.api.Assertions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Compiles expressions at every optimization level and checks that they return the same values and leave the same variables behind.
+ */
+public final class MolangEquivalence {
+
+    private static final String[] LEVELS = {"O0", "O1", "O2", "O2 with shared constants", "interpreted"};
+    private static final String VARIABLE = "variable.";
+
+    private MolangEquivalence() {
+    }
+
+    public static void assertEquivalent(Supplier<MolangEnvironment> environment, String... inputs) throws MolangException {
+        assertEquivalent(List.of(environment), inputs);
+    }
+
+    /**
+     * @param environments Creates every environment to evaluate in. Each level gets a new environment
+     * @param inputs       The expressions to compare
+     */
+    public static void assertEquivalent(List<Supplier<MolangEnvironment>> environments, String... inputs) throws MolangException {
+        MolangCompiler[] compilers = {
+                MolangCompiler.create(0),
+                MolangCompiler.create(MolangCompiler.OPTIMIZE_FLAG | MolangCompiler.BASIC_OPTIMIZE_FLAG),
+                MolangCompiler.create(MolangCompiler.OPTIMIZE_FLAG),
+                MolangCompiler.create(MolangCompiler.OPTIMIZE_FLAG | MolangCompiler.SHARED_CONSTANTS_FLAG),
+                MolangCompiler.builder().tiered(Integer.MAX_VALUE).build(),
+        };
+        for (String input : inputs) {
+            List<String> variables = new ArrayList<>();
+            for (String variable : MolangValidator.analyze(input).variables()) {
+                if (variable.startsWith(VARIABLE)) {
+                    variables.add(variable.substring(VARIABLE.length()));
+                }
+            }
+
+            MolangExpression[] expressions = new MolangExpression[compilers.length];
+            for (int i = 0; i < compilers.length; i++) {
+                expressions[i] = compilers[i].compile(input);
+            }
+            for (int i = 0; i < environments.size(); i++) {
+                String expected = evaluate(expressions[0], environments.get(i).get(), variables);
+                for (int j = 1; j < expressions.length; j++) {
+                    Assertions.assertEquals(expected, evaluate(expressions[j], environments.get(i).get(), variables), LEVELS[j] + " in environment " + i + ": " + input);
+                }
+            }
+        }
+    }
+
+    // Describes the result and the value of every variable afterward
+    private static String evaluate(MolangExpression expression, MolangEnvironment environment, List<String> variables) throws MolangRuntimeException {
+        StringBuilder builder = new StringBuilder();
+        try {
+            builder.append(environment.resolve(expression));
+        } catch (MolangRuntimeException e) {
+            return "failed";
+        }
+
+        MolangObject object = environment.get("variable");
+        for (String variable : variables) {
+            builder.append(", v.").append(variable).append('=');
+            builder.append(object.has(variable) ? Float.toString(environment.resolve(object.get(variable))) : "missing");
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,43 @@
+import gg.moonflower.molangcompiler.api.MolangCompiler;
+import gg.moonflower.molangcompiler.api.MolangEnvironment;
+import gg.moonflower.molangcompiler.api.MolangExpression;
+import gg.moonflower.molangcompiler.api.MolangRuntime;
+import gg.moonflower.molangcompiler.api.exception.MolangException;
+import gg.moonflower.molangcompiler.api.exception.MolangSyntaxException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.ref.WeakReference;
+
+public class MolangHiddenClassTest {
+
+    @Test
+    void testHiddenClass() throws MolangException {
+        MolangCompiler compiler = MolangCompiler.create(MolangCompiler.DEFAULT_FLAGS | MolangCompiler.HIDDEN_CLASSES_FLAG);
+        MolangEnvironment environment = MolangRuntime.runtime().setQuery("anim_time", 2).create();
+
+        MolangExpression expression = compiler.compile("v.a = q.anim_time * 3; return v.a + 1;");
+        Assertions.assertTrue(expression.getClass().isHidden());
+        Assertions.assertEquals(7, environment.resolve(expression));
+        Assertions.assertEquals(expression, compiler.compile("v.a = q.anim_time * 3; return v.a + 1;"));
+    }
+
+    @Test
+    void testUnload() throws Exception {
+        MolangCompiler compiler = MolangCompiler.create(MolangCompiler.DEFAULT_FLAGS | MolangCompiler.HIDDEN_CLASSES_FLAG | MolangCompiler.SHARED_CONSTANTS_FLAG);
+        WeakReference<Class<?>> expressionClass = compileClass(compiler);
+
+        for (int i = 0; i < 20 && expressionClass.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        Assertions.assertNull(expressionClass.get(), "Expression class was not unloaded");
+
+        // The compiler is still usable after the shared class was collected
+        Assertions.assertEquals(8, MolangRuntime.runtime().setQuery("anim_time", 2).create().resolve(compiler.compile("q.anim_time * 4")));
+    }
+
+    private static WeakReference<Class<?>> compileClass(MolangCompiler compiler) throws MolangSyntaxException {
+        return new WeakReference<>(compiler.compile("q.anim_time * 2").getClass());
+    }
+}
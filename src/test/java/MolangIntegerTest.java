@@ -0,0 +1,92 @@
+import gg.moonflower.molangcompiler.api.MolangCompiler;
+import gg.moonflower.molangcompiler.api.MolangEnvironment;
+import gg.moonflower.molangcompiler.api.MolangRuntime;
+import gg.moonflower.molangcompiler.api.exception.MolangException;
+import gg.moonflower.molangcompiler.core.compiler.MolangBytecodeEnvironment;
+import gg.moonflower.molangcompiler.core.compiler.MolangLexer;
+import gg.moonflower.molangcompiler.core.compiler.MolangParser;
+import gg.moonflower.molangcompiler.core.optimizer.PassManager;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class MolangIntegerTest {
+
+    @Test
+    public void testNarrowed() throws MolangException {
+        // Only converted when returning
+        assertConversions(1, "t.x = 0; t.y = 0; loop(1000, {t.x = t.x + 2; t.x > 900 ? break; t.y = t.y + t.x * 3;}); return t.y;");
+        assertConversions(1, "t.s = 0; loop(20, {t.i = 0; loop(31, {t.i = t.i + 1; t.s = t.s + t.i;});}); return t.s;");
+        assertConversions(1, "t.s = 0; loop(50, {t.s = t.s + math.random_integer(1, 6);}); return t.s;");
+
+        // Conversions of integers do nothing
+        assertConversions(1, "t.x = 0; t.y = 0; loop(100, {t.x = t.x + 1; t.y = t.y + math.floor(t.x) + math.round(t.x);}); return t.y;");
+    }
+
+    @Test
+    public void testNotNarrowed() throws MolangException {
+        // The number of iterations is unknown
+        assertConversions(0, "t.x = 0; loop(q.b, {t.x = t.x + 1;}); return t.x;");
+        // Floats can no longer represent every integer
+        assertConversions(0, "t.x = 16776000; loop(1217, {t.x = t.x + 1;}); return t.x;");
+        // Not an integer
+        assertConversions(0, "t.x = 0; loop(100, {t.x = t.x + 0.5;}); return t.x;");
+        assertConversions(0, "t.x = 0; loop(100, {t.x = t.x + q.b;}); return t.x;");
+    }
+
+    @Test
+    public void testEquivalent() throws MolangException {
+        String[] inputs = {
+                "t.x = 0; loop(100000, {t.x = t.x + 999;}); return t.x;",
+                "t.x = 16776000; loop(1217, {t.x = t.x + 1;}); return t.x;",
+                "t.x = 0; t.y = 0; loop(1000, {t.x = t.x + 2; t.x > q.a * 100 ? break; t.y = t.y + t.x * 3;}); return t.y;",
+                "t.s = 0; loop(20, {loop(30, {t.s = t.s + 3;}); t.s = t.s - 1;}); return t.s;",
+                "t.s = 0; loop(200, {t.i = 0; loop(300, {t.i = t.i + 1; t.s = t.s + t.i * t.i;});}); return t.s;",
+                "t.s = 0; loop(20, {t.i = 0; loop(300, {t.i = t.i + 1; t.s = t.s + t.i * t.i;});}); return t.s;",
+                "t.x = 0; loop(100, {t.x = t.x + 1; math.mod(t.x, 3) == 0 ? continue; t.x = t.x + 1;}); return t.x;",
+                "t.x = 0; loop(100, {t.x = t.x + 1; t.x > 50 ? (t.x = t.x - 100);}); return t.x;",
+                "t.x = 0; loop(100, {t.x = t.x + 1;}); return math.floor(t.x) + math.round(t.x) + math.ceil(t.x);",
+                "t.x = 0; loop(100, {t.x = t.x + 1;}); return t.x / 3;",
+                "t.x = 0; loop(100, {t.x = t.x + 1;}); return t.x < 100.5;",
+                "t.x = 0; loop(100, {t.x = t.x + 1;}); return q.b == 0 ? t.x : q.b == 1 ? 2 : q.b == 3 ? t.x * 2 : 4;",
+                "t.x = 0; loop(100, {t.x = t.x + math.trunc(q.a * 1000);}); return t.x;",
+                "t.x = 0; loop(100, {t.x = t.x + math.round(q.a);}); return t.x;",
+                "t.x = 0; loop(1000, {t.x = t.x * 2 + 1;}); return t.x;",
+                "t.x = 0; t.y = 0; loop(100, {t.x = t.x + 1; t.y = t.y + math.floor(t.x) + math.round(t.x);}); return t.y;",
+                // Floats can be -0
+                "t.x = 0; loop(100, {t.x = t.x - 1;}); return t.x * 0;",
+                "t.x = 0; loop(100, {t.x = t.x + 1;}); return 1 / ((t.x - 100) * -1);",
+                "return 1 / math.trunc(-0.5);",
+                // Integer functions compared with floats
+                "return math.round(q.a) == q.b;",
+                "return math.floor(q.a) < q.a;",
+                "t.c = 5; (math.round(q.a) < q.b) ? t.c = q.a; return t.c;",
+        };
+
+        MolangEquivalence.assertEquivalent(MolangIntegerTest::createEnvironment, inputs);
+    }
+
+    @Test
+    public void testRandom() throws MolangException {
+        MolangCompiler compiler = MolangCompiler.create(MolangCompiler.OPTIMIZE_FLAG);
+        for (int i = 0; i < 20; i++) {
+            float random = createEnvironment().resolve(compiler.compile("t.s = 0; loop(50, {t.s = t.s + math.random_integer(-3, 6);}); return t.s;"));
+            Assertions.assertTrue(random >= -150 && random <= 300 && random == (int) random, Float.toString(random));
+            float roll = createEnvironment().resolve(compiler.compile("t.s = 0; loop(20, {t.s = t.s + math.die_roll_integer(2, 1, 6);}); return t.s;"));
+            Assertions.assertTrue(roll >= 40 && roll <= 240 && roll == (int) roll, Float.toString(roll));
+        }
+    }
+
+    private static MolangEnvironment createEnvironment() {
+        return MolangRuntime.runtime()
+                .setQuery("a", 1.5F)
+                .setQuery("b", 3)
+                .create();
+    }
+
+    private static void assertConversions(int expected, String input) throws MolangException {
+        MolangBytecodeEnvironment environment = new MolangBytecodeEnvironment(MolangCompiler.OPTIMIZE_FLAG);
+        PassManager passes = PassManager.create(MolangCompiler.OPTIMIZE_FLAG);
+        String function = passes.lower(passes.optimize(MolangParser.parseTokens(MolangLexer.createTokens(input)), environment), environment).toString();
+        Assertions.assertEquals(expected, function.split("i2f", -1).length - 1, function);
+    }
+}
@@ -0,0 +1,116 @@
+import gg.moonflower.molangcompiler.api.MolangCompiler;
+import gg.moonflower.molangcompiler.api.MolangEnvironment;
+import gg.moonflower.molangcompiler.api.MolangRuntime;
+import gg.moonflower.molangcompiler.api.exception.MolangException;
+import gg.moonflower.molangcompiler.core.compiler.MolangBytecodeEnvironment;
+import gg.moonflower.molangcompiler.core.compiler.MolangLexer;
+import gg.moonflower.molangcompiler.core.compiler.MolangParser;
+import gg.moonflower.molangcompiler.core.ir.IrBuilder;
+import gg.moonflower.molangcompiler.core.optimizer.PassManager;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class MolangIrTest {
+
+    @Test
+    public void testLower() throws MolangException {
+        Assertions.assertEquals("""
+                        b0:
+                          %0 = object variable
+                          %1 = object query
+                          %2 = get a %1
+                          %3 = const 2.0
+                          %4 = binary * %2, %3
+                          set x %0, %2
+                          return %4
+                        """,
+                lower("v.x = q.a; return v.x * 2;"));
+
+        // Values read inside a loop are read again in every iteration
+        String loop = lower("loop(q.b, {v.x = v.x + 1;}); return v.x;");
+        Assertions.assertTrue(loop.indexOf("set x %5, %8") < loop.indexOf("branch"), loop);
+    }
+
+    @Test
+    public void testPasses() throws MolangException {
+        // Repeated values are computed once
+        String numbered = optimize("return q.a * q.b + q.b * q.a;");
+        Assertions.assertEquals(1, numbered.split("binary \\*", -1).length - 1, numbered);
+
+        // Chains comparing one value become a switch
+        String chain = optimize("return q.v == 0 ? 10 : q.v == 1 ? 11 : q.v == 2 ? 12 : 13;");
+        Assertions.assertTrue(chain.contains("switch [0, 1, 2]"), chain);
+
+        // Empty blocks are removed
+        Assertions.assertTrue(lower("return q.a > 1 && q.b > 1;").contains("b6:"));
+        Assertions.assertFalse(optimize("return q.a > 1 && q.b > 1;").contains("b5:"));
+    }
+
+    @Test
+    public void testEquivalent() throws MolangException {
+        String[] inputs = {
+                "v.x = 1; loop(q.b, {v.x = v.x * 2;}); return v.x;",
+                "t.a = 0; loop(10, {t.a = t.a + 1; t.a > 4 ? break;}); return t.a;",
+                "t.a = 0; t.b = 0; loop(10, {t.a = t.a + 1; math.mod(t.a, 2) == 0 ? continue; t.b = t.b + t.a;}); return t.b;",
+                "t.s = 0; loop(q.b, {loop(q.b, {t.s = t.s + 1;});}); return t.s;",
+                "t.i = 0; loop(100, {t.i = t.i + 1; t.i >= q.b ? break;}); return t.i;",
+                "loop(-1, {v.x = v.x + q.b;}); return v.x;",
+                "v.x = q.a > 1 ? 5 : 6; return v.x + v.y;",
+                "q.a > 1 ? (v.x = 5); return v.x;",
+                "q.a > 2 ? (v.x = 5); return v.x;",
+                "v.x = 3; {v.x = v.x + 1; v.y = v.x;}; return v.x * v.y;",
+                "if (q.a > 1) {return 4;} return 1;",
+                "if (q.a > 2) {return 4;} return 1;",
+                "return v.z ?? 7;",
+                "return t.z ?? 7;",
+                "t.z = 3; return t.z ?? 7;",
+                "return q.a > 1 && q.b < 2 || !q.a;",
+                "return math.sqrt(-1) == math.sqrt(-1);",
+                "return !(math.sqrt(-1) < 1) ? 1 : 2;",
+                "return q.b == 0 ? 10 : q.b == 1 ? 11 : q.b == 3 ? 12 : 13;",
+                "return q.a == 0 ? 10 : q.a == 1 ? 11 : q.a == 3 ? 12 : 13;",
+                "t.a = q.a * q.b; t.b = q.a * q.b; return t.a + t.b;",
+                "return q.add(q.a, q.b) + math.clamp(q.a, 0, 1);",
+                "return (q.a > 1) ? (q.b > 2 ? 1 : 2) : 3;",
+        };
+
+        MolangEquivalence.assertEquivalent(MolangIrTest::createEnvironment, inputs);
+    }
+
+    @Test
+    public void testLoopVariables() throws MolangException {
+        String[] inputs = {
+                "loop(q.b, {v.x = v.x + 1;}); return v.x;",
+                "loop(5, {v.x = v.x + 1; v.x > 2 ? return v.x;}); return -1;",
+                "v.x = 1; loop(3, {v.y = v.y + v.x; v.x = v.x + 1;}); return v.y;",
+        };
+
+        // Variables changed in a loop are seen by the next iteration, the same as when interpreting
+        MolangCompiler interpreted = MolangCompiler.builder().tiered(Integer.MAX_VALUE).build();
+        MolangCompiler optimized = MolangCompiler.create(MolangCompiler.OPTIMIZE_FLAG);
+        for (String input : inputs) {
+            Assertions.assertEquals(createEnvironment().resolve(interpreted.compile(input)), createEnvironment().resolve(optimized.compile(input)), input);
+        }
+    }
+
+    private static MolangEnvironment createEnvironment() {
+        return MolangRuntime.runtime()
+                .setQuery("a", 1.5F)
+                .setQuery("b", 3)
+                .setQuery("add", 2, context -> context.get(0) + context.get(1))
+                .setVariable("x", 0)
+                .setVariable("y", 2)
+                .create();
+    }
+
+    private static String lower(String input) throws MolangException {
+        MolangBytecodeEnvironment environment = new MolangBytecodeEnvironment(MolangCompiler.OPTIMIZE_FLAG);
+        return IrBuilder.lower(MolangParser.parseTokens(MolangLexer.createTokens(input)), environment).toString();
+    }
+
+    private static String optimize(String input) throws MolangException {
+        MolangBytecodeEnvironment environment = new MolangBytecodeEnvironment(MolangCompiler.OPTIMIZE_FLAG);
+        PassManager passes = PassManager.create(MolangCompiler.OPTIMIZE_FLAG);
+        return passes.lower(passes.optimize(MolangParser.parseTokens(MolangLexer.createTokens(input)), environment), environment).toString();
+    }
+}
@@ -3,6 +3,7 @@ import gg.moonflower.molangcompiler.core.compiler.MolangLexer;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.nio.CharBuffer;
 import java.util.Arrays;
 
 public class MolangLexerTest {
@@ -38,4 +39,31 @@ public class MolangLexerTest {
         System.out.println(Arrays.toString(tokens));
         Assertions.assertEquals(10, tokens.length);
     }
+
+    @Test
+    public void testKeywordPrefix() throws MolangSyntaxException {
+        MolangLexer.Token[] tokens = MolangLexer.createTokens("v.breakfast + v.this_frame + return");
+        Assertions.assertEquals(MolangLexer.TokenType.ALPHANUMERIC, tokens[2].type());
+        Assertions.assertEquals("breakfast", tokens[2].value());
+        Assertions.assertEquals(MolangLexer.TokenType.ALPHANUMERIC, tokens[6].type());
+        Assertions.assertEquals(MolangLexer.TokenType.RETURN, tokens[8].type());
+    }
+
+    @Test
+    public void testIgnoredWhitespace() throws MolangSyntaxException {
+        MolangLexer.Token[] tokens = MolangLexer.createTokens(" q.anim\n_time\t?\n? 2 ");
+        System.out.println(Arrays.toString(tokens));
+        Assertions.assertEquals(5, tokens.length);
+        Assertions.assertEquals("anim_time", tokens[2].value());
+        Assertions.assertEquals(MolangLexer.TokenType.NULL_COALESCING, tokens[3].type());
+    }
+
+    @Test
+    public void testCharSequence() throws MolangSyntaxException {
+        StringBuilder input = new StringBuilder("{\"loop\": \"math.sin(q.anim_time)\"}");
+        MolangLexer.Token[] tokens = MolangLexer.createTokens(CharBuffer.wrap(input, 10, input.length() - 2));
+        Assertions.assertEquals(8, tokens.length);
+        Assertions.assertEquals("anim_time", tokens[6].value());
+        Assertions.assertThrows(MolangSyntaxException.class, () -> MolangLexer.createTokens(input));
+    }
 }
@@ -0,0 +1,72 @@
+import gg.moonflower.molangcompiler.api.MolangCompiler;
+import gg.moonflower.molangcompiler.api.MolangEnvironment;
+import gg.moonflower.molangcompiler.api.MolangRuntime;
+import gg.moonflower.molangcompiler.api.exception.MolangException;
+import gg.moonflower.molangcompiler.core.compiler.MolangBytecodeEnvironment;
+import gg.moonflower.molangcompiler.core.compiler.MolangLexer;
+import gg.moonflower.molangcompiler.core.compiler.MolangParser;
+import gg.moonflower.molangcompiler.core.optimizer.ConstantFolder;
+import gg.moonflower.molangcompiler.core.optimizer.LoopInvariantCodeMotion;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class MolangLicmTest {
+
+    @Test
+    public void testHoist() throws MolangException {
+        Assertions.assertEquals("temp.$licm0 = math.cos(query.a);\nloop(query.b, {variable.x = (variable.x + temp.$licm0)});\nreturn variable.x;\n",
+                hoist("loop(q.b, {v.x = v.x + math.cos(q.a);}); return v.x;"));
+
+        // Repeated values share one variable
+        Assertions.assertEquals("temp.$licm0 = (query.a * 2.0);\nloop(query.b, {variable.x = (variable.x + temp.$licm0);\nvariable.y = (variable.y * temp.$licm0);\n});\nreturn variable.x;\n",
+                hoist("loop(q.b, {v.x = v.x + q.a * 2; v.y = v.y * (q.a * 2);}); return v.x;"));
+
+        // Values of an inner loop are moved out of both loops
+        Assertions.assertTrue(hoist("loop(q.b, {loop(q.b, {v.x = v.x + math.sin(q.a);});}); return v.x;").startsWith("temp.$licm0 = math.sin(query.a);\nloop(query.b"));
+    }
+
+    @Test
+    public void testVariant() throws MolangException {
+        // Written in the loop
+        assertUnchanged("loop(q.b, {v.x = v.x + math.cos(v.y); v.y = v.y + 1;}); return v.x;");
+        assertUnchanged("loop(q.b, {t.y = t.y * 2; v.x = v.x + t.y * 3;}); return v.x;");
+
+        // Functions may change variables
+        assertUnchanged("loop(q.b, {v.x = v.x + math.cos(v.y) + q.f(1);}); return v.x;");
+
+        // Not evaluated in every iteration
+        assertUnchanged("loop(q.b, {v.x = v.x > 2 ? v.x + math.cos(q.a) : 1;}); return v.x;");
+        assertUnchanged("loop(q.b, {v.x > 2 ? break; v.x = v.x + math.cos(q.a);}); return v.x;");
+        assertUnchanged("loop(q.b, {v.x = v.x > 2 && math.cos(q.a) > 0;}); return v.x;");
+    }
+
+    @Test
+    public void testEquivalent() throws MolangException {
+        String[] inputs = {
+                "t.x = 0; loop(q.b, {t.x = t.x + math.cos(q.a * 30);}); return t.x;",
+                "t.x = 0; t.y = 2; loop(q.b, {t.x = t.x + t.y * q.a; t.y = t.y + 1;}); return t.x;",
+                "t.x = 0; loop(q.b, {t.i = q.a * 2; loop(q.b, {t.x = t.x + t.i * math.sqrt(q.a);});}); return t.x;",
+                "t.x = 0; loop(q.b, {t.x > 5 ? break; t.x = t.x + q.a * 3;}); return t.x;",
+                "t.x = 0; loop(q.b, {t.x = t.x + (q.a > 1 ? q.a * 2 : 0);}); return t.x;",
+                "t.y = q.a * 2; t.x = 0; loop(q.b, {t.x = t.x + t.y * t.y;}); return t.x;",
+        };
+
+        MolangEquivalence.assertEquivalent(MolangLicmTest::createEnvironment, inputs);
+    }
+
+    private static MolangEnvironment createEnvironment() {
+        return MolangRuntime.runtime()
+                .setQuery("a", 1.5F)
+                .setQuery("b", 12)
+                .create();
+    }
+
+    private static void assertUnchanged(String input) throws MolangException {
+        Assertions.assertFalse(hoist(input).contains(LoopInvariantCodeMotion.PREFIX), input);
+    }
+
+    private static String hoist(String input) throws MolangException {
+        MolangBytecodeEnvironment environment = new MolangBytecodeEnvironment(MolangCompiler.OPTIMIZE_FLAG);
+        return LoopInvariantCodeMotion.hoist(ConstantFolder.fold(MolangParser.parseTokens(MolangLexer.createTokens(input)), environment)).toString();
+    }
+}
@@ -0,0 +1,102 @@
+import gg.moonflower.molangcompiler.api.MolangCompiler;
+import gg.moonflower.molangcompiler.api.MolangEnvironment;
+import gg.moonflower.molangcompiler.api.MolangRuntime;
+import gg.moonflower.molangcompiler.api.exception.MolangException;
+import gg.moonflower.molangcompiler.core.compiler.MolangBytecodeEnvironment;
+import gg.moonflower.molangcompiler.core.compiler.MolangLexer;
+import gg.moonflower.molangcompiler.core.compiler.MolangParser;
+import gg.moonflower.molangcompiler.core.optimizer.ConstantFolder;
+import gg.moonflower.molangcompiler.core.optimizer.LoopOptimizer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class MolangLoopTest {
+
+    @Test
+    public void testEvaluate() throws MolangException {
+        Assertions.assertEquals("variable.x = 50.0;\nreturn variable.x;\n", optimize("v.x = 20; loop(30, {v.x = v.x + 1;}); return v.x;", false));
+        Assertions.assertEquals("temp.x = 1024.0;\nreturn temp.x;\n", optimize("t.x = 1; loop(10, {t.x = t.x * 2;}); return t.x;", false));
+
+        // The starting value is not known
+        Assertions.assertFalse(optimize("loop(30, {v.x = v.x + 1;}); return v.x;", false).contains("50.0"));
+        Assertions.assertEquals("variable.x = (variable.x + 30.0);\nreturn variable.x;\n", optimize("loop(30, {v.x = v.x + 1;}); return v.x;", true));
+    }
+
+    @Test
+    public void testUnroll() throws MolangException {
+        Assertions.assertEquals("variable.x = (variable.x * query.a);\nvariable.x = (variable.x * query.a);\nvariable.x = (variable.x * query.a);\nreturn variable.x;\n", optimize("loop(3, {v.x = v.x * q.a;}); return v.x;", false));
+        Assertions.assertEquals("loop(2.0, {variable.x = (variable.x * query.a);\nvariable.x = (variable.x * query.a);\nvariable.x = (variable.x * query.a);\nvariable.x = (variable.x * query.a);\n});\nvariable.x = (variable.x * query.a);\nreturn variable.x;\n", optimize("loop(9, {v.x = v.x * q.a;}); return v.x;", false));
+
+        // The body always runs once
+        Assertions.assertEquals("variable.x = (variable.x * query.a);\nreturn variable.x;\n", optimize("loop(0, {v.x = v.x * q.a;}); return v.x;", false));
+
+        // Breaking out of the loop needs the loop
+        Assertions.assertTrue(optimize("loop(3, {v.x = v.x * q.a; v.x > 4 ? break;}); return v.x;", false).startsWith("loop"));
+        Assertions.assertTrue(optimize("loop(q.a, {v.x = v.x * q.a;}); return v.x;", false).startsWith("loop"));
+    }
+
+    @Test
+    public void testEquivalent() throws MolangException {
+        String[] inputs = {
+                "v.x = 20; loop(30, {v.x = v.x + 1;}); return v.x;",
+                "v.x = 0.1; loop(30, {v.x = v.x + 0.7;}); return v.x;",
+                "t.x = 1; loop(5, {t.x = math.sin(t.x * 90) + t.x;}); return t.x;",
+                "t.x = 1; t.y = 0; loop(3, {t.y = t.y + t.x; t.x = t.x * q.a;}); return t.x + t.y;",
+                "t.x = 1; loop(11, {t.x = t.x * q.a + 1;}); return t.x;",
+                "t.x = 0; t.i = 0; loop(6, {t.i = t.i + 1; loop(t.i, {t.x = t.x + t.i;});}); return t.x;",
+                "t.x = 1; loop(7, {t.x = t.x + 1; t.x > 4 ? break;}); return t.x;",
+                "t.x = 1; loop(0, {t.x = t.x + 1;}); return t.x;",
+                // The iterations load objects the body doesn't use
+                "loop(q.n, {v.y = 1;}); t.c = 10; return q.b;",
+                "loop(q.n, {v.x ? continue;}); return q.n;",
+                "t.a = q.a; loop(q.n, {(t.a - v.x) ? continue;}); t.c = t.a; return (q.n < q.n) ? (4 == t.a) : 7;",
+                "loop(q.b, {v.b = v.a + v.a; v.a = v.b;}); return v.a;",
+                "v.a > 1 ? {loop(q.b, {v.a = v.a * q.a;});}; return v.a + q.n;",
+        };
+
+        MolangEquivalence.assertEquivalent(MolangLoopTest::createEnvironment, inputs);
+    }
+
+    @Test
+    public void testVariablesInBody() throws MolangException {
+        // Variables set in the body are read again in every iteration at every level
+        String[] inputs = {
+                "loop(5, {v.b = v.a + v.a; v.a = v.b;}); return v.a;",
+                "loop(2, {v.a = v.a + 1;}); return v.a;",
+                "loop(4, {v.a = v.a * 3; v.a > 10 ? break; v.a = v.a + 1;}); return v.a;",
+                "loop(3, {v.a = v.a + 1; loop(2, {v.a = v.a * 2;});}); return v.a;",
+                "loop(3, {t.x = v.a; v.a = t.x + 1; v.a > 3 ? continue;}); return v.a + t.x;",
+                "v.a > 1 ? {loop(q.a, {v.a = v.a + 1;});}; return v.a;",
+                "v.a = 5; q.a > 1 ? {loop(2, {v.a = v.a + 1;});}; return v.a;",
+                // The iterations load objects the body doesn't use
+                "loop(q.n, {v.b = 1;}); t.c = 10; return q.b;",
+                "loop(q.n, {v.x ? continue;}); return q.n;",
+                "t.a = q.a; loop(q.n, {(t.a - v.x) ? continue;}); t.c = t.a; return (q.n < q.n) ? (4 == t.a) : 7;",
+        };
+
+        float[] expected = {64.0F, 4.0F, 21.0F, 212.0F, 9.0F, 3.0F, 7.0F, 3.0F, -1.5F, 7.0F};
+        MolangCompiler tiered = MolangCompiler.builder().tiered(Integer.MAX_VALUE).build();
+        for (int i = 0; i < inputs.length; i++) {
+            Assertions.assertEquals(expected[i], createEnvironment().resolve(tiered.compile(inputs[i])), inputs[i]);
+            for (int flags : new int[]{0, MolangCompiler.OPTIMIZE_FLAG | MolangCompiler.BASIC_OPTIMIZE_FLAG, MolangCompiler.OPTIMIZE_FLAG}) {
+                Assertions.assertEquals(expected[i], createEnvironment().resolve(MolangCompiler.create(flags).compile(inputs[i])), flags + ": " + inputs[i]);
+            }
+        }
+    }
+
+    private static MolangEnvironment createEnvironment() {
+        return MolangRuntime.runtime()
+                .setQuery("a", 1.5F)
+                .setQuery("b", 3)
+                .setQuery("n", -1.5F)
+                .setVariable("a", 2)
+                .setVariable("b", 0)
+                .setVariable("x", 1)
+                .create();
+    }
+
+    private static String optimize(String input, boolean fastMath) throws MolangException {
+        MolangBytecodeEnvironment environment = new MolangBytecodeEnvironment(MolangCompiler.OPTIMIZE_FLAG);
+        return LoopOptimizer.optimize(ConstantFolder.fold(MolangParser.parseTokens(MolangLexer.createTokens(input)), environment), environment, fastMath).toString();
+    }
+}
@@ -0,0 +1,57 @@
+import gg.moonflower.molangcompiler.api.MolangCompiler;
+import gg.moonflower.molangcompiler.api.MolangEnvironment;
+import gg.moonflower.molangcompiler.api.MolangExpression;
+import gg.moonflower.molangcompiler.api.MolangRuntime;
+import gg.moonflower.molangcompiler.api.exception.MolangException;
+import gg.moonflower.molangcompiler.api.exception.MolangSyntaxException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class MolangModuleTest {
+
+    @Test
+    void testModule() throws MolangException {
+        MolangCompiler compiler = MolangCompiler.create();
+        MolangEnvironment environment = MolangRuntime.runtime().setQuery("anim_time", 2).create();
+
+        List<MolangExpression> expressions = compiler.compileModule(List.of(
+                "q.anim_time * 3",
+                "4 * 4 + 2",
+                "v.a = q.anim_time; loop(3, {v.a = v.a * 2;}); return v.a;",
+                "q.anim_time > 1 ? math.abs(-5) : 3"
+        ));
+        Assertions.assertEquals(4, expressions.size());
+        Assertions.assertSame(expressions.get(0).getClass(), expressions.get(2).getClass());
+        Assertions.assertTrue(expressions.get(1).isConstant());
+
+        Assertions.assertEquals(6, environment.resolve(expressions.get(0)));
+        Assertions.assertEquals(18, environment.resolve(expressions.get(1)));
+        Assertions.assertEquals(16, environment.resolve(expressions.get(2)));
+        Assertions.assertEquals(5, environment.resolve(expressions.get(3)));
+        Assertions.assertEquals(compiler.compile("q.anim_time * 3"), expressions.get(0));
+    }
+
+    @Test
+    void testLargeModule() throws MolangException {
+        MolangCompiler compiler = MolangCompiler.create(MolangCompiler.DEFAULT_FLAGS | MolangCompiler.HIDDEN_CLASSES_FLAG);
+        MolangEnvironment environment = MolangRuntime.runtime().setQuery("anim_time", 2).create();
+
+        List<String> inputs = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            inputs.add("q.anim_time + " + i);
+        }
+        List<MolangExpression> expressions = compiler.compileModule(inputs);
+        for (int i = 0; i < inputs.size(); i++) {
+            Assertions.assertEquals(2 + i, environment.resolve(expressions.get(i)));
+        }
+    }
+
+    @Test
+    void testError() {
+        MolangCompiler compiler = MolangCompiler.create();
+        Assertions.assertThrows(MolangSyntaxException.class, () -> compiler.compileModule(List.of("q.anim_time", "q.anim_time +")));
+    }
+}
@@ -0,0 +1,52 @@
+import gg.moonflower.molangcompiler.api.MolangCompiler;
+import gg.moonflower.molangcompiler.api.MolangPackLoader;
+import gg.moonflower.molangcompiler.api.MolangRuntime;
+import gg.moonflower.molangcompiler.api.exception.MolangException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class MolangPackLoaderTest {
+
+    @Test
+    public void testLoad(@TempDir Path directory) throws IOException, MolangException {
+        Files.createDirectories(directory.resolve("animations"));
+        Files.writeString(directory.resolve("animations/player.json"), """
+                {
+                  "animations": {
+                    "walk": {"loop": "math.sin(q.anim_time * 90)", "name": "walk"},
+                    "run": {"loop": "math.sin(q.anim_time  * 90)", "speed": "q.anim_time * 2"},
+                    "broken": {"loop": "q.anim_time *"}
+                  }
+                }
+                """);
+        Files.writeString(directory.resolve("animations/invalid.json"), "{\"a\": ");
+        Files.writeString(directory.resolve("idle.molang"), "v.idle = q.anim_time; return v.idle;");
+        Files.writeString(directory.resolve("readme.txt"), "q.anim_time");
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        MolangPackLoader.Result result;
+        try {
+            result = MolangPackLoader.load(MolangCompiler.create(), List.of(directory), executor, 1);
+        } finally {
+            executor.shutdown();
+        }
+
+        Assertions.assertEquals(3, result.expressions().size());
+        Assertions.assertEquals(4, MolangRuntime.runtime().setQuery("anim_time", 2).create().resolve(result.get("q.anim_time * 2")));
+        Assertions.assertNotNull(result.get("math.sin(q.anim_time * 90)"));
+        Assertions.assertNotNull(result.get(" v.idle =  q.anim_time;   return v.idle;"));
+
+        Assertions.assertFalse(result.isSuccess());
+        Assertions.assertEquals(1, result.failures().size());
+        Assertions.assertEquals("animations/player.json#/animations/broken/loop", result.failures().get(0).location());
+        Assertions.assertEquals(List.of(directory.resolve("animations/invalid.json")), List.copyOf(result.fileErrors().keySet()));
+    }
+}
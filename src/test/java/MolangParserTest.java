@@ -0,0 +1,64 @@
+import gg.moonflower.molangcompiler.api.MolangCompiler;
+import gg.moonflower.molangcompiler.api.MolangRuntime;
+import gg.moonflower.molangcompiler.api.exception.MolangException;
+import gg.moonflower.molangcompiler.api.exception.MolangSyntaxException;
+import gg.moonflower.molangcompiler.core.ast.BinaryOperation;
+import gg.moonflower.molangcompiler.core.ast.BinaryOperationNode;
+import gg.moonflower.molangcompiler.core.ast.Node;
+import gg.moonflower.molangcompiler.core.ast.ReturnNode;
+import gg.moonflower.molangcompiler.core.compiler.MolangLexer;
+import gg.moonflower.molangcompiler.core.compiler.MolangParser;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class MolangParserTest {
+
+    @Test
+    public void testPrecedence() throws MolangSyntaxException {
+        Assertions.assertEquals("return (query.a + ((query.b * query.c) * query.d))", parse("q.a + q.b * q.c * q.d"));
+        Assertions.assertEquals("return ((query.a - query.b) - query.c)", parse("q.a - q.b - q.c"));
+        Assertions.assertEquals("return (((query.a >= 1.0) && (query.a < 2.0)) || (query.b == 7.0))", parse("q.a >= 1 && q.a < 2 || q.b == 7"));
+        Assertions.assertEquals("return ((variable.x ?? 0.0) > 0.2)", parse("v.x ?? 0 > 0.2"));
+        Assertions.assertEquals("return ((query.a + 1.0) > 2.0) ? query.b : (query.c + 1.0)", parse("q.a + 1 > 2 ? q.b : q.c + 1"));
+        Assertions.assertEquals("return ((query.a + query.b) * query.c)", parse("(q.a + q.b) * q.c"));
+    }
+
+    @Test
+    public void testPrefixOperators() throws MolangException {
+        Assertions.assertEquals("return (!query.a && query.b)", parse("!q.a && q.b"));
+        Assertions.assertEquals("return (2.0 * (-1.0 * (query.a + 1.0)))", parse("2 * -(q.a + 1)"));
+
+        MolangCompiler compiler = MolangCompiler.create();
+        Assertions.assertEquals(1, MolangRuntime.runtime().setQuery("a", 0).create().resolve(compiler.compile("!q.a")));
+        Assertions.assertEquals(-6, MolangRuntime.runtime().setQuery("a", 2).create().resolve(compiler.compile("2 * -(q.a + 1)")));
+    }
+
+    @Test
+    public void testLongChain() throws MolangSyntaxException {
+        int terms = 20000;
+        StringBuilder input = new StringBuilder("q.a");
+        for (int i = 0; i < terms; i++) {
+            input.append(i % 2 == 0 ? " + q.a" : " * 2");
+        }
+        for (int i = 0; i < terms; i++) {
+            input.insert(0, '(').append(')');
+        }
+
+        Node node = MolangParser.parseTokens(MolangLexer.createTokens(input));
+        Assertions.assertInstanceOf(ReturnNode.class, node);
+        Assertions.assertEquals(BinaryOperation.ADD, ((BinaryOperationNode) ((ReturnNode) node).value()).operator());
+    }
+
+    @Test
+    public void testErrors() {
+        Assertions.assertThrows(MolangSyntaxException.class, () -> parse("(q.a + 1"));
+        Assertions.assertThrows(MolangSyntaxException.class, () -> parse("q.a + 1)"));
+        Assertions.assertThrows(MolangSyntaxException.class, () -> parse("q.a +"));
+        Assertions.assertThrows(MolangSyntaxException.class, () -> parse("math.sin()"));
+        Assertions.assertThrows(MolangSyntaxException.class, () -> parse("q.a & q.b"));
+    }
+
+    private static String parse(String input) throws MolangSyntaxException {
+        return MolangParser.parseTokens(MolangLexer.createTokens(input)).toString();
+    }
+}
@@ -0,0 +1,69 @@
+import gg.moonflower.molangcompiler.api.MolangCompiler;
+import gg.moonflower.molangcompiler.api.MolangEnvironment;
+import gg.moonflower.molangcompiler.api.MolangExpression;
+import gg.moonflower.molangcompiler.api.MolangPrecompiled;
+import gg.moonflower.molangcompiler.api.MolangRuntime;
+import gg.moonflower.molangcompiler.api.exception.MolangException;
+import gg.moonflower.molangcompiler.api.exception.MolangSyntaxException;
+import gg.moonflower.molangcompiler.core.MolangPrecompiler;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+
+public class MolangPrecompilerTest {
+
+    @Test
+    void testPrecompile(@TempDir Path directory) throws MolangException, IOException {
+        Path sources = directory.resolve("sources");
+        Files.createDirectories(sources.resolve("player"));
+        Files.writeString(sources.resolve("player/bob.molang"), "math.sin(q.anim_time * 90) * 2");
+        Files.writeString(sources.resolve("player/walk.json"), """
+                {
+                  "format_version": "1.8.0",
+                  "animations": {
+                    "walk": {
+                      "loop": true,
+                      "bones": { "leg": { "rotation": ["q.anim_time * 3", 0, "v.a = 2; return v.a;"] } },
+                      "texture": "textures/player"
+                    }
+                  }
+                }
+                """);
+
+        MolangPrecompiler precompiler = new MolangPrecompiler(MolangCompiler.DEFAULT_FLAGS);
+        precompiler.addPath(sources);
+        precompiler.add("constant", "4 * 4 + 2");
+        precompiler.add("broken", "q.anim_time +* 2");
+
+        Path jar = directory.resolve("molang.jar");
+        Map<String, MolangSyntaxException> failures = precompiler.write(jar);
+        Assertions.assertEquals(Set.of("broken"), failures.keySet());
+
+        try (URLClassLoader classLoader = new URLClassLoader(new URL[]{jar.toUri().toURL()}, MolangPrecompilerTest.class.getClassLoader())) {
+            MolangPrecompiled precompiled = MolangPrecompiled.load(classLoader);
+            Assertions.assertEquals(Set.of("player/bob", "player/walk.json#/animations/walk/bones/leg/rotation/0", "player/walk.json#/animations/walk/bones/leg/rotation/2", "constant"), precompiled.getIds());
+
+            MolangEnvironment environment = MolangRuntime.runtime().setQuery("anim_time", 1).create();
+            MolangExpression bob = precompiled.get("player/bob");
+            Assertions.assertNotNull(bob);
+            Assertions.assertSame(classLoader, bob.getClass().getClassLoader());
+            Assertions.assertEquals(2, environment.resolve(bob), 0.0001);
+            Assertions.assertEquals(3, environment.resolve(precompiled.get("player/walk.json#/animations/walk/bones/leg/rotation/0")));
+            Assertions.assertEquals(2, environment.resolve(precompiled.get("player/walk.json#/animations/walk/bones/leg/rotation/2")));
+            Assertions.assertEquals(18, environment.resolve(precompiled.get("constant")));
+
+            Assertions.assertSame(bob, precompiled.getBySource("math.sin(q.anim_time * 90)   * 2"));
+            Assertions.assertNull(precompiled.get("broken"));
+            Assertions.assertNull(precompiled.getBySource("q.anim_time * 4"));
+            Assertions.assertEquals(4, environment.resolve(precompiled.getOrCompile("q.anim_time * 4", MolangCompiler.create())));
+        }
+    }
+}
@@ -0,0 +1,121 @@
+import gg.moonflower.molangcompiler.api.MolangCompiler;
+import gg.moonflower.molangcompiler.api.MolangEnvironment;
+import gg.moonflower.molangcompiler.api.MolangExpression;
+import gg.moonflower.molangcompiler.api.MolangExpressionRegistry;
+import gg.moonflower.molangcompiler.api.MolangRuntime;
+import gg.moonflower.molangcompiler.api.exception.MolangException;
+import gg.moonflower.molangcompiler.api.exception.MolangSyntaxException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.Closeable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class MolangRegistryTest {
+
+    @Test
+    public void testReload() throws MolangException {
+        MolangExpressionRegistry registry = new MolangExpressionRegistry(MolangCompiler.create());
+        int walk = registry.handle("walk");
+        MolangExpression reference = registry.getReference(walk);
+        Assertions.assertEquals(0, evaluate(reference));
+
+        Assertions.assertEquals(walk, registry.register("walk", "q.x * 2"));
+        Assertions.assertEquals(4, evaluate(registry.get(walk)));
+        Assertions.assertEquals(4, evaluate(reference));
+
+        Map<String, MolangSyntaxException> errors = registry.reload(Map.of("walk", "q.x * 3", "run", "q.x * 4", "idle", "q.x *"));
+        Assertions.assertEquals(Map.of("idle", errors.get("idle")), errors);
+        Assertions.assertEquals(6, evaluate(reference));
+        Assertions.assertEquals(8, evaluate(registry.get(registry.handle("run"))));
+        Assertions.assertEquals(0, evaluate(registry.get(registry.handle("idle"))));
+        Assertions.assertEquals("run", registry.getId(registry.handle("run")));
+        Assertions.assertEquals(3, registry.size());
+
+        Assertions.assertThrows(MolangSyntaxException.class, () -> registry.register("walk", "q.x +"));
+        Assertions.assertEquals(6, evaluate(reference));
+    }
+
+    @Test
+    public void testWatch(@TempDir Path directory) throws Exception {
+        MolangExpressionRegistry registry = new MolangExpressionRegistry(MolangCompiler.create());
+        Files.writeString(directory.resolve("walk.molang"), "q.x * 2");
+        Assertions.assertTrue(registry.reload(directory).isEmpty());
+        MolangExpression walk = registry.getReference(registry.handle("walk"));
+        Assertions.assertEquals(4, evaluate(walk));
+
+        CompletableFuture<Map<String, MolangSyntaxException>> reloaded = new CompletableFuture<>();
+        Closeable watcher = registry.watch(directory, reloaded::complete);
+        try {
+            Files.writeString(directory.resolve("walk.molang"), "q.x * 5");
+            Assertions.assertTrue(reloaded.get(10, TimeUnit.SECONDS).isEmpty());
+        } finally {
+            watcher.close();
+        }
+        Assertions.assertEquals(10, evaluate(walk));
+    }
+
+    @Test
+    public void testWatchReadFailure(@TempDir Path directory) throws Exception {
+        MolangExpressionRegistry registry = new MolangExpressionRegistry(MolangCompiler.create());
+        Files.writeString(directory.resolve("walk.molang"), "q.x * 2");
+        registry.reload(directory);
+        MolangExpression walk = registry.getReference(registry.handle("walk"));
+
+        // Read failures go to the I/O listener and leave the expressions untouched
+        BlockingQueue<Map<String, MolangSyntaxException>> reloads = new LinkedBlockingQueue<>();
+        CompletableFuture<Path> failed = new CompletableFuture<>();
+        Closeable watcher = registry.watch(directory, reloads::add, (path, e) -> failed.complete(path));
+        try {
+            Files.writeString(directory.resolve("broken.json"), "{\"walk\": ");
+            Files.writeString(directory.resolve("walk.molang"), "q.x * 5");
+            Assertions.assertEquals(directory, failed.get(10, TimeUnit.SECONDS));
+            Assertions.assertTrue(reloads.isEmpty());
+            Assertions.assertEquals(4, evaluate(walk));
+
+            Files.delete(directory.resolve("broken.json"));
+            Assertions.assertTrue(reloads.poll(10, TimeUnit.SECONDS).isEmpty());
+            Assertions.assertEquals(10, evaluate(walk));
+        } finally {
+            watcher.close();
+        }
+    }
+
+    @Test
+    public void testWatchListenerFailure(@TempDir Path directory) throws Exception {
+        MolangExpressionRegistry registry = new MolangExpressionRegistry(MolangCompiler.create());
+        Files.writeString(directory.resolve("walk.molang"), "q.x * 2");
+        registry.reload(directory);
+        MolangExpression walk = registry.getReference(registry.handle("walk"));
+
+        // The watcher keeps running after the listener throws
+        BlockingQueue<Map<String, MolangSyntaxException>> reloads = new LinkedBlockingQueue<>();
+        Closeable watcher = registry.watch(directory, errors -> {
+            reloads.add(errors);
+            throw new IllegalStateException("Listener failure");
+        });
+        try {
+            Files.writeString(directory.resolve("walk.molang"), "q.x * 5");
+            Assertions.assertNotNull(reloads.poll(10, TimeUnit.SECONDS));
+            Assertions.assertEquals(10, evaluate(walk));
+
+            Files.writeString(directory.resolve("walk.molang"), "q.x * 7");
+            Assertions.assertNotNull(reloads.poll(10, TimeUnit.SECONDS));
+            Assertions.assertEquals(14, evaluate(walk));
+        } finally {
+            watcher.close();
+        }
+    }
+
+    private static float evaluate(MolangExpression expression) throws MolangException {
+        MolangEnvironment environment = MolangRuntime.runtime().setQuery("x", 2).create();
+        return environment.resolve(expression);
+    }
+}
@@ -0,0 +1,65 @@
+import gg.moonflower.molangcompiler.api.MolangCompiler;
+import gg.moonflower.molangcompiler.api.MolangEnvironment;
+import gg.moonflower.molangcompiler.api.MolangExpression;
+import gg.moonflower.molangcompiler.api.MolangRuntime;
+import gg.moonflower.molangcompiler.api.exception.MolangException;
+import gg.moonflower.molangcompiler.api.exception.MolangSyntaxException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class MolangSerializationTest {
+
+    private static final List<String> INPUTS = List.of(
+            "math.sin(q.anim_time * 90) * 2",
+            "v.a = q.anim_time; v.b = v.a > 1 ? v.a * 2 : -v.a; return v.b ?? 3;",
+            "t.sum = 0; loop(4, {t.sum += q.anim_time; t.sum > 6 ? break;}); return t.sum;",
+            "q.anim_time >= 1 && q.anim_time < 2 || q.anim_time == 7",
+            "math.clamp(this, 0, 1) + math.pi",
+            "4 * 4 + 2"
+    );
+
+    @Test
+    void testRoundTrip() throws MolangException {
+        MolangCompiler compiler = MolangCompiler.create();
+        byte[] data = compiler.serialize(INPUTS);
+        List<MolangExpression> expressions = MolangCompiler.create().compileSerialized(data);
+        Assertions.assertEquals(INPUTS.size(), expressions.size());
+        for (int i = 0; i < INPUTS.size(); i++) {
+            MolangExpression expected = compiler.compile(INPUTS.get(i));
+            Assertions.assertEquals(expected.toString(), expressions.get(i).toString());
+            Assertions.assertEquals(createEnvironment().resolve(expected), createEnvironment().resolve(expressions.get(i)));
+        }
+
+        // Names are only stored once and constants use four bytes, so the data is smaller than the source
+        Assertions.assertTrue(data.length < String.join("", INPUTS).length(), "Serialized data is " + data.length + " bytes");
+    }
+
+    @Test
+    void testInvalidData() throws MolangException {
+        MolangCompiler compiler = MolangCompiler.create();
+        byte[] data = compiler.serialize(INPUTS);
+
+        Assertions.assertThrows(MolangSyntaxException.class, () -> compiler.compileSerialized(Arrays.copyOf(data, data.length - 3)));
+        Assertions.assertThrows(MolangSyntaxException.class, () -> compiler.compileSerialized(Arrays.copyOf(data, data.length + 1)));
+        Assertions.assertThrows(MolangSyntaxException.class, () -> compiler.compileSerialized(new byte[]{1, 2, 3, 4, 5}));
+    }
+
+    @Test
+    void testDeepTrees() throws MolangException {
+        MolangCompiler compiler = MolangCompiler.create();
+        String deep = "q.anim_time" + " + q.anim_time".repeat(600);
+        List<MolangExpression> expressions = compiler.compileSerialized(compiler.serialize(List.of(deep)));
+        Assertions.assertEquals(1202, createEnvironment().resolve(expressions.get(0)));
+
+        // Trees that could not be decoded are not encoded either
+        Assertions.assertThrows(MolangSyntaxException.class, () -> compiler.serialize(List.of("q.anim_time" + " + q.anim_time".repeat(1100))));
+    }
+
+    // Variables set by one evaluation must not leak into the other
+    private static MolangEnvironment createEnvironment() {
+        return MolangRuntime.runtime().setQuery("anim_time", 2).create();
+    }
+}
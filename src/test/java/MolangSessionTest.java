@@ -0,0 +1,75 @@
+import gg.moonflower.molangcompiler.api.MolangCompiler;
+import gg.moonflower.molangcompiler.api.MolangEnvironment;
+import gg.moonflower.molangcompiler.api.MolangExpression;
+import gg.moonflower.molangcompiler.api.MolangRuntime;
+import gg.moonflower.molangcompiler.api.exception.MolangException;
+import gg.moonflower.molangcompiler.api.exception.MolangSyntaxException;
+import gg.moonflower.molangcompiler.core.compiler.MolangLexer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+public class MolangSessionTest {
+
+    @Test
+    public void testEdits() throws MolangException {
+        MolangCompiler.Session session = MolangCompiler.create().createSession();
+        Assertions.assertEquals(4, evaluate(session.update("t.a = q.x; t.b = 2; t.a * t.b")));
+        Assertions.assertEquals(6, evaluate(session.update("t.a = q.x; t.b = 3; t.a * t.b")));
+        Assertions.assertEquals(7, evaluate(session.update("t.a = q.x; t.b = 3; t.a * t.b + 1;")));
+        Assertions.assertEquals(1, evaluate(session.update("if (q.x > 1) t.a = 1; else t.a = 2; return t.a;")));
+
+        // Formatting changes keep the same expression
+        MolangExpression expression = session.update("t.a = q.x;  t.b = 3;\n t.a * t.b");
+        Assertions.assertSame(expression, session.update("t.a = q.x; t.b = 3; t.a * t.b"));
+
+        // Invalid versions keep the last valid expression
+        Assertions.assertThrows(MolangSyntaxException.class, () -> session.update("t.a = q.x; t.b = ; t.a * t.b"));
+        Assertions.assertThrows(MolangSyntaxException.class, () -> session.update("return 1; t.a"));
+        Assertions.assertThrows(MolangSyntaxException.class, () -> session.update("t.a;; t.b"));
+        Assertions.assertSame(expression, session.getExpression());
+        Assertions.assertEquals(6, evaluate(session.update("t.a = q.x; t.b = 3; t.a * t.b")));
+
+        // The same invalid version fails every time
+        Assertions.assertEquals(3, evaluate(session.update("q.x + 1")));
+        Assertions.assertThrows(MolangSyntaxException.class, () -> session.update("q.x +"));
+        Assertions.assertThrows(MolangSyntaxException.class, () -> session.update("q.x +"));
+        Assertions.assertEquals(3, evaluate(session.update("q.x + 1")));
+    }
+
+    @Test
+    public void testUpdateTokens() throws MolangSyntaxException {
+        Random random = new Random(42);
+        String[] fragments = {"q.a", " ", "\n", "?", "?", "+", "+", "-", "{", "}", ";", "(", ")", "1", "2", ".", "v", "b", "return", "loop", "=", "\t", "x"};
+        String source = "v.a = q.anim_time ?? 1; loop(3, {v.b++;}); return v.a + v.b;";
+        MolangLexer.Token[] tokens = MolangLexer.createTokens(source);
+        for (int i = 0; i < 2000; i++) {
+            int start = random.nextInt(source.length() + 1);
+            int end = Math.min(source.length(), start + random.nextInt(4));
+            String input = source.substring(0, start) + fragments[random.nextInt(fragments.length)] + source.substring(end);
+
+            int prefix = 0;
+            while (prefix < Math.min(source.length(), input.length()) && source.charAt(prefix) == input.charAt(prefix)) {
+                prefix++;
+            }
+            int suffix = 0;
+            while (suffix < Math.min(source.length(), input.length()) - prefix && source.charAt(source.length() - 1 - suffix) == input.charAt(input.length() - 1 - suffix)) {
+                suffix++;
+            }
+
+            tokens = MolangLexer.updateTokens(tokens, input, prefix, source.length() - suffix, input.length() - suffix);
+            MolangLexer.Token[] expected = MolangLexer.createTokens(input);
+            Assertions.assertArrayEquals(expected, tokens, input);
+            for (int j = 0; j < tokens.length; j++) {
+                Assertions.assertEquals(expected[j].offset(), tokens[j].offset(), input);
+            }
+            source = input;
+        }
+    }
+
+    private static float evaluate(MolangExpression expression) throws MolangException {
+        MolangEnvironment environment = MolangRuntime.runtime().setQuery("x", 2).create();
+        return environment.resolve(expression);
+    }
+}
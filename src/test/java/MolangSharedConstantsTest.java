@@ -0,0 +1,44 @@
+import gg.moonflower.molangcompiler.api.MolangCompiler;
+import gg.moonflower.molangcompiler.api.MolangEnvironment;
+import gg.moonflower.molangcompiler.api.MolangExpression;
+import gg.moonflower.molangcompiler.api.MolangRuntime;
+import gg.moonflower.molangcompiler.api.exception.MolangException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class MolangSharedConstantsTest {
+
+    private static final int FLAGS = MolangCompiler.DEFAULT_FLAGS | MolangCompiler.SHARED_CONSTANTS_FLAG;
+
+    @Test
+    void testSharedClass() throws MolangException {
+        MolangCompiler compiler = MolangCompiler.create(FLAGS);
+        MolangEnvironment environment = MolangRuntime.runtime().setQuery("anim_time", 2).create();
+
+        MolangExpression first = compiler.compile("math.sin(q.anim_time * 120) * 4.5 + 1");
+        MolangExpression second = compiler.compile("math.sin(q.anim_time * 45) * 2 + 7");
+        Assertions.assertSame(first.getClass(), second.getClass());
+        Assertions.assertNotEquals(first, second);
+        Assertions.assertEquals(MolangCompiler.create().compile("math.sin(q.anim_time * 45) * 2 + 7").toString(), second.toString());
+
+        Assertions.assertEquals((float) Math.sin(Math.toRadians(240)) * 4.5F + 1, environment.resolve(first), 0.0001F);
+        Assertions.assertEquals((float) Math.sin(Math.toRadians(90)) * 2F + 7, environment.resolve(second), 0.0001F);
+    }
+
+    @Test
+    void testFoldedConstants() throws MolangException {
+        MolangCompiler compiler = MolangCompiler.create(FLAGS);
+        MolangEnvironment environment = MolangRuntime.runtime().setQuery("anim_time", 3).create();
+
+        // Constant subtrees are folded before they are lifted, so these only differ in a single literal
+        MolangExpression first = compiler.compile("q.anim_time * (2 + 2)");
+        MolangExpression second = compiler.compile("q.anim_time * 5");
+        Assertions.assertSame(first.getClass(), second.getClass());
+        Assertions.assertEquals(12, environment.resolve(first));
+        Assertions.assertEquals(15, environment.resolve(second));
+
+        // Constant conditions still select a branch at compile time
+        Assertions.assertNotSame(compiler.compile("1 ? q.anim_time : 2").getClass(), compiler.compile("0 ? q.anim_time : 2").getClass());
+        Assertions.assertEquals(2, environment.resolve(compiler.compile("0 ? q.anim_time : 2")));
+    }
+}
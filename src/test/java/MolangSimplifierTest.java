@@ -0,0 +1,85 @@
+import gg.moonflower.molangcompiler.api.MolangCompiler;
+import gg.moonflower.molangcompiler.api.MolangEnvironment;
+import gg.moonflower.molangcompiler.api.MolangExpression;
+import gg.moonflower.molangcompiler.api.MolangRuntime;
+import gg.moonflower.molangcompiler.api.exception.MolangException;
+import gg.moonflower.molangcompiler.core.compiler.MolangBytecodeEnvironment;
+import gg.moonflower.molangcompiler.core.compiler.MolangLexer;
+import gg.moonflower.molangcompiler.core.compiler.MolangParser;
+import gg.moonflower.molangcompiler.core.optimizer.AlgebraicSimplifier;
+import gg.moonflower.molangcompiler.core.optimizer.ConstantFolder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+public class MolangSimplifierTest {
+
+    @Test
+    public void testExact() throws MolangException {
+        Assertions.assertEquals("return (query.a * 0.125)", simplify("q.a / 8", false));
+        Assertions.assertEquals("return (query.a / 3.0)", simplify("q.a / 3", false));
+        Assertions.assertEquals("return (query.a * query.a)", simplify("math.pow(q.a, 2)", false));
+        Assertions.assertEquals("return query.a", simplify("math.pow(q.a, 1)", false));
+        Assertions.assertEquals("return query.a", simplify("1 * q.a / 1 - 0", false));
+        Assertions.assertEquals("return (query.a + 0.0)", simplify("q.a + 0", false));
+        Assertions.assertEquals("return (((query.a * 2.0) * 3.0) + 1.0)", simplify("2 * q.a * 3 + 1", false));
+
+        // The argument is only evaluated once
+        Assertions.assertEquals("return math.pow(math.random(0.0, 1.0), 2.0)", simplify("math.pow(math.random(0, 1), 2)", false));
+    }
+
+    @Test
+    public void testReassociate() throws MolangException {
+        Assertions.assertEquals("return (query.a * 6.0)", simplify("2 * q.a * 3", true));
+        Assertions.assertEquals("return query.a", simplify("(q.a + 4) - 4", true));
+        Assertions.assertEquals("return ((query.a * query.b) * 6.0)", simplify("2 * q.a * q.b * 3", true));
+        Assertions.assertEquals("return ((query.a - query.b) + 3.0)", simplify("(q.a + 1) - (q.b - 2)", true));
+        Assertions.assertEquals("return (query.a * -2.0)", simplify("-(q.a * 2)", true));
+    }
+
+    @Test
+    public void testEquivalent() throws MolangException {
+        String[] inputs = {
+                "q.a / 8 + q.b / 0.25",
+                "math.pow(q.a, 2) - math.pow(q.b + 1, 2)",
+                "1 * q.a / 1 - 0 + q.b * 1",
+                "-q.a * -q.b / 2",
+                "q.a + -0",
+                "t.x = q.a / 4; return math.pow(t.x, 2) * 1;",
+        };
+
+        MolangCompiler unoptimized = MolangCompiler.create(0);
+        MolangCompiler fastMath = MolangCompiler.create(MolangCompiler.OPTIMIZE_FLAG | MolangCompiler.FAST_MATH_FLAG);
+        float[] values = {0.0F, -0.0F, 1.5F, -3.25F, 1.0E-30F, 3.0E38F, Float.NaN, Float.POSITIVE_INFINITY};
+        List<Supplier<MolangEnvironment>> environments = new ArrayList<>();
+        for (float a : values) {
+            for (float b : values) {
+                environments.add(() -> MolangRuntime.runtime().setQuery("a", a).setQuery("b", b).create());
+            }
+        }
+        MolangEquivalence.assertEquivalent(environments, inputs);
+
+        for (String input : inputs) {
+            MolangExpression expected = unoptimized.compile(input);
+            MolangExpression fast = fastMath.compile(input);
+            for (float a : values) {
+                for (float b : values) {
+                    MolangEnvironment environment = MolangRuntime.runtime().setQuery("a", a).setQuery("b", b).create();
+                    float value = environment.resolve(expected);
+                    String message = input + " with a=" + a + ", b=" + b;
+                    if (Float.isFinite(value) && Math.abs(value) < 1.0E30F) {
+                        Assertions.assertEquals(value, environment.resolve(fast), Math.ulp(value) * 4, message);
+                    }
+                }
+            }
+        }
+    }
+
+    private static String simplify(String input, boolean reassociate) throws MolangException {
+        MolangBytecodeEnvironment environment = new MolangBytecodeEnvironment(MolangCompiler.OPTIMIZE_FLAG);
+        return AlgebraicSimplifier.simplify(ConstantFolder.fold(MolangParser.parseTokens(MolangLexer.createTokens(input)), environment), reassociate).toString();
+    }
+}
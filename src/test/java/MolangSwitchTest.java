@@ -0,0 +1,58 @@
+import gg.moonflower.molangcompiler.api.MolangCompiler;
+import gg.moonflower.molangcompiler.api.MolangEnvironment;
+import gg.moonflower.molangcompiler.api.MolangRuntime;
+import gg.moonflower.molangcompiler.api.exception.MolangException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+public class MolangSwitchTest {
+
+    private static final float[] VALUES = {-3.0F, -1.0F, 0.0F, -0.0F, 1.0F, 1.5F, 2.0F, 3.0F, 4.0F, 7.0F, 1000.0F, 3.0E9F, -3.0E9F, Float.NaN, Float.POSITIVE_INFINITY};
+
+    @Test
+    public void testChains() throws MolangException {
+        String[] inputs = {
+                // Dense keys
+                "q.v == 0 ? 10 : q.v == 1 ? 11 : q.v == 2 ? 12 : q.v == 3 ? 13 : 14",
+                // Sparse keys
+                "q.v == -3 ? 10 : q.v == 7 ? 11 : q.v == 1000 ? 12 : 13",
+                // Keys on the left, duplicates, and a default that is not part of the chain
+                "0 == q.v ? 10 : q.v == 1 ? 11 : q.v == 0 ? 12 : 2 == q.v ? 13 : q.v > 2 ? 14 : 15",
+                // Not integral keys end the chain
+                "q.v == 0 ? 10 : q.v == 1 ? 11 : q.v == 1.5 ? 12 : q.v == 2 ? 13 : 14",
+                // Branches used as statements
+                "t.x = 0; q.v == 0 ? (t.x = 10) : q.v == 1 ? (t.x = 11) : q.v == 2 ? (t.x = 12) : (t.x = 13); return t.x;",
+                "v.x = 0; q.v == 0 ? (v.x = q.v + 10) : q.v == 1 ? (v.x = q.v + 11) : q.v == 2 ? (v.x = 12) : (v.x = 13); return v.x;",
+                // Looping over every case
+                "t.x = 0; t.i = -1; loop(5, {t.x = t.x * 10 + (t.i == 0 ? 1 : t.i == 1 ? 2 : t.i == 2 ? 3 : 4); t.i = t.i + 1;}); return t.x;",
+        };
+
+        List<Supplier<MolangEnvironment>> environments = new ArrayList<>();
+        for (float value : VALUES) {
+            environments.add(() -> MolangRuntime.runtime()
+                    .setQuery("v", value)
+                    .setVariable("x", 0)
+                    .create());
+        }
+        MolangEquivalence.assertEquivalent(environments, inputs);
+    }
+
+    @Test
+    public void testSelect() throws MolangException {
+        MolangCompiler compiler = MolangCompiler.create(MolangCompiler.OPTIMIZE_FLAG);
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            builder.append("q.v == ").append(i * 3).append(" ? ").append(i).append(" : ");
+        }
+        builder.append("-1");
+
+        for (int i = -3; i < 130; i++) {
+            MolangEnvironment environment = MolangRuntime.runtime().setQuery("v", i).create();
+            Assertions.assertEquals(i >= 0 && i < 120 && i % 3 == 0 ? i / 3 : -1, environment.resolve(compiler.compile(builder.toString())));
+        }
+    }
+}
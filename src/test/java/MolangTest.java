@@ -385,4 +385,13 @@ public class MolangTest {
         float result = runtime.resolve(loop);
         Assertions.assertEquals(4, result);
     }
+
+    @Test
+    void testLn() throws MolangException {
+        MolangRuntime runtime = MolangRuntime.runtime().setQuery("x", 8).create();
+        for (int flags : new int[]{0, MolangCompiler.OPTIMIZE_FLAG | MolangCompiler.BASIC_OPTIMIZE_FLAG, MolangCompiler.OPTIMIZE_FLAG}) {
+            float result = runtime.resolve(MolangCompiler.create(flags).compile("math.ln(q.x)"));
+            Assertions.assertEquals((float) Math.log(8), result);
+        }
+    }
 }
@@ -0,0 +1,93 @@
+import gg.moonflower.molangcompiler.api.MolangCompiler;
+import gg.moonflower.molangcompiler.api.MolangExpression;
+import gg.moonflower.molangcompiler.api.MolangRuntime;
+import gg.moonflower.molangcompiler.api.exception.MolangException;
+import gg.moonflower.molangcompiler.api.exception.MolangSyntaxException;
+import gg.moonflower.molangcompiler.core.ast.Node;
+import gg.moonflower.molangcompiler.core.compiler.MolangInterpreterContext;
+import gg.moonflower.molangcompiler.core.compiler.MolangLexer;
+import gg.moonflower.molangcompiler.core.compiler.MolangParser;
+import gg.moonflower.molangcompiler.core.node.MolangTieredNode;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class MolangTieredTest {
+
+    private static final String[] EXPRESSIONS = {
+            "math.sin(q.anim_time * 1.23) * 4 + math.cos(q.life_time)",
+            "math.pi * 2 + (3 / 2 + 53) * ((7) / 5)",
+            "v.test = q.anim_time; v.test /= 30; v.test--; v.test += 3; return v.test;",
+            "temp.i = 0; loop(10, {temp.i++; if (temp.i > 5) {temp.i += 3; break;} else {temp.i += 2; continue;}}); temp.i;",
+            "if (q.anim_time > 50) {return 4;} return 1;",
+            "v.missing ?? q.anim_time * 2",
+            "q.anim_time > 10 && q.life_time < 1 || q.anim_time == 3",
+            "q.add(q.anim_time, 4) * math.clamp(q.anim_time, 0, 20)",
+            "temp.a = 4; {temp.a = temp.a * 2;}; q.anim_time >= 90 ? temp.a : -temp.a",
+            "math.round(math.lerp(q.anim_time, 0, 0.25)) + math.trunc(math.mod(q.anim_time, 7))",
+    };
+
+    private static MolangRuntime createRuntime() {
+        return MolangRuntime.runtime()
+                .setQuery("anim_time", 90)
+                .setQuery("life_time", 0)
+                .setQuery("add", 2, context -> context.get(0) + context.get(1))
+                .create();
+    }
+
+    @Test
+    void testInterpreter() throws MolangException {
+        MolangCompiler compiler = MolangCompiler.create();
+        MolangCompiler tiered = MolangCompiler.builder().tiered(Integer.MAX_VALUE).build();
+
+        for (String input : EXPRESSIONS) {
+            MolangExpression expected = compiler.compile(input);
+            MolangExpression interpreted = tiered.compile(input);
+            Assertions.assertEquals(expected, interpreted);
+            Assertions.assertEquals(createRuntime().resolve(expected), createRuntime().resolve(interpreted), input);
+        }
+    }
+
+    @Test
+    void testSetVariable() throws MolangException {
+        MolangCompiler tiered = MolangCompiler.builder().tiered(Integer.MAX_VALUE).build();
+        MolangRuntime runtime = createRuntime();
+        runtime.resolve(tiered.compile("v.a = 2; v.b = v.a * 3;"));
+        Assertions.assertEquals(6, runtime.resolve(tiered.compile("v.b")));
+    }
+
+    @Test
+    void testPromotion() throws MolangException {
+        MolangCompiler tiered = MolangCompiler.builder().tiered(3, Runnable::run).build();
+        MolangTieredNode expression = (MolangTieredNode) tiered.compile("q.anim_time * 2");
+        MolangRuntime runtime = createRuntime();
+
+        for (int i = 0; i < 2; i++) {
+            Assertions.assertEquals(180, runtime.resolve(expression));
+            Assertions.assertNull(expression.getCompiled());
+        }
+        Assertions.assertEquals(180, runtime.resolve(expression));
+        Assertions.assertNotNull(expression.getCompiled());
+        Assertions.assertEquals(180, runtime.resolve(expression));
+    }
+
+    @Test
+    void testFailedCompile() throws MolangException {
+        Node node = MolangParser.parseTokens(MolangLexer.createTokens("q.anim_time * 2"));
+        MolangTieredNode expression = new MolangTieredNode(node, node, MolangInterpreterContext.findTemps(node), 1, Runnable::run, n -> {
+            throw new MolangSyntaxException("Failed to compile");
+        });
+
+        // The failure is recorded and the expression keeps being interpreted
+        Assertions.assertEquals(180, createRuntime().resolve(expression));
+        Assertions.assertNull(expression.getCompiled());
+        Assertions.assertEquals("Failed to compile", expression.getFailure().getMessage());
+        Assertions.assertEquals(180, createRuntime().resolve(expression));
+    }
+
+    @Test
+    void testSyntaxErrors() {
+        MolangCompiler tiered = MolangCompiler.builder().tiered(10).build();
+        Assertions.assertThrows(MolangSyntaxException.class, () -> tiered.compile("break"));
+        Assertions.assertThrows(MolangSyntaxException.class, () -> tiered.compile("math.abs(q.anim_time) ?? 2"));
+    }
+}
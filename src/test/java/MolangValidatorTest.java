@@ -0,0 +1,48 @@
+import gg.moonflower.molangcompiler.api.MolangValidator;
+import gg.moonflower.molangcompiler.api.exception.MolangSyntaxException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+public class MolangValidatorTest {
+
+    @Test
+    public void testReferences() {
+        MolangValidator.Result result = MolangValidator.analyze("t.a = q.anim_time * 2; v.speed = math.clamp(t.a, 0, c.max ?? 1); return q.is_moving ? v.speed : query.custom(t.a);");
+        Assertions.assertTrue(result.isValid());
+        Assertions.assertEquals(Set.of("query", "variable", "context"), result.objects());
+        Assertions.assertEquals(Set.of("temp.a", "query.anim_time", "variable.speed", "context.max", "query.is_moving"), result.variables());
+        Assertions.assertEquals(Set.of("query.custom"), result.functions());
+    }
+
+    @Test
+    public void testErrors() {
+        List<MolangValidator.Result> results = MolangValidator.analyzeAll(List.of("q.a + 1", "q.a +", "math.sin(q.a", "1 2 3 &"));
+        Assertions.assertTrue(results.get(0).isValid());
+        for (int i = 1; i < results.size(); i++) {
+            MolangValidator.Result result = results.get(i);
+            Assertions.assertFalse(result.isValid());
+            Assertions.assertNotNull(result.error().getInput());
+            Assertions.assertTrue(result.error().getCursor() >= 0);
+            Assertions.assertTrue(result.variables().isEmpty());
+        }
+
+        Assertions.assertThrows(MolangSyntaxException.class, () -> MolangValidator.validate("v.a = ;"));
+        Assertions.assertDoesNotThrow(() -> MolangValidator.validate("v.a = 4;"));
+    }
+
+    @Test
+    public void testJumpOutsideLoop() {
+        // Rejected the same as when compiling
+        for (String input : new String[]{"break;", "continue;", "v.a = 1; q.a ? {break;};", "loop(q.a ? break : 2, {v.a = 1;});"}) {
+            MolangSyntaxException exception = Assertions.assertThrows(MolangSyntaxException.class, () -> MolangValidator.validate(input), input);
+            Assertions.assertTrue(exception.getRawMessage().startsWith("Cannot"), input);
+            Assertions.assertNotNull(exception.getInput(), input);
+            Assertions.assertTrue(exception.getCursor() >= 0, input);
+            Assertions.assertFalse(MolangValidator.analyze(input).isValid(), input);
+        }
+        Assertions.assertDoesNotThrow(() -> MolangValidator.validate("loop(3, {q.a ? break; loop(2, {continue;});});"));
+    }
+}